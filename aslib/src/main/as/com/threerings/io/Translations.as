@@ -64,5 +64,11 @@ public class Translations
     addTranslation("com.threerings.util.Integer", "java.lang.Integer");
     addTranslation("com.threerings.util.Long", "java.lang.Long");
     addTranslation("com.threerings.util.Float", "java.lang.Float");
+
+    // indexed and persistent sets stream exactly as regular sets do, so we read them as such (but
+    // only in that direction, as addTranslation would also have us send our sets as one of them)
+    _fromServer["com.threerings.presents.dobj.IndexedDSet"] = "com.threerings.presents.dobj.DSet";
+    _fromServer["com.threerings.presents.dobj.PersistentDSet"] =
+        "com.threerings.presents.dobj.DSet";
 }
 }
@@ -0,0 +1,129 @@
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2025 Three Rings Design, Inc., All Rights Reserved
+// https://github.com/threerings/narya/blob/master/LICENSE
+
+package com.threerings.presents.dobj;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the array backed {@link DSet} with {@link PersistentDSet}. The sets hold entries with
+ * the even keys up to twice their size, so that an odd key can be added and removed again
+ * without changing the set for the next invocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dcom.threerings.presents.dobj.DSet.warnSize=1000000")
+public class DSetBenchmark
+{
+    public static class Entry implements DSet.Entry
+    {
+        public final Integer key;
+
+        public Entry (Integer key)
+        {
+            this.key = key;
+        }
+
+        public Comparable<?> getKey ()
+        {
+            return key;
+        }
+    }
+
+    /** The number of entries in the set. */
+    @Param({ "10", "1000", "100000" })
+    public int size;
+
+    /** The set implementation to use. */
+    @Param({ "array", "persistent" })
+    public String impl;
+
+    @Setup(Level.Trial)
+    public void createSet ()
+    {
+        _set = impl.equals("persistent") ?
+            PersistentDSet.<Entry>newPersistentDSet() : DSet.<Entry>newDSet();
+        for (int ii = 0; ii < size; ii++) {
+            _set.add(new Entry(2*ii));
+        }
+        _keys = new Integer[KEYS];
+        for (int ii = 0; ii < KEYS; ii++) {
+            _keys[ii] = (int)((long)ii * 2 * size / KEYS);
+        }
+    }
+
+    /**
+     * Clones the set and updates an entry in the clone, as happens when a set is replaced via its
+     * generated setter and then modified.
+     */
+    @Benchmark
+    public DSet<Entry> cloneAndUpdate ()
+    {
+        DSet<Entry> clone = _set.clone();
+        clone.update(new Entry(nextKey() & ~1));
+        return clone;
+    }
+
+    /**
+     * Adds an entry to the set and removes it again.
+     */
+    @Benchmark
+    public Entry addAndRemove ()
+    {
+        Integer key = nextKey() | 1;
+        _set.add(new Entry(key));
+        return _set.removeKey(key);
+    }
+
+    /**
+     * Looks up an entry in the set.
+     */
+    @Benchmark
+    public Entry get ()
+    {
+        return _set.get(_keys[_keyidx++ & (KEYS-1)]);
+    }
+
+    /**
+     * Iterates over the entire set.
+     */
+    @Benchmark
+    public int iterate ()
+    {
+        int count = 0;
+        for (Entry entry : _set) {
+            count += entry.key;
+        }
+        return count;
+    }
+
+    protected int nextKey ()
+    {
+        return _keys[_keyidx++ & (KEYS-1)];
+    }
+
+    protected DSet<Entry> _set;
+    protected Integer[] _keys;
+    protected int _keyidx;
+
+    /** The number of keys we cycle through (a power of two). */
+    protected static final int KEYS = 1024;
+}
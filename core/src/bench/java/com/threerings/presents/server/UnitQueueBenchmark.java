@@ -0,0 +1,138 @@
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2025 Three Rings Design, Inc., All Rights Reserved
+// https://github.com/threerings/narya/blob/master/LICENSE
+
+package com.threerings.presents.server;
+
+import java.util.List;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.Lists;
+
+import com.samskivert.util.Queue;
+
+/**
+ * Compares the throughput of handing units from a number of producer threads to a single consumer
+ * via a {@link UnitQueue} with that of the synchronized {@link Queue} it replaced in the dobjmgr.
+ * Each invocation releases the producers to append {@link #UNITS} units between them and has the
+ * benchmark thread consume them as the dobjmgr would: the synchronized queue one unit at a time,
+ * checking its size for each, and the unit queue in batches.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UnitQueueBenchmark
+{
+    /** The number of threads appending units. */
+    @Param({ "1", "4", "16" })
+    public int producers;
+
+    /** The queue implementation to use. */
+    @Param({ "synchronized", "unit" })
+    public String queue;
+
+    @Setup(Level.Trial)
+    public void startProducers ()
+    {
+        _barrier = new CyclicBarrier(producers + 1);
+        _threads = new Thread[producers];
+        final int units = UNITS / producers;
+        final boolean unit = queue.equals("unit");
+        for (int ii = 0; ii < producers; ii++) {
+            _threads[ii] = new Thread("producer-" + ii) {
+                @Override public void run () {
+                    try {
+                        while (true) {
+                            _barrier.await();
+                            for (int uu = 0; uu < units; uu++) {
+                                if (unit) {
+                                    _uqueue.append(UNIT);
+                                } else {
+                                    _squeue.append(UNIT);
+                                }
+                            }
+                        }
+                    } catch (InterruptedException | BrokenBarrierException e) {
+                        // time to go
+                    }
+                }
+            };
+            _threads[ii].setDaemon(true);
+            _threads[ii].start();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stopProducers ()
+    {
+        for (Thread thread : _threads) {
+            thread.interrupt();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(UNITS)
+    public int handoff ()
+        throws InterruptedException, BrokenBarrierException
+    {
+        _barrier.await();
+        return queue.equals("unit") ? drainUnitQueue() : drainSynchronizedQueue();
+    }
+
+    protected int drainSynchronizedQueue ()
+    {
+        int maxSize = 0;
+        for (int ii = 0; ii < UNITS; ii++) {
+            _squeue.get();
+            maxSize = Math.max(maxSize, _squeue.size());
+        }
+        return maxSize;
+    }
+
+    protected int drainUnitQueue ()
+    {
+        int maxSize = 0;
+        for (int received = 0; received < UNITS; ) {
+            received += _uqueue.drainTo(_batch, BATCH_SIZE);
+            maxSize = Math.max(maxSize, _batch.size() + _uqueue.size());
+            _batch.clear();
+        }
+        return maxSize;
+    }
+
+    protected CyclicBarrier _barrier;
+    protected Thread[] _threads;
+
+    protected Queue<Object> _squeue = new Queue<Object>();
+    protected UnitQueue<Object> _uqueue = new UnitQueue<Object>();
+    protected List<Object> _batch = Lists.newArrayListWithCapacity(BATCH_SIZE);
+
+    /** The number of units handed off per invocation, which is divisible by every producer count. */
+    protected static final int UNITS = 16 * 1024;
+
+    /** The number of units drained from the unit queue at once, as in the dobjmgr. */
+    protected static final int BATCH_SIZE = 256;
+
+    protected static final Object UNIT = new Object();
+}
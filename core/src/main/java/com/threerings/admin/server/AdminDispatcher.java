@@ -0,0 +1,56 @@
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2025 Three Rings Design, Inc., All Rights Reserved
+// https://github.com/threerings/narya/blob/master/LICENSE
+
+package com.threerings.admin.server;
+
+import javax.annotation.processing.Generated;
+
+import com.threerings.presents.data.ClientObject;
+import com.threerings.presents.server.InvocationDispatcher;
+import com.threerings.presents.server.InvocationException;
+
+import com.threerings.admin.client.AdminService;
+import com.threerings.admin.data.AdminMarshaller;
+
+/**
+ * Dispatches requests to the {@link AdminProvider}.
+ */
+@Generated(value={"com.threerings.presents.tools.GenServiceTask"},
+           comments="Derived from AdminService.java.")
+public class AdminDispatcher extends InvocationDispatcher<AdminMarshaller>
+{
+    /**
+     * Creates a dispatcher that may be registered to dispatch invocation
+     * service requests for the specified provider.
+     */
+    public AdminDispatcher (AdminProvider provider)
+    {
+        this.provider = provider;
+    }
+
+    @Override
+    public AdminMarshaller createMarshaller ()
+    {
+        return new AdminMarshaller();
+    }
+
+    @Override
+    public void dispatchRequest (
+        ClientObject source, int methodId, Object[] args)
+        throws InvocationException
+    {
+        switch (methodId) {
+        case AdminMarshaller.GET_CONFIG_INFO:
+            ((AdminProvider)provider).getConfigInfo(
+                source, (AdminService.ConfigInfoListener)args[0]
+            );
+            return;
+
+        default:
+            super.dispatchRequest(source, methodId, args);
+            return;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2025 Three Rings Design, Inc., All Rights Reserved
+// https://github.com/threerings/narya/blob/master/LICENSE
+
+package com.threerings.bureau.server;
+
+import javax.annotation.processing.Generated;
+
+import com.threerings.presents.data.ClientObject;
+import com.threerings.presents.server.InvocationDispatcher;
+import com.threerings.presents.server.InvocationException;
+
+import com.threerings.bureau.data.BureauMarshaller;
+
+/**
+ * Dispatches requests to the {@link BureauProvider}.
+ */
+@Generated(value={"com.threerings.presents.tools.GenServiceTask"},
+           comments="Derived from BureauService.java.")
+public class BureauDispatcher extends InvocationDispatcher<BureauMarshaller>
+{
+    /**
+     * Creates a dispatcher that may be registered to dispatch invocation
+     * service requests for the specified provider.
+     */
+    public BureauDispatcher (BureauProvider provider)
+    {
+        this.provider = provider;
+    }
+
+    @Override
+    public BureauMarshaller createMarshaller ()
+    {
+        return new BureauMarshaller();
+    }
+
+    @Override
+    public void dispatchRequest (
+        ClientObject source, int methodId, Object[] args)
+        throws InvocationException
+    {
+        switch (methodId) {
+        case BureauMarshaller.AGENT_CREATED:
+            ((BureauProvider)provider).agentCreated(
+                source, ((Integer)args[0]).intValue()
+            );
+            return;
+
+        case BureauMarshaller.AGENT_CREATION_FAILED:
+            ((BureauProvider)provider).agentCreationFailed(
+                source, ((Integer)args[0]).intValue()
+            );
+            return;
+
+        case BureauMarshaller.AGENT_DESTROYED:
+            ((BureauProvider)provider).agentDestroyed(
+                source, ((Integer)args[0]).intValue()
+            );
+            return;
+
+        case BureauMarshaller.BUREAU_ERROR:
+            ((BureauProvider)provider).bureauError(
+                source, (String)args[0]
+            );
+            return;
+
+        case BureauMarshaller.BUREAU_INITIALIZED:
+            ((BureauProvider)provider).bureauInitialized(
+                source, (String)args[0]
+            );
+            return;
+
+        default:
+            super.dispatchRequest(source, methodId, args);
+            return;
+        }
+    }
+}
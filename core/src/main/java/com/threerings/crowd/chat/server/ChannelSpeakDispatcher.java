@@ -0,0 +1,56 @@
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2025 Three Rings Design, Inc., All Rights Reserved
+// https://github.com/threerings/narya/blob/master/LICENSE
+
+package com.threerings.crowd.chat.server;
+
+import javax.annotation.processing.Generated;
+
+import com.threerings.presents.data.ClientObject;
+import com.threerings.presents.server.InvocationDispatcher;
+import com.threerings.presents.server.InvocationException;
+
+import com.threerings.crowd.chat.data.ChannelSpeakMarshaller;
+import com.threerings.crowd.chat.data.ChatChannel;
+
+/**
+ * Dispatches requests to the {@link ChannelSpeakProvider}.
+ */
+@Generated(value={"com.threerings.presents.tools.GenServiceTask"},
+           comments="Derived from ChannelSpeakService.java.")
+public class ChannelSpeakDispatcher extends InvocationDispatcher<ChannelSpeakMarshaller>
+{
+    /**
+     * Creates a dispatcher that may be registered to dispatch invocation
+     * service requests for the specified provider.
+     */
+    public ChannelSpeakDispatcher (ChannelSpeakProvider provider)
+    {
+        this.provider = provider;
+    }
+
+    @Override
+    public ChannelSpeakMarshaller createMarshaller ()
+    {
+        return new ChannelSpeakMarshaller();
+    }
+
+    @Override
+    public void dispatchRequest (
+        ClientObject source, int methodId, Object[] args)
+        throws InvocationException
+    {
+        switch (methodId) {
+        case ChannelSpeakMarshaller.SPEAK:
+            ((ChannelSpeakProvider)provider).speak(
+                source, (ChatChannel)args[0], (String)args[1], ((Byte)args[2]).byteValue()
+            );
+            return;
+
+        default:
+            super.dispatchRequest(source, methodId, args);
+            return;
+        }
+    }
+}
@@ -16,6 +16,7 @@ import com.google.common.base.Predicate;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.common.primitives.Longs;
 import com.google.inject.Inject;
 
@@ -27,7 +28,6 @@ import com.threerings.util.Name;
 import com.threerings.presents.annotation.AnyThread;
 import com.threerings.presents.client.InvocationService;
 import com.threerings.presents.data.ClientObject;
-import com.threerings.presents.server.InvocationException;
 import com.threerings.presents.server.InvocationManager;
 import com.threerings.presents.server.PresentsDObjectMgr;
 
@@ -35,7 +35,7 @@ import com.threerings.presents.peer.data.ClientInfo;
 import com.threerings.presents.peer.data.NodeObject;
 import com.threerings.presents.peer.server.PeerManager;
 import com.threerings.presents.peer.server.PeerManager.NodeRequest;
-import com.threerings.presents.peer.server.NodeRequestsListener;
+import com.threerings.presents.peer.server.NodeResultsListener;
 
 import com.threerings.crowd.chat.data.ChannelSpeakMarshaller;
 import com.threerings.crowd.chat.data.ChatChannel;
@@ -112,12 +112,16 @@ public abstract class ChatChannelManager
     }
 
     /**
-     * Collects all chat messages heard by the given user on all peers.
+     * Collects all chat messages heard by the given user on all peers. Peers that do not reply
+     * within {@link #HISTORY_COLLECT_TIMEOUT} are reported as failed.
      */
     @AnyThread
     public void collectChatHistory (final Name user, final ResultListener<ChatHistoryResult> lner)
     {
-        _peerMan.invokeNodeRequest(new NodeRequest() {
+        final ChatHistoryResult chRes = new ChatHistoryResult();
+        chRes.failedNodes = Sets.newHashSet();
+        chRes.history = Lists.newArrayList();
+        _peerMan.streamNodeRequest(new NodeRequest() {
             public boolean isApplicable (NodeObject nodeobj) {
                 return true; // poll all nodes
             }
@@ -127,18 +131,18 @@ public abstract class ChatChannelManager
                     _chatHistory.get(user), IS_USER_MESSAGE)));
             }
             @Inject protected transient ChatHistory _chatHistory;
-        }, new NodeRequestsListener<List<ChatHistory.Entry>>() {
-            public void requestsProcessed (NodeRequestsResult<List<ChatHistory.Entry>> rRes) {
-                ChatHistoryResult chRes = new ChatHistoryResult();
-                chRes.failedNodes = rRes.getNodeErrors().keySet();
-                chRes.history = Lists.newArrayList(
-                    Iterables.concat(rRes.getNodeResults().values()));
+        }, HISTORY_COLLECT_TIMEOUT, new NodeResultsListener<List<ChatHistory.Entry>>() {
+            public void nodeProcessed (String nodeName, List<ChatHistory.Entry> history) {
+                chRes.history.addAll(history);
+            }
+            public void nodeFailed (String nodeName, String cause) {
+                chRes.failedNodes.add(nodeName);
+            }
+            public void requestsProcessed (Set<String> missedNodes) {
+                chRes.failedNodes.addAll(missedNodes);
                 Collections.sort(chRes.history, SORT_BY_TIMESTAMP);
                 lner.requestCompleted(chRes);
             }
-            public void requestFailed (String cause) {
-                lner.requestFailed(new InvocationException(cause));
-            }
         });
     }
 
@@ -439,4 +443,7 @@ public abstract class ChatChannelManager
 
     /** The amount of idle time (in milliseconds) after which we close a channel. */
     protected static final long IDLE_CHANNEL_CLOSE_TIME = 5 * 60 * 1000L;
+
+    /** The number of milliseconds for which we wait for peers to report a user's chat history. */
+    protected static final long HISTORY_COLLECT_TIMEOUT = 5 * 1000L;
 }
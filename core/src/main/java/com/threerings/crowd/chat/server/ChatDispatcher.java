@@ -0,0 +1,71 @@
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2025 Three Rings Design, Inc., All Rights Reserved
+// https://github.com/threerings/narya/blob/master/LICENSE
+
+package com.threerings.crowd.chat.server;
+
+import javax.annotation.processing.Generated;
+
+import com.threerings.util.Name;
+
+import com.threerings.presents.client.InvocationService;
+import com.threerings.presents.data.ClientObject;
+import com.threerings.presents.server.InvocationDispatcher;
+import com.threerings.presents.server.InvocationException;
+
+import com.threerings.crowd.chat.client.ChatService;
+import com.threerings.crowd.chat.data.ChatMarshaller;
+
+/**
+ * Dispatches requests to the {@link ChatProvider}.
+ */
+@Generated(value={"com.threerings.presents.tools.GenServiceTask"},
+           comments="Derived from ChatService.java.")
+public class ChatDispatcher extends InvocationDispatcher<ChatMarshaller>
+{
+    /**
+     * Creates a dispatcher that may be registered to dispatch invocation
+     * service requests for the specified provider.
+     */
+    public ChatDispatcher (ChatProvider provider)
+    {
+        this.provider = provider;
+    }
+
+    @Override
+    public ChatMarshaller createMarshaller ()
+    {
+        return new ChatMarshaller();
+    }
+
+    @Override
+    public void dispatchRequest (
+        ClientObject source, int methodId, Object[] args)
+        throws InvocationException
+    {
+        switch (methodId) {
+        case ChatMarshaller.AWAY:
+            ((ChatProvider)provider).away(
+                source, (String)args[0]
+            );
+            return;
+
+        case ChatMarshaller.BROADCAST:
+            ((ChatProvider)provider).broadcast(
+                source, (String)args[0], (InvocationService.InvocationListener)args[1]
+            );
+            return;
+
+        case ChatMarshaller.TELL:
+            ((ChatProvider)provider).tell(
+                source, (Name)args[0], (String)args[1], (ChatService.TellListener)args[2]
+            );
+            return;
+
+        default:
+            super.dispatchRequest(source, methodId, args);
+            return;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2025 Three Rings Design, Inc., All Rights Reserved
+// https://github.com/threerings/narya/blob/master/LICENSE
+
+package com.threerings.crowd.chat.server;
+
+import javax.annotation.processing.Generated;
+
+import com.threerings.presents.data.ClientObject;
+import com.threerings.presents.server.InvocationDispatcher;
+import com.threerings.presents.server.InvocationException;
+
+import com.threerings.crowd.chat.data.SpeakMarshaller;
+
+/**
+ * Dispatches requests to the {@link SpeakProvider}.
+ */
+@Generated(value={"com.threerings.presents.tools.GenServiceTask"},
+           comments="Derived from SpeakService.java.")
+public class SpeakDispatcher extends InvocationDispatcher<SpeakMarshaller>
+{
+    /**
+     * Creates a dispatcher that may be registered to dispatch invocation
+     * service requests for the specified provider.
+     */
+    public SpeakDispatcher (SpeakProvider provider)
+    {
+        this.provider = provider;
+    }
+
+    @Override
+    public SpeakMarshaller createMarshaller ()
+    {
+        return new SpeakMarshaller();
+    }
+
+    @Override
+    public void dispatchRequest (
+        ClientObject source, int methodId, Object[] args)
+        throws InvocationException
+    {
+        switch (methodId) {
+        case SpeakMarshaller.SPEAK:
+            ((SpeakProvider)provider).speak(
+                source, (String)args[0], ((Byte)args[1]).byteValue()
+            );
+            return;
+
+        default:
+            super.dispatchRequest(source, methodId, args);
+            return;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2025 Three Rings Design, Inc., All Rights Reserved
+// https://github.com/threerings/narya/blob/master/LICENSE
+
+package com.threerings.crowd.peer.server;
+
+import javax.annotation.processing.Generated;
+
+import com.threerings.util.Name;
+
+import com.threerings.presents.data.ClientObject;
+import com.threerings.presents.server.InvocationDispatcher;
+import com.threerings.presents.server.InvocationException;
+
+import com.threerings.crowd.chat.client.ChatService;
+import com.threerings.crowd.chat.data.UserMessage;
+import com.threerings.crowd.peer.data.CrowdPeerMarshaller;
+
+/**
+ * Dispatches requests to the {@link CrowdPeerProvider}.
+ */
+@Generated(value={"com.threerings.presents.tools.GenServiceTask"},
+           comments="Derived from CrowdPeerService.java.")
+public class CrowdPeerDispatcher extends InvocationDispatcher<CrowdPeerMarshaller>
+{
+    /**
+     * Creates a dispatcher that may be registered to dispatch invocation
+     * service requests for the specified provider.
+     */
+    public CrowdPeerDispatcher (CrowdPeerProvider provider)
+    {
+        this.provider = provider;
+    }
+
+    @Override
+    public CrowdPeerMarshaller createMarshaller ()
+    {
+        return new CrowdPeerMarshaller();
+    }
+
+    @Override
+    public void dispatchRequest (
+        ClientObject source, int methodId, Object[] args)
+        throws InvocationException
+    {
+        switch (methodId) {
+        case CrowdPeerMarshaller.DELIVER_BROADCAST:
+            ((CrowdPeerProvider)provider).deliverBroadcast(
+                source, (Name)args[0], ((Byte)args[1]).byteValue(), (String)args[2], (String)args[3]
+            );
+            return;
+
+        case CrowdPeerMarshaller.DELIVER_TELL:
+            ((CrowdPeerProvider)provider).deliverTell(
+                source, (UserMessage)args[0], (Name)args[1], (ChatService.TellListener)args[2]
+            );
+            return;
+
+        default:
+            super.dispatchRequest(source, methodId, args);
+            return;
+        }
+    }
+}
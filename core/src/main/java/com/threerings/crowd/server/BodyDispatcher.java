@@ -0,0 +1,55 @@
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2025 Three Rings Design, Inc., All Rights Reserved
+// https://github.com/threerings/narya/blob/master/LICENSE
+
+package com.threerings.crowd.server;
+
+import javax.annotation.processing.Generated;
+
+import com.threerings.presents.data.ClientObject;
+import com.threerings.presents.server.InvocationDispatcher;
+import com.threerings.presents.server.InvocationException;
+
+import com.threerings.crowd.data.BodyMarshaller;
+
+/**
+ * Dispatches requests to the {@link BodyProvider}.
+ */
+@Generated(value={"com.threerings.presents.tools.GenServiceTask"},
+           comments="Derived from BodyService.java.")
+public class BodyDispatcher extends InvocationDispatcher<BodyMarshaller>
+{
+    /**
+     * Creates a dispatcher that may be registered to dispatch invocation
+     * service requests for the specified provider.
+     */
+    public BodyDispatcher (BodyProvider provider)
+    {
+        this.provider = provider;
+    }
+
+    @Override
+    public BodyMarshaller createMarshaller ()
+    {
+        return new BodyMarshaller();
+    }
+
+    @Override
+    public void dispatchRequest (
+        ClientObject source, int methodId, Object[] args)
+        throws InvocationException
+    {
+        switch (methodId) {
+        case BodyMarshaller.SET_IDLE:
+            ((BodyProvider)provider).setIdle(
+                source, ((Boolean)args[0]).booleanValue()
+            );
+            return;
+
+        default:
+            super.dispatchRequest(source, methodId, args);
+            return;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2025 Three Rings Design, Inc., All Rights Reserved
+// https://github.com/threerings/narya/blob/master/LICENSE
+
+package com.threerings.crowd.server;
+
+import javax.annotation.processing.Generated;
+
+import com.threerings.presents.data.ClientObject;
+import com.threerings.presents.server.InvocationDispatcher;
+import com.threerings.presents.server.InvocationException;
+
+import com.threerings.crowd.client.LocationService;
+import com.threerings.crowd.data.LocationMarshaller;
+
+/**
+ * Dispatches requests to the {@link LocationProvider}.
+ */
+@Generated(value={"com.threerings.presents.tools.GenServiceTask"},
+           comments="Derived from LocationService.java.")
+public class LocationDispatcher extends InvocationDispatcher<LocationMarshaller>
+{
+    /**
+     * Creates a dispatcher that may be registered to dispatch invocation
+     * service requests for the specified provider.
+     */
+    public LocationDispatcher (LocationProvider provider)
+    {
+        this.provider = provider;
+    }
+
+    @Override
+    public LocationMarshaller createMarshaller ()
+    {
+        return new LocationMarshaller();
+    }
+
+    @Override
+    public void dispatchRequest (
+        ClientObject source, int methodId, Object[] args)
+        throws InvocationException
+    {
+        switch (methodId) {
+        case LocationMarshaller.LEAVE_PLACE:
+            ((LocationProvider)provider).leavePlace(
+                source
+            );
+            return;
+
+        case LocationMarshaller.MOVE_TO:
+            ((LocationProvider)provider).moveTo(
+                source, ((Integer)args[0]).intValue(), (LocationService.MoveListener)args[1]
+            );
+            return;
+
+        default:
+            super.dispatchRequest(source, methodId, args);
+            return;
+        }
+    }
+}
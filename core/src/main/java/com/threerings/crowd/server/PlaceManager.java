@@ -129,6 +129,20 @@ public class PlaceManager
         return _plobj;
     }
 
+    /**
+     * Returns the key used to assign our place object to a dispatch shard when the distributed
+     * object manager shards its event dispatch, or null (the default) to dispatch it on the main
+     * thread. See {@link RootDObjectManager#registerObject(DObject,Object)}. A sharded place
+     * object's events, and hence our listeners, are processed on its shard's thread, while the
+     * location services continue to call into the manager on the main thread, so a manager that
+     * returns a key must be prepared for that. Objects that belong with the place can be
+     * registered with the place object as their affinity key to keep them on the same shard.
+     */
+    public Object getShardAffinity ()
+    {
+        return null;
+    }
+
     /**
      * Applies the supplied occupant operation to each occupant currently present in this place.
      */
@@ -193,7 +193,7 @@ public class PlaceRegistry
 
         // and create and register the place object
         PlaceObject plobj = pmgr.createPlaceObject();
-        _omgr.registerObject(plobj);
+        _omgr.registerObject(plobj, pmgr.getShardAffinity());
 
         // stick the manager into our table
         _pmgrs.put(plobj.getOid(), pmgr);
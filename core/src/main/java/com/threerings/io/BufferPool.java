@@ -0,0 +1,319 @@
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2025 Three Rings Design, Inc., All Rights Reserved
+// https://github.com/threerings/narya/blob/master/LICENSE
+
+package com.threerings.io;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import static com.threerings.NaryaLog.log;
+
+/**
+ * Pools direct byte buffers in power of two size classes. Buffers are acquired on one thread
+ * (generally the thread that is serializing outgoing messages) and released on another (generally
+ * the thread that wrote them to the network), so each thread that acquires buffers has its own
+ * free lists which it can use without synchronization, and buffers released by other threads are
+ * returned to a shared free list from which the acquiring threads replenish themselves.
+ *
+ * <p> Requests larger than the largest size class are satisfied with unpooled heap buffers, which
+ * may be safely passed to {@link #release} (as may any other buffer not obtained from a pool,
+ * which will simply be ignored).
+ *
+ * <p> If the <code>com.threerings.io.debugBufferPool</code> system property is set, the pool
+ * tracks the buffers it has handed out and logs the stack trace of the acquisition of any buffer
+ * that is garbage collected without having been released, and warns about buffers that are
+ * released twice.
+ */
+public class BufferPool
+{
+    /**
+     * Creates a buffer pool with the default size classes.
+     */
+    public BufferPool ()
+    {
+        this(9, 16);
+    }
+
+    /**
+     * Creates a buffer pool with size classes from <code>2^minShift</code> to
+     * <code>2^maxShift</code> bytes.
+     */
+    public BufferPool (int minShift, int maxShift)
+    {
+        _minShift = minShift;
+        _maxShift = maxShift;
+        int classes = maxShift - minShift + 1;
+        _shared = new SharedList[classes];
+        for (int ii = 0; ii < classes; ii++) {
+            _shared[ii] = new SharedList();
+        }
+    }
+
+    /**
+     * Returns the capacity of the largest pooled buffers.
+     */
+    public int getMaxPooledSize ()
+    {
+        return 1 << _maxShift;
+    }
+
+    /**
+     * Returns a cleared buffer with at least the specified capacity.
+     */
+    public ByteBuffer acquire (int capacity)
+    {
+        int sclass = getSizeClass(capacity);
+        if (sclass < 0) {
+            return ByteBuffer.allocate(capacity);
+        }
+
+        // try our thread's free list, then the shared list, then allocate a new buffer
+        ArrayDeque<ByteBuffer> free = getLocalFreeList(sclass);
+        ByteBuffer buffer = free.pollLast();
+        if (buffer == null) {
+            buffer = _shared[sclass].poll();
+            if (buffer == null) {
+                buffer = ByteBuffer.allocateDirect(1 << (sclass + _minShift));
+                _allocated.incrementAndGet();
+            }
+        }
+        buffer.clear();
+
+        if (DEBUG) {
+            noteAcquired(buffer);
+        }
+        return buffer;
+    }
+
+    /**
+     * Returns the supplied buffer to the pool. The caller must not reference the buffer after
+     * releasing it. Buffers that did not come from a pool are ignored.
+     */
+    public void release (ByteBuffer buffer)
+    {
+        int sclass = getPooledClass(buffer);
+        if (sclass < 0) {
+            return;
+        }
+        if (DEBUG && !noteReleased(buffer)) {
+            return;
+        }
+
+        // if this thread acquires buffers, keep the buffer for it, otherwise share it
+        ArrayDeque<ByteBuffer>[] local = _local.get();
+        if (local != null) {
+            ArrayDeque<ByteBuffer> free = local[sclass];
+            if (free != null && free.size() < getMaxFree(sclass)) {
+                free.addLast(buffer);
+                return;
+            }
+        }
+        _shared[sclass].offer(buffer, getMaxFree(sclass));
+    }
+
+    /**
+     * Returns the number of direct buffers this pool has allocated.
+     */
+    public int getAllocatedCount ()
+    {
+        return _allocated.get();
+    }
+
+    /**
+     * Returns the size class to use for a buffer of the specified capacity, or -1 if that capacity
+     * is too large to be pooled.
+     */
+    protected int getSizeClass (int capacity)
+    {
+        int shift = Math.max(32 - Integer.numberOfLeadingZeros(Math.max(capacity, 1) - 1),
+                             _minShift);
+        return (shift > _maxShift) ? -1 : (shift - _minShift);
+    }
+
+    /**
+     * Returns the size class of the supplied buffer if it may have come from a pool, -1 otherwise.
+     */
+    protected int getPooledClass (ByteBuffer buffer)
+    {
+        int capacity = buffer.capacity();
+        if (!buffer.isDirect() || Integer.bitCount(capacity) != 1) {
+            return -1;
+        }
+        int shift = Integer.numberOfTrailingZeros(capacity);
+        return (shift < _minShift || shift > _maxShift) ? -1 : (shift - _minShift);
+    }
+
+    /**
+     * Returns the number of buffers of the specified class we'll retain in a free list.
+     */
+    protected int getMaxFree (int sclass)
+    {
+        return Math.max(MAX_FREE_BYTES >> (sclass + _minShift), 4);
+    }
+
+    /**
+     * Returns the calling thread's free list for the specified size class, creating it if needed.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    protected ArrayDeque<ByteBuffer> getLocalFreeList (int sclass)
+    {
+        ArrayDeque<ByteBuffer>[] local = _local.get();
+        if (local == null) {
+            _local.set(local = new ArrayDeque[_shared.length]);
+        }
+        ArrayDeque<ByteBuffer> free = local[sclass];
+        if (free == null) {
+            free = local[sclass] = new ArrayDeque<ByteBuffer>();
+        }
+        return free;
+    }
+
+    /**
+     * Starts tracking a newly acquired buffer and reports any buffers that have been garbage
+     * collected without being released.
+     */
+    protected void noteAcquired (ByteBuffer buffer)
+    {
+        LeakRef ref;
+        while ((ref = (LeakRef)_leaks.poll()) != null) {
+            if (removeRef(ref)) {
+                log.warning("Pooled buffer was never released", "size", ref.capacity, ref.trace);
+            }
+        }
+        ref = new LeakRef(buffer, _leaks);
+        synchronized (_tracked) {
+            List<LeakRef> refs = _tracked.get(ref.hash);
+            if (refs == null) {
+                _tracked.put(ref.hash, refs = Lists.newArrayListWithCapacity(1));
+            }
+            refs.add(ref);
+        }
+    }
+
+    /**
+     * Stops tracking a released buffer.
+     *
+     * @return false if the buffer was not outstanding, in which case it must not be pooled.
+     */
+    protected boolean noteReleased (ByteBuffer buffer)
+    {
+        int hash = System.identityHashCode(buffer);
+        synchronized (_tracked) {
+            List<LeakRef> refs = _tracked.get(hash);
+            if (refs != null) {
+                for (Iterator<LeakRef> iter = refs.iterator(); iter.hasNext(); ) {
+                    LeakRef ref = iter.next();
+                    if (ref.get() == buffer) {
+                        iter.remove();
+                        ref.clear();
+                        if (refs.isEmpty()) {
+                            _tracked.remove(hash);
+                        }
+                        return true;
+                    }
+                }
+            }
+        }
+        log.warning("Released buffer that was not outstanding", "size", buffer.capacity(),
+                    new Exception());
+        return false;
+    }
+
+    /**
+     * Removes the supplied reference from our tracking table.
+     *
+     * @return true if it was being tracked.
+     */
+    protected boolean removeRef (LeakRef ref)
+    {
+        synchronized (_tracked) {
+            List<LeakRef> refs = _tracked.get(ref.hash);
+            if (refs == null || !refs.remove(ref)) {
+                return false;
+            }
+            if (refs.isEmpty()) {
+                _tracked.remove(ref.hash);
+            }
+            return true;
+        }
+    }
+
+    /** Free buffers shared by all threads. */
+    protected static class SharedList
+    {
+        public ByteBuffer poll ()
+        {
+            ByteBuffer buffer = _buffers.poll();
+            if (buffer != null) {
+                _size.decrementAndGet();
+            }
+            return buffer;
+        }
+
+        public void offer (ByteBuffer buffer, int max)
+        {
+            // if we have plenty already, let the garbage collector have this one
+            if (_size.get() < max) {
+                _size.incrementAndGet();
+                _buffers.offer(buffer);
+            }
+        }
+
+        protected ConcurrentLinkedQueue<ByteBuffer> _buffers =
+            new ConcurrentLinkedQueue<ByteBuffer>();
+        protected AtomicInteger _size = new AtomicInteger();
+    }
+
+    /** Notes where an outstanding buffer was acquired. */
+    protected static class LeakRef extends WeakReference<ByteBuffer>
+    {
+        public final int hash;
+        public final int capacity;
+        public final Exception trace = new Exception();
+
+        public LeakRef (ByteBuffer buffer, ReferenceQueue<ByteBuffer> queue)
+        {
+            super(buffer, queue);
+            hash = System.identityHashCode(buffer);
+            capacity = buffer.capacity();
+        }
+    }
+
+    /** The shifts of our smallest and largest size classes. */
+    protected final int _minShift, _maxShift;
+
+    /** Free buffers released by threads that do not acquire buffers, by size class. */
+    protected final SharedList[] _shared;
+
+    /** The free lists of each thread that acquires buffers, by size class. */
+    protected final ThreadLocal<ArrayDeque<ByteBuffer>[]> _local =
+        new ThreadLocal<ArrayDeque<ByteBuffer>[]>();
+
+    /** The number of direct buffers we have allocated. */
+    protected final AtomicInteger _allocated = new AtomicInteger();
+
+    /** In debug mode, our outstanding buffers by identity hash code. */
+    protected final Map<Integer, List<LeakRef>> _tracked = Maps.newHashMap();
+
+    /** In debug mode, notified of outstanding buffers that have been collected. */
+    protected final ReferenceQueue<ByteBuffer> _leaks = new ReferenceQueue<ByteBuffer>();
+
+    /** The approximate number of bytes of free buffers of each size class we retain per list. */
+    protected static final int MAX_FREE_BYTES = 1024 * 1024;
+
+    /** Whether or not to track outstanding buffers. */
+    protected static final boolean DEBUG = Boolean.getBoolean("com.threerings.io.debugBufferPool");
+}
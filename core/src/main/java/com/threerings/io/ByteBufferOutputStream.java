@@ -20,7 +20,16 @@ public class ByteBufferOutputStream extends OutputStream
      */
     public ByteBufferOutputStream ()
     {
-        _buffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+        this(ByteBuffer.allocate(INITIAL_BUFFER_SIZE));
+    }
+
+    /**
+     * Creates a new byte buffer output stream that will start out writing into the supplied
+     * buffer.
+     */
+    protected ByteBufferOutputStream (ByteBuffer buffer)
+    {
+        _buffer = buffer;
     }
 
     /**
@@ -90,12 +99,29 @@ public class ByteBufferOutputStream extends OutputStream
         if (ncapacity > ocapacity) {
             // increase the buffer size in large increments
             ncapacity = Math.max(ocapacity << 1, ncapacity);
-            ByteBuffer newbuf = ByteBuffer.allocate(ncapacity);
+            ByteBuffer newbuf = allocateBuffer(ncapacity);
             newbuf.put(_buffer.flip());
+            releaseBuffer(_buffer);
             _buffer = newbuf;
         }
     }
 
+    /**
+     * Allocates a buffer with at least the specified capacity when we need to expand.
+     */
+    protected ByteBuffer allocateBuffer (int capacity)
+    {
+        return ByteBuffer.allocate(capacity);
+    }
+
+    /**
+     * Called when a buffer that we were using has been replaced by an expanded buffer.
+     */
+    protected void releaseBuffer (ByteBuffer buffer)
+    {
+        // nothing by default
+    }
+
     /** The buffer in which we store our frame data. */
     protected ByteBuffer _buffer;
 
@@ -0,0 +1,350 @@
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2025 Three Rings Design, Inc., All Rights Reserved
+// https://github.com/threerings/narya/blob/master/LICENSE
+
+package com.threerings.io;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+
+import java.util.List;
+import java.util.Map;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * The bare minimum needed to write the simple class files generated at runtime by {@link
+ * StreamerGenerator} and friends: a constant pool, methods whose code never stores locals and
+ * only branches with an empty stack, and the class file structure that binds them together.
+ */
+public abstract class ClassFileWriter
+{
+    /**
+     * Defines the supplied class file as a hidden class nested in the supplied target class,
+     * which gives it access to everything the target can access, and returns an instance of it
+     * created with its no-argument constructor.
+     */
+    protected static Object newHiddenInstance (Class<?> target, byte[] data)
+        throws Throwable
+    {
+        MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(
+            target, MethodHandles.lookup()).defineHiddenClass(
+                data, true, MethodHandles.Lookup.ClassOption.NESTMATE);
+        return lookup.findConstructor(
+            lookup.lookupClass(), MethodType.methodType(void.class)).invoke();
+    }
+
+    /**
+     * Returns the class file for a final class with the supplied name, superclass, interfaces and
+     * methods. The methods must be generated first so that the constant pool is fully populated.
+     */
+    protected byte[] toClassFile (String cname, String sname, String[] ifaces, byte[]... methods)
+        throws IOException
+    {
+        int thisClass = classRef(cname), superClass = classRef(sname);
+        int[] ifaceRefs = new int[ifaces.length];
+        for (int ii = 0; ii < ifaces.length; ii++) {
+            ifaceRefs[ii] = classRef(ifaces[ii]);
+        }
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bout);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0); // minor version
+        out.writeShort(CLASS_VERSION);
+        out.writeShort(_pool.size() + 1);
+        for (byte[] entry : _pool) {
+            out.write(entry);
+        }
+        out.writeShort(ACC_FINAL | ACC_SUPER);
+        out.writeShort(thisClass);
+        out.writeShort(superClass);
+        out.writeShort(ifaceRefs.length);
+        for (int ref : ifaceRefs) {
+            out.writeShort(ref);
+        }
+        out.writeShort(0); // field count
+        out.writeShort(methods.length);
+        for (byte[] method : methods) {
+            out.write(method);
+        }
+        out.writeShort(0); // attribute count
+        return bout.toByteArray();
+    }
+
+    /**
+     * Creates a public no-argument constructor that calls the supplied superclass's no-argument
+     * constructor.
+     */
+    protected byte[] createInit (String sname)
+        throws IOException
+    {
+        Code code = new Code();
+        code.op(ALOAD_0);
+        code.op(INVOKESPECIAL, methodRef(sname, "<init>", "()V"));
+        code.op(RETURN);
+        return method(ACC_PUBLIC, "<init>", "()V", code, 1, 1);
+    }
+
+    /**
+     * Creates a method_info structure with the supplied code.
+     */
+    protected byte[] method (int access, String name, String desc, Code code,
+                             int maxStack, int maxLocals)
+        throws IOException
+    {
+        byte[] bytecode = code.toByteArray();
+        if (bytecode.length > 0xFFFF) {
+            throw new IOException("Generated method too large: " + bytecode.length);
+        }
+        byte[] frames = code.frames.toByteArray();
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bout);
+        out.writeShort(access);
+        out.writeShort(utf8(name));
+        out.writeShort(utf8(desc));
+        out.writeShort(1); // attribute count
+        out.writeShort(utf8("Code"));
+        int frameAttrLength = (code.frameCount == 0) ? 0 : (8 + frames.length);
+        out.writeInt(12 + bytecode.length + frameAttrLength);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(bytecode.length);
+        out.write(bytecode);
+        out.writeShort(0); // exception table length
+        if (code.frameCount == 0) {
+            out.writeShort(0); // attribute count
+        } else {
+            out.writeShort(1); // attribute count
+            out.writeShort(utf8("StackMapTable"));
+            out.writeInt(2 + frames.length);
+            out.writeShort(code.frameCount);
+            out.write(frames);
+        }
+        return bout.toByteArray();
+    }
+
+    protected int fieldRef (Field field)
+    {
+        return memberRef(CONSTANT_Fieldref, internalName(field.getDeclaringClass()),
+                         field.getName(), descriptor(field.getType()));
+    }
+
+    protected int methodRef (String owner, String name, String desc)
+    {
+        return memberRef(CONSTANT_Methodref, owner, name, desc);
+    }
+
+    protected int memberRef (int tag, String owner, String name, String desc)
+    {
+        int ownerIdx = classRef(owner);
+        int ntIdx = constant(CONSTANT_NameAndType, utf8(name), utf8(desc));
+        return constant(tag, ownerIdx, ntIdx);
+    }
+
+    protected int classRef (String name)
+    {
+        return constant(CONSTANT_Class, utf8(name));
+    }
+
+    protected int utf8 (String value)
+    {
+        String key = "U" + value;
+        Integer idx = _poolIndices.get(key);
+        if (idx == null) {
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bout);
+            try {
+                out.writeByte(CONSTANT_Utf8);
+                out.writeUTF(value);
+            } catch (IOException ioe) {
+                throw new RuntimeException(ioe); // not possible
+            }
+            idx = addConstant(key, bout.toByteArray());
+        }
+        return idx;
+    }
+
+    protected int constant (int tag, int... refs)
+    {
+        byte[] entry = new byte[1 + refs.length*2];
+        entry[0] = (byte)tag;
+        for (int ii = 0; ii < refs.length; ii++) {
+            entry[1+ii*2] = (byte)(refs[ii] >> 8);
+            entry[2+ii*2] = (byte)refs[ii];
+        }
+        StringBuilder key = new StringBuilder().append(tag);
+        for (int ref : refs) {
+            key.append(':').append(ref);
+        }
+        Integer idx = _poolIndices.get(key.toString());
+        return (idx != null) ? idx : addConstant(key.toString(), entry);
+    }
+
+    protected int addConstant (String key, byte[] entry)
+    {
+        _pool.add(entry);
+        int idx = _pool.size();
+        _poolIndices.put(key, idx);
+        return idx;
+    }
+
+    protected static String internalName (Class<?> clazz)
+    {
+        return clazz.isArray() ? descriptor(clazz) : clazz.getName().replace('.', '/');
+    }
+
+    protected static String descriptor (Class<?> clazz)
+    {
+        if (clazz.isPrimitive()) {
+            return PRIM_DESCS.get(clazz);
+        } else if (clazz.isArray()) {
+            return clazz.getName().replace('.', '/');
+        } else {
+            return "L" + internalName(clazz) + ";";
+        }
+    }
+
+    /** Accumulates bytecode and stack map frames for a method. Our methods never store locals and
+     * only branch with an empty stack, so all frames are identical to the method's initial frame. */
+    protected static class Code
+    {
+        public final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        public final ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        public int frameCount;
+
+        public Code ()
+        {
+        }
+
+        public void op (int opcode)
+        {
+            bytes.write(opcode);
+        }
+
+        public void op (int opcode, int operand)
+        {
+            bytes.write(opcode);
+            if (opcode == ALOAD) {
+                bytes.write(operand);
+            } else {
+                bytes.write(operand >> 8);
+                bytes.write(operand);
+            }
+        }
+
+        /**
+         * Writes a <code>tableswitch</code> on the int atop the stack with cases from zero to
+         * <code>count-1</code>. Each case, and then the default, must subsequently be marked
+         * with {@link #switchTarget}, in order.
+         */
+        public void tableSwitch (int count)
+        {
+            _switchPos = bytes.size();
+            _switchCase = 0;
+            bytes.write(TABLESWITCH);
+            while (bytes.size() % 4 != 0) {
+                bytes.write(0);
+            }
+            _defaultPos = bytes.size();
+            writeInt(0); // default offset, patched later
+            writeInt(0);
+            writeInt(count-1);
+            for (int ii = 0; ii < count; ii++) {
+                writeInt(0); // case offset, patched later
+            }
+            _switchCount = count;
+        }
+
+        /**
+         * Notes that the code for the next case of our last <code>tableswitch</code> (or its
+         * default, after all of the cases) starts at the current location.
+         */
+        public void switchTarget ()
+        {
+            int pos = (_switchCase < _switchCount) ? (_defaultPos + 12 + 4*_switchCase) :
+                _defaultPos;
+            _patches.put(pos, bytes.size() - _switchPos);
+            _switchCase++;
+            frame();
+        }
+
+        /** Notes a branch target at the current location. */
+        public void frame ()
+        {
+            int offset = bytes.size();
+            int delta = (frameCount == 0) ? offset : (offset - _lastFrame - 1);
+            if (delta <= 63) {
+                frames.write(delta); // same_frame
+            } else {
+                frames.write(251); // same_frame_extended
+                frames.write(delta >> 8);
+                frames.write(delta);
+            }
+            frameCount++;
+            _lastFrame = offset;
+        }
+
+        /** Returns our bytecode, with any branch offsets patched in. */
+        public byte[] toByteArray ()
+        {
+            byte[] code = bytes.toByteArray();
+            for (Map.Entry<Integer, Integer> entry : _patches.entrySet()) {
+                int pos = entry.getKey(), value = entry.getValue();
+                code[pos] = (byte)(value >> 24);
+                code[pos+1] = (byte)(value >> 16);
+                code[pos+2] = (byte)(value >> 8);
+                code[pos+3] = (byte)value;
+            }
+            return code;
+        }
+
+        protected void writeInt (int value)
+        {
+            bytes.write(value >> 24);
+            bytes.write(value >> 16);
+            bytes.write(value >> 8);
+            bytes.write(value);
+        }
+
+        protected int _lastFrame;
+        protected int _switchPos, _defaultPos, _switchCase, _switchCount;
+        protected Map<Integer, Integer> _patches = Maps.newHashMap();
+    }
+
+    /** Our constant pool entries and a mapping from a canonical key to their pool index. */
+    protected final List<byte[]> _pool = Lists.newArrayList();
+    protected final Map<String, Integer> _poolIndices = Maps.newHashMap();
+
+    /** Maps primitive types to their type descriptor. */
+    protected static final Map<Class<?>, String> PRIM_DESCS = Maps.newHashMap();
+    static {
+        Class<?>[] types = { Boolean.TYPE, Byte.TYPE, Character.TYPE, Short.TYPE, Integer.TYPE,
+                             Long.TYPE, Float.TYPE, Double.TYPE };
+        String[] descs = { "Z", "B", "C", "S", "I", "J", "F", "D" };
+        for (int ii = 0; ii < types.length; ii++) {
+            PRIM_DESCS.put(types[ii], descs[ii]);
+        }
+    }
+
+    protected static final int CLASS_VERSION = 52; // Java 8
+    protected static final int ACC_PUBLIC = 0x0001, ACC_FINAL = 0x0010, ACC_SUPER = 0x0020;
+
+    protected static final int CONSTANT_Utf8 = 1, CONSTANT_Class = 7, CONSTANT_Fieldref = 9;
+    protected static final int CONSTANT_Methodref = 10, CONSTANT_NameAndType = 12;
+
+    protected static final int ALOAD = 0x19, ALOAD_0 = 0x2a, ALOAD_1 = 0x2b, ALOAD_2 = 0x2c;
+    protected static final int ALOAD_3 = 0x2d, AALOAD = 0x32, SIPUSH = 0x11, DUP = 0x59;
+    protected static final int ILOAD_2 = 0x1c, IFGT = 0x9d, TABLESWITCH = 0xaa, IRETURN = 0xac;
+    protected static final int ARETURN = 0xb0, RETURN = 0xb1, GETFIELD = 0xb4, PUTFIELD = 0xb5;
+    protected static final int INVOKEVIRTUAL = 0xb6, INVOKESPECIAL = 0xb7, INVOKESTATIC = 0xb8;
+    protected static final int NEW = 0xbb, ATHROW = 0xbf, CHECKCAST = 0xc0;
+}
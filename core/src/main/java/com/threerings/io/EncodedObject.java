@@ -0,0 +1,147 @@
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2025 Three Rings Design, Inc., All Rights Reserved
+// https://github.com/threerings/narya/blob/master/LICENSE
+
+package com.threerings.io;
+
+import java.util.List;
+import java.util.Map;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.primitives.Ints;
+
+/**
+ * An object that has been flattened once and can then be written to any number of {@link
+ * ObjectOutputStream}s without being reflectively serialized again. The stream specific parts of
+ * the encoding (class and intern mappings) are recorded as references and resolved against each
+ * target stream when the object is written, so the bytes produced for a given stream are exactly
+ * those that {@link ObjectOutputStream#writeObject} would have produced.
+ *
+ * <p> Instances are immutable once encoded and may be shared freely, but encoding and writing
+ * must happen on the same thread as the target streams are used.
+ */
+public class EncodedObject
+{
+    /**
+     * Flattens the supplied object (which may be null) into an encoded object.
+     */
+    public static EncodedObject encode (Object object)
+        throws IOException
+    {
+        RecordingStream rout = new RecordingStream();
+        rout.writeObject(object);
+        rout.flush();
+        return new EncodedObject(
+            rout.bytes.toByteArray(), Ints.toArray(rout.offsets), rout.refs.toArray());
+    }
+
+    /**
+     * Returns the number of stream independent bytes in this encoding.
+     */
+    public int getSize ()
+    {
+        return _data.length;
+    }
+
+    /**
+     * Writes this encoded object to the supplied stream, resolving class and intern mappings
+     * against that stream's mapping tables.
+     */
+    protected void writeTo (ObjectOutputStream out)
+        throws IOException
+    {
+        int pos = 0;
+        for (int ii = 0; ii < _offsets.length; ii++) {
+            int offset = _offsets[ii];
+            out.write(_data, pos, offset - pos);
+            pos = offset;
+            Object ref = _refs[ii];
+            if (ref instanceof Class<?>) {
+                out.writeClassMapping((Class<?>)ref);
+            } else {
+                out.writeIntern((String)ref);
+            }
+        }
+        out.write(_data, pos, _data.length - pos);
+    }
+
+    protected EncodedObject (byte[] data, int[] offsets, Object[] refs)
+    {
+        _data = data;
+        _offsets = offsets;
+        _refs = refs;
+    }
+
+    /**
+     * Writes objects normally, but notes the location of class and intern mappings rather than
+     * writing them to the stream.
+     */
+    protected static class RecordingStream extends ObjectOutputStream
+    {
+        public final ByteArrayOutputStream bytes;
+        public final List<Integer> offsets = Lists.newArrayList();
+        public final List<Object> refs = Lists.newArrayList();
+
+        public RecordingStream ()
+        {
+            this(new ByteArrayOutputStream());
+        }
+
+        @Override
+        public void writeIntern (String value)
+            throws IOException
+        {
+            // nulls have no mapping, so they can be written directly
+            if (value == null) {
+                writeShort(0);
+            } else {
+                noteRef(value.intern());
+            }
+        }
+
+        @Override
+        protected ClassMapping writeClassMapping (Class<?> sclass)
+            throws IOException
+        {
+            noteRef(sclass);
+            ClassMapping cmap = _cmaps.get(sclass);
+            if (cmap == null) {
+                // mirror the collection aliasing done by ObjectOutputStream so that we use the
+                // same streamer that a real stream would have used
+                Class<?> collClass = Streamer.getCollectionClass(sclass);
+                Class<?> mclass = (collClass == null) ? sclass : collClass;
+                cmap = new ClassMapping((short)0, mclass, Streamer.getStreamer(mclass));
+                _cmaps.put(sclass, cmap);
+            }
+            return cmap;
+        }
+
+        protected RecordingStream (ByteArrayOutputStream bytes)
+        {
+            super(bytes);
+            this.bytes = bytes;
+        }
+
+        protected void noteRef (Object ref)
+        {
+            offsets.add(bytes.size());
+            refs.add(ref);
+        }
+
+        protected Map<Class<?>, ClassMapping> _cmaps = Maps.newHashMap();
+    }
+
+    /** The stream independent bytes of the encoded object. */
+    protected final byte[] _data;
+
+    /** The offsets into {@link #_data} at which mappings must be written. */
+    protected final int[] _offsets;
+
+    /** The class or intern referenced at each offset. */
+    protected final Object[] _refs;
+}
@@ -17,6 +17,11 @@ import java.nio.ByteBuffer;
  * buffered because the framed output is written in a single call to
  * <code>write()</code>.
  *
+ * <p> A framing output stream may instead accumulate its output in
+ * buffers obtained from a {@link BufferPool}, in which case each frame
+ * can be detached with {@link #detachFrame} and handed off to be written
+ * (and then released to the pool) without being copied.
+ *
  * <p><em>Note:</em> The framing output stream does not synchronize writes
  * to its internal buffer. It is intended to only be accessed from a
  * single thread.
@@ -26,6 +31,18 @@ public class FramingOutputStream extends ByteBufferOutputStream
     public FramingOutputStream ()
     {
         _buffer.put(HEADER_PAD);
+        _pool = null;
+    }
+
+    /**
+     * Creates a framing output stream that accumulates its frames in
+     * buffers obtained from the supplied pool.
+     */
+    public FramingOutputStream (BufferPool pool)
+    {
+        super(pool.acquire(INITIAL_POOLED_SIZE));
+        _buffer.put(HEADER_PAD);
+        _pool = pool;
     }
 
     @Override
@@ -62,6 +79,26 @@ public class FramingOutputStream extends ByteBufferOutputStream
         return _buffer;
     }
 
+    /**
+     * Writes the frame length to the beginning of our buffer and returns
+     * it, after which the buffer belongs to the caller, who should
+     * release it to our pool once it has been written. We obtain a new
+     * buffer from our pool for the next frame, so there is no need to
+     * call {@link #resetFrame}.
+     */
+    public ByteBuffer detachFrame ()
+    {
+        if (_pool == null) {
+            throw new IllegalStateException("Only pooled frames may be detached.");
+        }
+        ByteBuffer frame = frameAndReturnBuffer();
+        // successive frames tend to be of similar size, so start with a
+        // buffer big enough to hold this one
+        _buffer = _pool.acquire(Math.max(frame.limit(), INITIAL_POOLED_SIZE));
+        _buffer.put(HEADER_PAD);
+        return frame;
+    }
+
     /**
      * Resets our internal buffer and prepares to write a new frame.
      */
@@ -71,7 +108,27 @@ public class FramingOutputStream extends ByteBufferOutputStream
         _buffer.put(HEADER_PAD);
     }
 
+    @Override
+    protected ByteBuffer allocateBuffer (int capacity)
+    {
+        return (_pool == null) ? super.allocateBuffer(capacity) : _pool.acquire(capacity);
+    }
+
+    @Override
+    protected void releaseBuffer (ByteBuffer buffer)
+    {
+        if (_pool != null) {
+            _pool.release(buffer);
+        }
+    }
+
+    /** The pool from which we obtain buffers, or null. */
+    protected final BufferPool _pool;
+
     /** We pad the beginning of our buffer so that we can write the frame
      * length when the time comes. */
     protected static final byte[] HEADER_PAD = new byte[4];
+
+    /** The size of the buffers with which we start pooled frames. */
+    protected static final int INITIAL_POOLED_SIZE = 512;
 }
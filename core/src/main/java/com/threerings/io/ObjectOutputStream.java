@@ -64,6 +64,36 @@ public class ObjectOutputStream extends DataOutputStream
         writeBareObject(object, cmap.streamer, true);
     }
 
+    /**
+     * Writes an object that was previously flattened via {@link EncodedObject#encode}. The data
+     * written is identical to that which would have been written by {@link #writeObject}, but the
+     * object need not be serialized again.
+     */
+    public void writeEncodedObject (EncodedObject encoded)
+        throws IOException
+    {
+        encoded.writeTo(this);
+    }
+
+    /**
+     * Returns the number of class and intern mappings this stream has established. Anything
+     * written between two calls that return the same count may be omitted from the stream without
+     * confusing its reader.
+     */
+    public int getMappingCount ()
+    {
+        return (_nextClassCode - 1) + (_nextInternCode - 1);
+    }
+
+    /**
+     * Directs subsequent output to the supplied stream. The class and intern mappings established
+     * so far are retained, so the new target must carry on where the old one left off.
+     */
+    public void setTarget (OutputStream target)
+    {
+        out = target;
+    }
+
     /**
      * Writes a pooled string value to the output stream.
      */
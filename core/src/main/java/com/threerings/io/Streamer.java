@@ -24,6 +24,7 @@ import java.io.IOException;
 import com.google.common.base.Defaults;
 import com.google.common.base.MoreObjects.ToStringHelper;
 import com.google.common.base.MoreObjects;
+import com.google.common.base.Objects;
 import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
@@ -304,22 +305,47 @@ public abstract class Streamer
     }
 
     /**
-     * A streamer that streams the fields of a class.
+     * A streamer that streams the fields of a class, and can stream the differences between two
+     * instances of the class.
      */
-    protected static class ClassStreamer extends Streamer
+    public static class ClassStreamer extends Streamer
     {
         /** Constructor. */
         protected ClassStreamer (Class<?> target)
+        {
+            this(target, true);
+        }
+
+        /**
+         * Creates a streamer for the specified class, which creates its marshallers now if eager,
+         * or leaves them to be created lazily by a subclass. The constructor calls only final
+         * methods, as this class is public and may be subclassed elsewhere.
+         */
+        protected ClassStreamer (Class<?> target, boolean eager)
         {
             _target = target;
             initConstructor();
-            _marshallers = createMarshallers();
+            if (eager) {
+                _marshallers = createMarshallers();
+            }
         }
 
         @Override
         public void writeObject (Object object, ObjectOutputStream out, boolean useWriter)
             throws IOException
         {
+            StreamerGenerator.FieldStreamer fstreamer = _fstreamer;
+            if (fstreamer != null && !ObjectInputStream.STREAM_DEBUG) {
+                try {
+                    fstreamer.writeFields(object, out, _marshallers, _fields);
+                } catch (Exception e) {
+                    String errmsg = "Failure writing streamable fields [class=" +
+                        _target.getName() + "]";
+                    throw (IOException) new IOException(errmsg).initCause(e);
+                }
+                return;
+            }
+
             int fcount = _fields.length;
             for (int ii = 0; ii < fcount; ii++) {
                 Field field = _fields[ii];
@@ -367,6 +393,25 @@ public abstract class Streamer
             throws IOException, ClassNotFoundException
         {
             int fcount = _fields.length;
+            StreamerGenerator.FieldStreamer fstreamer = _fstreamer;
+            if (fstreamer != null && !ObjectInputStream.STREAM_DEBUG) {
+                int read;
+                try {
+                    read = fstreamer.readFields(object, in, _marshallers, _fields);
+                } catch (Exception e) {
+                    String errmsg = "Failure reading streamable fields [class=" +
+                        _target.getName() + ", error=" + e + "]";
+                    throw (IOException) new IOException(errmsg).initCause(e);
+                }
+                // gracefully deal with objects that have had new fields added to their class
+                // definition
+                for (int ii = read; ii < fcount; ii++) {
+                    log.info("Streamed instance missing field (probably newly added)",
+                             "class", _target.getName(), "field", _fields[ii].getName());
+                }
+                return;
+            }
+
             for (int ii = 0; ii < fcount; ii++) {
                 Field field = _fields[ii];
                 FieldMarshaller fm = _marshallers[ii];
@@ -395,10 +440,134 @@ public abstract class Streamer
             }
         }
 
+        /**
+         * Returns true if this streamer can write deltas between instances of its class via
+         * {@link #writeDelta}. Only classes whose fields are streamed directly, rather than by
+         * custom <code>readObject</code> and <code>writeObject</code> methods, support deltas.
+         */
+        public boolean supportsDeltas ()
+        {
+            return true;
+        }
+
+        /**
+         * Writes a mask identifying the fields of the supplied object whose values differ from
+         * those of the supplied base object, followed by the values of those fields. Field values
+         * are compared with {@link Object#equals}. This may only be called if {@link
+         * #supportsDeltas}.
+         *
+         * @param base the instance against which to compare, which must be of our class.
+         * @param object the instance whose changed fields are to be written.
+         * @param out the stream to which to write the delta.
+         */
+        public void writeDelta (Object base, Object object, ObjectOutputStream out)
+            throws IOException
+        {
+            int fcount = _fields.length;
+            ArrayMask mask = new ArrayMask(fcount);
+            try {
+                for (int ii = 0; ii < fcount; ii++) {
+                    if (!Objects.equal(_fields[ii].get(base), _fields[ii].get(object))) {
+                        mask.set(ii);
+                    }
+                }
+            } catch (IllegalAccessException iae) {
+                String errmsg = "Failure writing streamable delta [class=" +
+                    _target.getName() + "]";
+                throw (IOException) new IOException(errmsg).initCause(iae);
+            }
+            writeMasked(object, mask, out);
+        }
+
+        /**
+         * Writes a mask identifying the fields of the supplied object that are accepted by the
+         * supplied filter, followed by the values of those fields, in the format read by {@link
+         * #readDelta}. This may only be called if {@link #supportsDeltas}.
+         */
+        public void writeFields (
+            Object object, Predicate<? super Field> filter, ObjectOutputStream out)
+            throws IOException
+        {
+            int fcount = _fields.length;
+            ArrayMask mask = new ArrayMask(fcount);
+            for (int ii = 0; ii < fcount; ii++) {
+                if (filter.apply(_fields[ii])) {
+                    mask.set(ii);
+                }
+            }
+            writeMasked(object, mask, out);
+        }
+
+        /**
+         * Reads a delta written by {@link #writeDelta} into the supplied object, which will
+         * generally have been created via {@link #createObject}. The fields not included in the
+         * delta must then be filled in via {@link #completeDelta} before the object is used.
+         *
+         * @return the mask identifying the fields that were read.
+         */
+        public ArrayMask readDelta (Object object, ObjectInputStream in)
+            throws IOException, ClassNotFoundException
+        {
+            ArrayMask mask = new ArrayMask();
+            mask.readFrom(in);
+            try {
+                for (int ii = 0, fcount = _fields.length; ii < fcount; ii++) {
+                    if (mask.isSet(ii)) {
+                        _marshallers[ii].readField(_fields[ii], object, in);
+                    }
+                }
+            } catch (Exception e) {
+                String errmsg = "Failure reading streamable delta [class=" +
+                    _target.getName() + ", error=" + e + "]";
+                throw (IOException) new IOException(errmsg).initCause(e);
+            }
+            return mask;
+        }
+
+        /**
+         * Copies into the supplied object the values of those fields of the supplied base object
+         * that were not included in the delta read via {@link #readDelta}.
+         *
+         * @param mask the mask returned by {@link #readDelta}.
+         */
+        public void completeDelta (Object base, Object object, ArrayMask mask)
+        {
+            try {
+                for (int ii = 0, fcount = _fields.length; ii < fcount; ii++) {
+                    if (!mask.isSet(ii)) {
+                        _fields[ii].set(object, _fields[ii].get(base));
+                    }
+                }
+            } catch (IllegalAccessException iae) {
+                throw new RuntimeException(
+                    "Failure completing streamable delta [class=" + _target.getName() + "]", iae);
+            }
+        }
+
+        /**
+         * Writes the supplied mask followed by the values of the fields that it identifies.
+         */
+        protected void writeMasked (Object object, ArrayMask mask, ObjectOutputStream out)
+            throws IOException
+        {
+            mask.writeTo(out);
+            try {
+                for (int ii = 0, fcount = _fields.length; ii < fcount; ii++) {
+                    if (mask.isSet(ii)) {
+                        _marshallers[ii].writeField(_fields[ii], object, out);
+                    }
+                }
+            } catch (Exception e) {
+                String errmsg = "Failure writing streamable delta [class=" +
+                    _target.getName() + "]";
+                throw (IOException) new IOException(errmsg).initCause(e);
+            }
+        }
+
         /**
          * Locates the appropriate constructor for creating instances.
          */
-        protected void initConstructor ()
+        protected final void initConstructor ()
         {
             // if we have a zero argument constructor, we have to use that one
             Constructor<?>[] ctors = _target.getDeclaredConstructors();
@@ -435,7 +604,7 @@ public abstract class Streamer
         /**
          * Creates and returns the reading and writing marshallers.
          */
-        protected FieldMarshaller[] createMarshallers ()
+        protected final FieldMarshaller[] createMarshallers ()
         {
             // reflect on all the object's fields
             List<Field> fields = Lists.newArrayList();
@@ -471,6 +640,10 @@ public abstract class Streamer
                              _fields[ii].getName() + ".");
                 }
             }
+
+            // generate a direct field streamer if so configured (this must happen before we
+            // return and the marshallers are published)
+            _fstreamer = StreamerGenerator.generate(_target, _fields, marshallers);
             return marshallers;
         }
 
@@ -496,6 +669,9 @@ public abstract class Streamer
 
         /** Field marshallers for each field that will be read or written in our objects. */
         protected FieldMarshaller[] _marshallers;
+
+        /** Generated code for reading and writing our fields, or null if we use reflection. */
+        protected volatile StreamerGenerator.FieldStreamer _fstreamer;
     } // end: static class ClassStreamer
 
     /**
@@ -506,7 +682,10 @@ public abstract class Streamer
         /** Constructor. */
         protected CustomClassStreamer (Class<?> target, Method reader, Method writer)
         {
-            super(target);
+            // we will lazy-initialize the marshallers only if needed (it's possible there is only
+            // a writer method, but the object is never read from clients, so don't get cute and
+            // set up the marshallers at construct time if one of the methods is null)
+            super(target, false);
             _reader = reader;
             _writer = writer;
         }
@@ -541,7 +720,7 @@ public abstract class Streamer
             if (_marshallers == null) {
                 // this can race with other threads, but the worst that can happen is that the work
                 // done in createMarshallers() is duplicated
-                _marshallers = super.createMarshallers();
+                _marshallers = createMarshallers();
             }
             super.writeObject(object, out, useWriter);
         }
@@ -581,19 +760,16 @@ public abstract class Streamer
             if (_marshallers == null) {
                 // this can race with other threads, but the worst that can happen is that the work
                 // done in createMarshallers() is duplicated
-                _marshallers = super.createMarshallers();
+                _marshallers = createMarshallers();
             }
             super.readObject(object, in, useReader);
         }
 
         @Override
-        protected FieldMarshaller[] createMarshallers ()
+        public boolean supportsDeltas ()
         {
-            // we will lazy-initialize the marshallers only if needed, so we don't call super
-            // (It's possible there is only a writer method, but the object is never read from
-            // clients, so don't get cute and set up the marshallers at construct time if one of
-            // the methods is null).
-            return null;
+            // our fields are not necessarily what our custom methods stream
+            return false;
         }
 
         @Override
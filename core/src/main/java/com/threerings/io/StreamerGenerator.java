@@ -0,0 +1,368 @@
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2025 Three Rings Design, Inc., All Rights Reserved
+// https://github.com/threerings/narya/blob/master/LICENSE
+
+package com.threerings.io;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+import java.util.Date;
+import java.util.Map;
+
+import java.io.IOException;
+
+import com.google.common.collect.Maps;
+
+import static com.threerings.NaryaLog.log;
+
+/**
+ * Generates, at runtime, a hidden class for a {@link Streamable} type that reads and writes its
+ * fields with straight-line bytecode (direct <code>getfield</code> and <code>putfield</code>
+ * instructions) rather than via {@link Field#get} and {@link Field#set}. This is enabled by
+ * setting the <code>com.threerings.io.generateStreamers</code> system property. When disabled,
+ * when running under a security manager, or when generation fails for some reason, the regular
+ * reflective {@link FieldMarshaller}s are used.
+ *
+ * <p> Fields that cannot be accessed directly from the target class (private or cross-package
+ * protected fields declared in a superclass, final fields, fields whose type is not accessible,
+ * or fields with a custom marshaller) are delegated to their reflective marshaller by the
+ * generated code.
+ */
+public class StreamerGenerator extends ClassFileWriter
+{
+    /**
+     * Implemented by generated classes to read and write the fields of a particular class.
+     */
+    public interface FieldStreamer
+    {
+        /**
+         * Writes the streamable fields of the supplied object to the supplied stream.
+         */
+        void writeFields (Object object, ObjectOutputStream out,
+                          FieldMarshaller[] marshallers, Field[] fields)
+            throws Exception;
+
+        /**
+         * Reads the streamable fields of the supplied object from the supplied stream.
+         *
+         * @return the number of fields read, which will be less than the number of fields if the
+         * stream ran out of data (because the sender's version of the class predates the addition
+         * of some fields).
+         */
+        int readFields (Object object, ObjectInputStream in,
+                        FieldMarshaller[] marshallers, Field[] fields)
+            throws Exception;
+    }
+
+    /**
+     * Returns true if streamer generation is enabled and supported in this environment.
+     */
+    @SuppressWarnings("removal")
+    public static boolean isEnabled ()
+    {
+        return ENABLED && !FieldMarshaller.useFieldAccessors() &&
+            System.getSecurityManager() == null;
+    }
+
+    /**
+     * Generates a field streamer for the supplied class and fields or returns null if generation
+     * is not enabled or fails.
+     */
+    public static FieldStreamer generate (
+        Class<?> target, Field[] fields, FieldMarshaller[] marshallers)
+    {
+        if (!isEnabled()) {
+            return null;
+        }
+        try {
+            return create(target, fields, marshallers);
+        } catch (Throwable t) {
+            log.warning("Unable to generate streamer, using reflection", "class", target.getName(),
+                        "error", t);
+            return null;
+        }
+    }
+
+    /**
+     * Generates, defines and instantiates a field streamer for the supplied class and fields.
+     */
+    protected static FieldStreamer create (
+        Class<?> target, Field[] fields, FieldMarshaller[] marshallers)
+        throws Throwable
+    {
+        byte[] data = new StreamerGenerator(target, fields, marshallers).toByteArray();
+        return (FieldStreamer)newHiddenInstance(target, data);
+    }
+
+    /**
+     * Called by generated code to write a field using a {@link FieldMarshaller.StreamerMarshaller}.
+     */
+    public static void writeStreamed (FieldMarshaller fm, Object value, ObjectOutputStream out)
+        throws IOException
+    {
+        if (value == null) {
+            out.writeBoolean(false);
+        } else {
+            out.writeBoolean(true);
+            ((FieldMarshaller.StreamerMarshaller)fm)._streamer.writeObject(value, out, true);
+        }
+    }
+
+    /**
+     * Called by generated code to read a field using a {@link FieldMarshaller.StreamerMarshaller}.
+     */
+    public static Object readStreamed (FieldMarshaller fm, ObjectInputStream in)
+        throws IOException, ClassNotFoundException
+    {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        Streamer streamer = ((FieldMarshaller.StreamerMarshaller)fm)._streamer;
+        Object value = streamer.createObject(in);
+        streamer.readObject(value, in, true);
+        return value;
+    }
+
+    protected StreamerGenerator (Class<?> target, Field[] fields, FieldMarshaller[] marshallers)
+    {
+        _target = target;
+        _fields = fields;
+        _marshallers = marshallers;
+    }
+
+    /**
+     * Generates and returns the class file for our target.
+     */
+    protected byte[] toByteArray ()
+        throws IOException
+    {
+        String tname = internalName(_target);
+        String cname = tname + "$$Streamer";
+
+        // generate our methods first so that the constant pool is fully populated
+        byte[] init = createInit("java/lang/Object");
+        byte[] write = createWrite();
+        byte[] read = createRead();
+        return toClassFile(cname, "java/lang/Object",
+                           new String[] { internalName(FieldStreamer.class) }, init, write, read);
+    }
+
+    protected byte[] createWrite ()
+        throws IOException
+    {
+        String oout = internalName(ObjectOutputStream.class);
+        Code code = new Code();
+        for (int ii = 0; ii < _fields.length; ii++) {
+            Field field = _fields[ii];
+            Class<?> ftype = field.getType();
+            FieldMarshaller fm = _marshallers[ii];
+            if (!isDirect(ii)) {
+                pushFallbackArgs(code, ii);
+                code.op(INVOKEVIRTUAL, methodRef(internalName(FieldMarshaller.class),
+                    "writeField", "(Ljava/lang/reflect/Field;Ljava/lang/Object;L" + oout + ";)V"));
+
+            } else if (ftype.isPrimitive()) {
+                code.op(ALOAD_2);
+                getField(code, field);
+                code.op(INVOKEVIRTUAL, methodRef(oout, "write" + PRIM_NAMES.get(ftype),
+                    "(" + WIDE_DESCS.get(ftype) + ")V"));
+
+            } else if (fm == FieldMarshaller._internMarshaller) {
+                code.op(ALOAD_2);
+                getField(code, field);
+                code.op(INVOKEVIRTUAL, methodRef(oout, "writeIntern", "(Ljava/lang/String;)V"));
+
+            } else if (fm == FieldMarshaller._marshallers.get(Date.class)) {
+                code.op(ALOAD_2);
+                getField(code, field);
+                code.op(INVOKEVIRTUAL, methodRef("java/util/Date", "getTime", "()J"));
+                code.op(INVOKEVIRTUAL, methodRef(oout, "writeLong", "(J)V"));
+
+            } else if (fm instanceof FieldMarshaller.StreamerMarshaller) {
+                pushMarshaller(code, ii);
+                getField(code, field);
+                code.op(ALOAD_2);
+                code.op(INVOKESTATIC, methodRef(internalName(StreamerGenerator.class),
+                    "writeStreamed", "(L" + internalName(FieldMarshaller.class) +
+                    ";Ljava/lang/Object;L" + oout + ";)V"));
+
+            } else { // the generic marshaller
+                code.op(ALOAD_2);
+                getField(code, field);
+                code.op(INVOKEVIRTUAL, methodRef(oout, "writeObject", "(Ljava/lang/Object;)V"));
+            }
+        }
+        code.op(RETURN);
+        return method(ACC_PUBLIC, "writeFields", "(Ljava/lang/Object;L" + oout + ";" +
+                      MARSH_ARGS_DESC + ")V", code, MAX_STACK, MAX_LOCALS);
+    }
+
+    protected byte[] createRead ()
+        throws IOException
+    {
+        String oin = internalName(ObjectInputStream.class);
+        Code code = new Code();
+        for (int ii = 0; ii < _fields.length; ii++) {
+            Field field = _fields[ii];
+            Class<?> ftype = field.getType();
+            FieldMarshaller fm = _marshallers[ii];
+
+            // if the stream is out of data, return the number of fields read thus far
+            code.op(ALOAD_2);
+            code.op(INVOKEVIRTUAL, methodRef(oin, "available", "()I"));
+            code.op(IFGT, 7); // skips the next two instructions
+            code.op(SIPUSH, ii);
+            code.op(IRETURN);
+            code.frame();
+
+            if (!isDirect(ii)) {
+                pushFallbackArgs(code, ii);
+                code.op(INVOKEVIRTUAL, methodRef(internalName(FieldMarshaller.class),
+                    "readField", "(Ljava/lang/reflect/Field;Ljava/lang/Object;L" + oin + ";)V"));
+                continue;
+            }
+
+            code.op(ALOAD_1);
+            code.op(CHECKCAST, classRef(internalName(_target)));
+            if (ftype.isPrimitive()) {
+                code.op(ALOAD_2);
+                code.op(INVOKEVIRTUAL, methodRef(oin, "read" + PRIM_NAMES.get(ftype),
+                    "()" + descriptor(ftype)));
+
+            } else if (fm == FieldMarshaller._internMarshaller) {
+                code.op(ALOAD_2);
+                code.op(INVOKEVIRTUAL, methodRef(oin, "readIntern", "()Ljava/lang/String;"));
+
+            } else if (fm == FieldMarshaller._marshallers.get(Date.class)) {
+                code.op(NEW, classRef("java/util/Date"));
+                code.op(DUP);
+                code.op(ALOAD_2);
+                code.op(INVOKEVIRTUAL, methodRef(oin, "readLong", "()J"));
+                code.op(INVOKESPECIAL, methodRef("java/util/Date", "<init>", "(J)V"));
+
+            } else if (fm instanceof FieldMarshaller.StreamerMarshaller) {
+                pushMarshaller(code, ii);
+                code.op(ALOAD_2);
+                code.op(INVOKESTATIC, methodRef(internalName(StreamerGenerator.class),
+                    "readStreamed", "(L" + internalName(FieldMarshaller.class) + ";L" + oin +
+                    ";)Ljava/lang/Object;"));
+                code.op(CHECKCAST, classRef(internalName(ftype)));
+
+            } else { // the generic marshaller
+                code.op(ALOAD_2);
+                code.op(INVOKEVIRTUAL, methodRef(oin, "readObject", "()Ljava/lang/Object;"));
+                code.op(CHECKCAST, classRef(internalName(ftype)));
+            }
+            code.op(PUTFIELD, fieldRef(field));
+        }
+        code.op(SIPUSH, _fields.length);
+        code.op(IRETURN);
+        return method(ACC_PUBLIC, "readFields", "(Ljava/lang/Object;L" + oin + ";" +
+                      MARSH_ARGS_DESC + ")I", code, MAX_STACK, MAX_LOCALS);
+    }
+
+    /**
+     * Returns true if the supplied field can be read and written directly by generated code, false
+     * if we must delegate to its reflective marshaller.
+     */
+    protected boolean isDirect (int index)
+    {
+        Field field = _fields[index];
+        int mods = field.getModifiers();
+        Class<?> dclass = field.getDeclaringClass();
+        if (Modifier.isFinal(mods) ||
+                _marshallers[index] instanceof FieldMarshaller.MethodFieldMarshaller ||
+                !isAccessible(dclass) || !isAccessible(field.getType())) {
+            return false;
+        }
+        // we're a nestmate of our target, so we can access all of its fields, and we're in its
+        // package, so we can access package and protected fields from other classes therein
+        return (dclass == _target) || Modifier.isPublic(mods) ||
+            (!Modifier.isPrivate(mods) && isSamePackage(dclass));
+    }
+
+    /**
+     * Returns true if the supplied class is accessible from our target's package.
+     */
+    protected boolean isAccessible (Class<?> clazz)
+    {
+        while (clazz.isArray()) {
+            clazz = clazz.getComponentType();
+        }
+        return clazz.isPrimitive() || Modifier.isPublic(clazz.getModifiers()) ||
+            isSamePackage(clazz);
+    }
+
+    protected boolean isSamePackage (Class<?> clazz)
+    {
+        return clazz.getClassLoader() == _target.getClassLoader() &&
+            clazz.getPackageName().equals(_target.getPackageName());
+    }
+
+    /**
+     * Pushes the target object, cast to our target class, and then the value of the supplied
+     * field.
+     */
+    protected void getField (Code code, Field field)
+    {
+        code.op(ALOAD_1);
+        code.op(CHECKCAST, classRef(internalName(_target)));
+        code.op(GETFIELD, fieldRef(field));
+    }
+
+    /**
+     * Pushes the marshaller for the field at the specified index.
+     */
+    protected void pushMarshaller (Code code, int index)
+    {
+        code.op(ALOAD_3);
+        code.op(SIPUSH, index);
+        code.op(AALOAD);
+    }
+
+    /**
+     * Pushes the arguments needed to read or write a field via its reflective marshaller.
+     */
+    protected void pushFallbackArgs (Code code, int index)
+    {
+        pushMarshaller(code, index);
+        code.op(ALOAD, 4);
+        code.op(SIPUSH, index);
+        code.op(AALOAD);
+        code.op(ALOAD_1);
+        code.op(ALOAD_2);
+    }
+
+    protected final Class<?> _target;
+    protected final Field[] _fields;
+    protected final FieldMarshaller[] _marshallers;
+
+    /** Whether or not streamer generation is enabled. */
+    protected static final boolean ENABLED =
+        Boolean.getBoolean("com.threerings.io.generateStreamers");
+
+    /** Maps primitive types to the name used in the DataInput/DataOutput methods. */
+    protected static final Map<Class<?>, String> PRIM_NAMES = Maps.newHashMap();
+
+    /** Maps primitive types to the descriptor of their DataOutput write method argument. */
+    protected static final Map<Class<?>, String> WIDE_DESCS = Maps.newHashMap();
+    static {
+        Class<?>[] types = { Boolean.TYPE, Byte.TYPE, Character.TYPE, Short.TYPE, Integer.TYPE,
+                             Long.TYPE, Float.TYPE, Double.TYPE };
+        String[] names = { "Boolean", "Byte", "Char", "Short", "Int", "Long", "Float", "Double" };
+        String[] wides = { "Z", "I", "I", "I", "I", "J", "F", "D" };
+        for (int ii = 0; ii < types.length; ii++) {
+            PRIM_NAMES.put(types[ii], names[ii]);
+            WIDE_DESCS.put(types[ii], wides[ii]);
+        }
+    }
+
+    /** The descriptor of the marshaller and field arrays passed to our generated methods. */
+    protected static final String MARSH_ARGS_DESC =
+        "[L" + internalName(FieldMarshaller.class) + ";[Ljava/lang/reflect/Field;";
+
+    /** Our generated code never needs more than this much stack or more than these locals. */
+    protected static final int MAX_STACK = 6, MAX_LOCALS = 5;
+}
@@ -17,7 +17,6 @@ import com.google.inject.Inject;
 import com.google.inject.Singleton;
 
 import com.samskivert.util.Lifecycle;
-import com.samskivert.util.Tuple;
 
 import com.threerings.nio.conman.Connection;
 import com.threerings.nio.conman.ConnectionManager;
@@ -126,7 +125,7 @@ public class PolicyServer extends ConnectionManager
 
     protected void sendPolicy (Connection conn)
     {
-        _outq.append(Tuple.newTuple(conn, _policy));
+        queueMessage(conn, _policy);
         postAsyncClose(conn);
     }
 
@@ -52,6 +52,42 @@ public class ConMgrStats
     /** The number of messages written since the server started up. */
     public long msgsOut;
 
+    /** The number of socket writes since the server started up. Each write may deliver several
+     * messages to a connection, see {@link #msgsOut}. */
+    public long writes;
+
+    /** The number of times a connection's outgoing queue has exceeded the high watermark since
+     * the server started up. */
+    public int highWaterHits;
+
+    /** The number of queued messages dropped because they were superseded by a later message
+     * since the server started up. */
+    public long msgsSuperseded;
+
+    /**
+     * Adds the counts and snapshot values in the supplied stats to our own. Used to aggregate the
+     * stats of multiple network reactors.
+     */
+    public void add (ConMgrStats other)
+    {
+        connectionCount += other.connectionCount;
+        handlerCount += other.handlerCount;
+        deathQueueSize += other.deathQueueSize;
+        outQueueSize += other.outQueueSize;
+        overQueueSize += other.overQueueSize;
+        eventCount += other.eventCount;
+        connects += other.connects;
+        disconnects += other.disconnects;
+        closes += other.closes;
+        bytesIn += other.bytesIn;
+        bytesOut += other.bytesOut;
+        msgsIn += other.msgsIn;
+        msgsOut += other.msgsOut;
+        writes += other.writes;
+        highWaterHits += other.highWaterHits;
+        msgsSuperseded += other.msgsSuperseded;
+    }
+
     @Override
     public String toString ()
     {
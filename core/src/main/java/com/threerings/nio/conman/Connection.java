@@ -7,6 +7,8 @@ package com.threerings.nio.conman;
 
 import static com.threerings.NaryaLog.log;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 import java.io.IOException;
 import java.net.InetAddress;
 import java.nio.channels.SelectionKey;
@@ -55,11 +57,19 @@ public abstract class Connection implements NetEventHandler
 
     /**
      * Returns the address associated with this connection or null if it has no underlying socket
-     * channel.
+     * channel. Connections made via Unix domain sockets report the loopback address.
      */
     public InetAddress getInetAddress ()
     {
-        return (_channel == null) ? null : _channel.socket().getInetAddress();
+        if (_channel == null) {
+            return null;
+        }
+        try {
+            return _channel.socket().getInetAddress();
+        } catch (UnsupportedOperationException uoe) {
+            // we're connected via a Unix domain socket, so our peer is on this host
+            return InetAddress.getLoopbackAddress();
+        }
     }
 
     /**
@@ -70,6 +80,24 @@ public abstract class Connection implements NetEventHandler
         return (_channel == null);
     }
 
+    /**
+     * Returns the number of bytes queued for delivery to this connection that have not yet been
+     * written to the network, counting the full capacity of the buffers holding them.
+     */
+    public long getQueuedBytes ()
+    {
+        return _queuedBytes.get();
+    }
+
+    /**
+     * Returns true if the data queued for delivery to this connection has exceeded the connection
+     * manager's high watermark and has not yet drained below its low watermark.
+     */
+    public boolean isCongested ()
+    {
+        return _congested;
+    }
+
     /**
      * Closes this connection and unregisters it from the connection manager. This should only be
      * called from the conmgr thread.
@@ -176,8 +204,18 @@ public abstract class Connection implements NetEventHandler
     protected ConnectionManager _cmgr;
     protected SocketChannel _channel;
 
+    /** The reactor that performs our network I/O once we are established, or null if we are
+     * handled by the connection manager's primary reactor. */
+    protected volatile ConnectionManager.Reactor _reactor;
+
     protected long _lastEvent;
 
+    /** The number of bytes queued for delivery to this connection but not yet written. */
+    protected final AtomicLong _queuedBytes = new AtomicLong();
+
+    /** Whether our queued bytes have crossed the high watermark, see {@link #isCongested}. */
+    protected volatile boolean _congested;
+
     protected int _connectionId;
 
     /** The last connection id assigned. */
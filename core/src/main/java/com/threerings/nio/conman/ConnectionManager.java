@@ -6,7 +6,10 @@
 package com.threerings.nio.conman;
 
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -16,6 +19,7 @@ import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
@@ -25,8 +29,8 @@ import com.samskivert.util.IntMaps;
 import com.samskivert.util.Lifecycle;
 import com.samskivert.util.LoopingThread;
 import com.samskivert.util.Queue;
-import com.samskivert.util.Tuple;
 
+import com.threerings.io.BufferPool;
 import com.threerings.nio.SelectorIterable;
 
 import static com.threerings.NaryaLog.log;
@@ -38,7 +42,19 @@ import static com.threerings.NaryaLog.log;
  *
  * ConnectionManager doesn't directly accept TCP connections; it expects
  * {@link ServerSocketChannelAcceptor} or an external entity to do so and call its
- * {@link #handleAcceptedSocket} method
+ * {@link #handleAcceptedSocket} method.<p>
+ *
+ * Network I/O is performed by one or more {@link Reactor}s, each with its own selector and
+ * outgoing queues. The primary reactor is run by the connection manager thread, which also
+ * accepts new connections. If more than one reactor is configured (via
+ * <code>presents.net.reactors</code>), the additional reactors each run on their own thread,
+ * established connections are handed off to them by {@link #upgradeConnection}, and outgoing
+ * connections are assigned to them by {@link #assignReactor(Connection)} when they are opened.<p>
+ *
+ * The number of bytes queued for each connection is tracked, and a connection whose queue grows
+ * beyond <code>presents.net.queueHighWater</code> is reported to {@link #connectionCongested}
+ * and considered congested until its queue drains below <code>presents.net.queueLowWater</code>,
+ * at which point it is reported to {@link #connectionDrained}.
  */
 public abstract class ConnectionManager extends LoopingThread
     implements Lifecycle.ShutdownComponent
@@ -51,7 +67,8 @@ public abstract class ConnectionManager extends LoopingThread
     {
         super("ConnectionManager");
         cycle.addComponent(this);
-        _selector = Selector.open();
+        _primary = new Reactor(0);
+        _reactors = new Reactor[] { _primary };
         _idleTime = idleTime;
     }
 
@@ -77,35 +94,47 @@ public abstract class ConnectionManager extends LoopingThread
     }
 
     /**
-     * Returns our current runtime statistics. <em>Note:</em> don't call this method <em>too</em>
-     * frequently as it is synchronized and will contend with the network I/O thread.
+     * Returns our current runtime statistics, aggregated across all of our reactors.
+     * <em>Note:</em> don't call this method <em>too</em> frequently as it is synchronized and will
+     * contend with the network I/O threads.
      */
     public synchronized ConMgrStats getStats ()
     {
-        // fill in our snapshot values
-        _stats.connectionCount = _connections.size();
-        _stats.handlerCount = _handlers.size();
-        _stats.deathQueueSize = _deathq.size();
-        _stats.outQueueSize = _outq.size();
-        if (_oflowqs.size() > 0) {
-            _stats.overQueueSize = 0;
-            for (OverflowQueue oq : _oflowqs.values()) {
-                _stats.overQueueSize += oq.size();
-            }
+        ConMgrStats stats = _stats.clone();
+        for (Reactor reactor : _reactors) {
+            stats.add(reactor.getStats());
+        }
+        // the connection count is that of our mapped connections, not just those that have been
+        // assigned to a reactor
+        synchronized (_connections) {
+            stats.connectionCount = _connections.size();
+        }
+        return stats;
+    }
+
+    /**
+     * Returns a snapshot of the runtime statistics of each of our reactors. The connection count
+     * reported for each reactor is the number of established connections assigned to it.
+     */
+    public ConMgrStats[] getReactorStats ()
+    {
+        Reactor[] reactors = _reactors;
+        ConMgrStats[] stats = new ConMgrStats[reactors.length];
+        for (int ii = 0; ii < reactors.length; ii++) {
+            stats[ii] = reactors[ii].getStats();
         }
-        return _stats.clone();
+        return stats;
     }
 
     /**
      * Registers <code>ops</code> on <code>chan</code> on this manager's selector and hooks
-     * <code>netEventHandler</code> up to receive events whenever the selection occurs.
+     * <code>netEventHandler</code> up to receive events whenever the selection occurs. This must
+     * be called before the connection manager is started or on the connection manager thread.
      */
     public SelectionKey register (SelectableChannel chan, int ops, NetEventHandler netEventHandler)
         throws IOException
     {
-        SelectionKey key = chan.register(_selector, ops);
-        _handlers.put(key, netEventHandler);
-        return key;
+        return _primary.register(chan, ops, netEventHandler);
     }
 
     /**
@@ -116,14 +145,17 @@ public abstract class ConnectionManager extends LoopingThread
     public void transferAcceptedSocket (SocketChannel channel)
     {
         _acceptedq.append(channel);
+        _primary._selector.wakeup();
     }
 
     /**
-     * Queues a connection up to be closed on the conmgr thread.
+     * Queues a connection up to be closed on the thread of the reactor that handles it.
      */
     public void closeConnection (Connection conn)
     {
-        _deathq.append(conn);
+        Reactor reactor = getReactor(conn);
+        reactor._deathq.append(conn);
+        reactor._selector.wakeup();
     }
 
     @Override // from LoopingThread
@@ -131,14 +163,26 @@ public abstract class ConnectionManager extends LoopingThread
     {
         super.willStart();
 
-        _selectorSelector = new SelectorIterable(
-            _selector, _selectLoopTime, new SelectorIterable.SelectFailureHandler() {
-            public void handleSelectFailure (Exception e) {
-                log.error("One of our selectors crapped out completely.  " +
-                          "Shutting down the connection manager.", e);
-                shutdown();
+        _primary.init();
+
+        // create and start up our additional reactors, if any
+        if (_reactorCount > 1) {
+            List<Reactor> reactors = Lists.newArrayList(_primary);
+            for (int ii = 1; ii < _reactorCount; ii++) {
+                try {
+                    reactors.add(new Reactor(ii));
+                } catch (IOException ioe) {
+                    log.warning("Failed to create network reactor", "index", ii, ioe);
+                    break;
+                }
+            }
+            _reactors = reactors.toArray(new Reactor[reactors.size()]);
+            for (int ii = 1; ii < _reactors.length; ii++) {
+                _reactors[ii].start();
             }
-        });
+            log.info("Started network reactors", "count", _reactors.length,
+                     "leastLoaded", _assignLeastLoaded);
+        }
     }
 
     @Override // from LoopingThread
@@ -153,24 +197,13 @@ public abstract class ConnectionManager extends LoopingThread
             _lastDebugStamp = iterStamp;
         }
 
-        // close any connections that have been queued up to die
-        Connection dconn;
-        while ((dconn = _deathq.getNonBlocking()) != null) {
-            // it's possible that we caught an EOF trying to read from this connection even after
-            // it was queued up for death, so let's avoid trying to close it twice
-            if (!dconn.isClosed()) {
-                dconn.close();
-            }
-        }
+        // run any operations queued up for the primary reactor
+        _primary.runQueuedInvocations();
 
-        // close connections that have had no network traffic for too long
-        long idleStamp = iterStamp - _idleTime;
-        for (NetEventHandler handler : _handlers.values()) {
-            if (handler.checkIdle(idleStamp)) {
-                // this will queue the connection for closure on our next tick
-                handler.becameIdle();
-            }
-        }
+        // close any connections that have been queued up to die and those that have had no
+        // network traffic for too long
+        _primary.closeQueuedConnections();
+        _primary.closeIdleConnections(iterStamp);
 
         // send any messages that are waiting on the outgoing overflow and message queues
         sendOutgoingMessages(iterStamp);
@@ -179,7 +212,7 @@ public abstract class ConnectionManager extends LoopingThread
         // isRunning() is true); this is because we stick around until the dobject manager is
         // totally done so that we can send shutdown-related events out to our clients; during
         // those last moments we don't want to accept new connections or read any incoming messages
-        if (super.isRunning()) {
+        if (isReadingIncoming()) {
             handleIncoming(iterStamp);
         }
 
@@ -188,6 +221,15 @@ public abstract class ConnectionManager extends LoopingThread
         }
     }
 
+    /**
+     * Returns true if we are still reading incoming network traffic, false if we are in the
+     * process of shutting down and are only delivering outgoing messages.
+     */
+    protected boolean isReadingIncoming ()
+    {
+        return super.isRunning();
+    }
+
     protected void handleIncoming (long iterStamp)
     {
         SocketChannel accepted;
@@ -221,7 +263,7 @@ public abstract class ConnectionManager extends LoopingThread
             log.info("Failure accepting new connection: " + ioe);
             // make sure we don't leak a socket if something went awry
             try {
-                channel.socket().close();
+                channel.close();
             } catch (IOException ioe2) {
                 log.warning("Failed closing aborted connection: " + ioe2);
             }
@@ -229,198 +271,253 @@ public abstract class ConnectionManager extends LoopingThread
     }
 
     /**
-     * Checks for any network events on our set of sockets and passes those events down to their
-     * associated {@link NetEventHandler}s for processing.
+     * Checks for any network events on the primary reactor's sockets and passes those events
+     * down to their associated {@link NetEventHandler}s for processing.
      */
     protected void processIncomingEvents (long iterStamp)
     {
-        // process those events
-        long bytesIn = 0, msgsIn = 0, eventCount = 0;
-        for (SelectionKey selkey : _selectorSelector) {
-            eventCount++;
-            NetEventHandler handler = null;
-            try {
-                handler = _handlers.get(selkey);
-                if (handler == null) {
-                    log.warning("Received network event for unknown handler",
-                                "key", selkey, "ops", selkey.readyOps());
-                    // request that this key be removed from our selection set, which normally
-                    // happens automatically but for some reason didn't
-                    selkey.cancel();
-                    continue;
-                }
-
-//                 log.info("Got event", "selkey", selkey, "handler", handler);
+        _primary.processIncomingEvents(iterStamp);
+    }
 
-                int got = handler.handleEvent(iterStamp);
-                if (got != 0) {
-                    bytesIn += got;
-                    // we know that the handlers only report having read bytes when they have a
-                    // whole message, so we can count thusly
-                    msgsIn++;
-                }
+    /**
+     * Writes all queued overflow and normal messages for the primary reactor's connections.
+     */
+    protected void sendOutgoingMessages (long iterStamp)
+    {
+        _primary.sendOutgoingMessages(iterStamp);
+    }
 
-            } catch (Exception e) {
-                log.warning("Error processing network data: " + handler + ".", e);
+    /**
+     * Queues up a message to be written to the supplied connection by its reactor.
+     */
+    protected void queueMessage (Connection conn, byte[] data)
+    {
+        queueMessage(conn, ByteBuffer.wrap(data));
+    }
 
-                // if you freak out here, you go straight in the can
-                if (handler != null && handler instanceof Connection) {
-                    closeConnection((Connection)handler);
-                }
-            }
-        }
+    /**
+     * Queues up a message to be written to the supplied connection by its reactor. The buffer
+     * becomes the property of the reactor, which will release it to our {@link #_bufferPool} once
+     * it has been written (it need not have come from the pool).
+     */
+    protected void queueMessage (Connection conn, ByteBuffer data)
+    {
+        queueMessage(conn, data, null);
+    }
 
-        synchronized (this) {
-            // update our stats
-            _stats.eventCount += eventCount;
-            _stats.bytesIn += bytesIn;
-            _stats.msgsIn += msgsIn;
-        }
+    /**
+     * Queues up a message to be written to the supplied connection by its reactor.
+     *
+     * @param key if non-null, identifies the message as one that is superseded by any later
+     * message with an equal key: if the later message is queued while this one is still waiting
+     * in the connection's overflow queue, this one is dropped. Only messages that can be omitted
+     * without confusing the receiver may be keyed.
+     */
+    protected void queueMessage (Connection conn, ByteBuffer data, Object key)
+    {
+        Reactor reactor = getReactor(conn);
+        noteQueued(conn, getQueuedSize(data));
+        reactor._outq.append(new OutgoingMessage(conn, data, key));
     }
 
     /**
-     * Writes all queued overflow and normal messages to their respective sockets. Connections that
-     * already have established overflow queues will have their messages appended to their overflow
-     * queue instead so that they are delivered in the proper order.
+     * Returns the number of bytes the supplied message counts against its connection's queue. A
+     * message holds on to its whole buffer until it is written, so this is the buffer's capacity
+     * (its pool size class, for a pooled buffer) rather than the length of the message.
      */
-    protected void sendOutgoingMessages (long iterStamp)
+    protected static int getQueuedSize (ByteBuffer data)
     {
-        // first attempt to send any messages waiting on the overflow queues
-        if (_oflowqs.size() > 0) {
-            // do this on a snapshot as a network failure writing oflow queue messages will result
-            // in the queue being removed from _oflowqs via the connectionFailed() code path
-            for (OverflowQueue oq : _oflowqs.values().toArray(new OverflowQueue[_oflowqs.size()])) {
-                try {
-                    // try writing the messages in this overflow queue
-                    if (oq.writeOverflowMessages(iterStamp)) {
-                        // if they were all written, we can remove it
-                        _oflowqs.remove(oq.conn);
-                    }
+        return data.capacity();
+    }
 
-                } catch (IOException ioe) {
-                    oq.conn.networkFailure(ioe);
-                }
-            }
+    /**
+     * Notes that data has been queued for the supplied connection, reporting the connection as
+     * congested if this takes it past our high watermark. This is called on the thread that
+     * queued the data.
+     */
+    protected void noteQueued (Connection conn, int bytes)
+    {
+        long queued = conn._queuedBytes.addAndGet(bytes);
+        if (queued < _queueHighWater || conn._congested) {
+            return;
         }
-
-        // then send any new messages
-        Tuple<Connection, byte[]> tup;
-        while ((tup = _outq.getNonBlocking()) != null) {
-            Connection conn = tup.left;
-
-            // if an overflow queue exists for this client, go ahead and slap the message on there
-            // because we can't send it until all other messages in their queue have gone out
-            OverflowQueue oqueue = _oflowqs.get(conn);
-            if (oqueue != null) {
-                int size = oqueue.size();
-                if ((size > 500) && (size % 50 == 0)) {
-                    log.warning("Aiya, big overflow queue for " + conn + "", "size", size,
-                                "bytes", tup.right.length);
-                }
-                oqueue.add(tup.right);
-                continue;
+        synchronized (conn) {
+            if (conn._congested) {
+                return;
             }
-
-            // otherwise write the message out to the client directly
-            writeMessage(conn, tup.right, _oflowHandler);
+            // raise the flag before rechecking our queue so that a reactor draining it in the
+            // meanwhile is sure to see the flag and clear it again
+            conn._congested = true;
+            queued = conn._queuedBytes.get();
+            if (queued <= _queueLowWater) {
+                conn._congested = false;
+                return;
+            }
+            synchronized (this) {
+                _stats.highWaterHits++;
+            }
+            connectionCongested(conn, queued);
         }
     }
 
     /**
-     * Writes a message out to a connection, passing the buck to the partial write handler if the
-     * entire message could not be written.
-     *
-     * @return true if the message was fully written, false if it was partially written (in which
-     * case the partial message handler will have been invoked).
+     * Notes that data queued for the supplied connection has been written or dropped, reporting
+     * the connection as drained if this takes a congested connection below our low watermark.
+     * This is called on the thread of the connection's reactor.
      */
-    protected boolean writeMessage (Connection conn, byte[] data, PartialWriteHandler pwh)
+    protected void noteDisposed (Connection conn, int bytes)
     {
-        // if the connection to which this message is destined is closed, drop the message and move
-        // along quietly; this is perfectly legal, a user can logoff whenever they like, even if we
-        // still have things to tell them; such is life in a fully asynchronous distributed system
-        if (conn.isClosed()) {
-            return true;
+        long queued = conn._queuedBytes.addAndGet(-bytes);
+        if (queued > _queueLowWater || !conn._congested) {
+            return;
         }
-
-        // if this is an asynchronous close request, queue the connection up for death
-        if (data == ASYNC_CLOSE_REQUEST) {
-            closeConnection(conn);
-            return true;
+        synchronized (conn) {
+            if (conn._congested && conn._queuedBytes.get() <= _queueLowWater) {
+                conn._congested = false;
+                connectionDrained(conn);
+            }
         }
+    }
 
-        // sanity check the message size
-        if (data.length > _maxMsgSize) {
-            log.warning("Refusing to write very large message", "conn", conn, "size", data.length);
-            return true;
-        }
+    /**
+     * Called when the data queued for a connection exceeds our high watermark, generally on the
+     * thread that queued the data that pushed it over. The default implementation logs a warning;
+     * derived classes may take further measures to relieve the congestion.
+     */
+    protected void connectionCongested (Connection conn, long queued)
+    {
+        log.warning("Connection outgoing queue passed high watermark", "conn", conn,
+                    "bytes", queued);
+    }
 
-        // expand our output buffer if needed to accomodate this message
-        if (data.length > _outbuf.capacity()) {
-            // increase the buffer size in large increments
-            int ncapacity = Math.max(_outbuf.capacity() << 1, data.length);
-            log.info("Expanding output buffer size", "nsize", ncapacity);
-            _outbuf = ByteBuffer.allocateDirect(ncapacity);
-        }
+    /**
+     * Called on the thread of the connection's reactor when the data queued for a congested
+     * connection drains below our low watermark.
+     */
+    protected void connectionDrained (Connection conn)
+    {
+        log.info("Connection outgoing queue drained", "conn", conn);
+    }
 
-        boolean fully = true;
-        try {
-//             log.info("Writing " + data.length + " byte message to " + conn + ".");
+    /**
+     * Posts a fake message to this connection's outgoing message queue that will cause the
+     * connection to be closed when this message is reached. This is only used by outgoing
+     * connections to ensure that they finish sending their queued outgoing messages before closing
+     * their connection. Incoming connections tend only to be closed at the request of the client
+     * or in case of delinquincy. In neither circumstance do we need to flush the client's outgoing
+     * queue before closing.
+     */
+    protected void postAsyncClose (Connection conn)
+    {
+        queueMessage(conn, ASYNC_CLOSE_REQUEST);
+    }
 
-            // first copy the data into our "direct" output buffer
-            _outbuf.put(data);
-            _outbuf.flip();
+    /**
+     * Replaces the connection object handling an established connection with a new one that
+     * will handle its traffic from here on out, and assigns the new connection to one of our
+     * reactors. This must be called on the conmgr thread, before any messages are posted to the
+     * new connection.
+     */
+    protected void upgradeConnection (Connection oconn, Connection nconn)
+    {
+        nconn.selkey = oconn.selkey;
 
-            // if the connection to which we're writing is not yet ready, the whole message is
-            // "leftover", so we pass it to the partial write handler
-            SocketChannel sochan = conn.getChannel();
-            if (sochan.isConnectionPending()) {
-                pwh.handlePartialWrite(conn, _outbuf);
-                return false;
-            }
+        // make sure anything queued up for the old connection is written before we hand its
+        // socket to another thread
+        Reactor reactor = assignReactor();
+        if (reactor != _primary) {
+            _primary.sendOutgoingMessages(System.currentTimeMillis());
+        }
 
-            // then write the data to the socket
-            int wrote = sochan.write(_outbuf);
-            noteWrite(1, wrote);
+        // a connection with a partially written message must stay with the primary reactor
+        // until that message is delivered, so we just transfer its overflow queue
+        Reactor.OverflowQueue oflowq = _primary._oflowqs.remove(oconn);
+        boolean stay = (oflowq != null || reactor == _primary);
+        if (stay) {
+            reactor = _primary;
+        }
 
-            // if we didn't write our entire message, deal with the leftover bytes
-            if (_outbuf.remaining() > 0) {
-                fully = false;
-                pwh.handlePartialWrite(conn, _outbuf);
+        // the new connection must know its reactor before that reactor can see it
+        nconn._reactor = reactor;
+        reactor._load.incrementAndGet();
+
+        if (stay) {
+            _primary._handlers.put(nconn.selkey, nconn);
+            if (oflowq != null) {
+                // the bytes in the queue are now owed to the new connection
+                long bytes = oflowq.getQueuedBytes();
+                oconn._queuedBytes.addAndGet(-bytes);
+                nconn._queuedBytes.addAndGet(bytes);
+                oflowq.conn = nconn;
+                _primary._oflowqs.put(nconn, oflowq);
             }
 
-        } catch (NotYetConnectedException nyce) {
-            // this should be caught by isConnectionPending() but awesomely it's not
-            pwh.handlePartialWrite(conn, _outbuf);
-            return false;
-
-        } catch (IOException ioe) {
-            conn.networkFailure(ioe); // instruct the connection to deal with its failure
-
-        } finally {
-            _outbuf.clear();
+        } else {
+            // stop selecting on the socket here, and let the new reactor register it with its own
+            // selector on its thread
+            _primary._handlers.remove(oconn.selkey);
+            oconn.selkey.cancel();
+            nconn.selkey = null;
+            reactor._adoptq.append(nconn);
+            reactor._selector.wakeup();
         }
+    }
 
-        return fully;
+    /**
+     * Assigns a newly opened outgoing connection to one of our reactors, which will complete the
+     * connection process and perform its network I/O from there on out. This may be called on any
+     * thread, but must be called before any messages are posted to the connection.
+     */
+    protected void assignReactor (Connection conn)
+    {
+        Reactor reactor = assignReactor();
+        conn._reactor = reactor;
+        reactor._load.incrementAndGet();
     }
 
-    /** Called by {@link #writeMessage} and friends when they write data over the network. */
-    protected synchronized void noteWrite (int msgs, int bytes)
+    /**
+     * Queues up an operation to be run on the thread of the reactor that handles the supplied
+     * connection. This may be called on any thread.
+     */
+    protected void invokeOnReactor (Connection conn, Runnable op)
     {
-        _stats.msgsOut += msgs;
-        _stats.bytesOut += bytes;
+        Reactor reactor = getReactor(conn);
+        reactor._invokeq.append(op);
+        reactor._selector.wakeup();
     }
 
     /**
-     * Posts a fake message to this connection's outgoing message queue that will cause the
-     * connection to be closed when this message is reached. This is only used by outgoing
-     * connections to ensure that they finish sending their queued outgoing messages before closing
-     * their connection. Incoming connections tend only to be closed at the request of the client
-     * or in case of delinquincy. In neither circumstance do we need to flush the client's outgoing
-     * queue before closing.
+     * Selects the reactor to which a newly established connection will be assigned.
      */
-    protected void postAsyncClose (Connection conn)
+    protected Reactor assignReactor ()
+    {
+        Reactor[] reactors = _reactors;
+        if (reactors.length == 1) {
+            return _primary;
+        }
+
+        if (_assignLeastLoaded) {
+            Reactor least = reactors[0];
+            for (Reactor reactor : reactors) {
+                if (reactor._load.get() < least._load.get()) {
+                    least = reactor;
+                }
+            }
+            return least;
+        }
+
+        // outgoing connections may be assigned off of the conmgr thread
+        int next = (_nextReactor.incrementAndGet() & Integer.MAX_VALUE) % reactors.length;
+        return reactors[next];
+    }
+
+    /**
+     * Returns the reactor that handles the supplied connection.
+     */
+    protected Reactor getReactor (Connection conn)
     {
-        _outq.append(Tuple.newTuple(conn, ASYNC_CLOSE_REQUEST));
+        Reactor reactor = conn._reactor;
+        return (reactor == null) ? _primary : reactor;
     }
 
     /**
@@ -430,9 +527,7 @@ public abstract class ConnectionManager extends LoopingThread
     {
         // remove this connection from our mappings (it is automatically removed from the Selector
         // when the socket is closed)
-        _handlers.remove(conn.selkey);
-        _connections.remove(conn.getConnectionId());
-        _oflowqs.remove(conn);
+        removeConnection(conn);
         synchronized (this) {
             _stats.disconnects++;
         }
@@ -445,14 +540,32 @@ public abstract class ConnectionManager extends LoopingThread
     {
         // remove this connection from our mappings (it is automatically removed from the Selector
         // when the socket is closed)
-        _handlers.remove(conn.selkey);
-        _connections.remove(conn.getConnectionId());
-        _oflowqs.remove(conn);
+        removeConnection(conn);
         synchronized (this) {
             _stats.closes++;
         }
     }
 
+    /**
+     * Removes the supplied connection from our mappings and those of its reactor. This is called
+     * on the thread of the reactor that handles the connection.
+     */
+    protected void removeConnection (Connection conn)
+    {
+        Reactor reactor = getReactor(conn);
+        reactor._handlers.remove(conn.selkey);
+        Reactor.OverflowQueue oflowq = reactor._oflowqs.remove(conn);
+        if (oflowq != null) {
+            oflowq.release();
+        }
+        if (conn._reactor != null) {
+            reactor._load.decrementAndGet();
+        }
+        synchronized (_connections) {
+            _connections.remove(conn.getConnectionId());
+        }
+    }
+
     @Override
     protected void handleIterateFailure (Exception e)
     {
@@ -465,10 +578,17 @@ public abstract class ConnectionManager extends LoopingThread
     {
         // take one last crack at the outgoing message queue
         sendOutgoingMessages(System.currentTimeMillis());
+        _primary.reportUndelivered();
 
-        // report if there's anything left on the outgoing message queue
-        if (_outq.size() > 0) {
-            log.warning("Connection Manager failed to deliver " + _outq.size() + " message(s).");
+        // wait for our other reactors to deliver their final messages
+        for (Reactor reactor : _reactors) {
+            if (reactor != _primary) {
+                try {
+                    reactor.join();
+                } catch (InterruptedException ie) {
+                    log.warning("Interrupted waiting for network reactor to exit", "reactor", reactor);
+                }
+            }
         }
 
         // run our on-exit handler if we have one
@@ -481,139 +601,725 @@ public abstract class ConnectionManager extends LoopingThread
         }
     }
 
-    /** Used to handle partial writes in {@link ConnectionManager#writeMessage}. */
+    /** Used to handle partial writes in {@link Reactor#writeMessages}. */
     protected static interface PartialWriteHandler
     {
         void handlePartialWrite (Connection conn, ByteBuffer buffer);
     }
 
     /**
-     * Used to handle messages for a client whose network buffer has filled up because their
-     * outgoing network buffer has filled up. This can happen if the client receives many messages
-     * in rapid succession or if they receive very large messages or if they become unresponsive
-     * and stop acknowledging network packets sent by the server. We want to accomodate the first
-     * to circumstances and recognize the third as quickly as possible so that we can disconnect
-     * the client and propagate that information up to the higher levels so that further messages
-     * are not queued up for the unresponsive client.
+     * Performs the network I/O for a subset of our connections: selecting on and reading from
+     * their sockets, and writing their outgoing messages. All of a reactor's state is only
+     * accessed on its own thread with the exception of its queues and stats. The primary reactor
+     * is run by the connection manager thread itself and is never started.
      */
-    protected class OverflowQueue extends ArrayList<byte[]>
-        implements PartialWriteHandler
+    protected class Reactor extends LoopingThread
     {
-        /** The connection for which we're managing overflow. */
-        public Connection conn;
+        public Reactor (int index)
+            throws IOException
+        {
+            super("ConnectionManager.Reactor" + index);
+            _index = index;
+            _selector = Selector.open();
+        }
 
         /**
-         * Creates a new overflow queue for the supplied connection and with the supplied initial
-         * partial message.
+         * Returns a snapshot of this reactor's runtime stats.
          */
-        public OverflowQueue (Connection conn, ByteBuffer message)
+        public synchronized ConMgrStats getStats ()
         {
-            this.conn = conn;
-            // set up our initial _partial buffer
-            handlePartialWrite(conn, message);
+            // fill in our snapshot values
+            _stats.connectionCount = _load.get();
+            _stats.handlerCount = _handlers.size();
+            _stats.deathQueueSize = _deathq.size();
+            _stats.outQueueSize = _outq.size();
+            if (_oflowqs.size() > 0) {
+                _stats.overQueueSize = 0;
+                for (OverflowQueue oq : _oflowqs.values()) {
+                    _stats.overQueueSize += oq.size();
+                }
+            }
+            return _stats.clone();
+        }
+
+        /**
+         * Registers a channel with our selector. This must be called on our thread.
+         */
+        public SelectionKey register (SelectableChannel chan, int ops, NetEventHandler handler)
+            throws IOException
+        {
+            SelectionKey key = chan.register(_selector, ops);
+            _handlers.put(key, handler);
+            return key;
+        }
+
+        /**
+         * Prepares this reactor for selecting. This is called on the thread that will run the
+         * reactor before it starts iterating.
+         */
+        public void init ()
+        {
+            _selectorSelector = new SelectorIterable(
+                _selector, _selectLoopTime, new SelectorIterable.SelectFailureHandler() {
+                public void handleSelectFailure (Exception e) {
+                    log.error("One of our selectors crapped out completely.  " +
+                              "Shutting down the connection manager.", e);
+                    ConnectionManager.this.shutdown();
+                }
+            });
+        }
+
+        @Override // from LoopingThread
+        public boolean isRunning ()
+        {
+            // we run for exactly as long as our connection manager
+            return ConnectionManager.this.isRunning();
+        }
+
+        @Override // from Object
+        public String toString ()
+        {
+            return "[index=" + _index + ", load=" + _load + "]";
+        }
+
+        @Override // from LoopingThread
+        protected void willStart ()
+        {
+            super.willStart();
+            init();
+        }
+
+        @Override // from LoopingThread
+        protected void iterate ()
+        {
+            long iterStamp = System.currentTimeMillis();
+            runQueuedInvocations();
+            adoptQueuedConnections();
+            closeQueuedConnections();
+            closeIdleConnections(iterStamp);
+            sendOutgoingMessages(iterStamp);
+            if (isReadingIncoming()) {
+                processIncomingEvents(iterStamp);
+            }
+        }
+
+        @Override // from LoopingThread
+        protected void kick ()
+        {
+            _selector.wakeup();
+        }
+
+        @Override // from LoopingThread
+        protected void handleIterateFailure (Exception e)
+        {
+            log.warning("Reactor.iterate() uncaught exception.", "reactor", this, e);
+        }
+
+        @Override // from LoopingThread
+        protected void didShutdown ()
+        {
+            // take one last crack at the outgoing message queue
+            sendOutgoingMessages(System.currentTimeMillis());
+            reportUndelivered();
+        }
+
+        /**
+         * Runs any operations that have been queued up via {@link #invokeOnReactor}.
+         */
+        protected void runQueuedInvocations ()
+        {
+            Runnable op;
+            while ((op = _invokeq.getNonBlocking()) != null) {
+                try {
+                    op.run();
+                } catch (Exception e) {
+                    log.warning("Reactor invocation failed", "reactor", this, "op", op, e);
+                }
+            }
+        }
+
+        /**
+         * Registers connections that have been handed to us with our selector.
+         */
+        protected void adoptQueuedConnections ()
+        {
+            Connection conn;
+            while ((conn = _adoptq.getNonBlocking()) != null) {
+                if (conn.isClosed()) {
+                    continue;
+                }
+                try {
+                    conn.selkey = register(conn.getChannel(), SelectionKey.OP_READ, conn);
+                } catch (IOException ioe) {
+                    conn.networkFailure(ioe);
+                }
+            }
+        }
+
+        /**
+         * Closes any connections that have been queued up to die.
+         */
+        protected void closeQueuedConnections ()
+        {
+            Connection dconn;
+            while ((dconn = _deathq.getNonBlocking()) != null) {
+                // it's possible that we caught an EOF trying to read from this connection even
+                // after it was queued up for death, so let's avoid trying to close it twice
+                if (!dconn.isClosed()) {
+                    dconn.close();
+                }
+            }
+        }
+
+        /**
+         * Closes connections that have had no network traffic for too long.
+         */
+        protected void closeIdleConnections (long iterStamp)
+        {
+            long idleStamp = iterStamp - _idleTime;
+            for (NetEventHandler handler : _handlers.values()) {
+                if (handler.checkIdle(idleStamp)) {
+                    // this will queue the connection for closure on our next tick
+                    handler.becameIdle();
+                }
+            }
+        }
+
+        /**
+         * Checks for any network events on our set of sockets and passes those events down to
+         * their associated {@link NetEventHandler}s for processing.
+         */
+        protected void processIncomingEvents (long iterStamp)
+        {
+            // process those events
+            long bytesIn = 0, msgsIn = 0, eventCount = 0;
+            for (SelectionKey selkey : _selectorSelector) {
+                eventCount++;
+                NetEventHandler handler = null;
+                try {
+                    handler = _handlers.get(selkey);
+                    if (handler == null) {
+                        log.warning("Received network event for unknown handler",
+                                    "key", selkey, "ops", selkey.readyOps());
+                        // request that this key be removed from our selection set, which
+                        // normally happens automatically but for some reason didn't
+                        selkey.cancel();
+                        continue;
+                    }
+
+//                     log.info("Got event", "selkey", selkey, "handler", handler);
+
+                    int got = handler.handleEvent(iterStamp);
+                    if (got != 0) {
+                        bytesIn += got;
+                        // we know that the handlers only report having read bytes when they have
+                        // a whole message, so we can count thusly
+                        msgsIn++;
+                    }
+
+                } catch (Exception e) {
+                    log.warning("Error processing network data: " + handler + ".", e);
+
+                    // if you freak out here, you go straight in the can
+                    if (handler != null && handler instanceof Connection) {
+                        closeConnection((Connection)handler);
+                    }
+                }
+            }
+
+            synchronized (this) {
+                // update our stats
+                _stats.eventCount += eventCount;
+                _stats.bytesIn += bytesIn;
+                _stats.msgsIn += msgsIn;
+            }
         }
 
         /**
-         * Called each time through the {@link ConnectionManager#iterate} loop, this attempts to
-         * send any remaining partial message and all subsequent messages in the overflow queue.
+         * Writes all queued overflow and normal messages to their respective sockets. Connections
+         * that already have established overflow queues will have their messages appended to
+         * their overflow queue instead so that they are delivered in the proper order.
+         */
+        protected void sendOutgoingMessages (long iterStamp)
+        {
+            // first attempt to send any messages waiting on the overflow queues
+            if (_oflowqs.size() > 0) {
+                // do this on a snapshot as a network failure writing oflow queue messages will
+                // result in the queue being removed from _oflowqs via the connectionFailed() code
+                // path
+                for (OverflowQueue oq :
+                         _oflowqs.values().toArray(new OverflowQueue[_oflowqs.size()])) {
+                    try {
+                        // try writing the messages in this overflow queue
+                        if (oq.writeOverflowMessages(iterStamp)) {
+                            // if they were all written, we can remove it
+                            _oflowqs.remove(oq.conn);
+                        }
+
+                    } catch (IOException ioe) {
+                        oq.conn.networkFailure(ioe);
+                    }
+                }
+            }
+
+            // then group any new messages by connection so that each connection's messages can
+            // be sent with a single gathering write
+            OutgoingMessage omsg;
+            while ((omsg = _outq.getNonBlocking()) != null) {
+                List<ByteBuffer> msgs = _pending.get(omsg.conn);
+                if (msgs == null) {
+                    _pending.put(omsg.conn, msgs = Lists.newArrayList());
+                }
+                msgs.add(omsg.data);
+                if (omsg.key != null) {
+                    _keys.put(omsg.data, omsg.key);
+                }
+            }
+            if (_pending.isEmpty()) {
+                return;
+            }
+
+            for (Map.Entry<Connection, List<ByteBuffer>> entry : _pending.entrySet()) {
+                Connection conn = entry.getKey();
+                List<ByteBuffer> msgs = entry.getValue();
+
+                // if an overflow queue exists for this client, go ahead and slap the messages on
+                // there because we can't send them until all other messages in their queue have
+                // gone out
+                OverflowQueue oqueue = _oflowqs.get(conn);
+                if (oqueue != null) {
+                    int size = oqueue.size(), nsize = size + msgs.size();
+                    if ((nsize > 500) && (size / 50 != nsize / 50)) {
+                        log.warning("Aiya, big overflow queue for " + conn + "", "size", nsize);
+                    }
+                    oqueue.append(msgs, 0);
+                    continue;
+                }
+
+                // otherwise write the messages out to the client directly
+                try {
+                    int sent = writeMessages(conn, null, msgs, _oflowHandler);
+                    if (sent < msgs.size()) {
+                        // the partial write handler will have created an overflow queue for
+                        // this connection (unless it failed in the meanwhile)
+                        oqueue = _oflowqs.get(conn);
+                        if (oqueue != null) {
+                            oqueue.append(msgs, sent);
+                        }
+                    }
+                } catch (IOException ioe) {
+                    conn.networkFailure(ioe); // instruct the connection to deal with its failure
+                }
+            }
+            _pending.clear();
+            _keys.clear();
+        }
+
+        /**
+         * Writes the supplied partial message (if any) and messages to a connection using as few
+         * gathering writes as possible, passing the buck to the partial write handler if a
+         * message could not be written in its entirety. Messages that are written or dropped are
+         * released to our buffer pool; the partial message and any message passed to the partial
+         * write handler remain the responsibility of the caller and handler respectively.
+         *
+         * @param partial the remains of a previously partially written message that must be
+         * written before any of the supplied messages, or null.
          *
-         * @return true if all messages in this queue were successfully sent, false if there
-         * remains data to be sent on the next loop.
+         * @return the number of messages from <code>msgs</code> that were disposed of: written,
+         * dropped, or passed to the partial write handler. If the supplied partial message could
+         * not be written completely, zero is returned and the partial message retains its unwritten
+         * remainder.
          *
-         * @throws IOException if an error occurs writing data to the connection or if we have been
-         * unable to write any data to the connection for ten seconds.
+         * @throws IOException if an error occurs writing to the connection, in which case all of
+         * the supplied messages will have been released.
          */
-        public boolean writeOverflowMessages (long iterStamp)
+        protected int writeMessages (
+            Connection conn, ByteBuffer partial, List<ByteBuffer> msgs, PartialWriteHandler pwh)
             throws IOException
         {
-            // write any partial message if we have one
-            if (_partial != null) {
-                // if our outgoing channel is gone or closed, then bail immediately
-                SocketChannel sochan = conn.getChannel();
-                if (sochan == null || (!sochan.isConnected() && !sochan.isConnectionPending())) {
-                    throw new IOException("Connection unavailable for overflow write " + sochan);
+            int count = msgs.size(), next = 0;
+            while (next < count || partial != null) {
+                // if the connection to which these messages are destined is closed, drop them and
+                // move along quietly; this is perfectly legal, a user can logoff whenever they
+                // like, even if we still have things to tell them; such is life in a fully
+                // asynchronous distributed system
+                if (conn.isClosed()) {
+                    releaseMessages(conn, msgs, next, count);
+                    return count;
+                }
+
+                // gather up as many messages as we reasonably can, stopping at any asynchronous
+                // close request
+                _gather.clear();
+                if (partial != null) {
+                    _gather.add(partial);
                 }
-                if (sochan.isConnectionPending()) {
-                    return false; // not ready to write to this connection yet
+                int skip = _gather.size(), end = next;
+                long gathered = 0;
+                boolean closing = false;
+                for (; end < count && _gather.size() < MAX_GATHER_BUFFERS &&
+                         gathered < MAX_GATHER_BYTES; end++) {
+                    ByteBuffer data = msgs.get(end);
+                    if (data == ASYNC_CLOSE_REQUEST) {
+                        closing = true;
+                        break;
+                    }
+                    // sanity check the message size (we still need an empty placeholder buffer
+                    // so that our buffers line up with our messages)
+                    if (data.remaining() > _maxMsgSize) {
+                        log.warning("Refusing to write very large message", "conn", conn,
+                                    "size", data.remaining());
+                        _gather.add(EMPTY_BUFFER);
+                        continue;
+                    }
+                    _gather.add(data);
+                    gathered += data.remaining();
                 }
+                ByteBuffer[] bufs = _gather.toArray(new ByteBuffer[_gather.size()]);
 
-                // write all we can of our partial buffer
-                int wrote = sochan.write(_partial);
-                noteWrite(0, wrote);
+                // if the connection to which we're writing is not yet ready, nothing is written
+                // and the first message is "leftover"
+                long wrote = -1;
+                SocketChannel sochan = conn.getChannel();
+                if (bufs.length > 0 && !sochan.isConnectionPending()) {
+                    try {
+                        wrote = sochan.write(bufs);
+                    } catch (NotYetConnectedException nyce) {
+                        // this should be caught by isConnectionPending() but awesomely it's not
+                    } catch (IOException ioe) {
+                        releaseMessages(conn, msgs, next, count);
+                        throw ioe;
+                    }
+                }
 
-                if (_partial.remaining() == 0) {
-                    _partial = null;
-                    _partials++;
-                } else {
-//                     log.info("Still going", "conn", conn, "wrote", wrote,
-//                              "remain", _partial.remaining());
-                    return false;
+                // figure out how far we got
+                int idx = 0;
+                while (idx < bufs.length && !bufs[idx].hasRemaining()) {
+                    idx++;
+                }
+                if (wrote >= 0) {
+                    // count the messages that were completely written (a partially written
+                    // message is counted when its last byte goes out), but not our placeholders
+                    int written = 0;
+                    for (int ii = 0; ii < idx; ii++) {
+                        if (bufs[ii] != EMPTY_BUFFER) {
+                            written++;
+                        }
+                    }
+                    noteWrite(written, wrote);
+                }
+                if (idx < skip) {
+                    return 0; // our partial message remains partial
+                }
+                releaseMessages(conn, msgs, next, next + idx - skip);
+                if (idx < bufs.length) {
+                    pwh.handlePartialWrite(conn, bufs[idx]);
+                    return next + idx - skip + 1;
                 }
-            }
 
-            while (size() > 0) {
-                byte[] data = remove(0);
-                // if any of these messages are partially written, we have to stop and wait for the
-                // next tick
-                _msgs++;
-                if (!writeMessage(conn, data, this)) {
-                    return false;
+                partial = null;
+                next = end;
+                if (closing) {
+                    // if this is an asynchronous close request, queue the connection up for death
+                    releaseMessages(conn, msgs, next, count);
+                    closeConnection(conn);
+                    return count;
                 }
             }
+            return count;
+        }
 
-            return true;
+        /**
+         * Disposes of the specified range of messages queued for the supplied connection.
+         */
+        protected void releaseMessages (Connection conn, List<ByteBuffer> msgs, int start, int end)
+        {
+            for (int ii = start; ii < end; ii++) {
+                disposeMessage(conn, msgs.get(ii));
+            }
         }
 
-        // documentation inherited
-        public void handlePartialWrite (Connection wconn, ByteBuffer buffer)
+        /**
+         * Notes that a message queued for the supplied connection has been written or dropped and
+         * releases its buffer to our buffer pool.
+         */
+        protected void disposeMessage (Connection conn, ByteBuffer msg)
         {
-            // set up our _partial buffer
-            _partial = ByteBuffer.allocateDirect(buffer.remaining());
-            _partial.put(buffer);
-            _partial.flip();
+            noteDisposed(conn, getQueuedSize(msg));
+            _bufferPool.release(msg);
         }
 
-        @Override
-        public String toString ()
+        /** Called by {@link #writeMessages} and friends when they write data over the network. */
+        protected synchronized void noteWrite (int msgs, long bytes)
         {
-            return "[conn=" + conn + ", partials=" + _partials + ", msgs=" + _msgs + "]";
+            if (bytes > 0) {
+                _stats.writes++;
+            }
+            _stats.msgsOut += msgs;
+            _stats.bytesOut += bytes;
+        }
+
+        /** Called by {@link OverflowQueue#append} when a queued message is superseded. */
+        protected synchronized void noteSuperseded ()
+        {
+            _stats.msgsSuperseded++;
+        }
+
+        /**
+         * Reports if there's anything left on our outgoing message queue.
+         */
+        protected void reportUndelivered ()
+        {
+            if (_outq.size() > 0) {
+                log.warning("Connection Manager failed to deliver " + _outq.size() + " message(s).",
+                            "reactor", this);
+            }
+        }
+
+        /**
+         * Used to handle messages for a client whose network buffer has filled up because their
+         * outgoing network buffer has filled up. This can happen if the client receives many
+         * messages in rapid succession or if they receive very large messages or if they become
+         * unresponsive and stop acknowledging network packets sent by the server. We want to
+         * accomodate the first to circumstances and recognize the third as quickly as possible so
+         * that we can disconnect the client and propagate that information up to the higher
+         * levels so that further messages are not queued up for the unresponsive client.
+         */
+        protected class OverflowQueue extends ArrayList<ByteBuffer>
+            implements PartialWriteHandler
+        {
+            /** The connection for which we're managing overflow. */
+            public Connection conn;
+
+            /**
+             * Creates a new overflow queue for the supplied connection and with the supplied
+             * initial partial message.
+             */
+            public OverflowQueue (Connection conn, ByteBuffer message)
+            {
+                this.conn = conn;
+                // set up our initial _partial buffer
+                handlePartialWrite(conn, message);
+            }
+
+            /**
+             * Called each time through the {@link Reactor#iterate} loop, this attempts to send
+             * any remaining partial message and all subsequent messages in the overflow queue.
+             *
+             * @return true if all messages in this queue were successfully sent, false if there
+             * remains data to be sent on the next loop.
+             *
+             * @throws IOException if an error occurs writing data to the connection or if we have
+             * been unable to write any data to the connection for ten seconds.
+             */
+            public boolean writeOverflowMessages (long iterStamp)
+                throws IOException
+            {
+                ByteBuffer partial = _partial;
+                if (partial != null) {
+                    // if our outgoing channel is gone or closed, then bail immediately
+                    SocketChannel sochan = conn.getChannel();
+                    if (sochan == null ||
+                        (!sochan.isConnected() && !sochan.isConnectionPending())) {
+                        throw new IOException("Connection unavailable for overflow write " +
+                                              sochan);
+                    }
+                    if (sochan.isConnectionPending()) {
+                        return false; // not ready to write to this connection yet
+                    }
+                }
+
+                // write our partial message and as many of our queued messages as we can; if any
+                // of them are partially written, we have to stop and wait for the next tick
+                int sent;
+                try {
+                    sent = writeMessages(conn, partial, this, this);
+                } catch (IOException ioe) {
+                    clear(); // our messages have been released
+                    throw ioe;
+                }
+                _msgs += sent;
+                subList(0, sent).clear();
+                _base += sent;
+                if (isEmpty()) {
+                    _keyed.clear(); // none of our keyed messages remain
+                }
+                if (partial != null) {
+                    if (partial.hasRemaining()) {
+                        return false;
+                    }
+                    _partials++;
+                    disposeMessage(conn, partial);
+                    if (_partial == partial) {
+                        _partial = null;
+                    }
+                }
+
+                return (_partial == null) && isEmpty();
+            }
+
+            /**
+             * Releases our partial message and queued messages to the buffer pool. This is called
+             * when our connection goes away.
+             */
+            public void release ()
+            {
+                if (_partial != null) {
+                    disposeMessage(conn, _partial);
+                    _partial = null;
+                }
+                releaseMessages(conn, this, 0, size());
+                clear();
+                _keyed.clear();
+            }
+
+            /**
+             * Appends the messages from the specified list, starting at the specified index, to
+             * this queue. Any messages waiting in the queue that are superseded by the new
+             * messages are dropped.
+             */
+            public void append (List<ByteBuffer> msgs, int from)
+            {
+                for (int ii = from, ll = msgs.size(); ii < ll; ii++) {
+                    ByteBuffer msg = msgs.get(ii);
+                    Object key = _keys.isEmpty() ? null : _keys.get(msg);
+                    if (key != null) {
+                        Integer oidx = _keyed.put(key, _base + size());
+                        // only messages that are still in the queue (and hence not even partially
+                        // written) can be dropped; placeholders keep our indices valid
+                        if (oidx != null && oidx >= _base) {
+                            disposeMessage(conn, set(oidx - _base, EMPTY_BUFFER));
+                            noteSuperseded();
+                        }
+                    }
+                    add(msg);
+                }
+            }
+
+            /**
+             * Returns the number of bytes in our partial and queued messages.
+             */
+            public long getQueuedBytes ()
+            {
+                long bytes = (_partial == null) ? 0 : getQueuedSize(_partial);
+                for (ByteBuffer msg : this) {
+                    bytes += getQueuedSize(msg);
+                }
+                return bytes;
+            }
+
+            // documentation inherited
+            public void handlePartialWrite (Connection wconn, ByteBuffer buffer)
+            {
+                // our messages are never reused, so we can simply hang onto the buffer
+                _partial = buffer;
+            }
+
+            @Override
+            public String toString ()
+            {
+                return "[conn=" + conn + ", partials=" + _partials + ", msgs=" + _msgs + "]";
+            }
+
+            /** The remains of a message that was only partially written on its first attempt. */
+            protected ByteBuffer _partial;
+
+            /** The position in the stream of messages passed through this queue of our first
+             * queued message. */
+            protected int _base;
+
+            /** The positions of our most recently queued keyed messages, by key. */
+            protected Map<Object, Integer> _keyed = Maps.newHashMap();
+
+            /** A couple of counters. */
+            protected int _msgs, _partials;
         }
 
-        /** The remains of a message that was only partially written on its first attempt. */
-        protected ByteBuffer _partial;
+        /** Used to create an overflow queue on the first partial write. */
+        protected PartialWriteHandler _oflowHandler = new PartialWriteHandler() {
+            public void handlePartialWrite (Connection conn, ByteBuffer msgbuf) {
+                // if we couldn't write all the data for this message, we'll need to establish an
+                // overflow queue
+                _oflowqs.put(conn, new OverflowQueue(conn, msgbuf));
+            }
+        };
+
+        /** Our index in the reactor list, zero for the primary reactor. */
+        protected final int _index;
+
+        protected final Selector _selector;
+        protected SelectorIterable _selectorSelector;
+
+        /** Maps selection keys to network event handlers. */
+        protected Map<SelectionKey, NetEventHandler> _handlers = Maps.newHashMap();
+
+        /** Established connections that have been handed to us but not yet registered. */
+        protected Queue<Connection> _adoptq = Queue.newQueue();
+
+        /** Operations to be run on our thread. */
+        protected Queue<Runnable> _invokeq = Queue.newQueue();
+
+        protected Queue<Connection> _deathq = Queue.newQueue();
+
+        protected Queue<OutgoingMessage> _outq = Queue.newQueue();
 
-        /** A couple of counters. */
-        protected int _msgs, _partials;
+        /** Connections' newly queued messages, grouped for writing. */
+        protected Map<Connection, List<ByteBuffer>> _pending = Maps.newLinkedHashMap();
+
+        /** The keys of any keyed messages in {@link #_pending}. */
+        protected Map<ByteBuffer, Object> _keys = new IdentityHashMap<ByteBuffer, Object>();
+
+        /** Used to assemble gathering writes. */
+        protected List<ByteBuffer> _gather = Lists.newArrayList();
+
+        protected Map<Connection, OverflowQueue> _oflowqs = Maps.newHashMap();
+
+        /** The number of established connections assigned to this reactor. */
+        protected AtomicInteger _load = new AtomicInteger();
+
+        /** This reactor's runtime stats. */
+        protected ConMgrStats _stats = new ConMgrStats();
     }
 
-    /** Used to create an overflow queue on the first partial write. */
-    protected PartialWriteHandler _oflowHandler = new PartialWriteHandler() {
-        public void handlePartialWrite (Connection conn, ByteBuffer msgbuf) {
-            // if we couldn't write all the data for this message, we'll need to establish an
-            // overflow queue
-            _oflowqs.put(conn, new OverflowQueue(conn, msgbuf));
+    /** A message queued for delivery by a reactor. */
+    protected static class OutgoingMessage
+    {
+        /** The connection to which the message is to be written. */
+        public final Connection conn;
+
+        /** The framed message data. */
+        public final ByteBuffer data;
+
+        /** The key of this message, see {@link ConnectionManager#queueMessage}, or null. */
+        public final Object key;
+
+        public OutgoingMessage (Connection conn, ByteBuffer data, Object key)
+        {
+            this.conn = conn;
+            this.data = data;
+            this.key = key;
         }
-    };
+    }
+
+    /** The reactor run by the connection manager thread. */
+    protected final Reactor _primary;
 
-    protected Selector _selector;
-    protected SelectorIterable _selectorSelector;
+    /** All of our reactors, starting with the primary reactor. */
+    protected volatile Reactor[] _reactors;
 
-    /** Maps selection keys to network event handlers. */
-    protected Map<SelectionKey, NetEventHandler> _handlers = Maps.newHashMap();
+    /** Counts the connections assigned in round-robin mode, to select the next reactor. */
+    protected AtomicInteger _nextReactor = new AtomicInteger();
 
     /** Connections mapped by identifier. */
     protected IntMap<Connection> _connections = IntMaps.newHashIntMap();
 
-    protected Queue<Connection> _deathq = Queue.newQueue();
     protected Queue<SocketChannel> _acceptedq = Queue.newQueue();
 
-    protected Queue<Tuple<Connection, byte[]>> _outq = Queue.newQueue();
-
-    protected ByteBuffer _outbuf = ByteBuffer.allocateDirect(64 * 1024);
+    /** Provides the buffers into which outgoing messages are framed, and to which they are
+     * returned once they have been written. */
+    protected BufferPool _bufferPool = new BufferPool();
 
-    protected Map<Connection, OverflowQueue> _oflowqs = Maps.newHashMap();
-
-    /** Our current runtime stats. */
+    /** Our runtime stats that are not specific to any reactor. */
     protected ConMgrStats _stats = new ConMgrStats();
 
     /** The maximum message size we'll send. */
@@ -632,10 +1338,38 @@ public abstract class ConnectionManager extends LoopingThread
     @Inject(optional=true) @Named("presents.net.selectLoopTime")
     protected int _selectLoopTime = 100;
 
+    /** The number of reactors among which to share our established connections. */
+    @Inject(optional=true) @Named("presents.net.reactors")
+    protected int _reactorCount = 1;
+
+    /** Whether established connections are assigned to the reactor with the fewest connections
+     * rather than round-robin. */
+    @Inject(optional=true) @Named("presents.net.assignLeastLoaded")
+    protected boolean _assignLeastLoaded;
+
+    /** The number of bytes queued for a connection beyond which it is considered congested. Queued
+     * messages are charged the capacity of their buffers. */
+    @Inject(optional=true) @Named("presents.net.queueHighWater")
+    protected int _queueHighWater = 2 * 1024 * 1024;
+
+    /** The number of bytes to which a congested connection's queue must drain before it is no
+     * longer considered congested. */
+    @Inject(optional=true) @Named("presents.net.queueLowWater")
+    protected int _queueLowWater = 512 * 1024;
+
     protected final long _idleTime;
 
     /** Used to denote asynchronous close requests. */
-    protected static final byte[] ASYNC_CLOSE_REQUEST = new byte[0];
+    protected static final ByteBuffer ASYNC_CLOSE_REQUEST = ByteBuffer.allocate(0);
+
+    /** Stands in for messages that we refuse to write or that have been superseded. */
+    protected static final ByteBuffer EMPTY_BUFFER = ByteBuffer.allocate(0);
+
+    /** The maximum number of buffers we'll pass to a single gathering write. */
+    protected static final int MAX_GATHER_BUFFERS = 256;
+
+    /** The number of bytes after which we stop adding messages to a gathering write. */
+    protected static final int MAX_GATHER_BYTES = 256 * 1024;
 
     /** Whether or not debug reporting is activated .*/
     protected static final boolean DEBUG_REPORT = false;
@@ -9,8 +9,13 @@ import java.util.List;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.ServerSocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
@@ -21,8 +26,8 @@ import com.samskivert.util.Lifecycle;
 import static com.threerings.NaryaLog.log;
 
 /**
- * Binds sockets on a given hostname for a set of ports for tcp connections, and passes accepted
- * connections into a connection manager.
+ * Binds sockets on a given hostname for a set of ports for tcp connections, and optionally a Unix
+ * domain socket path, and passes accepted connections into a connection manager.
  */
 public class ServerSocketChannelAcceptor
     implements Lifecycle.ShutdownComponent
@@ -45,6 +50,16 @@ public class ServerSocketChannelAcceptor
         _conMan = mgr;
     }
 
+    /**
+     * Configures a Unix domain socket path on which to accept connections in addition to our TCP
+     * ports. Servers on the same host can connect via this path without the overhead of loopback
+     * TCP. Any stale socket file at this path will be replaced when we bind.
+     */
+    public void setSocketPath (Path socketPath)
+    {
+        _socketPath = socketPath;
+    }
+
     /**
      * Bind to the socket ports and return true if any of the binds succeeded.
      */
@@ -61,6 +76,16 @@ public class ServerSocketChannelAcceptor
                             "port", port, ioe);
             }
         }
+
+        // and our Unix domain socket, if we have one
+        if (_socketPath != null) {
+            try {
+                acceptConnections(_socketPath);
+                successes++;
+            } catch (IOException ioe) {
+                log.warning("Failure listening to socket", "path", _socketPath, ioe);
+            }
+        }
         return successes > 0;
     }
 
@@ -71,22 +96,46 @@ public class ServerSocketChannelAcceptor
     {
         for (ServerSocketChannel ssocket : _ssockets) {
             try {
-                ssocket.socket().close();
+                ssocket.close();
             } catch (IOException ioe) {
                 log.warning("Failed to close listening socket: " + ssocket, ioe);
             }
         }
+        if (_socketPath != null) {
+            try {
+                Files.deleteIfExists(_socketPath);
+            } catch (IOException ioe) {
+                log.warning("Failed to remove socket file", "path", _socketPath, ioe);
+            }
+        }
     }
 
     protected void acceptConnections (int port)
         throws IOException
     {
         // create a listening socket
-        final ServerSocketChannel ssocket = ServerSocketChannel.open();
+        ServerSocketChannel ssocket = ServerSocketChannel.open();
         configureSocket(ssocket);
         InetSocketAddress isa = AddressUtil.getAddress(_bindHostname, port);
         ssocket.socket().bind(isa);
+        acceptConnections(ssocket, isa);
+    }
+
+    protected void acceptConnections (Path socketPath)
+        throws IOException
+    {
+        // a socket file left behind by a previous incarnation would prevent us from binding
+        Files.deleteIfExists(socketPath);
+        ServerSocketChannel ssocket = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        configureSocket(ssocket);
+        UnixDomainSocketAddress usa = UnixDomainSocketAddress.of(socketPath);
+        ssocket.bind(usa);
+        acceptConnections(ssocket, usa);
+    }
 
+    protected void acceptConnections (final ServerSocketChannel ssocket, SocketAddress addr)
+        throws IOException
+    {
         _conMan.register(ssocket, SelectionKey.OP_ACCEPT, new NetEventHandler() {
             public int handleEvent (long when) {
                 try {
@@ -106,7 +155,7 @@ public class ServerSocketChannelAcceptor
             }
         });
         _ssockets.add(ssocket);
-        log.info("Server listening on " + isa + ".");
+        log.info("Server listening on " + addr + ".");
     }
 
     /**
@@ -123,5 +172,7 @@ public class ServerSocketChannelAcceptor
     protected final String _bindHostname;
     protected final ConnectionManager _conMan;
 
+    protected Path _socketPath;
+
     protected List<ServerSocketChannel> _ssockets = Lists.newArrayList();
 }
@@ -0,0 +1,30 @@
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2025 Three Rings Design, Inc., All Rights Reserved
+// https://github.com/threerings/narya/blob/master/LICENSE
+
+package com.threerings.presents.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * An annotation indicating that changes to a distributed object field, or to all fields of a
+ * distributed object class, are to be coalesced before they are sent to subscribers. Rather than
+ * sending each change as it is dispatched, the server sends only the last value of each such
+ * field at the end of the batch of events being dispatched, with all of an object's changes in a
+ * single compound event. Listeners on the server are notified of every change as usual.
+ *
+ * <p> The held changes are sent before any other event on the same object, so subscribers see
+ * an object's events in order, but they may see them after events on other objects that were
+ * dispatched later. Only changes sent with reliable transport are coalesced.
+ */
+@Target({ ElementType.FIELD, ElementType.TYPE })
+@Retention(RetentionPolicy.RUNTIME)
+@Inherited
+public @interface Coalesced
+{
+}
@@ -506,22 +506,52 @@ public class BlockingCommunicator extends Communicator
     }
 
     /**
-     * Reads a datagram from the socket (blocking until a datagram has arrived).
+     * Reads a packet from the socket (blocking until a packet has arrived) and decodes the first
+     * datagram that it contains. If we agreed to it when authenticating, the server may pack
+     * several datagrams into one packet, the rest of which are decoded with {@link
+     * #decodeDatagram} while {@link #hasBundledDatagram} returns true.
      */
     protected DownstreamMessage receiveDatagram ()
         throws IOException
     {
-        // clear the buffer and read a datagram
+        // clear the buffer and read a packet
         _buf.clear();
         int size = readDatagram(_buf);
         if (size <= 0) {
             throw new IOException("No datagram available to read.");
         }
         _buf.flip();
+        return decodeDatagram();
+    }
+
+    /**
+     * Returns true if the packet last read by {@link #receiveDatagram} contains datagrams that
+     * have yet to be decoded.
+     */
+    protected boolean hasBundledDatagram ()
+    {
+        return _packedDatagrams && _buf.hasRemaining();
+    }
 
-        // decode through the sequencer
+    /**
+     * Decodes the next datagram in the packet last read by {@link #receiveDatagram}.
+     *
+     * @return the decoded message, or <code>null</code> if the datagram was received
+     * out-of-order.
+     */
+    protected DownstreamMessage decodeDatagram ()
+        throws IOException
+    {
+        // decode through the sequencer; a packed datagram is preceded by its length, and we
+        // always move on to the next one, whether or not we could decode it
+        int size = _buf.remaining(), end = _buf.limit();
+        if (_packedDatagrams) {
+            size = _buf.getShort() & 0xFFFF;
+            end = Math.min(_buf.position() + size, end);
+        }
         try {
-            DownstreamMessage msg = (DownstreamMessage)_sequencer.readDatagram();
+            DownstreamMessage msg = (DownstreamMessage)(_packedDatagrams ?
+                _sequencer.readDatagram(size) : _sequencer.readDatagram());
             if (_client != null) {
                 _client.getMessageTracker().messageReceived(
                     true, size, msg, (msg == null) ? 0 : _sequencer.getMissedCount());
@@ -537,6 +567,9 @@ public class BlockingCommunicator extends Communicator
         } catch (ClassNotFoundException cnfe) {
             throw (IOException) new IOException(
                 "Unable to decode incoming datagram.").initCause(cnfe);
+
+        } finally {
+            _buf.position(end);
         }
     }
 
@@ -619,6 +652,7 @@ public class BlockingCommunicator extends Communicator
                                     _client.getCredentials(), _client.getVersion(),
                                     _client.getBootGroups(), _client.requireSecureAuth(),
                                     pkcreds, (SecureResponse)response);
+                        areq.setPackDatagrams(true);
                         sendMessage(areq);
                         _client.setSecret(areq.getSecret());
 
@@ -629,15 +663,17 @@ public class BlockingCommunicator extends Communicator
 
                 } else {
                     // construct an auth request and send it
-                    sendMessage(AESAuthRequest.createAuthRequest(
-                                _client.getCredentials(), _client.getVersion(),
-                                _client.getBootGroups(), _client.requireSecureAuth()));
-
+                    AuthRequest areq = AESAuthRequest.createAuthRequest(
+                        _client.getCredentials(), _client.getVersion(),
+                        _client.getBootGroups(), _client.requireSecureAuth());
+                    areq.setPackDatagrams(true);
+                    sendMessage(areq);
 
                     // now wait for the auth response
                     log.debug("Waiting for auth response.");
                     response = (AuthResponse)receiveMessage();
                 }
+                _packedDatagrams = response.getPackDatagrams();
                 gotAuthResponse(response);
 
 
@@ -899,12 +935,17 @@ public class BlockingCommunicator extends Communicator
             DownstreamMessage msg = null;
 
             try {
-                // read the next message from the socket
+                // read the next packet from the socket and process each message that it
+                // contains, unless dropped
                 msg = receiveDatagram();
-
-                // process the message if it wasn't dropped
-                if (msg != null) {
-                    processMessage(msg);
+                while (true) {
+                    if (msg != null) {
+                        processMessage(msg);
+                    }
+                    if (!hasBundledDatagram()) {
+                        break;
+                    }
+                    msg = decodeDatagram();
                 }
 
             } catch (AsynchronousCloseException ace) {
@@ -1035,6 +1076,9 @@ public class BlockingCommunicator extends Communicator
 
     protected DatagramSequencer _sequencer;
 
+    /** Whether the server agreed to pack several datagrams into a single packet. */
+    protected volatile boolean _packedDatagrams;
+
     protected ClassLoader _loader;
 
     /** The number of times per port to try to establish a datagram "connection". */
@@ -49,6 +49,10 @@ public class Client
     /** The maximum size of a datagram. */
     public static final int MAX_DATAGRAM_SIZE = 1450;
 
+    /** The size of the length that precedes each datagram when several are packed into a single
+     * packet. */
+    public static final int PACKED_DATAGRAM_HEADER = 2;
+
     /** Our default maximum outgoing message rate in messages per second. */
     public static final int DEFAULT_MSGS_PER_SECOND = 10;
 
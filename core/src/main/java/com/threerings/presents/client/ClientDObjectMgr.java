@@ -5,15 +5,20 @@
 
 package com.threerings.presents.client;
 
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 import java.awt.event.KeyEvent;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
 import com.samskivert.util.DebugChords;
 import com.samskivert.util.HashIntMap;
@@ -38,6 +43,7 @@ import com.threerings.presents.net.FailureResponse;
 import com.threerings.presents.net.ForwardEventRequest;
 import com.threerings.presents.net.Message;
 import com.threerings.presents.net.ObjectResponse;
+import com.threerings.presents.net.PartialSubscribeRequest;
 import com.threerings.presents.net.PongResponse;
 import com.threerings.presents.net.SubscribeRequest;
 import com.threerings.presents.net.UnsubscribeRequest;
@@ -99,14 +105,32 @@ public class ClientDObjectMgr
         if (oid <= 0) {
             target.requestFailed(oid, new ObjectAccessException("Invalid oid " + oid + "."));
         } else {
-            queueAction(oid, target, true);
+            queueAction(oid, target, true, null);
+        }
+    }
+
+    /**
+     * Subscribes to the specified object, requesting that the server send only the named
+     * attributes of the object and only the events that affect them. The object's other
+     * attributes keep the values assigned to them by its constructor, so the subscriber must not
+     * rely on them. The server sends each client the union of the attributes wanted by all of
+     * its subscribers to an object, widening its subscription as needed. Partial subscriptions
+     * are not supported by the ActionScript client.
+     */
+    public <T extends DObject> void subscribeToObject (
+        int oid, Subscriber<T> target, String... attrs)
+    {
+        if (oid <= 0) {
+            target.requestFailed(oid, new ObjectAccessException("Invalid oid " + oid + "."));
+        } else {
+            queueAction(oid, target, true, Sets.newHashSet(attrs));
         }
     }
 
     // inherit documentation from the interface
     public <T extends DObject> void unsubscribeFromObject (int oid, Subscriber<T> target)
     {
-        queueAction(oid, target, false);
+        queueAction(oid, target, false, null);
     }
 
     // inherit documentation from the interface
@@ -234,16 +258,18 @@ public class ClientDObjectMgr
         _flusher.cancel();
         _flushes.clear();
         _dead.clear();
+        _interests.clear();
         _client.getRunQueue().postRunnable(() -> {
             _ocache.clear();
         });
     }
 
-    protected <T extends DObject> void queueAction (int oid, Subscriber<T> target, boolean subscribe)
+    protected <T extends DObject> void queueAction (
+        int oid, Subscriber<T> target, boolean subscribe, Set<String> interest)
     {
         if (_client.getRunQueue().isRunning()) {
             // queue up an action
-            _actions.append(new ObjectAction<T>(oid, target, subscribe));
+            _actions.append(new ObjectAction<T>(oid, target, subscribe, interest));
             // and queue up the omgr to get invoked on the invoker thread
             _client.getRunQueue().postRunnable(this);
         } else {
@@ -331,20 +357,52 @@ public class ClientDObjectMgr
      */
     protected <T extends DObject> void registerObjectAndNotify (ObjectResponse<T> orsp)
     {
-        // let the object know that we'll be managing it
         T obj = orsp.getObject();
-        obj.setManager(this);
+        int oid = obj.getOid();
+        PendingRequest<?> req = _penders.get(oid);
+        if (req == null || req.requested.isEmpty()) {
+            log.warning("Got object, but no one cares?!", "oid", oid, "obj", obj);
+            // if we don't already have it, let the server know that we don't want it
+            if (!_ocache.containsKey(oid)) {
+                _dead.put(oid, obj);
+                _comm.postMessage(new UnsubscribeRequest(oid));
+            }
+            return;
+        }
+        Set<String> sent = req.requested.remove(0);
 
-        // stick the object into the proxy object table
-        _ocache.put(obj.getOid(), obj);
+        @SuppressWarnings("unchecked") T cached = (T)_ocache.get(oid);
+        if (cached != null) {
+            // we widened our subscription to this object, so copy the newly sent attributes into
+            // the instance that our subscribers already have
+            copyAttributes(obj, cached, sent);
+            obj = cached;
+            // and keep it around now that it has subscribers again
+            _flushes.remove(oid);
 
-        // let the penders know that the object is available
-        PendingRequest<?> req = _penders.remove(obj.getOid());
-        if (req == null) {
-            log.warning("Got object, but no one cares?!", "oid", obj.getOid(), "obj", obj);
+        } else {
+            // let the object know that we'll be managing it
+            obj.setManager(this);
+
+            // stick the object into the proxy object table; it has no subscribers until our
+            // requests are resolved
+            _ocache.put(oid, obj);
+            req.idle = true;
+        }
+        if (sent == null) {
+            _interests.remove(oid);
+        } else {
+            _interests.put(oid, sent);
+        }
+
+        // if we widened our subscription while waiting for this response, wait for the widest
+        if (!req.requested.isEmpty()) {
             return;
         }
 
+        // let the penders know that the object is available
+        _penders.remove(oid);
+
         for (int ii = 0; ii < req.targets.size(); ii++) {
             @SuppressWarnings("unchecked") Subscriber<T> target = (Subscriber<T>)req.targets.get(ii);
             // add them as a subscriber
@@ -360,15 +418,40 @@ public class ClientDObjectMgr
      */
     protected void notifyFailure (int oid, String message)
     {
-        // let the penders know that the object is not available
-        PendingRequest<?> req = _penders.remove(oid);
-        if (req == null) {
+        PendingRequest<?> req = _penders.get(oid);
+        if (req == null || req.requested.isEmpty()) {
             log.warning("Failed to get object, but no one cares?!", "oid", oid);
             return;
         }
 
-        for (int ii = 0; ii < req.targets.size(); ii++) {
-            req.targets.get(ii).requestFailed(oid, new ObjectAccessException(message));
+        // our requests are answered in order, so this is the oldest; if we widened our
+        // subscription since it was sent, the outcome of the widest request decides
+        req.requested.remove(0);
+        if (!req.requested.isEmpty()) {
+            return;
+        }
+        _penders.remove(oid);
+
+        // if we were widening our subscription, the penders that wanted only what we already
+        // have can subscribe; the rest are told that the object is not available
+        @SuppressWarnings("unchecked") PendingRequest<DObject> dreq = (PendingRequest<DObject>)req;
+        DObject obj = _ocache.get(oid);
+        for (int ii = 0; ii < dreq.targets.size(); ii++) {
+            Subscriber<DObject> target = dreq.targets.get(ii);
+            if (obj != null && covers(_interests.get(oid), dreq.interests.get(ii))) {
+                _flushes.remove(oid);
+                obj.addSubscriber(target);
+                target.objectAvailable(obj);
+                dreq.idle = false;
+            } else {
+                target.requestFailed(oid, new ObjectAccessException(message));
+            }
+        }
+
+        // if no one is left subscribed to the object, we no longer need it
+        if (obj != null && dreq.idle) {
+            _flushes.remove(oid);
+            flushObject(obj);
         }
     }
 
@@ -382,10 +465,11 @@ public class ClientDObjectMgr
 
         int oid = action.oid;
         Subscriber<T> target = action.target;
+        Set<String> interest = action.interest;
 
-        // first see if we've already got the object in our table
+        // first see if we've already got the object in our table with the attributes they want
         @SuppressWarnings("unchecked") T obj = (T)_ocache.get(oid);
-        if (obj != null) {
+        if (obj != null && covers(_interests.get(oid), interest)) {
             // clear the object out of the flush table if it's in there
             if (_flushes.remove(oid) != null) {
 //                 Log.info("Resurrected " + oid + ".");
@@ -393,6 +477,10 @@ public class ClientDObjectMgr
             // add the subscriber and call them back straight away
             obj.addSubscriber(target);
             target.objectAvailable(obj);
+            PendingRequest<?> req = _penders.get(oid);
+            if (req != null) {
+                req.idle = false;
+            }
             return;
         }
 
@@ -400,18 +488,45 @@ public class ClientDObjectMgr
         @SuppressWarnings("unchecked") PendingRequest<T> req = (PendingRequest<T>)_penders.get(oid);
         if (req != null) {
             // add this subscriber to the list to be notified when the request is satisfied
-            req.addTarget(target);
-            return;
-        }
+            req.addTarget(target, interest);
+            if (covers(req.interest, interest)) {
+                return;
+            }
+            // if it won't include the attributes they want, we'll need to request them as well
+            interest = union(req.interest, interest);
 
-        // otherwise we need to create a new request
-        req = new PendingRequest<T>(oid);
-        req.addTarget(target);
-        _penders.put(oid, req);
-        // Log.info("Registering pending request [oid=" + oid + "].");
+        } else {
+            // otherwise we need to create a new request, which will have to include the
+            // attributes of the object that we already have (if any)
+            req = new PendingRequest<T>(oid);
+            req.addTarget(target, interest);
+            _penders.put(oid, req);
+            // Log.info("Registering pending request [oid=" + oid + "].");
+            if (obj != null) {
+                interest = union(_interests.get(oid), interest);
+            }
+        }
 
         // and issue a request to get things rolling
-        _comm.postMessage(new SubscribeRequest(oid));
+        req.interest = interest;
+        req.requested.add(interest);
+        _comm.postMessage((interest == null) ? new SubscribeRequest(oid) :
+                          new PartialSubscribeRequest(oid, interest.toArray(new String[0])));
+    }
+
+    /**
+     * Copies the named attributes, or all attributes if the names are null, from one instance of
+     * a distributed object to another.
+     */
+    protected void copyAttributes (DObject source, DObject dest, Set<String> names)
+    {
+        for (Field field : source.getClass().getFields()) {
+            String name = field.getName();
+            if (!Modifier.isStatic(field.getModifiers()) &&
+                (names == null || names.contains(name))) {
+                dest.setAttribute(name, source.getAttribute(name));
+            }
+        }
     }
 
     /**
@@ -438,7 +553,17 @@ public class ClientDObjectMgr
         // move this object into the dead pool so that we don't claim to have it around anymore;
         // once our unsubscribe message is processed, it'll be 86ed
         int ooid = obj.getOid();
+
+        // if we're widening our subscription to this object, its new subscribers will want it,
+        // but if they don't get it, we'll flush it once they've been told
+        PendingRequest<?> req = _penders.get(ooid);
+        if (req != null) {
+            req.idle = true;
+            return;
+        }
+
         _ocache.remove(ooid);
+        _interests.remove(ooid);
         _dead.put(ooid, obj);
 
         // ship off an unsubscribe message to the server; we'll remove the object from our table
@@ -474,12 +599,15 @@ public class ClientDObjectMgr
         public int oid;
         public Subscriber<T> target;
         public boolean subscribe;
+        public Set<String> interest;
 
-        public ObjectAction (int oid, Subscriber<T> target, boolean subscribe)
+        public ObjectAction (
+            int oid, Subscriber<T> target, boolean subscribe, Set<String> interest)
         {
             this.oid = oid;
             this.target = target;
             this.subscribe = subscribe;
+            this.interest = interest;
         }
 
         @Override
@@ -495,14 +623,27 @@ public class ClientDObjectMgr
         public int oid;
         public ArrayList<Subscriber<T>> targets = Lists.newArrayList();
 
+        /** The attributes wanted by each of our targets (null for all). */
+        public List<Set<String>> interests = Lists.newArrayList();
+
+        /** Whether the object, if we have it, has no subscribers other than our targets. */
+        public boolean idle;
+
+        /** The attributes that we will have once our requests are satisfied (null for all). */
+        public Set<String> interest;
+
+        /** The attributes requested by each of our outstanding requests (null for all). */
+        public List<Set<String>> requested = Lists.newArrayList();
+
         public PendingRequest (int oid)
         {
             this.oid = oid;
         }
 
-        public void addTarget (Subscriber<T> target)
+        public void addTarget (Subscriber<T> target, Set<String> interest)
         {
             targets.add(target);
+            interests.add(interest);
         }
     }
 
@@ -543,12 +684,33 @@ public class ClientDObjectMgr
     /** Pending object subscriptions. */
     protected HashIntMap<PendingRequest<?>> _penders = new HashIntMap<PendingRequest<?>>();
 
+    /** The attributes to which we are subscribed, for the objects to which we are subscribed
+     * only in part. */
+    protected HashIntMap<Set<String>> _interests = new HashIntMap<Set<String>>();
+
     /** A mapping from distributed object class to flush delay. */
     protected HashMap<Class<?>, Long> _delays = Maps.newHashMap();
 
     /** A set of objects waiting to be flushed. */
     protected HashIntMap<FlushRecord> _flushes = new HashIntMap<FlushRecord>();
 
+    /**
+     * Returns true if the supplied interest includes all of the desired attributes. A null
+     * interest includes all attributes.
+     */
+    protected static boolean covers (Set<String> interest, Set<String> desired)
+    {
+        return (interest == null) || (desired != null && interest.containsAll(desired));
+    }
+
+    /**
+     * Returns the union of the supplied interests, which is null if either is null.
+     */
+    protected static Set<String> union (Set<String> a, Set<String> b)
+    {
+        return (a == null || b == null) ? null : Sets.union(a, b).immutableCopy();
+    }
+
     /** The modifiers for our dump table debug hook (Alt+Shift). */
     protected static int DUMP_OTABLE_MODMASK = KeyEvent.ALT_DOWN_MASK|KeyEvent.SHIFT_DOWN_MASK;
 
@@ -18,6 +18,49 @@ public class PresentsConMgrStats extends ConMgrStats
      * are requested. */
     public int authQueueSize;
 
+    /** The number of distinct events flattened for delivery to subscribers since the server
+     * started up. */
+    public long eventsEncoded;
+
+    /** The number of event notifications sent using a shared encoding since the server started
+     * up. The ratio of this to {@link #eventsEncoded} is the average event fan-out. */
+    public long eventsSent;
+
+    /** The number of messages requesting unreliable transport that were dropped because their
+     * client was congested since the server started up. */
+    public long unreliableDropped;
+
+    /** The number of times a congested client's subscriptions have been paused since the server
+     * started up. */
+    public int subscriptionPauses;
+
+    /** The number of clients disconnected for congestion since the server started up. */
+    public int congestionDisconnects;
+
+    /** The number of times we've been woken up to read datagrams since the server started up. */
+    public long datagramWakeups;
+
+    /** The number of datagrams received since the server started up. The ratio of this to
+     * {@link #datagramWakeups} is the average number of datagrams read per wakeup. */
+    public long datagramsReceived;
+
+    /** The number of times a datagram sequencer has scanned its sent datagrams for newly
+     * acknowledged ones (once per datagram sent) since the server started up. */
+    public long datagramAckScans;
+
+    /** The total number of sent datagram records scanned when processing acknowledgements since
+     * the server started up. The ratio of this to {@link #datagramAckScans} is the average scan
+     * length. */
+    public long datagramAckScanLength;
+
+    /** The number of datagrams dropped because they were superseded by a later datagram to the
+     * same client before they could be sent since the server started up. */
+    public long datagramsSuperseded;
+
+    /** The number of packets used to send datagrams since the server started up. Several small
+     * datagrams to the same client may share a packet. */
+    public long datagramPackets;
+
     @Override // from Object
     public PresentsConMgrStats clone ()
     {
@@ -41,6 +41,44 @@ public abstract class Accessor implements Comparable<Accessor> {
         }
     }
 
+    /** Reads and writes attributes of a particular class by index. Implemented by the classes
+     * generated by {@link AccessorGenerator}. */
+    public interface Table {
+        /** Gets the current value of the attribute with the specified index. */
+        Object get (DObject obj, int index);
+
+        /** Updates the current value of the attribute with the specified index. */
+        void set (DObject obj, int index, Object value);
+    }
+
+    /** An accessor that reads and writes its field via generated code. Values that the generated
+     * code can't store directly (which {@link Field#set} would widen, or reject) are set
+     * reflectively. */
+    public static class Generated extends ByField {
+        public Generated (Field field, Table table, int index) {
+            super(field);
+            _table = table;
+            _index = index;
+        }
+
+        @Override
+        public Object get (DObject obj) {
+            return _table.get(obj, _index);
+        }
+
+        @Override
+        public void set (DObject obj, Object value) {
+            try {
+                _table.set(obj, _index, value);
+            } catch (ClassCastException | NullPointerException e) {
+                super.set(obj, value);
+            }
+        }
+
+        protected final Table _table;
+        protected final int _index;
+    }
+
     /** The name of this attribute. */
     public final String name;
 
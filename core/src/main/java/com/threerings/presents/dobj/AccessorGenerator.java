@@ -0,0 +1,216 @@
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2025 Three Rings Design, Inc., All Rights Reserved
+// https://github.com/threerings/narya/blob/master/LICENSE
+
+package com.threerings.presents.dobj;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+import java.util.List;
+import java.util.Map;
+
+import java.io.IOException;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import com.threerings.io.ClassFileWriter;
+
+import static com.threerings.presents.Log.log;
+
+/**
+ * Generates, at runtime, a hidden class for a {@link DObject} class that reads and writes its
+ * attributes with direct <code>getfield</code> and <code>putfield</code> instructions, selected by
+ * a <code>tableswitch</code> on the attribute's index, rather than via {@link Field#get} and
+ * {@link Field#set}. This is done by default; setting the
+ * <code>com.threerings.presents.dobj.reflectiveAccessors</code> system property, running under a
+ * security manager or a failure to generate the class results in the use of reflection.
+ *
+ * <p> Fields that cannot be accessed directly from the object's class (final fields, or those
+ * whose declaring class or type is not accessible) are always accessed reflectively.
+ */
+public class AccessorGenerator extends ClassFileWriter
+{
+    /**
+     * Creates accessors for the supplied fields of the supplied class, using generated code for
+     * those that it can access directly, if generation is enabled, and reflection for the rest.
+     */
+    @SuppressWarnings("removal")
+    public static Accessor[] createAccessors (Class<?> target, List<Field> fields)
+    {
+        Accessor[] accs = new Accessor[fields.size()];
+        List<Field> direct = Lists.newArrayList();
+        if (ENABLED && System.getSecurityManager() == null) {
+            for (Field field : fields) {
+                if (isDirect(target, field)) {
+                    direct.add(field);
+                }
+            }
+        }
+
+        Accessor.Table table = null;
+        if (!direct.isEmpty()) {
+            try {
+                table = create(target, direct);
+            } catch (Throwable t) {
+                log.warning("Unable to generate accessors, using reflection",
+                            "class", target.getName(), "error", t);
+            }
+        }
+
+        for (int ii = 0; ii < accs.length; ii++) {
+            Field field = fields.get(ii);
+            int index = (table == null) ? -1 : direct.indexOf(field);
+            accs[ii] = (index < 0) ? new Accessor.ByField(field) :
+                new Accessor.Generated(field, table, index);
+        }
+        return accs;
+    }
+
+    /**
+     * Generates, defines and instantiates an accessor table for the supplied class and fields.
+     */
+    protected static Accessor.Table create (Class<?> target, List<Field> fields)
+        throws Throwable
+    {
+        byte[] data = new AccessorGenerator(target, fields).toByteArray();
+        return (Accessor.Table)newHiddenInstance(target, data);
+    }
+
+    /**
+     * Returns true if the supplied field can be read and written directly by code nested in the
+     * supplied class.
+     */
+    protected static boolean isDirect (Class<?> target, Field field)
+    {
+        return !Modifier.isFinal(field.getModifiers()) &&
+            isAccessible(target, field.getDeclaringClass()) &&
+            isAccessible(target, field.getType());
+    }
+
+    /**
+     * Returns true if the supplied class is accessible from the supplied target's package.
+     */
+    protected static boolean isAccessible (Class<?> target, Class<?> clazz)
+    {
+        while (clazz.isArray()) {
+            clazz = clazz.getComponentType();
+        }
+        return clazz.isPrimitive() || Modifier.isPublic(clazz.getModifiers()) ||
+            (clazz.getClassLoader() == target.getClassLoader() &&
+             clazz.getPackageName().equals(target.getPackageName()));
+    }
+
+    protected AccessorGenerator (Class<?> target, List<Field> fields)
+    {
+        _target = target;
+        _fields = fields;
+    }
+
+    /**
+     * Generates and returns the class file for our target.
+     */
+    protected byte[] toByteArray ()
+        throws IOException
+    {
+        // generate our methods first so that the constant pool is fully populated
+        byte[] init = createInit("java/lang/Object");
+        byte[] get = createGet();
+        byte[] set = createSet();
+        return toClassFile(internalName(_target) + "$$Accessors", "java/lang/Object",
+                           new String[] { internalName(Accessor.Table.class) }, init, get, set);
+    }
+
+    protected byte[] createGet ()
+        throws IOException
+    {
+        Code code = new Code();
+        code.op(ILOAD_2);
+        code.tableSwitch(_fields.size());
+        for (Field field : _fields) {
+            code.switchTarget();
+            Class<?> ftype = field.getType();
+            code.op(ALOAD_1);
+            code.op(CHECKCAST, classRef(internalName(field.getDeclaringClass())));
+            code.op(GETFIELD, fieldRef(field));
+            if (ftype.isPrimitive()) {
+                String boxed = internalName(BOXES.get(ftype));
+                code.op(INVOKESTATIC, methodRef(
+                            boxed, "valueOf", "(" + descriptor(ftype) + ")L" + boxed + ";"));
+            }
+            code.op(ARETURN);
+        }
+        code.switchTarget();
+        throwBadIndex(code);
+        return method(ACC_PUBLIC, "get", "(" + DOBJ_DESC + "I)Ljava/lang/Object;", code,
+                      MAX_STACK, MAX_LOCALS);
+    }
+
+    protected byte[] createSet ()
+        throws IOException
+    {
+        Code code = new Code();
+        code.op(ILOAD_2);
+        code.tableSwitch(_fields.size());
+        for (Field field : _fields) {
+            code.switchTarget();
+            Class<?> ftype = field.getType();
+            code.op(ALOAD_1);
+            code.op(CHECKCAST, classRef(internalName(field.getDeclaringClass())));
+            code.op(ALOAD_3);
+            if (ftype.isPrimitive()) {
+                String boxed = internalName(BOXES.get(ftype));
+                code.op(CHECKCAST, classRef(boxed));
+                code.op(INVOKEVIRTUAL, methodRef(
+                            boxed, ftype.getName() + "Value", "()" + descriptor(ftype)));
+            } else if (ftype != Object.class) {
+                code.op(CHECKCAST, classRef(internalName(ftype)));
+            }
+            code.op(PUTFIELD, fieldRef(field));
+            code.op(RETURN);
+        }
+        code.switchTarget();
+        throwBadIndex(code);
+        return method(ACC_PUBLIC, "set", "(" + DOBJ_DESC + "ILjava/lang/Object;)V", code,
+                      MAX_STACK, MAX_LOCALS);
+    }
+
+    /**
+     * Throws an {@link IllegalArgumentException}; used for indices outside our table.
+     */
+    protected void throwBadIndex (Code code)
+    {
+        String iae = "java/lang/IllegalArgumentException";
+        code.op(NEW, classRef(iae));
+        code.op(DUP);
+        code.op(INVOKESPECIAL, methodRef(iae, "<init>", "()V"));
+        code.op(ATHROW);
+    }
+
+    protected final Class<?> _target;
+    protected final List<Field> _fields;
+
+    /** Whether or not accessor generation is enabled. */
+    protected static final boolean ENABLED =
+        !Boolean.getBoolean("com.threerings.presents.dobj.reflectiveAccessors");
+
+    /** Maps primitive types to their boxed types. */
+    protected static final Map<Class<?>, Class<?>> BOXES = Maps.newHashMap();
+    static {
+        Class<?>[] types = { Boolean.TYPE, Byte.TYPE, Character.TYPE, Short.TYPE, Integer.TYPE,
+                             Long.TYPE, Float.TYPE, Double.TYPE };
+        Class<?>[] boxes = { Boolean.class, Byte.class, Character.class, Short.class,
+                             Integer.class, Long.class, Float.class, Double.class };
+        for (int ii = 0; ii < types.length; ii++) {
+            BOXES.put(types[ii], boxes[ii]);
+        }
+    }
+
+    /** The descriptor of the object argument to our generated methods. */
+    protected static final String DOBJ_DESC = "L" + internalName(DObject.class) + ";";
+
+    /** Our generated code never needs more than this much stack or more than these locals. */
+    protected static final int MAX_STACK = 4, MAX_LOCALS = 4;
+}
@@ -118,7 +118,9 @@ public class AttributeChangedEvent extends NamedEvent
     {
         // if we're not already applied, grab the previous value and apply the attribute change
         if (!alreadyApplied()) {
-            _oldValue = target.getAttribute(_name);
+            // look our attribute up once and use its accessor to both read and write it
+            Accessor acc = target.getAccessor(_name);
+            _oldValue = acc.get(target);
             Object value = _value;
             if (value != null) {
                 Class<?> vclass = value.getClass();
@@ -135,7 +137,7 @@ public class AttributeChangedEvent extends NamedEvent
                 }
             }
             // pass the new value on to the object
-            target.setAttribute(_name, value);
+            acc.set(target, value);
         }
         return true;
     }
@@ -7,6 +7,8 @@ package com.threerings.presents.dobj;
 
 import java.util.List;
 
+import com.google.common.base.Predicate;
+
 import com.threerings.util.StreamableArrayList;
 
 import com.threerings.presents.net.Transport;
@@ -62,6 +64,28 @@ public class CompoundEvent extends DEvent
         return _events;
     }
 
+    /**
+     * Returns a compound event with our target, event id and transport that contains only those of
+     * our events that are accepted by the supplied filter. This is used to tailor an event that has
+     * already been dispatched to the needs of a particular subscriber.
+     */
+    public CompoundEvent filter (Predicate<? super DEvent> filter)
+    {
+        CompoundEvent filtered = new CompoundEvent();
+        filtered._toid = _toid;
+        filtered._soid = _soid;
+        filtered.eventId = eventId;
+        filtered._transport = _transport;
+        filtered._events = StreamableArrayList.newList();
+        for (int ii = 0, nn = _events.size(); ii < nn; ii++) {
+            DEvent event = _events.get(ii);
+            if (filter.apply(event)) {
+                filtered._events.add(event);
+            }
+        }
+        return filtered;
+    }
+
     /**
      * Commits this transaction by posting this event to the distributed object event queue. All
      * participating dobjects will have their transaction references cleared and will go back to
@@ -478,6 +478,38 @@ public class DObject
         return getAccessor(name).get(this);
     }
 
+    /**
+     * Returns the index of the named attribute, which may be used to get and set it via {@link
+     * #getAttribute(int)} and {@link #setAttribute(int,Object)} without looking it up by name each
+     * time. Indices are stable for a given class in a given VM, but may not be sent over the wire.
+     *
+     * @exception IllegalArgumentException thrown if this object has no such attribute.
+     */
+    public int getAttributeIndex (String name)
+    {
+        return getAccessorIndex(name);
+    }
+
+    /**
+     * Sets the attribute with the specified index (see {@link #getAttributeIndex}) to the
+     * specified value. Like {@link #setAttribute(String,Object)}, this should only be used by the
+     * internals of the event dispatch mechanism.
+     */
+    public void setAttribute (int index, Object value)
+    {
+        _accessors[index].set(this, value);
+    }
+
+    /**
+     * Returns the value of the attribute with the specified index (see {@link
+     * #getAttributeIndex}). Like {@link #getAttribute(String)}, this should only be used by the
+     * internals of the event dispatch mechanism.
+     */
+    public Object getAttribute (int index)
+    {
+        return _accessors[index].get(this);
+    }
+
     /**
      * Posts a message event on this distributed object.
      */
@@ -924,9 +956,13 @@ public class DObject
                             new Exception());
             }
         }
-        // dispatch an entry updated event
-        postEvent(new EntryUpdatedEvent<T>(_oid, name, entry).
-                  setOldEntry(oldEntry).setTransport(transport));
+        // dispatch an entry updated event, which carries only the changed fields of delta entries
+        // if it is sure to be delivered, since each patch builds on the last
+        EntryUpdatedEvent<T> event =
+            (transport.isReliable() && EntryPatchedEvent.canPatch(oldEntry, entry)) ?
+            new EntryPatchedEvent<T>(_oid, name, entry) :
+            new EntryUpdatedEvent<T>(_oid, name, entry);
+        postEvent(event.setOldEntry(oldEntry).setTransport(transport));
     }
 
     protected boolean isAuthoritative ()
@@ -939,18 +975,32 @@ public class DObject
      * IllegalArgumentException}.
      */
     protected final Accessor getAccessor (String name)
+    {
+        return _accessors[getAccessorIndex(name)];
+    }
+
+    /**
+     * Returns the index in {@link #_accessors} of the field with the specified name or throws an
+     * {@link IllegalArgumentException}.
+     */
+    protected final int getAccessorIndex (String name)
     {
         int low = 0, high = _accessors.length-1;
         while (low <= high) {
             int mid = (low + high) >> 1;
             Accessor midVal = _accessors[mid];
+            // names are usually the interned constants of the generated code, so check identity
+            // before doing a full comparison
+            if (midVal.name == name) {
+                return mid;
+            }
             int cmp = midVal.name.compareTo(name);
             if (cmp < 0) {
                 low = mid + 1;
             } else if (cmp > 0) {
                 high = mid - 1;
             } else {
-                return midVal; // key found
+                return mid; // key found
             }
         }
         throw new IllegalArgumentException("No such field " + getClass().getName() + "." + name);
@@ -959,19 +1009,20 @@ public class DObject
     /**
      * Creates the accessors that will be used to read and write this object's attributes. The
      * default implementation assumes the object's attributes are all public fields and uses
-     * reflection to get and set their values.
+     * generated code (see {@link AccessorGenerator}), or failing that reflection, to get and set
+     * their values.
      */
     protected Accessor[] createAccessors ()
     {
         Field[] fields = getClass().getFields();
         // assume we have one static field for every non-static field
-        List<Accessor> accs = Lists.newArrayListWithExpectedSize(fields.length/2);
+        List<Field> attrs = Lists.newArrayListWithExpectedSize(fields.length/2);
         for (Field field : fields) {
             if (!Modifier.isStatic(field.getModifiers())) { // skip static fields
-                accs.add(new Accessor.ByField(field));
+                attrs.add(field);
             }
         }
-        return accs.toArray(new Accessor[accs.size()]);
+        return AccessorGenerator.createAccessors(getClass(), attrs);
     }
 
     /**
@@ -1031,6 +1082,7 @@ public class DObject
     /** Any local attributes configured on this object. */
     protected transient Object[] _locattrs = ArrayUtil.EMPTY_OBJECT;
 
-    /** Maintains a mapping of sorted accessor arrays for each distributed object class. */
-    protected static Map<Class<?>, Accessor[]> _atable = Maps.newHashMap();
+    /** Maintains a mapping of sorted accessor arrays for each distributed object class. Objects
+     * may be created on any of the dobjmgr's dispatch threads, so this must be concurrent. */
+    protected static Map<Class<?>, Accessor[]> _atable = Maps.newConcurrentMap();
 }
@@ -14,8 +14,6 @@ import java.util.Set;
 
 import java.io.IOException;
 
-import com.samskivert.util.ArrayUtil;
-
 import com.threerings.io.ObjectInputStream;
 import com.threerings.io.ObjectOutputStream;
 import com.threerings.io.Streamable;
@@ -62,6 +60,25 @@ public class DSet<E extends DSet.Entry>
         Comparable<?> getKey ();
     }
 
+    /**
+     * Entries that implement this interface are updated by sending subscribers only those of
+     * their fields that changed, which they use to patch a copy of their existing entry, rather
+     * than the entire entry. This happens when an entry is updated on the server with a new
+     * instance of the same class as the entry it replaces; entries updated in place, and entries
+     * that are streamed by custom <code>readObject</code> and <code>writeObject</code> methods,
+     * are always sent in full.
+     *
+     * <p> Field values are compared using {@link Object#equals}, so mutable field values must be
+     * replaced rather than modified in place. Entry patches are not understood by the
+     * ActionScript client, so only sets whose subscribers are all Java clients or peers should
+     * contain entries that implement this interface.
+     *
+     * @see EntryPatchedEvent
+     */
+    public static interface DeltaEntry extends Entry
+    {
+    }
+
     /**
      * Creates a new DSet of the appropriate generic type.
      */
@@ -187,9 +204,7 @@ public class DSet<E extends DSet.Entry>
      */
     public E get (Comparable<?> key)
     {
-        // determine where we'll be adding the new element
-        int eidx = ArrayUtil.binarySearch(
-            _entries, 0, _size, new SimpleEntry<Comparable<?>>(key), ENTRY_COMP);
+        int eidx = indexOf(key);
         return (eidx < 0) ? null : _entries[eidx];
     }
 
@@ -279,7 +294,7 @@ public class DSet<E extends DSet.Entry>
     protected boolean add (E elem)
     {
         // determine where we'll be adding the new element
-        int eidx = ArrayUtil.binarySearch(_entries, 0, _size, elem, ENTRY_COMP);
+        int eidx = indexOf(elem.getKey());
 
         // if the element is already in the set, bail now
         if (eidx >= 0) {
@@ -347,8 +362,7 @@ public class DSet<E extends DSet.Entry>
         }
 
         // look up this entry's position in our set
-        int eidx = ArrayUtil.binarySearch(
-            _entries, 0, _size, new SimpleEntry<Comparable<?>>(key), ENTRY_COMP);
+        int eidx = indexOf(key);
 
         // if we found it, remove it
         if (eidx >= 0) {
@@ -387,7 +401,7 @@ public class DSet<E extends DSet.Entry>
     protected E update (E elem)
     {
         // look up this entry's position in our set
-        int eidx = ArrayUtil.binarySearch(_entries, 0, _size, elem, ENTRY_COMP);
+        int eidx = indexOf(elem.getKey());
 
         // if we found it, update it
         if (eidx >= 0) {
@@ -400,6 +414,31 @@ public class DSet<E extends DSet.Entry>
         }
     }
 
+    /**
+     * Locates the entry with the specified key. We search on the key directly so that we needn't
+     * wrap it in an entry (and allocate) for every lookup.
+     *
+     * @return the index of the entry with the specified key if it is in the set, otherwise
+     * <code>(-(insertion point) - 1)</code> where the insertion point is the index at which an
+     * entry with the key would be added.
+     */
+    protected int indexOf (Comparable<?> key)
+    {
+        int low = 0, high = _size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compare(_entries[mid].getKey(), key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
     /**
      * Returns the minimum size where we should warn that we're getting a bit large.
      */
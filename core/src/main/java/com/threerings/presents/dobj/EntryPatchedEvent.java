@@ -0,0 +1,157 @@
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2025 Three Rings Design, Inc., All Rights Reserved
+// https://github.com/threerings/narya/blob/master/LICENSE
+
+package com.threerings.presents.dobj;
+
+import java.io.IOException;
+
+import com.threerings.io.ArrayMask;
+import com.threerings.io.ObjectInputStream;
+import com.threerings.io.ObjectOutputStream;
+import com.threerings.io.Streamer;
+import com.threerings.io.Streamer.ClassStreamer;
+
+import static com.threerings.presents.Log.log;
+
+/**
+ * An entry updated event that streams only those fields of the updated entry that differ from the
+ * entry it replaced. The receiver creates its updated entry by patching a copy of the entry in
+ * its set with those fields, so listeners see the same new and old entries as they would for a
+ * regular {@link EntryUpdatedEvent}. These events are generated by {@link DObject} for the
+ * reliable updates of {@link DSet.DeltaEntry} entries.
+ *
+ * @param <T> the type of entry being handled by this event. This must match the type on the set
+ * that generated this event.
+ */
+public class EntryPatchedEvent<T extends DSet.Entry> extends EntryUpdatedEvent<T>
+{
+    /**
+     * Returns true if an update replacing the supplied old entry with the supplied new entry can
+     * be sent as a patch.
+     */
+    public static boolean canPatch (DSet.Entry oldEntry, DSet.Entry entry)
+    {
+        if (!(entry instanceof DSet.DeltaEntry) || oldEntry == null || oldEntry == entry ||
+            oldEntry.getClass() != entry.getClass()) {
+            return false;
+        }
+        try {
+            Streamer streamer = Streamer.getStreamer(entry.getClass());
+            return (streamer instanceof ClassStreamer) &&
+                ((ClassStreamer)streamer).supportsDeltas();
+        } catch (IOException ioe) {
+            return false;
+        }
+    }
+
+    /**
+     * Constructs a new entry patched event on the specified target object for the specified set
+     * name and with the supplied updated entry. The entry that it replaces must be provided via
+     * {@link #setOldEntry} before the event is streamed.
+     *
+     * @param targetOid the object id of the object in whose set we will update an entry.
+     * @param name the name of the attribute in which to update the specified entry.
+     * @param entry the entry to update.
+     */
+    public EntryPatchedEvent (int targetOid, String name, T entry)
+    {
+        super(targetOid, name, entry);
+    }
+
+    @Override
+    public Comparable<?> getKey ()
+    {
+        // our entry's key fields are not filled in until we're applied
+        return (_key != null) ? _key : super.getKey();
+    }
+
+    @Override
+    public boolean applyToObject (DObject target)
+        throws ObjectAccessException
+    {
+        if (_mask != null) {
+            DSet<T> set = target.getSet(_name);
+            T base = set.get(_key);
+            if (base == null || base.getClass() != _entry.getClass()) {
+                log.warning("No matching entry to patch", "event", this, "set", set);
+                return false;
+            }
+            _streamer.completeDelta(base, _entry, _mask);
+            _mask = null;
+        }
+        return super.applyToObject(target);
+    }
+
+    /**
+     * Writes our custom streamable fields.
+     */
+    public void writeObject (ObjectOutputStream out)
+        throws IOException
+    {
+        out.writeInt(_toid);
+        out.writeIntern(_name);
+
+        // if we somehow lack the entry we replaced, or have since been made unreliable, send our
+        // entry in full; a lost patch would leave the receiver's entry wrong for good
+        boolean patch = (_oldEntry != UNSET_OLD_ENTRY && getTransport().isReliable() &&
+                         canPatch(_oldEntry, _entry));
+        out.writeBoolean(patch);
+        if (!patch) {
+            out.writeObject(_entry);
+            return;
+        }
+        Class<?> eclass = _entry.getClass();
+        out.writeObject(eclass);
+        out.writeObject(_entry.getKey());
+        ((ClassStreamer)Streamer.getStreamer(eclass)).writeDelta(_oldEntry, _entry, out);
+    }
+
+    /**
+     * Reads our custom streamable fields.
+     */
+    public void readObject (ObjectInputStream in)
+        throws IOException, ClassNotFoundException
+    {
+        _toid = in.readInt();
+        _name = in.readIntern();
+        if (!in.readBoolean()) {
+            @SuppressWarnings("unchecked") T entry = (T)in.readObject();
+            _entry = entry;
+            return;
+        }
+
+        Class<?> eclass = (Class<?>)in.readObject();
+        if (!DSet.Entry.class.isAssignableFrom(eclass)) {
+            throw new IOException("Patched entry is not a set entry [class=" + eclass + "]");
+        }
+        _key = (Comparable<?>)in.readObject();
+        Streamer streamer = Streamer.getStreamer(eclass);
+        if (!(streamer instanceof ClassStreamer)) {
+            throw new IOException("Patched entry does not support deltas [class=" + eclass + "]");
+        }
+        _streamer = (ClassStreamer)streamer;
+        @SuppressWarnings("unchecked") T entry = (T)_streamer.createObject(in);
+        _entry = entry;
+        _mask = _streamer.readDelta(_entry, in);
+    }
+
+    @Override
+    protected void toString (StringBuilder buf)
+    {
+        super.toString(buf);
+        if (_mask != null) {
+            buf.append(", key=").append(_key).append(" (unpatched)");
+        }
+    }
+
+    /** The key of the entry to be patched, if we were streamed as a patch. */
+    protected transient Comparable<?> _key;
+
+    /** The streamer for our entry's class, if we were streamed as a patch. */
+    protected transient ClassStreamer _streamer;
+
+    /** Identifies the fields of our entry that were streamed, until we have been patched. */
+    protected transient ArrayMask _mask;
+}
@@ -0,0 +1,151 @@
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2025 Three Rings Design, Inc., All Rights Reserved
+// https://github.com/threerings/narya/blob/master/LICENSE
+
+package com.threerings.presents.dobj;
+
+import java.util.Iterator;
+import java.util.Map;
+
+import java.io.IOException;
+
+import com.google.common.collect.Maps;
+
+import com.threerings.io.ObjectInputStream;
+
+/**
+ * A distributed set that maintains a hash index of its entries by key, so that {@link #get} and
+ * {@link #containsKey} take constant time rather than requiring a binary search. This is
+ * worthwhile for large sets that are looked up far more often than they are modified. Iteration
+ * remains in key order, and an indexed set's entries are streamed exactly as a regular set's are.
+ *
+ * <p> An indexed set is streamed under its own class name, however, so it may only be used in
+ * objects whose readers all know the class: Java clients built with it and ActionScript clients
+ * (which read it as a regular set), but not older Java clients or C++ clients. The sets of the
+ * objects provided by this library are therefore regular sets, and servers that know their
+ * clients are up to date may opt in by replacing them with indexed sets.
+ *
+ * <p> The keys of an indexed set's entries must implement {@link Object#equals} and {@link
+ * Object#hashCode} consistently with their {@link Comparable#compareTo}.
+ *
+ * @param <E> the type of entry stored in this set.
+ */
+public class IndexedDSet<E extends DSet.Entry> extends DSet<E>
+{
+    /**
+     * Creates a new indexed set of the appropriate generic type.
+     */
+    public static <E extends DSet.Entry> IndexedDSet<E> newIndexedDSet ()
+    {
+        return new IndexedDSet<E>();
+    }
+
+    /**
+     * Creates an indexed set and populates it with values from the supplied iterator. See {@link
+     * DSet#DSet(Iterable)}.
+     */
+    public IndexedDSet (Iterable<? extends E> source)
+    {
+        super(source);
+    }
+
+    /**
+     * Creates an indexed set and populates it with values from the supplied iterator. See {@link
+     * DSet#DSet(Iterator)}.
+     */
+    public IndexedDSet (Iterator<? extends E> source)
+    {
+        super(source);
+    }
+
+    /**
+     * Creates an indexed set and populates it with values from the supplied array. See {@link
+     * DSet#DSet(Object[])}.
+     */
+    public IndexedDSet (E[] source)
+    {
+        super(source);
+    }
+
+    /**
+     * Constructs an empty indexed set.
+     */
+    public IndexedDSet ()
+    {
+    }
+
+    @Override // from DSet
+    public E get (Comparable<?> key)
+    {
+        return getIndex().get(key);
+    }
+
+    @Override // from DSet
+    public IndexedDSet<E> clone ()
+    {
+        IndexedDSet<E> nset = (IndexedDSet<E>)super.clone();
+        nset._index = (_index == null) ? null : Maps.newHashMap(_index);
+        return nset;
+    }
+
+    @Override // from DSet
+    public void readObject (ObjectInputStream in)
+        throws IOException, ClassNotFoundException
+    {
+        super.readObject(in);
+        _index = null;
+        for (int ii = 0; ii < _size; ii++) {
+            getIndex().put(_entries[ii].getKey(), _entries[ii]);
+        }
+    }
+
+    @Override // from DSet
+    protected boolean add (E elem)
+    {
+        if (!super.add(elem)) {
+            return false;
+        }
+        getIndex().put(elem.getKey(), elem);
+        return true;
+    }
+
+    @Override // from DSet
+    protected E removeKey (Comparable<?> key)
+    {
+        E oldEntry = super.removeKey(key);
+        if (oldEntry != null) {
+            getIndex().remove(key);
+        }
+        return oldEntry;
+    }
+
+    @Override // from DSet
+    protected E update (E elem)
+    {
+        // avoid searching for entries that aren't in the set
+        if (!getIndex().containsKey(elem.getKey())) {
+            return null;
+        }
+        E oldEntry = super.update(elem);
+        if (oldEntry != null) {
+            getIndex().put(elem.getKey(), elem);
+        }
+        return oldEntry;
+    }
+
+    /**
+     * Returns our index, creating it if necessary. Our superclass constructors add entries before
+     * our fields are initialized, so the index is created lazily.
+     */
+    protected Map<Object, E> getIndex ()
+    {
+        if (_index == null) {
+            _index = Maps.newHashMap();
+        }
+        return _index;
+    }
+
+    /** Our entries mapped by key. */
+    protected transient Map<Object, E> _index;
+}
@@ -0,0 +1,380 @@
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2025 Three Rings Design, Inc., All Rights Reserved
+// https://github.com/threerings/narya/blob/master/LICENSE
+
+package com.threerings.presents.dobj;
+
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import java.io.IOException;
+
+import com.threerings.io.ObjectInputStream;
+import com.threerings.io.ObjectOutputStream;
+
+import static com.threerings.presents.Log.log;
+
+/**
+ * A distributed set whose entries are kept in a shallow persistent tree, so that cloning it takes
+ * constant time and modifying it copies only the parts of the tree that are touched, rather than
+ * the whole set. This makes large sets much cheaper to replace wholesale (the generated setters
+ * and {@link AttributeChangedEvent} both clone the sets they are given) and to modify after they
+ * have been cloned. Lookups remain logarithmic, and iteration remains in key order. A persistent
+ * set is streamed exactly as a regular set is.
+ *
+ * <p> The tree has a single level of sorted leaves of at most {@link #MAX_LEAF_SIZE} entries
+ * below a root array. Neither the root nor the leaves are ever modified once created: adding,
+ * removing or updating an entry creates a new copy of the affected leaf and of the root, which
+ * for a set of <code>n</code> entries amounts to copying around <code>n/50</code> references
+ * rather than the <code>n/2</code> shifted by a regular set. Clones share the tree.
+ *
+ * @param <E> the type of entry stored in this set.
+ */
+public class PersistentDSet<E extends DSet.Entry> extends DSet<E>
+{
+    /**
+     * Creates a new persistent set of the appropriate generic type.
+     */
+    public static <E extends DSet.Entry> PersistentDSet<E> newPersistentDSet ()
+    {
+        return new PersistentDSet<E>();
+    }
+
+    /**
+     * Creates a persistent set and populates it with values from the supplied iterator. See
+     * {@link DSet#DSet(Iterable)}.
+     */
+    public PersistentDSet (Iterable<? extends E> source)
+    {
+        super(source);
+    }
+
+    /**
+     * Creates a persistent set and populates it with values from the supplied iterator. See
+     * {@link DSet#DSet(Iterator)}.
+     */
+    public PersistentDSet (Iterator<? extends E> source)
+    {
+        super(source);
+    }
+
+    /**
+     * Creates a persistent set and populates it with values from the supplied array. See {@link
+     * DSet#DSet(Object[])}.
+     */
+    public PersistentDSet (E[] source)
+    {
+        super(source);
+    }
+
+    /**
+     * Constructs an empty persistent set.
+     */
+    public PersistentDSet ()
+    {
+    }
+
+    @Override // from DSet
+    public E get (Comparable<?> key)
+    {
+        Entry[][] root = getRoot();
+        int lidx = leafIndexOf(root, key);
+        if (lidx == root.length) {
+            return null;
+        }
+        int eidx = indexOf(root[lidx], key);
+        @SuppressWarnings("unchecked") E entry = (eidx < 0) ? null : (E)root[lidx][eidx];
+        return entry;
+    }
+
+    @Override // from DSet
+    public Iterator<E> iterator ()
+    {
+        final Entry[][] root = getRoot();
+        return new Iterator<E>() {
+            public boolean hasNext () {
+                checkComodification();
+                return (_lidx < root.length);
+            }
+            public E next () {
+                checkComodification();
+                if (_lidx >= root.length) {
+                    throw new NoSuchElementException();
+                }
+                @SuppressWarnings("unchecked") E entry = (E)root[_lidx][_eidx++];
+                if (_eidx == root[_lidx].length) {
+                    _lidx++;
+                    _eidx = 0;
+                }
+                return entry;
+            }
+            public void remove () {
+                throw new UnsupportedOperationException();
+            }
+            protected void checkComodification () {
+                if (_modCount != _expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+            }
+            protected int _lidx, _eidx;
+            protected int _expectedModCount = _modCount;
+        };
+    }
+
+    @Override // from DSet
+    public PersistentDSet<E> clone ()
+    {
+        // our tree is never modified, so our clone can share it
+        PersistentDSet<E> nset = (PersistentDSet<E>)super.clone();
+        nset._root = _root;
+        return nset;
+    }
+
+    @Override // from DSet
+    public String toString ()
+    {
+        StringBuilder buf = new StringBuilder("(");
+        String prefix = "";
+        for (E elem : this) {
+            buf.append(prefix);
+            prefix = ", ";
+            buf.append(elem);
+        }
+        buf.append(")");
+        return buf.toString();
+    }
+
+    @Override // from DSet
+    public void writeObject (ObjectOutputStream out)
+        throws IOException
+    {
+        out.writeInt(_size);
+        for (Entry[] leaf : getRoot()) {
+            for (Entry entry : leaf) {
+                out.writeObject(entry);
+            }
+        }
+    }
+
+    @Override // from DSet
+    public void readObject (ObjectInputStream in)
+        throws IOException, ClassNotFoundException
+    {
+        _size = in.readInt();
+        // fill our leaves most of the way, leaving room to add entries without splitting them
+        int leafSize = MAX_LEAF_SIZE * 3 / 4;
+        Entry[][] root = new Entry[(_size + leafSize - 1) / leafSize][];
+        for (int ii = 0, remain = _size; ii < root.length; ii++, remain -= leafSize) {
+            Entry[] leaf = new Entry[Math.min(remain, leafSize)];
+            for (int ee = 0; ee < leaf.length; ee++) {
+                leaf[ee] = (Entry)in.readObject();
+            }
+            root[ii] = leaf;
+        }
+        _root = root;
+    }
+
+    @Override // from DSet
+    protected boolean add (E elem)
+    {
+        Entry[][] root = getRoot();
+        Comparable<?> key = elem.getKey();
+        if (root.length == 0) {
+            _root = new Entry[][] { new Entry[] { elem } };
+            noteModified(1);
+            return true;
+        }
+
+        // add to the leaf that would contain the key, or to the last leaf if the key is past them
+        int lidx = Math.min(leafIndexOf(root, key), root.length - 1);
+        Entry[] leaf = root[lidx];
+        int eidx = indexOf(leaf, key);
+        if (eidx >= 0) {
+            log.warning("Refusing to add duplicate entry", "entry", elem, "set", this,
+                        new Exception());
+            return false;
+        }
+        eidx = -(eidx+1);
+
+        Entry[] nleaf = new Entry[leaf.length + 1];
+        System.arraycopy(leaf, 0, nleaf, 0, eidx);
+        nleaf[eidx] = elem;
+        System.arraycopy(leaf, eidx, nleaf, eidx+1, leaf.length-eidx);
+
+        if (nleaf.length <= MAX_LEAF_SIZE) {
+            _root = replaceLeaf(root, lidx, nleaf);
+        } else {
+            // split the leaf in two
+            int half = nleaf.length / 2;
+            Entry[] left = new Entry[half], right = new Entry[nleaf.length - half];
+            System.arraycopy(nleaf, 0, left, 0, half);
+            System.arraycopy(nleaf, half, right, 0, right.length);
+            Entry[][] nroot = new Entry[root.length + 1][];
+            System.arraycopy(root, 0, nroot, 0, lidx);
+            nroot[lidx] = left;
+            nroot[lidx+1] = right;
+            System.arraycopy(root, lidx+1, nroot, lidx+2, root.length-lidx-1);
+            _root = nroot;
+        }
+        noteModified(1);
+        return true;
+    }
+
+    @Override // from DSet
+    protected E removeKey (Comparable<?> key)
+    {
+        // don't fail, but generate a warning if we're passed a null key
+        if (key == null) {
+            log.warning("Requested to remove null key.", new Exception());
+            return null;
+        }
+
+        Entry[][] root = getRoot();
+        int lidx = leafIndexOf(root, key);
+        if (lidx == root.length) {
+            return null;
+        }
+        Entry[] leaf = root[lidx];
+        int eidx = indexOf(leaf, key);
+        if (eidx < 0) {
+            return null;
+        }
+        @SuppressWarnings("unchecked") E oldEntry = (E)leaf[eidx];
+
+        if (leaf.length == 1) {
+            // remove the leaf entirely
+            Entry[][] nroot = new Entry[root.length - 1][];
+            System.arraycopy(root, 0, nroot, 0, lidx);
+            System.arraycopy(root, lidx+1, nroot, lidx, nroot.length-lidx);
+            _root = nroot;
+
+        } else {
+            Entry[] nleaf = new Entry[leaf.length - 1];
+            System.arraycopy(leaf, 0, nleaf, 0, eidx);
+            System.arraycopy(leaf, eidx+1, nleaf, eidx, nleaf.length-eidx);
+
+            // merge small leaves with their successor so that removals don't leave us with a
+            // root full of tiny leaves
+            if (nleaf.length < MAX_LEAF_SIZE / 4 && lidx < root.length - 1 &&
+                nleaf.length + root[lidx+1].length <= MAX_LEAF_SIZE) {
+                Entry[] next = root[lidx+1];
+                Entry[] merged = new Entry[nleaf.length + next.length];
+                System.arraycopy(nleaf, 0, merged, 0, nleaf.length);
+                System.arraycopy(next, 0, merged, nleaf.length, next.length);
+                Entry[][] nroot = new Entry[root.length - 1][];
+                System.arraycopy(root, 0, nroot, 0, lidx);
+                nroot[lidx] = merged;
+                System.arraycopy(root, lidx+2, nroot, lidx+1, nroot.length-lidx-1);
+                _root = nroot;
+            } else {
+                _root = replaceLeaf(root, lidx, nleaf);
+            }
+        }
+        noteModified(-1);
+        return oldEntry;
+    }
+
+    @Override // from DSet
+    protected E update (E elem)
+    {
+        Entry[][] root = getRoot();
+        Comparable<?> key = elem.getKey();
+        int lidx = leafIndexOf(root, key);
+        if (lidx == root.length) {
+            return null;
+        }
+        Entry[] leaf = root[lidx];
+        int eidx = indexOf(leaf, key);
+        if (eidx < 0) {
+            return null;
+        }
+        @SuppressWarnings("unchecked") E oldEntry = (E)leaf[eidx];
+        Entry[] nleaf = leaf.clone();
+        nleaf[eidx] = elem;
+        _root = replaceLeaf(root, lidx, nleaf);
+        _modCount++;
+        return oldEntry;
+    }
+
+    /**
+     * Returns our tree, creating it if necessary. Our superclass constructors add entries before
+     * our fields are initialized, so the tree is created lazily.
+     */
+    protected Entry[][] getRoot ()
+    {
+        if (_root == null) {
+            _root = EMPTY_ROOT;
+        }
+        return _root;
+    }
+
+    /**
+     * Notes that an entry was added to or removed from the set.
+     */
+    protected void noteModified (int delta)
+    {
+        _size += delta;
+        _modCount++;
+    }
+
+    /**
+     * Returns the index of the first leaf whose last entry's key is not less than the supplied
+     * key, or the number of leaves if there is no such leaf.
+     */
+    protected static int leafIndexOf (Entry[][] root, Comparable<?> key)
+    {
+        int low = 0, high = root.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            Entry[] leaf = root[mid];
+            if (compare(leaf[leaf.length-1].getKey(), key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Locates the entry with the specified key in the supplied leaf. See {@link DSet#indexOf}.
+     */
+    protected static int indexOf (Entry[] leaf, Comparable<?> key)
+    {
+        int low = 0, high = leaf.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compare(leaf[mid].getKey(), key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * Returns a copy of the supplied root with the specified leaf replaced.
+     */
+    protected static Entry[][] replaceLeaf (Entry[][] root, int lidx, Entry[] leaf)
+    {
+        Entry[][] nroot = root.clone();
+        nroot[lidx] = leaf;
+        return nroot;
+    }
+
+    /** The leaves of our tree, in key order. Neither this array nor the leaves are modified once
+     * created. Our superclass's entries array goes unused. */
+    protected transient Entry[][] _root;
+
+    /** The maximum number of entries in a leaf. */
+    protected static final int MAX_LEAF_SIZE = 64;
+
+    /** The root of an empty set. */
+    protected static final Entry[][] EMPTY_ROOT = new Entry[0][];
+}
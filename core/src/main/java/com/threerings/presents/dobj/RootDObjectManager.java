@@ -33,6 +33,19 @@ public interface RootDObjectManager extends DObjectManager, RunQueue, Executor,
      */
     <T extends DObject> T registerObject (T object);
 
+    /**
+     * Registers a distributed object, hinting that it should be dispatched alongside other objects
+     * registered with the same affinity key. If the key is itself a registered distributed object,
+     * the new object will be dispatched alongside it. Managers that dispatch all events on a
+     * single thread simply register the object.
+     *
+     * @return the registered object for the caller's convenience.
+     */
+    default <T extends DObject> T registerObject (T object, Object affinity)
+    {
+        return registerObject(object);
+    }
+
     /**
      * Requests that the specified object be destroyed. Once destroyed an object is removed from
      * the runtime system and may no longer have events dispatched on it.
@@ -127,6 +127,7 @@ public class AESAuthRequest extends AuthRequest
             ioe.initCause(gse);
             throw ioe;
         }
+        writeOptions(out);
     }
 
     /**
@@ -139,6 +140,7 @@ public class AESAuthRequest extends AuthRequest
         in.defaultReadObject();
         _contents = new byte[in.readInt()];
         in.read(_contents);
+        readOptions(in);
     }
 
     /** Our encryption key. */
@@ -7,9 +7,11 @@ package com.threerings.presents.net;
 
 import java.util.TimeZone;
 
+import java.io.EOFException;
 import java.io.IOException;
 
 import com.threerings.io.ObjectInputStream;
+import com.threerings.io.ObjectOutputStream;
 
 /**
  * Used to authenticate with the server.
@@ -67,6 +69,22 @@ public class AuthRequest extends UpstreamMessage
         return _bootGroups;
     }
 
+    /**
+     * Notes whether the client can unpack several datagrams sent to it in a single packet.
+     */
+    public void setPackDatagrams (boolean pack)
+    {
+        _packDatagrams = pack;
+    }
+
+    /**
+     * Returns true if the client can unpack several datagrams sent to it in a single packet.
+     */
+    public boolean getPackDatagrams ()
+    {
+        return _packDatagrams;
+    }
+
     /**
      * Returns a shared secret key used for sending encrypted data to the client.
      */
@@ -82,6 +100,16 @@ public class AuthRequest extends UpstreamMessage
             ", version=" + _version + "]";
     }
 
+    /**
+     * Writes our custom streamable fields.
+     */
+    public void writeObject (ObjectOutputStream out)
+        throws IOException
+    {
+        out.defaultWriteObject();
+        writeOptions(out);
+    }
+
     /**
      * Reads our custom streamable fields.
      */
@@ -90,6 +118,7 @@ public class AuthRequest extends UpstreamMessage
     {
         try {
             in.defaultReadObject();
+            readOptions(in);
         } catch (IOException ioe) {
             // if we fail here because the client is old, leave ourselves with a partially
             // initialized set of credentials, which the server will generally cope with by telling
@@ -97,6 +126,29 @@ public class AuthRequest extends UpstreamMessage
         }
     }
 
+    /**
+     * Writes the options that follow the rest of the request. They come last so that servers
+     * that predate them will ignore them.
+     */
+    protected void writeOptions (ObjectOutputStream out)
+        throws IOException
+    {
+        out.writeBoolean(_packDatagrams);
+    }
+
+    /**
+     * Reads the options that follow the rest of the request, if the client sent them.
+     */
+    protected void readOptions (ObjectInputStream in)
+        throws IOException
+    {
+        try {
+            _packDatagrams = in.readBoolean();
+        } catch (EOFException eofe) {
+            // the client predates our options
+        }
+    }
+
     /** The credentials associated with this auth request. */
     protected Credentials _creds;
 
@@ -108,4 +160,8 @@ public class AuthRequest extends UpstreamMessage
 
     /** The set of bootstrap service groups this client is interested in. */
     protected String[] _bootGroups;
+
+    /** Whether the client can unpack several datagrams sent in a single packet. This is streamed
+     * by {@link #writeOptions} rather than with our fields. */
+    protected transient boolean _packDatagrams;
 }
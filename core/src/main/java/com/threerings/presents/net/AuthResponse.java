@@ -5,6 +5,12 @@
 
 package com.threerings.presents.net;
 
+import java.io.EOFException;
+import java.io.IOException;
+
+import com.threerings.io.ObjectInputStream;
+import com.threerings.io.ObjectOutputStream;
+
 /**
  * The auth response communicates authentication success or failure as
  * well as associated information via a distribted object transmitted
@@ -50,6 +56,52 @@ public class AuthResponse extends DownstreamMessage
         _data = data;
     }
 
+    /**
+     * Notes whether the server will pack several datagrams into a single packet when sending
+     * them to the client. This must only be set if the client asked for it, see {@link
+     * AuthRequest#getPackDatagrams}.
+     */
+    public void setPackDatagrams (boolean pack)
+    {
+        _packDatagrams = pack;
+    }
+
+    /**
+     * Returns true if the server will pack several datagrams into a single packet when sending
+     * them to the client.
+     */
+    public boolean getPackDatagrams ()
+    {
+        return _packDatagrams;
+    }
+
+    /**
+     * Writes our custom streamable fields. The packing flag is only written if set, as clients
+     * that did not ask for it may not expect anything after our fields.
+     */
+    public void writeObject (ObjectOutputStream out)
+        throws IOException
+    {
+        out.defaultWriteObject();
+        if (_packDatagrams) {
+            out.writeBoolean(true);
+        }
+    }
+
+    /**
+     * Reads our custom streamable fields.
+     */
+    public void readObject (ObjectInputStream in)
+        throws IOException, ClassNotFoundException
+    {
+        in.defaultReadObject();
+        try {
+            _packDatagrams = in.readBoolean();
+        } catch (EOFException eofe) {
+            // the server won't be packing datagrams
+        }
+    }
+
     @Override
     public String toString ()
     {
@@ -57,4 +109,8 @@ public class AuthResponse extends DownstreamMessage
     }
 
     protected AuthResponseData _data;
+
+    /** Whether the server will pack several datagrams into a single packet. This is streamed by
+     * {@link #writeObject} rather than with our fields. */
+    protected transient boolean _packDatagrams;
 }
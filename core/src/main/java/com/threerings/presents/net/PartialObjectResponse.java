@@ -0,0 +1,111 @@
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2025 Three Rings Design, Inc., All Rights Reserved
+// https://github.com/threerings/narya/blob/master/LICENSE
+
+
+package com.threerings.presents.net;
+
+import java.lang.reflect.Modifier;
+
+import java.util.Set;
+
+import java.io.IOException;
+
+import com.threerings.io.ObjectInputStream;
+import com.threerings.io.ObjectOutputStream;
+import com.threerings.io.Streamer;
+import com.threerings.io.Streamer.ClassStreamer;
+
+import com.threerings.presents.dobj.DObject;
+
+/**
+ * Contains a distributed object to which the client has subscribed, with only the attributes
+ * requested via a {@link PartialSubscribeRequest} filled in. The remaining attributes have the
+ * values assigned to them by the object's constructor.
+ *
+ * @param <T> the type of object delivered by the response.
+ */
+public class PartialObjectResponse<T extends DObject> extends ObjectResponse<T>
+{
+    /**
+     * Returns a response carrying only the named attributes of the supplied object, or a regular
+     * response carrying the whole object if its class streams itself via custom
+     * <code>writeObject</code> and <code>readObject</code> methods.
+     */
+    public static <T extends DObject> ObjectResponse<T> create (T dobj, Set<String> attrs)
+    {
+        try {
+            Streamer streamer = Streamer.getStreamer(dobj.getClass());
+            if ((streamer instanceof ClassStreamer) && ((ClassStreamer)streamer).supportsDeltas()) {
+                return new PartialObjectResponse<T>(dobj, attrs);
+            }
+        } catch (IOException ioe) {
+            // fall through and let the regular response report the problem when it is streamed
+        }
+        return new ObjectResponse<T>(dobj);
+    }
+
+    /**
+     * Zero argument constructor used when unserializing an instance.
+     */
+    public PartialObjectResponse ()
+    {
+        super();
+    }
+
+    /**
+     * Constructs an object response with the named attributes of the supplied distributed object.
+     */
+    public PartialObjectResponse (T dobj, Set<String> attrs)
+    {
+        super(dobj);
+        _attrs = attrs;
+    }
+
+    /**
+     * Writes our custom streamable fields.
+     */
+    public void writeObject (ObjectOutputStream out)
+        throws IOException
+    {
+        out.writeShort(messageId);
+        Class<?> oclass = _dobj.getClass();
+        out.writeObject(oclass);
+        // attributes are public fields, so this always includes our oid and any other fields the
+        // object streams for itself
+        ((ClassStreamer)Streamer.getStreamer(oclass)).writeFields(_dobj, field ->
+            !Modifier.isPublic(field.getModifiers()) || _attrs.contains(field.getName()), out);
+    }
+
+    /**
+     * Reads our custom streamable fields.
+     */
+    public void readObject (ObjectInputStream in)
+        throws IOException, ClassNotFoundException
+    {
+        messageId = in.readShort();
+        Class<?> oclass = (Class<?>)in.readObject();
+        if (!DObject.class.isAssignableFrom(oclass)) {
+            throw new IOException("Response object is not a distributed object [class=" +
+                                  oclass + "]");
+        }
+        Streamer streamer = Streamer.getStreamer(oclass);
+        if (!(streamer instanceof ClassStreamer)) {
+            throw new IOException("Response object does not support partial streaming [class=" +
+                                  oclass + "]");
+        }
+        @SuppressWarnings("unchecked") T dobj = (T)streamer.createObject(in);
+        ((ClassStreamer)streamer).readDelta(dobj, in);
+        _dobj = dobj;
+    }
+
+    @Override
+    public String toString ()
+    {
+        return "[type=PORSP, msgid=" + messageId + ", obj=" + _dobj + ", attrs=" + _attrs + "]";
+    }
+
+    /** The names of the attributes sent with our object; only valid on the sending process. */
+    protected transient Set<String> _attrs;
+}
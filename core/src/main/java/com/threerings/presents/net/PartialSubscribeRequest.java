@@ -0,0 +1,52 @@
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2025 Three Rings Design, Inc., All Rights Reserved
+// https://github.com/threerings/narya/blob/master/LICENSE
+
+
+package com.threerings.presents.net;
+
+import com.samskivert.util.StringUtil;
+
+/**
+ * Requests to subscribe to a particular distributed object, receiving only the named attributes
+ * of the object and only the events that affect those attributes.
+ */
+public class PartialSubscribeRequest extends SubscribeRequest
+{
+    /**
+     * Zero argument constructor used when unserializing an instance.
+     */
+    public PartialSubscribeRequest ()
+    {
+        super();
+    }
+
+    /**
+     * Constructs a subscribe request for the named attributes of the distributed object with the
+     * specified object id.
+     */
+    public PartialSubscribeRequest (int oid, String[] attrs)
+    {
+        super(oid);
+        _attrs = attrs;
+    }
+
+    /**
+     * Returns the names of the attributes in which the subscriber is interested.
+     */
+    public String[] getAttributes ()
+    {
+        return _attrs;
+    }
+
+    @Override
+    public String toString ()
+    {
+        return "[type=PSUB, msgid=" + messageId + ", oid=" + _oid +
+            ", attrs=" + StringUtil.toString(_attrs) + "]";
+    }
+
+    /** The names of the attributes in which the subscriber is interested. */
+    protected String[] _attrs;
+}
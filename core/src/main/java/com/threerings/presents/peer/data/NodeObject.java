@@ -54,6 +54,14 @@ public class NodeObject extends DObject
     public static final String CACHE_DATA = "cacheData";
     // AUTO-GENERATED: FIELDS END
 
+    /** The name of the message used to multicast node actions to our peers. Its arguments are
+     * the names of the nodes on which the action is to be invoked and the serialized action. */
+    public static final String NODE_ACTION = "nodeAction";
+
+    /** The name of the message used to exchange heartbeats with our peers. Its argument is the
+     * names of the peers that the sender suspects have failed. */
+    public static final String HEARTBEAT = "heartbeat";
+
     /** Identifies a locked resource. */
     public static class Lock extends SimpleStreamableObject
         implements Comparable<Lock>, DSet.Entry
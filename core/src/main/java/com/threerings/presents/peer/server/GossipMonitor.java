@@ -0,0 +1,186 @@
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2025 Three Rings Design, Inc., All Rights Reserved
+// https://github.com/threerings/narya/blob/master/LICENSE
+
+package com.threerings.presents.peer.server;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.inject.Inject;
+
+import com.samskivert.util.Interval;
+
+import com.threerings.presents.peer.data.NodeObject;
+import com.threerings.presents.server.PresentsDObjectMgr;
+
+/**
+ * Detects the failure of our peers by exchanging heartbeats over our existing peer connections,
+ * rather than waiting for their connections to time out or their node records to go stale. Every
+ * period, each node posts a heartbeat on its {@link NodeObject} which names the peers that it
+ * suspects, those from which it has not heard for a couple of periods. A peer that has been
+ * silent for a couple of periods and is also suspected by another peer, or that has been silent
+ * for longer still, is declared to have failed via {@link PeerManager#peerFailed}. Our heartbeats
+ * are never held back by a peer session whose connection has backed up (see {@link
+ * PeerSession#isUrgent}), so that congestion is not taken for failure.
+ *
+ * <p> Everything here happens on the distributed object thread.
+ */
+public class GossipMonitor
+{
+    /**
+     * Starts sending heartbeats and checking on our peers.
+     *
+     * @param period the number of milliseconds between heartbeats.
+     */
+    public void start (long period)
+    {
+        _period = period;
+        _lastTick = System.currentTimeMillis();
+        _ticker = _omgr.newInterval(new Runnable() {
+            public void run () {
+                tick();
+            }
+        });
+        _ticker.schedule(period, true);
+    }
+
+    /**
+     * Stops sending heartbeats and checking on our peers.
+     */
+    public void stop ()
+    {
+        if (_ticker != null) {
+            _ticker.cancel();
+            _ticker = null;
+        }
+    }
+
+    /**
+     * Called when we receive a heartbeat from the specified peer.
+     *
+     * @param suspects the names of the peers that the sender suspects have failed.
+     */
+    public void heartbeatReceived (String nodeName, String[] suspects)
+    {
+        _lastHeard.put(nodeName, System.currentTimeMillis());
+        _reports.put(nodeName, suspects);
+    }
+
+    /**
+     * Returns the names of the peers that we currently suspect have failed.
+     */
+    public Set<String> getSuspects ()
+    {
+        return _suspects;
+    }
+
+    /**
+     * Sends our heartbeat and checks whether any of our peers have gone silent.
+     */
+    protected void tick ()
+    {
+        long now = System.currentTimeMillis();
+        // if we ourselves were stalled, we can't trust that our peers went silent, so we start
+        // their clocks afresh
+        boolean stalled = (now - _lastTick) > STALL_PERIODS * _period;
+        _lastTick = now;
+
+        Set<String> connected = Sets.newHashSet();
+        Set<String> suspects = Sets.newHashSet();
+        List<PeerNode> failed = Lists.newArrayList();
+        for (PeerNode peer : _peermgr._peers.values()) {
+            if (peer.nodeobj == null) {
+                continue;
+            }
+            String nodeName = peer.getNodeName();
+            connected.add(nodeName);
+            Long heard = _lastHeard.get(nodeName);
+            if (heard == null || stalled) {
+                _lastHeard.put(nodeName, now);
+                continue;
+            }
+            if (_failed.contains(nodeName)) {
+                continue; // we're waiting for its connection to close
+            }
+
+            long silent = now - heard;
+            if (silent >= FAIL_PERIODS * _period ||
+                (silent >= SUSPECT_PERIODS * _period && isSuspectedByOthers(nodeName))) {
+                _failed.add(nodeName);
+                failed.add(peer);
+            } else if (silent >= SUSPECT_PERIODS * _period) {
+                suspects.add(nodeName);
+                if (!_suspects.contains(nodeName)) {
+                    _peermgr._stats.peersSuspected++;
+                }
+            }
+        }
+        _suspects = suspects;
+
+        // forget about peers to which we are no longer connected
+        _lastHeard.keySet().retainAll(connected);
+        _reports.keySet().retainAll(connected);
+        _failed.retainAll(connected);
+
+        _peermgr.getNodeObject().postMessage(
+            NodeObject.HEARTBEAT, (Object)suspects.toArray(new String[suspects.size()]));
+
+        for (PeerNode peer : failed) {
+            _peermgr.peerFailed(peer, now - _lastHeard.get(peer.getNodeName()));
+        }
+    }
+
+    /**
+     * Returns true if any of our other peers have reported that they suspect the specified peer.
+     */
+    protected boolean isSuspectedByOthers (String nodeName)
+    {
+        for (Map.Entry<String, String[]> entry : _reports.entrySet()) {
+            if (!entry.getKey().equals(nodeName) &&
+                Arrays.asList(entry.getValue()).contains(nodeName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** The number of milliseconds between heartbeats. */
+    protected long _period;
+
+    /** The time at which we last ticked. */
+    protected long _lastTick;
+
+    /** Sends our heartbeats. */
+    protected Interval _ticker;
+
+    /** The time at which we last heard from each of our connected peers. */
+    protected Map<String, Long> _lastHeard = Maps.newHashMap();
+
+    /** The suspects most recently reported by each of our connected peers. */
+    protected Map<String, String[]> _reports = Maps.newHashMap();
+
+    /** The peers that we currently suspect. */
+    protected Set<String> _suspects = Sets.newHashSet();
+
+    /** The peers that we have declared failed, but that are not yet disconnected. */
+    protected Set<String> _failed = Sets.newHashSet();
+
+    @Inject protected PeerManager _peermgr;
+    @Inject protected PresentsDObjectMgr _omgr;
+
+    /** The number of periods of silence after which we suspect a peer. */
+    protected static final int SUSPECT_PERIODS = 2;
+
+    /** The number of periods of silence after which we declare a peer failed on our own. */
+    protected static final int FAIL_PERIODS = 4;
+
+    /** The number of periods late that our tick can be before we consider ourselves stalled. */
+    protected static final int STALL_PERIODS = 2;
+}
@@ -0,0 +1,35 @@
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2025 Three Rings Design, Inc., All Rights Reserved
+// https://github.com/threerings/narya/blob/master/LICENSE
+
+package com.threerings.presents.peer.server;
+
+import java.util.Set;
+
+/**
+ * Receives the results of a {@link PeerManager.NodeRequest} sent to one or more peer nodes via
+ * {@link PeerManager#streamNodeRequest} as each node responds, rather than all at once. All
+ * callbacks are made on the distributed object thread.
+ */
+public interface NodeResultsListener<T>
+{
+    /**
+     * Called when the specified node reports the successful processing of the request.
+     */
+    public void nodeProcessed (String nodeName, T result);
+
+    /**
+     * Called when the specified node reports the failure of the request.
+     */
+    public void nodeFailed (String nodeName, String cause);
+
+    /**
+     * Called once every applicable node has responded or the request's deadline has passed,
+     * whichever comes first. Results that arrive after this call are dropped.
+     *
+     * @param missedNodes the nodes that did not respond before the deadline, which will be
+     * empty if every node responded in time.
+     */
+    public void requestsProcessed (Set<String> missedNodes);
+}
@@ -7,8 +7,13 @@ package com.threerings.presents.peer.server;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -18,13 +23,16 @@ import com.google.common.base.Function;
 import com.google.common.base.Objects;
 import com.google.common.base.Predicates;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.inject.Inject;
 import com.google.inject.Injector;
+import com.google.inject.name.Named;
 
 import com.samskivert.util.ArrayIntSet;
 import com.samskivert.util.ChainedResultListener;
+import com.samskivert.util.Histogram;
 import com.samskivert.util.Interval;
 import com.samskivert.util.Invoker;
 import com.samskivert.util.Lifecycle;
@@ -41,6 +49,7 @@ import com.threerings.io.ObjectOutputStream;
 import com.threerings.io.Streamable;
 
 import com.threerings.util.Name;
+import com.threerings.nio.conman.ServerSocketChannelAcceptor;
 
 import com.threerings.presents.annotation.PeerInvoker;
 import com.threerings.presents.client.Client;
@@ -49,7 +58,12 @@ import com.threerings.presents.data.ClientObject;
 import com.threerings.presents.data.InvocationCodes;
 import com.threerings.presents.dobj.AccessController;
 import com.threerings.presents.dobj.DObject;
+import com.threerings.presents.dobj.DSet;
+import com.threerings.presents.dobj.EntryAddedEvent;
+import com.threerings.presents.dobj.EntryRemovedEvent;
+import com.threerings.presents.dobj.EntryUpdatedEvent;
 import com.threerings.presents.dobj.ObjectAccessException;
+import com.threerings.presents.dobj.SetListener;
 import com.threerings.presents.dobj.Subscriber;
 import com.threerings.presents.net.DownstreamMessage;
 import com.threerings.presents.net.Message;
@@ -178,6 +192,9 @@ public abstract class PeerManager
         /** The number of milliseconds spent waiting to acquire locks. */
         public long lockAcquireWait;
 
+        /** The distribution of the number of milliseconds spent waiting to acquire each lock. */
+        public Histogram lockAcquireTimes = new Histogram(0, 10, 50);
+
         /** The number of locks this node has released. */
         public long locksReleased;
 
@@ -197,10 +214,52 @@ public abstract class PeerManager
         /** The total number of messages sent to all of our peers. */
         public long peerMessagesOut;
 
+        /** The number of client info publications and retractions requested while batching. */
+        public long clientChangesQueued;
+
+        /** The number of client info changes actually published to our peers after batching. */
+        public long clientChangesPublished;
+
+        /** The number of batches in which client info changes were published. */
+        public long clientBatches;
+
+        /** The number of node actions multicast to our peers via our node object. */
+        public long nodeActionsMulticast;
+
+        /** The number of batches in which multicast node actions were sent. */
+        public long nodeActionBatches;
+
+        /** The number of times a peer has gone silent long enough for us to suspect it. */
+        public long peersSuspected;
+
+        /** The number of peers that we have declared failed due to their silence. */
+        public long peersFailed;
+
+        /** The distribution of the number of milliseconds taken by each node to respond to the
+         * node requests that we sent to all applicable nodes, mapped by node name. */
+        public Map<String, Histogram> nodeResponseTimes = Maps.newHashMap();
+
+        /** The number of streamed node requests that nodes failed to answer by the deadline. */
+        public long nodeRequestsMissed;
+
+        public void noteLockAcquired (long wait) {
+            locksAcquired++;
+            lockAcquireWait += wait;
+            lockAcquireTimes.addValue((int)Math.min(wait, Integer.MAX_VALUE));
+        }
+
         public void noteNodeActionInvoked (NodeAction action) {
             nodeActionsInvoked++;
         }
 
+        public void noteNodeResponse (String nodeName, long time) {
+            Histogram times = nodeResponseTimes.get(nodeName);
+            if (times == null) {
+                nodeResponseTimes.put(nodeName, times = new Histogram(0, 10, 50));
+            }
+            times.addValue((int)Math.min(time, Integer.MAX_VALUE));
+        }
+
         public void notePeerMessageReceived (Message msg) {
             peerMessagesIn.incrementAndGet();
         }
@@ -213,6 +272,11 @@ public abstract class PeerManager
             try {
                 Stats cstats = (Stats)super.clone();
                 cstats.peerMessagesIn = new AtomicLong(peerMessagesIn.get());
+                cstats.lockAcquireTimes = lockAcquireTimes.clone();
+                cstats.nodeResponseTimes = Maps.newHashMap();
+                for (Map.Entry<String, Histogram> entry : nodeResponseTimes.entrySet()) {
+                    cstats.nodeResponseTimes.put(entry.getKey(), entry.getValue().clone());
+                }
                 return cstats;
             } catch (Exception e) {
                 throw new RuntimeException(e);
@@ -347,6 +411,9 @@ public abstract class PeerManager
         _nodeNamespace = nodeNamespace;
         _adHoc = adHoc;
 
+        // we may have been restarted while our peers held leases that we arbitrate
+        _leaseRecoveryEnds = System.currentTimeMillis() + _lockLeaseMillis + getLeaseMargin();
+
         // wire ourselves into the server
         _conmgr.addChainedAuthenticator(
             new ServiceAuthenticator<PeerCreds>(PeerCreds.class, PeerAuthName.class) {
@@ -364,6 +431,7 @@ public abstract class PeerManager
         _nodeobj = _omgr.registerObject(nodeObj);
         _nodeobj.setNodeName(nodeName);
         _nodeobj.setBootStamp(System.currentTimeMillis());
+        indexClients(_nodeobj);
 
         // register ourselves with the node table
         _self = new NodeRecord(
@@ -378,6 +446,15 @@ public abstract class PeerManager
             });
         }
 
+        // if our co-located peers are to connect to us via a Unix domain socket, listen on it
+        if (_socketDir != null && !adHoc) {
+            _socketAcceptor = new ServerSocketChannelAcceptor(null, new int[0], _conmgr);
+            _socketAcceptor.setSocketPath(getSocketPath(_nodeName));
+            if (!_socketAcceptor.bind()) {
+                _socketAcceptor = null;
+            }
+        }
+
         // set the invocation service
         _nodeobj.setPeerService(
             _invmgr.registerProvider(this, PeerMarshaller.class, this::isPeer));
@@ -389,9 +466,15 @@ public abstract class PeerManager
         if (!adHoc) {
             _omgr.newInterval(new Runnable() {
                 public void run () {
-                    refreshPeers();
+                    checkPeers();
                 }
             }).schedule(5000L, 60*1000L);
+
+            // if we're gossiping, start doing so
+            if (_gossipMillis > 0) {
+                _gossip = createGossipMonitor();
+                _gossip.start(_gossipMillis);
+            }
         }
 
         // give derived classes an easy way to get in on the init action
@@ -408,15 +491,12 @@ public abstract class PeerManager
 
     /**
      * Locates the client with the specified name. Returns null if the client is not logged onto
-     * any peer.
+     * any peer. This consults an index of the clients published by all nodes, so it need not
+     * search each node's client set.
      */
-    public ClientInfo locateClient (final Name key)
+    public ClientInfo locateClient (Name key)
     {
-        return lookupNodeDatum(new Function<NodeObject,ClientInfo>() {
-            public ClientInfo apply (NodeObject nodeobj) {
-                return nodeobj.clients.get(key);
-            }
-        });
+        return _clientIndex.get(key);
     }
 
     /**
@@ -470,7 +550,8 @@ public abstract class PeerManager
      *
      * @param onDropped a runnable to be executed if the action was not invoked on the local server
      * or any peer node due to failing to match any of the nodes. The runnable will be executed on
-     * the dobj event thread.
+     * the dobj event thread. If actions are being multicast in batches, it may be executed when
+     * the batch is sent, if none of the peers to which the action was to be multicast remain.
      */
     public void invokeNodeAction (final NodeAction action, final Runnable onDropped)
     {
@@ -495,11 +576,30 @@ public abstract class PeerManager
         }
 
         // now send it to any remote node that is also appropriate
+        List<PeerNode> targets = Lists.newArrayList();
         for (PeerNode peer : _peers.values()) {
             if (peer.nodeobj != null && action.isApplicable(peer.nodeobj)) {
-                peer.nodeobj.peerService.invokeAction(actionBytes);
-                invoked = true;
+                if (_multicastActions && _subscribedPeers.contains(peer.getNodeName())) {
+                    targets.add(peer);
+                } else {
+                    peer.nodeobj.peerService.invokeAction(actionBytes);
+                    invoked = true;
+                }
+            }
+        }
+
+        // a multicast goes to all of our subscribers, so we only use one for several targets; if
+        // it is batched, it may yet be dropped, which it will then report
+        if (targets.size() == 1) {
+            targets.get(0).nodeobj.peerService.invokeAction(actionBytes);
+            invoked = true;
+        } else if (!targets.isEmpty()) {
+            String[] nodeNames = new String[targets.size()];
+            for (int ii = 0; ii < nodeNames.length; ii++) {
+                nodeNames[ii] = targets.get(ii).getNodeName();
             }
+            multicastAction(nodeNames, actionBytes, invoked ? null : onDropped);
+            invoked = true;
         }
 
         // if we did not invoke the action on any node, call the onDropped handler
@@ -565,6 +665,7 @@ public abstract class PeerManager
         final Map<String, T> results = Maps.newHashMap();
         final Map<String, String> failures = Maps.newHashMap();
         final AtomicInteger completedNodes = new AtomicInteger();
+        final long started = System.currentTimeMillis();
         for (final String node : nodes) {
             invokeNodeRequest(node, requestBytes, new InvocationService.ResultListener() {
                 public void requestProcessed (Object result) {
@@ -579,6 +680,7 @@ public abstract class PeerManager
                     nodeDone();
                 }
                 protected void nodeDone () {
+                    _stats.noteNodeResponse(node, System.currentTimeMillis() - started);
                     if (completedNodes.incrementAndGet() == nodes.size()) {
                         // if all nodes have responded, let caller know
                         listener.requestsProcessed(new NodeRequestsResultImpl<T>(results, failures));
@@ -588,6 +690,82 @@ public abstract class PeerManager
         }
     }
 
+    /**
+     * Invokes the supplied request on all applicable servers in parallel, like {@link
+     * #invokeNodeRequest(NodeRequest,NodeRequestsListener)}, but reports each node's result to the
+     * listener as it arrives, and reports completion once every node has responded or the
+     * supplied timeout has elapsed, so that one slow node does not hold up the rest. The request
+     * will execute on the distributed object thread, but this method does not need to be called
+     * from there.
+     *
+     * @param timeout the number of milliseconds to wait for all nodes to respond.
+     */
+    public <T> void streamNodeRequest (
+        final NodeRequest request, final long timeout, final NodeResultsListener<T> listener)
+    {
+        // if we're not on the dobjmgr thread, get there
+        if (!_omgr.isDispatchThread()) {
+            _omgr.postRunnable(new Runnable() {
+                public void run () {
+                    streamNodeRequest(request, timeout, listener);
+                }
+            });
+            return;
+        }
+
+        // serialize the action to make sure we can
+        byte[] requestBytes = flattenRequest(request);
+
+        // note the nodes from which we're awaiting a response
+        final Set<String> pending = findApplicableNodes(request);
+        if (pending.isEmpty()) {
+            listener.requestsProcessed(Collections.<String>emptySet());
+            return;
+        }
+
+        // report on the stragglers once our deadline passes
+        final Interval deadline = _omgr.newInterval(new Runnable() {
+            public void run () {
+                Set<String> missed = Sets.newHashSet(pending);
+                pending.clear();
+                _stats.nodeRequestsMissed += missed.size();
+                listener.requestsProcessed(missed);
+            }
+        });
+        deadline.schedule(timeout);
+
+        final long started = System.currentTimeMillis();
+        for (final String node : Lists.newArrayList(pending)) {
+            invokeNodeRequest(node, requestBytes, new InvocationService.ResultListener() {
+                public void requestProcessed (Object result) {
+                    if (nodeResponded()) {
+                        @SuppressWarnings("unchecked")
+                        T castResult = (T) result;
+                        listener.nodeProcessed(node, castResult);
+                        maybeFinish();
+                    }
+                }
+                public void requestFailed (String cause) {
+                    if (nodeResponded()) {
+                        listener.nodeFailed(node, cause);
+                        maybeFinish();
+                    }
+                }
+                protected boolean nodeResponded () {
+                    // we note the response times of stragglers too, but drop their results
+                    _stats.noteNodeResponse(node, System.currentTimeMillis() - started);
+                    return pending.remove(node);
+                }
+                protected void maybeFinish () {
+                    if (pending.isEmpty()) {
+                        deadline.cancel();
+                        listener.requestsProcessed(Collections.<String>emptySet());
+                    }
+                }
+            });
+        }
+    }
+
     /**
      * Returns all nodes for which <code>applicant.isApplicable</code> returns true.
      */
@@ -789,13 +967,33 @@ public abstract class PeerManager
         return (peer == null) ? -1 : peer.getPort();
     }
 
+    /**
+     * Returns the path of the Unix domain socket via which to connect to the supplied peer, or null
+     * if we are to connect to it via TCP. We connect via a socket only if it is configured, the
+     * peer runs on our host, and the peer is listening on its socket.
+     */
+    public Path getPeerSocketPath (NodeRecord record)
+    {
+        if (_socketDir == null || _self == null || !_self.hostName.equals(record.hostName)) {
+            return null;
+        }
+        Path path = getSocketPath(record.nodeName);
+        return Files.exists(path) ? path : null;
+    }
+
     /**
      * Acquires a lock on a resource shared amongst this node's peers.  If the lock is successfully
      * acquired, the supplied listener will receive this node's name.  If another node acquires the
-     * lock first, then the listener will receive the name of that node.
+     * lock first, then the listener will receive the name of that node.  When leases are in use,
+     * the request fails if the lock's arbiter has only just taken it over and can't yet grant it.
      */
     public void acquireLock (final NodeObject.Lock lock, final ResultListener<String> listener)
     {
+        if (_lockLeaseMillis > 0) {
+            acquireLease(lock, listener);
+            return;
+        }
+
         // wait until any pending resolution is complete
         queryLock(lock, new ChainedResultListener<String, String>(listener) {
             public void requestCompleted (String result) {
@@ -819,6 +1017,11 @@ public abstract class PeerManager
      */
     public void releaseLock (final NodeObject.Lock lock, final ResultListener<String> listener)
     {
+        if (_lockLeaseMillis > 0) {
+            releaseLease(lock, listener);
+            return;
+        }
+
         // wait until any pending resolution is complete
         queryLock(lock, new ChainedResultListener<String, String>(listener) {
             public void requestCompleted (String result) {
@@ -873,6 +1076,11 @@ public abstract class PeerManager
      */
     public void queryLock (NodeObject.Lock lock, ResultListener<String> listener)
     {
+        if (_lockLeaseMillis > 0) {
+            queryLease(lock, listener);
+            return;
+        }
+
         // if it's being resolved, add the listener to the list
         LockHandler handler = _locks.get(lock);
         if (handler != null) {
@@ -890,6 +1098,21 @@ public abstract class PeerManager
      */
     public String queryLock (NodeObject.Lock lock)
     {
+        if (_lockLeaseMillis > 0) {
+            // we only know about the leases that we hold or arbitrate
+            if (_held.containsKey(lock)) {
+                return _nodeName;
+            }
+            if (!_nodeName.equals(getLockArbiter(lock))) {
+                return null;
+            }
+            try {
+                return arbitrateLease(lock, _nodeName, LEASE_QUERY);
+            } catch (InvocationException ie) {
+                return null; // queries are never refused
+            }
+        }
+
         for (NodeObject nodeobj : getNodeObjects()) {
             if (nodeobj.locks.contains(lock)) {
                 return nodeobj.nodeName;
@@ -1025,6 +1248,23 @@ public abstract class PeerManager
         // clear out our client observer registration
         _clmgr.removeClientObserver(this);
 
+        // stop gossiping
+        if (_gossip != null) {
+            _gossip.stop();
+        }
+
+        // our peers are about to learn that we're gone, no need to tell them about our clients
+        if (_clientFlusher != null) {
+            _clientFlusher.cancel();
+        }
+        _pendingClients.clear();
+
+        // but do send any actions we have queued up
+        if (_actionFlusher != null) {
+            _actionFlusher.cancel();
+        }
+        flushActions();
+
         // clear our record from the node table
         if (!_adHoc) {
             _invoker.postUnit(new WriteOnlyUnit("shutdownNode(" + _nodeName + ")") {
@@ -1039,6 +1279,20 @@ public abstract class PeerManager
         for (PeerNode peer : _peers.values()) {
             peer.shutdown();
         }
+
+        // and stop listening for our co-located peers
+        if (_socketAcceptor != null) {
+            _socketAcceptor.shutdown();
+        }
+    }
+
+    /**
+     * Returns the path of the Unix domain socket on which the specified node listens for its
+     * co-located peers.
+     */
+    protected Path getSocketPath (String nodeName)
+    {
+        return Paths.get(_socketDir, nodeName + ".sock");
     }
 
     // from interface PeerProvider
@@ -1055,6 +1309,16 @@ public abstract class PeerManager
 
     // from interface PeerProvider
     public void invokeAction (ClientObject caller, byte[] serializedAction)
+    {
+        executeAction((caller == null) ? "self" : caller.who(), serializedAction);
+    }
+
+    /**
+     * Deserializes and invokes the supplied node action.
+     *
+     * @param source a description of where the action came from, for logging.
+     */
+    protected void executeAction (String source, byte[] serializedAction)
     {
         NodeAction action = null;
         try {
@@ -1064,9 +1328,8 @@ public abstract class PeerManager
             _injector.injectMembers(action);
             action.invoke();
         } catch (Exception e) {
-            log.warning("Failed to execute node action",
-                        "from", (caller == null) ? "self" : caller.who(),
-                        "action", action, "serializedSize", serializedAction.length, e);
+            log.warning("Failed to execute node action", "from", source, "action", action,
+                        "serializedSize", serializedAction.length, e);
         }
     }
 
@@ -1110,14 +1373,12 @@ public abstract class PeerManager
         initClientInfo(client, clinfo);
 
         // sanity check
-        if (_nodeobj.clients.contains(clinfo)) {
+        if (isClientPublished(clinfo.getKey())) {
             log.warning("Received clientSessionDidStart() for already registered client!?",
                         "old", _nodeobj.clients.get(clinfo.getKey()), "new", clinfo);
             // go ahead and update the record
-            _nodeobj.updateClients(clinfo);
-        } else {
-            _nodeobj.addToClients(clinfo);
         }
+        publishClientInfo(clinfo);
     }
 
     // from interface ClientManager.ClientObserver
@@ -1131,21 +1392,21 @@ public abstract class PeerManager
         // derived classes to be able to override that for lookups that happen way more frequently
         // than logging off
         Name username = client.getAuthName();
-        for (ClientInfo clinfo : _nodeobj.clients) {
-            if (clinfo.username.equals(username)) {
-                _nodeobj.startTransaction();
-                try {
-                    // we clear our client info in a transaction so that derived classes can remove
-                    // other things from the NodeObject and we'll send that out to all of our peers
-                    // in a single compound event
-                    clearClientInfo(client, clinfo);
-                } finally {
-                    _nodeobj.commitTransaction();
-                }
-                return;
-            }
+        ClientInfo clinfo = findClientInfo(username);
+        if (clinfo == null) {
+            log.warning("Session ended for unregistered client", "who", username);
+            return;
+        }
+
+        _nodeobj.startTransaction();
+        try {
+            // we clear our client info in a transaction so that derived classes can remove other
+            // things from the NodeObject and we'll send that out to all of our peers in a single
+            // compound event
+            clearClientInfo(client, clinfo);
+        } finally {
+            _nodeobj.commitTransaction();
         }
-        log.warning("Session ended for unregistered client", "who", username);
     }
 
     /**
@@ -1155,6 +1416,36 @@ public abstract class PeerManager
     {
     }
 
+    /**
+     * Called periodically to refresh our peers. Normally this reloads our peers' records via
+     * {@link #refreshPeers}, but if we're gossiping with our peers and are connected to all of
+     * them, they'll let us know about failures themselves, and new peers will let us know about
+     * themselves when they connect to us, so we just note that we're still alive.
+     */
+    protected void checkPeers ()
+    {
+        purgeLeases();
+
+        if (_gossip == null || _peers.isEmpty()) {
+            refreshPeers();
+            return;
+        }
+        for (PeerNode peer : _peers.values()) {
+            if (peer.nodeobj == null) {
+                refreshPeers();
+                return;
+            }
+        }
+
+        // our heartbeat lets nodes that are starting up know that our record is not stale
+        _invoker.postUnit(new WriteOnlyUnit("heartbeatNode(" + _nodeName + ")") {
+            @Override
+            public void invokePersist () throws Exception {
+                _noderepo.heartbeatNode(_nodeName);
+            }
+        });
+    }
+
     /**
      * Reloads the list of peer nodes from our table and refreshes each with a call to {@link
      * #refreshPeer}.
@@ -1309,6 +1600,14 @@ public abstract class PeerManager
     {
         _nodeobj.removeFromLocks(lock);
         _stats.locksHijacked++;
+        notifyDroppedLock(lock);
+    }
+
+    /**
+     * Lets our observers know that we have been forced to drop a lock.
+     */
+    protected void notifyDroppedLock (final NodeObject.Lock lock)
+    {
         _dropobs.apply(new ObserverList.ObserverOp<DroppedLockObserver>() {
             public boolean apply (DroppedLockObserver observer) {
                 observer.droppedLock(lock);
@@ -1330,7 +1629,126 @@ public abstract class PeerManager
      */
     protected void clearClientInfo (PresentsSession client, ClientInfo info)
     {
-        _nodeobj.removeFromClients(info.getKey());
+        retractClientInfo(info.getKey());
+    }
+
+    /**
+     * Publishes the supplied client info in our node object, adding or updating it as
+     * appropriate. If client batching is enabled, the change is published with the rest of the
+     * current batch.
+     */
+    protected void publishClientInfo (ClientInfo clinfo)
+    {
+        if (_clientBatchMillis > 0) {
+            queueClientChange(clinfo.getKey(), clinfo);
+        } else if (_nodeobj.clients.contains(clinfo)) {
+            _nodeobj.updateClients(clinfo);
+        } else {
+            _nodeobj.addToClients(clinfo);
+        }
+    }
+
+    /**
+     * Removes the client info with the supplied key from our node object. If client batching is
+     * enabled, the change is published with the rest of the current batch.
+     */
+    protected void retractClientInfo (Comparable<?> key)
+    {
+        if (_clientBatchMillis > 0) {
+            queueClientChange(key, null);
+        } else {
+            _nodeobj.removeFromClients(key);
+        }
+    }
+
+    /**
+     * Returns true if the client with the supplied key is published in our node object, or will
+     * be once the current batch of client changes is published.
+     */
+    protected boolean isClientPublished (Comparable<?> key)
+    {
+        return _pendingClients.containsKey(key) ? (_pendingClients.get(key) != null) :
+            _nodeobj.clients.containsKey(key);
+    }
+
+    /**
+     * Returns the client info for the specified user that is published in our node object, or
+     * will be once the current batch of client changes is published, or null.
+     */
+    protected ClientInfo findClientInfo (Name username)
+    {
+        // we scan rather than relying on ClientInfo.getKey() because we want derived classes to
+        // be able to override that for lookups that happen way more frequently than logging off
+        for (ClientInfo clinfo : _pendingClients.values()) {
+            if (clinfo != null && clinfo.username.equals(username)) {
+                return clinfo;
+            }
+        }
+        for (ClientInfo clinfo : _nodeobj.clients) {
+            if (clinfo.username.equals(username) && !_pendingClients.containsKey(clinfo.getKey())) {
+                return clinfo;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Notes a change to be published with the current batch of client changes, which supersedes
+     * any earlier change to the same client in the batch.
+     *
+     * @param clinfo the client's new info, or null if it is to be removed.
+     */
+    protected void queueClientChange (Comparable<?> key, ClientInfo clinfo)
+    {
+        if (_pendingClients.isEmpty()) {
+            if (_clientFlusher == null) {
+                _clientFlusher = _omgr.newInterval(new Runnable() {
+                    public void run () {
+                        flushClientChanges();
+                    }
+                });
+            }
+            _clientFlusher.schedule(_clientBatchMillis);
+        }
+        // remove first so that the change is ordered by when it was last made
+        _pendingClients.remove(key);
+        _pendingClients.put(key, clinfo);
+        _stats.clientChangesQueued++;
+    }
+
+    /**
+     * Publishes the net effect of the current batch of client changes to our peers in a single
+     * compound event. Clients that came and went during the batch are not published at all.
+     */
+    protected void flushClientChanges ()
+    {
+        if (_pendingClients.isEmpty()) {
+            return;
+        }
+
+        int published = 0;
+        _nodeobj.startTransaction();
+        try {
+            for (Map.Entry<Comparable<?>, ClientInfo> entry : _pendingClients.entrySet()) {
+                ClientInfo clinfo = entry.getValue();
+                if (clinfo != null) {
+                    if (_nodeobj.clients.contains(clinfo)) {
+                        _nodeobj.updateClients(clinfo);
+                    } else {
+                        _nodeobj.addToClients(clinfo);
+                    }
+                    published++;
+                } else if (_nodeobj.clients.containsKey(entry.getKey())) {
+                    _nodeobj.removeFromClients(entry.getKey());
+                    published++;
+                }
+            }
+        } finally {
+            _pendingClients.clear();
+            _nodeobj.commitTransaction();
+        }
+        _stats.clientChangesPublished += published;
+        _stats.clientBatches++;
     }
 
     /**
@@ -1357,6 +1775,54 @@ public abstract class PeerManager
         return _self.region;
     }
 
+    /**
+     * Adds the clients published by the supplied node object to our client index and keeps them
+     * up to date as they come and go.
+     *
+     * @return the indexer, which should be {@link ClientIndexer#detach}ed when we are no longer
+     * subscribed to the node object.
+     */
+    protected ClientIndexer indexClients (NodeObject nodeobj)
+    {
+        ClientIndexer indexer = new ClientIndexer(nodeobj);
+        indexer.attach();
+        return indexer;
+    }
+
+    /**
+     * Adds or updates the supplied client in our client index.
+     */
+    protected void indexClient (ClientInfo clinfo)
+    {
+        synchronized (_clientIndex) {
+            _clientIndex.put(clinfo.getKey(), clinfo);
+        }
+    }
+
+    /**
+     * Removes the supplied client, which the supplied node is no longer publishing, from our
+     * client index, unless it has been superseded by a record from another node.
+     */
+    protected void unindexClient (NodeObject from, ClientInfo clinfo)
+    {
+        Comparable<?> key = clinfo.getKey();
+        synchronized (_clientIndex) {
+            if (_clientIndex.get(key) != clinfo) {
+                return;
+            }
+            _clientIndex.remove(key);
+            // a client moving between nodes may briefly be published by both, in which case we
+            // fall back to the other node's record
+            for (NodeObject nodeobj : getNodeObjects()) {
+                ClientInfo other = (nodeobj == from) ? null : nodeobj.clients.get(key);
+                if (other != null) {
+                    _clientIndex.put(key, other);
+                    break;
+                }
+            }
+        }
+    }
+
     /**
      * Called when we hear about a client logging on to another node.
      */
@@ -1414,6 +1880,42 @@ public abstract class PeerManager
         // nothing by default
     }
 
+    /**
+     * Creates the monitor used to gossip with our peers about their liveness.
+     */
+    protected GossipMonitor createGossipMonitor ()
+    {
+        return _injector.getInstance(GossipMonitor.class);
+    }
+
+    /**
+     * Called by a {@link PeerNode} when its peer sends a heartbeat.
+     */
+    protected void peerSentHeartbeat (String nodeName, String[] suspects)
+    {
+        if (_gossip != null) {
+            _gossip.heartbeatReceived(nodeName, suspects);
+        }
+    }
+
+    /**
+     * Called by our {@link GossipMonitor} when the supplied peer has been silent for long enough
+     * that we consider it failed. We drop our connection to it and end its session with us, which
+     * clears out its clients and locks just as if it had shut down. We'll reconnect to it if it
+     * turns up again.
+     */
+    protected void peerFailed (PeerNode peer, long silent)
+    {
+        log.warning("Peer has gone silent, disconnecting", "node", peer.getNodeName(),
+                    "silent", silent);
+        _stats.peersFailed++;
+        peer.getClient().logoff(false);
+        PresentsSession session = _clmgr.getClient(new PeerAuthName(peer.getNodeName()));
+        if (session != null) {
+            session.endSession();
+        }
+    }
+
     /**
      * Called when a peer announces its intention to acquire a lock.
      */
@@ -1513,25 +2015,138 @@ public abstract class PeerManager
     }
 
     /**
-     * Flattens the supplied node action into bytes.
+     * Sends the supplied action to the specified peers as a message on our node object, which is
+     * encoded once and shared by all of our peers' sessions. If action batching is enabled, the
+     * message is sent along with all others queued during the current batch. Batched actions keep
+     * their order relative to one another, but not to our other node object events or to actions
+     * sent directly to the same peers via {@link PeerService} in the meantime.
+     *
+     * @param onDropped if non-null, executed if the batched action ends up reaching none of the
+     * specified peers, because they have all since disconnected.
      */
-    protected byte[] flattenAction (NodeAction action)
+    protected void multicastAction (String[] nodeNames, byte[] actionBytes, Runnable onDropped)
     {
-        try {
-            ByteArrayOutputStream bout = new ByteArrayOutputStream();
-            ObjectOutputStream oout = new ObjectOutputStream(bout);
-            oout.writeObject(action);
-            return bout.toByteArray();
-        } catch (Exception e) {
-            throw new IllegalArgumentException(
-                "Failed to serialize node action [action=" + action + "].", e);
+        _stats.nodeActionsMulticast++;
+        if (_actionBatchMillis <= 0) {
+            _nodeobj.postMessage(NodeObject.NODE_ACTION, nodeNames, actionBytes);
+            _stats.nodeActionBatches++;
+            return;
+        }
+
+        if (_pendingActions.isEmpty()) {
+            if (_actionFlusher == null) {
+                _actionFlusher = _omgr.newInterval(new Runnable() {
+                    public void run () {
+                        flushActions();
+                    }
+                });
+            }
+            _actionFlusher.schedule(_actionBatchMillis);
         }
+        _pendingActions.add(new PendingAction(nodeNames, actionBytes, onDropped));
     }
 
     /**
-     * Flattens the supplied node request into bytes.
+     * Sends all node actions queued during the current batch to our peers in a single compound
+     * event. Peers that have unsubscribed from our node object since their actions were queued
+     * are sent them directly, if they are still connected.
      */
-    protected byte[] flattenRequest (NodeRequest request)
+    protected void flushActions ()
+    {
+        if (_pendingActions.isEmpty()) {
+            return;
+        }
+
+        List<Runnable> dropped = Lists.newArrayList();
+        _nodeobj.startTransaction();
+        try {
+            for (PendingAction pending : _pendingActions) {
+                List<String> targets = Lists.newArrayList();
+                boolean sent = false;
+                for (String nodeName : pending.nodeNames) {
+                    if (_subscribedPeers.contains(nodeName)) {
+                        targets.add(nodeName);
+                        continue;
+                    }
+                    PeerNode peer = _peers.get(nodeName);
+                    if (peer != null && peer.nodeobj != null) {
+                        peer.nodeobj.peerService.invokeAction(pending.actionBytes);
+                        sent = true;
+                    }
+                }
+                // a multicast goes to all of our subscribers, so we send to a lone target directly
+                // if we can
+                PeerNode lone = (targets.size() == 1) ? _peers.get(targets.get(0)) : null;
+                if (lone != null && lone.nodeobj != null) {
+                    lone.nodeobj.peerService.invokeAction(pending.actionBytes);
+                    sent = true;
+                } else if (!targets.isEmpty()) {
+                    _nodeobj.postMessage(NodeObject.NODE_ACTION,
+                        targets.toArray(new String[targets.size()]), pending.actionBytes);
+                    sent = true;
+                }
+                if (!sent && pending.onDropped != null) {
+                    dropped.add(pending.onDropped);
+                }
+            }
+        } finally {
+            _pendingActions.clear();
+            _nodeobj.commitTransaction();
+        }
+        _stats.nodeActionBatches++;
+
+        for (Runnable onDropped : dropped) {
+            onDropped.run();
+        }
+    }
+
+    /**
+     * Called by a {@link PeerNode} when its peer multicasts a node action.
+     */
+    protected void peerMulticastAction (String nodeName, String[] nodeNames, byte[] actionBytes)
+    {
+        // the action is sent to all of our peer's subscribers, but only some of them invoke it
+        if (Arrays.asList(nodeNames).contains(_nodeName)) {
+            executeAction(nodeName, actionBytes);
+        }
+    }
+
+    /**
+     * Called by {@link PeerSession}s when they subscribe to our {@link NodeObject}.
+     */
+    protected void peerSubscribedToNode (String nodeName)
+    {
+        _subscribedPeers.add(nodeName);
+    }
+
+    /**
+     * Called by {@link PeerSession}s when they unsubscribe from our {@link NodeObject}.
+     */
+    protected void peerUnsubscribedFromNode (String nodeName)
+    {
+        _subscribedPeers.remove(nodeName);
+    }
+
+    /**
+     * Flattens the supplied node action into bytes.
+     */
+    protected byte[] flattenAction (NodeAction action)
+    {
+        try {
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            ObjectOutputStream oout = new ObjectOutputStream(bout);
+            oout.writeObject(action);
+            return bout.toByteArray();
+        } catch (Exception e) {
+            throw new IllegalArgumentException(
+                "Failed to serialize node action [action=" + action + "].", e);
+        }
+    }
+
+    /**
+     * Flattens the supplied node request into bytes.
+     */
+    protected byte[] flattenRequest (NodeRequest request)
     {
         try {
             ByteArrayOutputStream bout = new ByteArrayOutputStream();
@@ -1565,8 +2180,7 @@ public abstract class PeerManager
     protected void lockAcquired (NodeObject.Lock lock, long wait, ResultListener<String> listener)
     {
         _nodeobj.addToLocks(lock);
-        _stats.locksAcquired++;
-        _stats.lockAcquireWait += wait;
+        _stats.noteLockAcquired(wait);
         listener.requestCompleted(_nodeName);
     }
 
@@ -1577,6 +2191,311 @@ public abstract class PeerManager
         listener.requestCompleted(null);
     }
 
+    /**
+     * Acquires a lock via a lease from its arbiter, or immediately if we already hold it.
+     */
+    protected void acquireLease (final NodeObject.Lock lock, ResultListener<String> listener)
+    {
+        HeldLease held = _held.get(lock);
+        if (held != null) {
+            held.holds++;
+            _stats.noteLockAcquired(0L);
+            listener.requestCompleted(_nodeName);
+            return;
+        }
+
+        // if we're already asking for it, wait for that to resolve
+        ResultListenerList<String> waiters = _acquiring.get(lock);
+        if (waiters != null) {
+            waiters.add(listener);
+            return;
+        }
+        _acquiring.put(lock, waiters = new ResultListenerList<String>());
+        waiters.add(listener);
+
+        final long start = System.currentTimeMillis();
+        requestLease(lock, LEASE_ACQUIRE, new ResultListener<String>() {
+            public void requestCompleted (String owner) {
+                ResultListenerList<String> waiters = _acquiring.remove(lock);
+                if (_nodeName.equals(owner)) {
+                    // every waiter holds the lock and must release it
+                    HeldLease held = new HeldLease(lock, waiters.size(), start);
+                    _held.put(lock, held);
+                    long wait = System.currentTimeMillis() - start;
+                    for (int ii = 0; ii < held.holds; ii++) {
+                        _stats.noteLockAcquired(wait);
+                    }
+                }
+                waiters.requestCompleted(owner);
+            }
+            public void requestFailed (Exception cause) {
+                _acquiring.remove(lock).requestFailed(cause);
+            }
+        });
+    }
+
+    /**
+     * Releases one hold on a leased lock, releasing the lease itself once it is no longer held.
+     */
+    protected void releaseLease (NodeObject.Lock lock, ResultListener<String> listener)
+    {
+        final HeldLease held = _held.get(lock);
+        if (held == null) {
+            String owner = queryLock(lock);
+            log.warning("Tried to release lock not held by this node", "lock", lock,
+                        "owner", owner);
+            listener.requestCompleted(owner);
+            return;
+        }
+
+        // if someone else still holds the lock locally, we keep it
+        if (--held.holds > 0) {
+            listener.requestCompleted(_nodeName);
+            return;
+        }
+
+        _held.remove(lock);
+        held.cancel();
+        _stats.locksReleased++;
+        requestLease(lock, LEASE_RELEASE, new ResultListener<String>() {
+            public void requestCompleted (String owner) {
+                // nothing to do
+            }
+            public void requestFailed (Exception cause) {
+                // the lease will expire in due course
+                log.info("Failed to release lease", "lock", held.lock, "cause", cause);
+            }
+        });
+        listener.requestCompleted(null);
+    }
+
+    /**
+     * Determines the owner of a leased lock, waiting for any pending acquisition to resolve and
+     * asking the lock's arbiter if need be.
+     */
+    protected void queryLease (NodeObject.Lock lock, ResultListener<String> listener)
+    {
+        ResultListenerList<String> waiters = _acquiring.get(lock);
+        if (waiters != null) {
+            waiters.add(listener);
+        } else if (_held.containsKey(lock)) {
+            listener.requestCompleted(_nodeName);
+        } else {
+            requestLease(lock, LEASE_QUERY, listener);
+        }
+    }
+
+    /**
+     * Asks the arbiter of the supplied lock to perform the specified lease operation on our
+     * behalf, reporting the lock's resulting owner to the supplied listener.
+     */
+    protected void requestLease (
+        NodeObject.Lock lock, int op, final ResultListener<String> listener)
+    {
+        String arbiter = getLockArbiter(lock);
+        if (_nodeName.equals(arbiter)) {
+            String owner;
+            try {
+                owner = arbitrateLease(lock, _nodeName, op);
+            } catch (InvocationException ie) {
+                listener.requestFailed(ie);
+                return;
+            }
+            listener.requestCompleted(owner);
+            return;
+        }
+        invokeNodeRequest(arbiter, new LeaseRequest(lock, _nodeName, op),
+                          new InvocationService.ResultListener() {
+            public void requestProcessed (Object result) {
+                listener.requestCompleted((String)result);
+            }
+            public void requestFailed (String cause) {
+                listener.requestFailed(new Exception(cause));
+            }
+        });
+    }
+
+    /**
+     * Performs a lease operation on behalf of the specified node, for a lock that we arbitrate.
+     *
+     * @return the owner of the lock once the operation is complete, or null if it is not owned.
+     * @exception InvocationException thrown if we are not the lock's arbiter (the requester's view
+     * of our peers may differ from ours), or if we refuse to grant a new lease on the lock because
+     * we may have only just become its arbiter (see {@link #leaseArbitersChanged}).
+     */
+    protected String arbitrateLease (NodeObject.Lock lock, String nodeName, int op)
+        throws InvocationException
+    {
+        // a lease granted by anyone but the arbiter could be granted to someone else by it
+        if (!_nodeName.equals(getLockArbiter(lock))) {
+            throw new InvocationException(LEASE_NOT_ARBITER);
+        }
+
+        // we wait for a grace period after a lease expires before granting it to anyone else, in
+        // case its holder has yet to notice that it has expired
+        long now = System.currentTimeMillis();
+        Lease lease = _leases.get(lock);
+        if (lease != null && lease.expires + getLeaseMargin() < now) {
+            _leases.remove(lock);
+            lease = null;
+        }
+
+        switch (op) {
+        case LEASE_ACQUIRE:
+        case LEASE_RENEW:
+            if (lease != null) {
+                if (!lease.holder.equals(nodeName)) {
+                    return lease.holder;
+                }
+            } else if (op == LEASE_ACQUIRE && now < _leaseRecoveryEnds) {
+                // a lease that we have no record of may be held via its previous arbiter, so we
+                // grant only renewals until any such lease would have been renewed or expired
+                throw new InvocationException(LEASE_ARBITER_RECOVERING);
+            }
+            _leases.put(lock, new Lease(nodeName, now + _lockLeaseMillis));
+            return nodeName;
+
+        case LEASE_RELEASE:
+            if (lease != null && lease.holder.equals(nodeName)) {
+                _leases.remove(lock);
+            }
+            return null;
+
+        default:
+            return (lease == null) ? null : lease.holder;
+        }
+    }
+
+    /**
+     * Renews the lease on a lock that we hold, dropping the lock if it has expired, its arbiter
+     * refuses to renew it or the renewal fails.
+     */
+    protected void renewLease (final HeldLease held)
+    {
+        final long sent = System.currentTimeMillis();
+        if (sent > held.expires - getLeaseMargin()) {
+            leaseLost(held, "expired");
+            return;
+        }
+
+        requestLease(held.lock, LEASE_RENEW, new ResultListener<String>() {
+            public void requestCompleted (String owner) {
+                if (_held.get(held.lock) != held) {
+                    return; // released in the meanwhile
+                }
+                if (_nodeName.equals(owner)) {
+                    held.renewed(sent);
+                } else {
+                    leaseLost(held, owner);
+                }
+            }
+            public void requestFailed (Exception cause) {
+                // we can't be sure that the arbiter still considers us the holder
+                if (_held.get(held.lock) == held) {
+                    leaseLost(held, "renewal failed: " + cause.getMessage());
+                }
+            }
+        });
+    }
+
+    /**
+     * Called when we can no longer be sure that we hold a leased lock.
+     */
+    protected void leaseLost (HeldLease held, String reason)
+    {
+        log.warning("Lost leased lock", "lock", held.lock, "reason", reason);
+        _held.remove(held.lock);
+        held.cancel();
+        _stats.locksHijacked++;
+        notifyDroppedLock(held.lock);
+    }
+
+    /**
+     * Called when the set of connected nodes changes, which may change the arbiters of leased
+     * locks. For a full lease period (plus our margin) we grant only renewals of the leases that
+     * we have no record of, so that their holders can tell us about them before anyone else can
+     * acquire them, and we renew our own leases so that their new arbiters learn of them.
+     */
+    protected void leaseArbitersChanged ()
+    {
+        _leaseRecoveryEnds = System.currentTimeMillis() + _lockLeaseMillis + getLeaseMargin();
+        renewLeases();
+    }
+
+    /**
+     * Renews all of the leases that we hold, immediately.
+     */
+    protected void renewLeases ()
+    {
+        for (HeldLease held : Lists.newArrayList(_held.values())) {
+            renewLease(held);
+        }
+    }
+
+    /**
+     * Clears out expired leases that we were arbitrating.
+     */
+    protected void purgeLeases ()
+    {
+        long now = System.currentTimeMillis() - getLeaseMargin();
+        for (Iterator<Lease> it = _leases.values().iterator(); it.hasNext(); ) {
+            if (it.next().expires < now) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the margin of safety used for leases: we drop the leased locks we hold this long
+     * before their leases expire, and wait this long after the leases we arbitrate expire before
+     * granting them to other nodes. This guards against delayed renewals and clock skew.
+     */
+    protected long getLeaseMargin ()
+    {
+        return _lockLeaseMillis / 4;
+    }
+
+    /**
+     * Returns the name of the node that arbitrates leases on the supplied lock, chosen from this
+     * node and our connected peers by rendezvous hashing. Nodes agree on the arbiter so long as
+     * they agree on the set of connected nodes and locks' ids are enums or have string
+     * representations that are the same on every node (see {@link #hashLock}).
+     */
+    protected String getLockArbiter (NodeObject.Lock lock)
+    {
+        String arbiter = _nodeName;
+        int best = hashLock(lock, _nodeName);
+        for (PeerNode peer : _peers.values()) {
+            if (peer.nodeobj == null) {
+                continue;
+            }
+            String nodeName = peer.getNodeName();
+            int score = hashLock(lock, nodeName);
+            if (score > best || (score == best && nodeName.compareTo(arbiter) < 0)) {
+                arbiter = nodeName;
+                best = score;
+            }
+        }
+        return arbiter;
+    }
+
+    /**
+     * Combines the hash codes of the supplied lock and node into a well mixed score. We don't use
+     * the lock's own hash code, because its id may be an enum or other object whose hash code
+     * differs from one JVM to the next, and every node must compute the same score.
+     */
+    protected static int hashLock (NodeObject.Lock lock, String nodeName)
+    {
+        String id = (lock.id instanceof Enum<?>) ?
+            ((Enum<?>)lock.id).name() : String.valueOf(lock.id);
+        int hash = (lock.type.hashCode() * 31 + id.hashCode()) * 31 + nodeName.hashCode();
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        return hash ^ (hash >>> 16);
+    }
+
     /**
      * Returns the amount of time to wait for peer ratification to complete before
      * acquiring/releasing a lock.
@@ -1787,6 +2706,137 @@ public abstract class PeerManager
         protected long _startStamp = System.currentTimeMillis();
     }
 
+    /**
+     * Tracks a leased lock held by this node.
+     */
+    protected class HeldLease
+    {
+        /** The lock in question. */
+        public final NodeObject.Lock lock;
+
+        /** The number of outstanding acquisitions of the lock on this node. */
+        public int holds;
+
+        /** The time at which our lease expires, if it is not renewed. */
+        public long expires;
+
+        /** Periodically renews our lease. */
+        public final Interval renewer;
+
+        /** Drops the lock shortly before our lease expires, if it is not renewed in time. */
+        public final Interval expirer;
+
+        public HeldLease (NodeObject.Lock lock, int holds, long requested)
+        {
+            this.lock = lock;
+            this.holds = holds;
+            this.renewer = _omgr.newInterval(new Runnable() {
+                public void run () {
+                    renewLease(HeldLease.this);
+                }
+            });
+            this.expirer = _omgr.newInterval(new Runnable() {
+                public void run () {
+                    if (_held.get(HeldLease.this.lock) == HeldLease.this) {
+                        leaseLost(HeldLease.this, "expired");
+                    }
+                }
+            });
+            long period = Math.max(_lockLeaseMillis / 3, 1L);
+            this.renewer.schedule(period, period);
+            renewed(requested);
+        }
+
+        /**
+         * Notes that our lease was renewed by a request sent at the specified time.
+         */
+        public void renewed (long requested)
+        {
+            expires = requested + _lockLeaseMillis;
+            expirer.cancel();
+            expirer.schedule(
+                Math.max(expires - getLeaseMargin() - System.currentTimeMillis(), 1L));
+        }
+
+        /**
+         * Cancels our renewal and expiry.
+         */
+        public void cancel ()
+        {
+            renewer.cancel();
+            expirer.cancel();
+        }
+    }
+
+    /**
+     * A node action queued to be multicast with the current batch.
+     */
+    protected static class PendingAction
+    {
+        /** The names of the peers to which the action is to be sent. */
+        public final String[] nodeNames;
+
+        /** The serialized action. */
+        public final byte[] actionBytes;
+
+        /** Executed if the action reaches none of its peers, or null. */
+        public final Runnable onDropped;
+
+        public PendingAction (String[] nodeNames, byte[] actionBytes, Runnable onDropped)
+        {
+            this.nodeNames = nodeNames;
+            this.actionBytes = actionBytes;
+            this.onDropped = onDropped;
+        }
+    }
+
+    /**
+     * Records a lease on a lock that we arbitrate.
+     */
+    protected static class Lease
+    {
+        /** The node that holds the lease. */
+        public final String holder;
+
+        /** The time at which the lease expires. */
+        public final long expires;
+
+        public Lease (String holder, long expires)
+        {
+            this.holder = holder;
+            this.expires = expires;
+        }
+    }
+
+    /**
+     * Asks the arbiter of a lock to perform a lease operation.
+     */
+    protected static class LeaseRequest extends NodeRequest
+    {
+        public LeaseRequest (NodeObject.Lock lock, String nodeName, int op) {
+            _lock = lock;
+            _nodeName = nodeName;
+            _op = op;
+        }
+
+        public boolean isApplicable (NodeObject nodeobj) {
+            return true; // we're only ever sent to the arbiter
+        }
+
+        @Override protected void execute (InvocationService.ResultListener listener) {
+            try {
+                listener.requestProcessed(_peermgr.arbitrateLease(_lock, _nodeName, _op));
+            } catch (InvocationException ie) {
+                listener.requestFailed(ie.getMessage());
+            }
+        }
+
+        protected NodeObject.Lock _lock;
+        protected String _nodeName;
+        protected int _op;
+        @Inject protected transient PeerManager _peermgr;
+    }
+
     protected static class NodeRequestsResultImpl<T>
         implements NodeRequestsListener.NodeRequestsResult<T>
     {
@@ -1821,6 +2871,60 @@ public abstract class PeerManager
         protected Map<String, String> _errors;
     }
 
+    /**
+     * Maintains our client index from the clients published by a single node object.
+     */
+    protected class ClientIndexer
+        implements SetListener<DSet.Entry>
+    {
+        public ClientIndexer (NodeObject nodeobj) {
+            _indexed = nodeobj;
+        }
+
+        /**
+         * Indexes the node object's current clients and listens for changes.
+         */
+        public void attach () {
+            for (ClientInfo clinfo : _indexed.clients) {
+                indexClient(clinfo);
+            }
+            _indexed.addListener(this);
+        }
+
+        /**
+         * Stops listening to the node object and removes its clients from the index.
+         */
+        public void detach () {
+            _indexed.removeListener(this);
+            for (ClientInfo clinfo : _indexed.clients) {
+                unindexClient(_indexed, clinfo);
+            }
+        }
+
+        // from interface SetListener
+        public void entryAdded (EntryAddedEvent<DSet.Entry> event) {
+            if (NodeObject.CLIENTS.equals(event.getName())) {
+                indexClient((ClientInfo)event.getEntry());
+            }
+        }
+
+        // from interface SetListener
+        public void entryUpdated (EntryUpdatedEvent<DSet.Entry> event) {
+            if (NodeObject.CLIENTS.equals(event.getName())) {
+                indexClient((ClientInfo)event.getEntry());
+            }
+        }
+
+        // from interface SetListener
+        public void entryRemoved (EntryRemovedEvent<DSet.Entry> event) {
+            if (NodeObject.CLIENTS.equals(event.getName())) {
+                unindexClient(_indexed, (ClientInfo)event.getOldEntry());
+            }
+        }
+
+        protected NodeObject _indexed;
+    }
+
     /** Extracts the node object from the supplied peer. */
     protected static final Function<PeerNode, NodeObject> GET_NODE_OBJECT =
         new Function<PeerNode, NodeObject>() {
@@ -1838,6 +2942,10 @@ public abstract class PeerManager
     protected String _nodeNamespace;
     protected Map<String,PeerNode> _peers = Maps.newHashMap();
 
+    /** The clients published by all nodes, including our own, mapped by key. This is read without
+     * locking, but updated while holding its monitor. */
+    protected Map<Comparable<?>, ClientInfo> _clientIndex = Maps.newConcurrentMap();
+
     /** Are we in ad-hoc mode? (Not really connected to peers) */
     protected boolean _adHoc;
 
@@ -1847,6 +2955,78 @@ public abstract class PeerManager
     /** Contains a mapping of proxied objects to subscriber instances. */
     protected Map<DObjectAddress, Tuple<Subscriber<?>, DObject>> _proxies = Maps.newHashMap();
 
+    /** The number of milliseconds over which to batch changes to our published clients, or zero
+     * to publish each change immediately. Derived classes must publish and clear client info via
+     * {@link #publishClientInfo} and {@link #retractClientInfo} for batching to work. */
+    @Inject(optional=true) @Named("presents.peer.clientBatchMillis")
+    protected long _clientBatchMillis;
+
+    /** Client changes to be published with the current batch, mapped by key. A null value
+     * indicates that the client is to be removed. */
+    protected Map<Comparable<?>, ClientInfo> _pendingClients = Maps.newLinkedHashMap();
+
+    /** Publishes the current batch of client changes. */
+    protected Interval _clientFlusher;
+
+    /** Whether to multicast node actions to our peers as messages on our node object, rather
+     * than invoking them on each peer separately. This requires that all of our peers handle such
+     * messages. */
+    @Inject(optional=true) @Named("presents.peer.multicastActions")
+    protected boolean _multicastActions;
+
+    /** The number of milliseconds over which to batch multicast node actions, or zero to send each
+     * action immediately. Batching gives up the ordering of actions relative to our other node
+     * object events, and to actions sent to the same peers by other means. */
+    @Inject(optional=true) @Named("presents.peer.actionBatchMillis")
+    protected long _actionBatchMillis;
+
+    /** The node actions to be sent with the current batch. */
+    protected List<PendingAction> _pendingActions = Lists.newArrayList();
+
+    /** Sends the current batch of node actions. */
+    protected Interval _actionFlusher;
+
+    /** The names of the peers whose sessions are subscribed to our node object. */
+    protected Set<String> _subscribedPeers = Sets.newConcurrentHashSet();
+
+    /** The number of milliseconds between the heartbeats that we exchange with our peers to
+     * detect their failure, or zero to rely on our peers' node records and connections. */
+    @Inject(optional=true) @Named("presents.peer.gossipMillis")
+    protected long _gossipMillis;
+
+    /** Gossips with our peers about their liveness, if we're doing so. */
+    protected GossipMonitor _gossip;
+
+    /** The duration of the leases used for locks, in milliseconds, or zero to use the default
+     * locking mode in which all nodes ratify the acquisition and release of each lock. When
+     * leases are in use, each lock is arbitrated by a single node, chosen by hashing over the
+     * connected nodes, locks are held locally until they are released or their leases lapse, and
+     * locks are no longer published in {@link NodeObject#locks}. */
+    @Inject(optional=true) @Named("presents.peer.lockLeaseMillis")
+    protected long _lockLeaseMillis;
+
+    /** The leased locks that we hold. */
+    protected Map<NodeObject.Lock, HeldLease> _held = Maps.newHashMap();
+
+    /** Listeners waiting for our pending lease acquisitions to resolve. */
+    protected Map<NodeObject.Lock, ResultListenerList<String>> _acquiring = Maps.newHashMap();
+
+    /** The leases on the locks that we arbitrate. */
+    protected Map<NodeObject.Lock, Lease> _leases = Maps.newHashMap();
+
+    /** The time until which we grant only renewals of leases that we have no record of, having
+     * started or seen the set of connected nodes change. */
+    protected long _leaseRecoveryEnds;
+
+    /** The directory in which nodes create the Unix domain sockets via which peers on the same
+     * host connect to them, or null if all peers connect via TCP. Nodes are on the same host if
+     * their records have the same {@link NodeRecord#hostName}. */
+    @Inject(optional=true) @Named("presents.peer.socketDir")
+    protected String _socketDir;
+
+    /** Accepts connections from our co-located peers, if we're doing so. */
+    protected ServerSocketChannelAcceptor _socketAcceptor;
+
     /** Our stale cache observers. */
     protected Map<String, ObserverList<StaleCacheObserver>> _cacheobs = Maps.newHashMap();
 
@@ -1869,6 +3049,18 @@ public abstract class PeerManager
     @Inject protected PresentsDObjectMgr _omgr;
     @Inject protected ReportManager _repmgr;
 
+    /** Lease operations. */
+    protected static final int LEASE_ACQUIRE = 0, LEASE_RELEASE = 1, LEASE_QUERY = 2,
+        LEASE_RENEW = 3;
+
+    /** Reported when an arbiter refuses to grant a lease until it has heard from any existing
+     * holder. */
+    protected static final String LEASE_ARBITER_RECOVERING = "e.lease_arbiter_recovering";
+
+    /** Reported when a node is asked to perform a lease operation for a lock that it does not
+     * arbitrate. */
+    protected static final String LEASE_NOT_ARBITER = "e.lease_not_arbiter";
+
     /** The default lock timeout. */
     protected static final long DEFAULT_LOCK_TIMEOUT = 5000L;
 }
@@ -6,6 +6,9 @@
 package com.threerings.presents.peer.server;
 
 import java.net.ConnectException;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.file.Path;
 
 import java.util.Date;
 
@@ -22,6 +25,8 @@ import com.threerings.presents.dobj.DSet;
 import com.threerings.presents.dobj.EntryAddedEvent;
 import com.threerings.presents.dobj.EntryRemovedEvent;
 import com.threerings.presents.dobj.EntryUpdatedEvent;
+import com.threerings.presents.dobj.MessageEvent;
+import com.threerings.presents.dobj.MessageListener;
 import com.threerings.presents.dobj.ObjectAccessException;
 import com.threerings.presents.dobj.SetListener;
 import com.threerings.presents.dobj.Subscriber;
@@ -138,7 +143,9 @@ public class PeerNode
             return;
         }
 
-        // otherwise configure our client with the right bits and logon
+        // otherwise configure our client with the right bits and logon, via our peer's Unix domain
+        // socket if it's on our host and we've not had trouble with it
+        _socketPath = _socketFailed ? null : _peermgr.getPeerSocketPath(_record);
         _client.setCredentials(_peermgr.createCreds());
         _client.setServer(hostName, new int[] { _record.port });
         _client.logon();
@@ -156,6 +163,12 @@ public class PeerNode
     // documentation inherited from interface ClientObserver
     public void clientFailedToLogon (Client client, Exception cause)
     {
+        if (_socketPath != null && !(cause instanceof ConnectException)) {
+            // we'll connect via TCP from now on; a refused connection doesn't count, as a peer
+            // that crashed leaves its socket behind until it restarts and replaces it
+            log.info("Peer socket connection failed " + _record, "path", _socketPath);
+            _socketFailed = true;
+        }
         if (cause instanceof ConnectException) {
             // we'll reconnect at most one minute later in refreshPeers()
             log.info("Peer not online " + _record + ": " + cause.getMessage());
@@ -206,6 +219,8 @@ public class PeerNode
             return;
         }
         String nodeName = getNodeName();
+        _indexer.detach();
+        _indexer = null;
         for (ClientInfo clinfo : nodeobj.clients) {
             _peermgr.clientLoggedOff(nodeName, clinfo);
         }
@@ -218,6 +233,9 @@ public class PeerNode
         _peermgr.disconnectedFromPeer(this);
         _listener = null;
         nodeobj = null;
+
+        // the arbiters of some of our leased locks may have changed
+        _peermgr.leaseArbitersChanged();
     }
 
     // documentation inherited from interface ClientObserver
@@ -232,8 +250,10 @@ public class PeerNode
         // listen for lock and cache updates
         nodeobj = object;
         nodeobj.addListener(_listener = createListener());
+        _indexer = _peermgr.indexClients(nodeobj);
 
         _peermgr.connectedToPeer(this);
+        _peermgr.leaseArbitersChanged();
 
         String nodeName = getNodeName();
         for (ClientInfo clinfo : nodeobj.clients) {
@@ -260,7 +280,12 @@ public class PeerNode
 
     protected Communicator createCommunicator (Client client)
     {
-        return new ServerCommunicator(client, _conmgr, _omgr);
+        return new ServerCommunicator(client, _conmgr, _omgr) {
+            @Override protected SocketAddress getServerAddress () {
+                return (_socketPath == null) ? super.getServerAddress() :
+                    UnixDomainSocketAddress.of(_socketPath);
+            }
+        };
     }
 
     /**
@@ -275,7 +300,7 @@ public class PeerNode
      * Listens to node object changes.
      */
     protected class NodeObjectListener
-        implements AttributeChangeListener, SetListener<DSet.Entry>
+        implements AttributeChangeListener, SetListener<DSet.Entry>, MessageListener
     {
         // documentation inherited from interface AttributeChangeListener
         public void attributeChanged (AttributeChangedEvent event) {
@@ -319,13 +344,34 @@ public class PeerNode
                 _peermgr.peerRemovedLock(getNodeName(), (NodeObject.Lock)event.getOldEntry());
             }
         }
+
+        // documentation inherited from interface MessageListener
+        public void messageReceived (MessageEvent event) {
+            String name = event.getName();
+            if (NodeObject.HEARTBEAT.equals(name)) {
+                _peermgr.peerSentHeartbeat(getNodeName(), (String[])event.getArgs()[0]);
+
+            } else if (NodeObject.NODE_ACTION.equals(name)) {
+                Object[] args = event.getArgs();
+                _peermgr.peerMulticastAction(getNodeName(), (String[])args[0], (byte[])args[1]);
+            }
+        }
     } // END: class NodeObjectListener
 
     protected NodeRecord _record;
     protected NodeObjectListener _listener;
+    protected PeerManager.ClientIndexer _indexer;
     protected Client _client;
     protected long _lastConnectStamp;
 
+    /** The path of the Unix domain socket via which we're connecting to our co-located peer, or
+     * null if we're connecting via TCP. */
+    protected Path _socketPath;
+
+    /** Set if we failed to log on via our peer's socket for any reason other than its refusing our
+     * connection, after which we use TCP. */
+    protected boolean _socketFailed;
+
     @Inject protected PeerManager _peermgr;
     @Inject protected PresentsDObjectMgr _omgr;
     @Inject protected PresentsConnectionManager _conmgr;
@@ -9,9 +9,12 @@ import com.google.inject.Inject;
 
 import com.samskivert.util.Throttle;
 
+import com.threerings.presents.dobj.DEvent;
 import com.threerings.presents.dobj.DObject;
+import com.threerings.presents.dobj.MessageEvent;
 import com.threerings.presents.net.BootstrapData;
 import com.threerings.presents.net.DownstreamMessage;
+import com.threerings.presents.net.EventNotification;
 import com.threerings.presents.net.Message;
 import com.threerings.presents.peer.data.NodeObject;
 import com.threerings.presents.peer.net.PeerBootstrapData;
@@ -113,12 +116,28 @@ public class PeerSession extends PresentsSession
         return true;
     }
 
+    @Override // from PresentsSession
+    protected boolean isUrgent (DownstreamMessage msg)
+    {
+        // our heartbeats must not wait for a backed up connection to drain, lest our peer take
+        // the delay for our failure
+        if (msg instanceof EventNotification) {
+            DEvent event = ((EventNotification)msg).getEvent();
+            if (event instanceof MessageEvent &&
+                ((MessageEvent)event).getName().equals(NodeObject.HEARTBEAT)) {
+                return true;
+            }
+        }
+        return super.isUrgent(msg);
+    }
+
     @Override // from PresentsSession
     protected void subscribedToObject (DObject object)
     {
         super.subscribedToObject(object);
         if (object instanceof NodeObject) {
             _peermgr.clientSubscribedToNode(_cloid);
+            _peermgr.peerSubscribedToNode(getAuthName().toString());
         }
     }
 
@@ -128,6 +147,7 @@ public class PeerSession extends PresentsSession
         super.unsubscribedFromObject(object);
         if (object instanceof NodeObject) {
             _peermgr.clientUnsubscribedFromNode(_cloid);
+            _peermgr.peerUnsubscribedFromNode(getAuthName().toString());
         }
     }
 
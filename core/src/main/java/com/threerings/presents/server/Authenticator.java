@@ -65,6 +65,12 @@ public abstract class Authenticator
 
             @Override
             public void handleResult () {
+                // if the client can unpack several datagrams from one packet, let it know that
+                // we'll be packing them
+                if (AuthResponseData.SUCCESS.equals(rdata.code) && req.getPackDatagrams()) {
+                    rsp.setPackDatagrams(true);
+                }
+
                 // stuff a reference to the auth response into the connection so that we have
                 // access to it later in the authentication process
                 conn.setAuthResponse(rsp);
@@ -0,0 +1,54 @@
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2025 Three Rings Design, Inc., All Rights Reserved
+// https://github.com/threerings/narya/blob/master/LICENSE
+
+package com.threerings.presents.server;
+
+import com.samskivert.util.StringUtil;
+
+import com.threerings.presents.data.ClientObject;
+import com.threerings.presents.data.InvocationCodes;
+import com.threerings.presents.data.InvocationMarshaller;
+
+import static com.threerings.presents.Log.log;
+
+/**
+ * The base class for the dispatchers generated for invocation services by
+ * <code>GenServiceTask</code>. A generated dispatcher switches on the method id of a request,
+ * casts its arguments and calls the provider directly, which saves the {@link InvocationManager}
+ * from having to look up a {@link java.lang.reflect.Method} and invoke it reflectively. The
+ * invocation manager uses a service's dispatcher, if one exists, when its provider is registered.
+ */
+public abstract class InvocationDispatcher<T extends InvocationMarshaller<?>>
+{
+    /** The provider to which we dispatch requests. */
+    public InvocationProvider provider;
+
+    /**
+     * Creates a marshaller for the service handled by this dispatcher.
+     */
+    public abstract T createMarshaller ();
+
+    /**
+     * Dispatches the specified request to our provider. Generated dispatchers handle the methods
+     * of their service and call this for any method id they do not recognize.
+     */
+    public void dispatchRequest (ClientObject source, int methodId, Object[] args)
+        throws InvocationException
+    {
+        log.warning("Requested to dispatch unknown method", "source", source.who(),
+                    "methodId", methodId, "provider", StringUtil.shortClassName(provider),
+                    "args", args);
+        throw new InvocationException(InvocationCodes.E_INTERNAL_ERROR);
+    }
+
+    /**
+     * Used by generated code to cast arguments of parameterized types.
+     */
+    @SuppressWarnings("unchecked")
+    protected <C> C cast (Object arg)
+    {
+        return (C)arg;
+    }
+}
@@ -5,6 +5,7 @@
 
 package com.threerings.presents.server;
 
+import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
@@ -186,50 +187,19 @@ public class InvocationManager
     {
         _omgr.requireEventThread(); // sanity check
 
-        // find the invocation provider interface class (defaulting to the concrete class to cope
-        // with legacy non-interface based providers)
-        Class<?> pclass = provider.getClass();
-        String pname = mclass.getSimpleName().replaceAll("Marshaller", "Provider");
-      OUTER:
-        for (Class<?> sclass = pclass; sclass != null; sclass = sclass.getSuperclass()) {
-            for (Class<?> iclass : sclass.getInterfaces()) {
-                if (InvocationProvider.class.isAssignableFrom(iclass) &&
-                    iclass.getSimpleName().equals(pname)) {
-                    pclass = iclass;
-                    break OUTER;
-                }
-            }
-        }
-
-        // determine the invocation service code mappings
-        final Map<Integer,Method> invmeths = Maps.newHashMap();
-        for (Method method : pclass.getMethods()) {
-            Class<?>[] ptypes = method.getParameterTypes();
-            // only consider methods whose first argument is of type ClientObject; this is a
-            // non-issue if we are looking at an auto-generated FooProvider interface, but is
-            // necessary to avoid problems for legacy concrete FooProvider implementations that
-            // also happen to have overloaded methods with the same name as invocation service
-            // methods; I'm looking at you ChatProvider...
-            if (ptypes.length == 0 || !ClientObject.class.isAssignableFrom(ptypes[0])) {
-                continue;
-            }
-            try {
-                Field code = mclass.getField(StringUtil.unStudlyName(method.getName()));
-                invmeths.put(code.getInt(null), method);
-            } catch (IllegalAccessException iae) {
-                throw new RuntimeException(iae); // Field.get failed? shouldn't happen
-            } catch (NoSuchFieldException nsfe) {
-                // not a problem, they just added some extra methods to their provider
-            }
-        }
-
         // get the next invocation code
         final int invCode = ++_lastCode;
 
+        // use the service's generated dispatcher if it has one, otherwise dispatch reflectively
+        InvocationDispatcher<?> gendisp = createDispatcher(mclass, provider);
+        Dispatcher disp = (gendisp != null) ? new GeneratedDispatcher(gendisp, access) :
+            new ReflectiveDispatcher(provider, getInvocationMethods(provider, mclass), access);
+
         // create a marshaller instance and initialize it
         T marsh;
         try {
-            marsh = mclass.getConstructor().newInstance();
+            marsh = (gendisp != null) ? mclass.cast(gendisp.createMarshaller()) :
+                mclass.getConstructor().newInstance();
             marsh.init(_invoid, invCode,
                 _standaloneClient == null ? null : _standaloneClient.getInvocationDirector());
         } catch (NoSuchMethodException | InvocationTargetException | IllegalAccessException |
@@ -237,49 +207,7 @@ public class InvocationManager
             throw new RuntimeException(ee);
         }
 
-        _dispatchers.put(invCode, customizeDispatcher(mclass, new Dispatcher() {
-            public boolean isAllowed (ClientObject caller) {
-                return access.isAllowed(caller);
-            }
-
-            public InvocationProvider getProvider () {
-                return provider;
-            }
-
-            public void dispatchRequest (ClientObject source, int methodId, Object[] args)
-                throws InvocationException {
-                // locate the method to be invoked
-                Method m = invmeths.get(methodId);
-                if (m == null) {
-                    String pclass = StringUtil.shortClassName(provider.getClass());
-                    log.warning("Requested to dispatch unknown method", "source", source.who(),
-                                "methodId", methodId, "provider", pclass, "args", args);
-                    throw new InvocationException(InvocationCodes.E_INTERNAL_ERROR);
-                }
-
-                // prepare the arguments: the ClientObject followed by the service method args
-                Object[] fargs = new Object[args.length+1];
-                System.arraycopy(args, 0, fargs, 1, args.length);
-                fargs[0] = source;
-
-                // actually invoke the method, and cope with failure
-                try {
-                    m.invoke(provider, fargs);
-                } catch (IllegalAccessException ie) {
-                    throw new RuntimeException(ie); // should never happen
-                } catch (InvocationTargetException ite) {
-                    Throwable cause = ite.getCause();
-                    if (cause instanceof InvocationException ieCause) {
-                        throw ieCause;
-                    } else {
-                        log.warning("Invocation service method failure",
-                                    "provider", StringUtil.shortClassName(provider.getClass()),
-                                    "method", m.getName(), "args", fargs, cause);
-                        throw new InvocationException(InvocationCodes.E_INTERNAL_ERROR);
-                    }
-                }
-            }
-        }));
+        _dispatchers.put(invCode, customizeDispatcher(mclass, disp));
 
         // if it's a bootstrap service, slap it in the list
         if (group != null) _bootlists.put(group, marsh);
@@ -342,6 +270,95 @@ public class InvocationManager
         return dispatcher != null ? dispatcher.getProvider().getClass() : null;
     }
 
+    /**
+     * Creates the dispatcher generated for the service with the supplied marshaller class, if
+     * there is one and it handles the supplied provider, or returns null.
+     */
+    protected InvocationDispatcher<?> createDispatcher (
+        Class<?> mclass, InvocationProvider provider)
+    {
+        // FooMarshaller lives in foo.data and FooDispatcher in foo.server
+        String mpackage = mclass.getPackage().getName();
+        if (!mpackage.endsWith(".data")) {
+            return null;
+        }
+        String dname = mpackage.substring(0, mpackage.length() - "data".length()) + "server." +
+            mclass.getSimpleName().replace("Marshaller", "Dispatcher");
+        Class<?> dclass;
+        try {
+            dclass = Class.forName(dname, true, mclass.getClassLoader());
+        } catch (ClassNotFoundException cnfe) {
+            return null; // no dispatcher was generated for this service
+        }
+
+        if (InvocationDispatcher.class.isAssignableFrom(dclass)) {
+            for (Constructor<?> ctor : dclass.getConstructors()) {
+                Class<?>[] ptypes = ctor.getParameterTypes();
+                if (ptypes.length != 1 || !ptypes[0].isInstance(provider)) {
+                    continue;
+                }
+                try {
+                    InvocationDispatcher<?> disp =
+                        (InvocationDispatcher<?>)ctor.newInstance(provider);
+                    // make sure the dispatcher was generated for this very marshaller
+                    if (disp.createMarshaller().getClass() == mclass) {
+                        return disp;
+                    }
+                } catch (InvocationTargetException | IllegalAccessException |
+                         InstantiationException ee) {
+                    log.warning("Failed to create dispatcher", "dclass", dname, ee);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Maps the method ids of the service with the supplied marshaller class to the methods of the
+     * supplied provider that handle them.
+     */
+    protected Map<Integer,Method> getInvocationMethods (
+        InvocationProvider provider, Class<?> mclass)
+    {
+        // find the invocation provider interface class (defaulting to the concrete class to cope
+        // with legacy non-interface based providers)
+        Class<?> pclass = provider.getClass();
+        String pname = mclass.getSimpleName().replaceAll("Marshaller", "Provider");
+      OUTER:
+        for (Class<?> sclass = pclass; sclass != null; sclass = sclass.getSuperclass()) {
+            for (Class<?> iclass : sclass.getInterfaces()) {
+                if (InvocationProvider.class.isAssignableFrom(iclass) &&
+                    iclass.getSimpleName().equals(pname)) {
+                    pclass = iclass;
+                    break OUTER;
+                }
+            }
+        }
+
+        // determine the invocation service code mappings
+        Map<Integer,Method> invmeths = Maps.newHashMap();
+        for (Method method : pclass.getMethods()) {
+            Class<?>[] ptypes = method.getParameterTypes();
+            // only consider methods whose first argument is of type ClientObject; this is a
+            // non-issue if we are looking at an auto-generated FooProvider interface, but is
+            // necessary to avoid problems for legacy concrete FooProvider implementations that
+            // also happen to have overloaded methods with the same name as invocation service
+            // methods; I'm looking at you ChatProvider...
+            if (ptypes.length == 0 || !ClientObject.class.isAssignableFrom(ptypes[0])) {
+                continue;
+            }
+            try {
+                Field code = mclass.getField(StringUtil.unStudlyName(method.getName()));
+                invmeths.put(code.getInt(null), method);
+            } catch (IllegalAccessException iae) {
+                throw new RuntimeException(iae); // Field.get failed? shouldn't happen
+            } catch (NoSuchFieldException nsfe) {
+                // not a problem, they just added some extra methods to their provider
+            }
+        }
+        return invmeths;
+    }
+
     /**
      * Allow subclasses to modify behavior.
      */
@@ -449,6 +466,95 @@ public class InvocationManager
             throws InvocationException;
     }
 
+    /** Dispatches requests via a dispatcher generated for the service. */
+    protected static class GeneratedDispatcher implements Dispatcher
+    {
+        public GeneratedDispatcher (InvocationDispatcher<?> disp, ServiceAccessController access) {
+            _disp = disp;
+            _access = access;
+        }
+
+        public boolean isAllowed (ClientObject caller) {
+            return _access.isAllowed(caller);
+        }
+
+        public InvocationProvider getProvider () {
+            return _disp.provider;
+        }
+
+        public void dispatchRequest (ClientObject source, int methodId, Object[] args)
+            throws InvocationException {
+            try {
+                _disp.dispatchRequest(source, methodId, args);
+            } catch (RuntimeException re) {
+                log.warning("Invocation service method failure",
+                            "provider", StringUtil.shortClassName(_disp.provider),
+                            "methodId", methodId, "args", args, re);
+                throw new InvocationException(InvocationCodes.E_INTERNAL_ERROR);
+            }
+        }
+
+        protected final InvocationDispatcher<?> _disp;
+        protected final ServiceAccessController _access;
+    }
+
+    /** Dispatches requests by reflectively invoking the provider's methods. */
+    protected static class ReflectiveDispatcher implements Dispatcher
+    {
+        public ReflectiveDispatcher (InvocationProvider provider, Map<Integer,Method> invmeths,
+                                     ServiceAccessController access) {
+            _provider = provider;
+            _invmeths = invmeths;
+            _access = access;
+        }
+
+        public boolean isAllowed (ClientObject caller) {
+            return _access.isAllowed(caller);
+        }
+
+        public InvocationProvider getProvider () {
+            return _provider;
+        }
+
+        public void dispatchRequest (ClientObject source, int methodId, Object[] args)
+            throws InvocationException {
+            // locate the method to be invoked
+            Method m = _invmeths.get(methodId);
+            if (m == null) {
+                String pclass = StringUtil.shortClassName(_provider.getClass());
+                log.warning("Requested to dispatch unknown method", "source", source.who(),
+                            "methodId", methodId, "provider", pclass, "args", args);
+                throw new InvocationException(InvocationCodes.E_INTERNAL_ERROR);
+            }
+
+            // prepare the arguments: the ClientObject followed by the service method args
+            Object[] fargs = new Object[args.length+1];
+            System.arraycopy(args, 0, fargs, 1, args.length);
+            fargs[0] = source;
+
+            // actually invoke the method, and cope with failure
+            try {
+                m.invoke(_provider, fargs);
+            } catch (IllegalAccessException ie) {
+                throw new RuntimeException(ie); // should never happen
+            } catch (InvocationTargetException ite) {
+                Throwable cause = ite.getCause();
+                if (cause instanceof InvocationException ieCause) {
+                    throw ieCause;
+                } else {
+                    log.warning("Invocation service method failure",
+                                "provider", StringUtil.shortClassName(_provider.getClass()),
+                                "method", m.getName(), "args", fargs, cause);
+                    throw new InvocationException(InvocationCodes.E_INTERNAL_ERROR);
+                }
+            }
+        }
+
+        protected final InvocationProvider _provider;
+        protected final Map<Integer,Method> _invmeths;
+        protected final ServiceAccessController _access;
+    }
+
     /** The object id on which we receive global invocation service requests. */
     protected final int _invoid;
 
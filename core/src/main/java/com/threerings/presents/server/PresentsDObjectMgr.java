@@ -11,21 +11,27 @@ import java.lang.reflect.Modifier;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import com.google.inject.name.Named;
 
+import com.samskivert.util.Collections;
 import com.samskivert.util.Histogram;
 import com.samskivert.util.IntMap;
 import com.samskivert.util.IntMaps;
 import com.samskivert.util.Interval;
-import com.samskivert.util.Queue;
+import com.samskivert.util.RunQueue;
 import com.samskivert.util.StringUtil;
 import com.samskivert.util.Throttle;
 
+import com.threerings.presents.annotation.Coalesced;
 import com.threerings.presents.dobj.AccessController;
+import com.threerings.presents.dobj.AttributeChangedEvent;
 import com.threerings.presents.dobj.CompoundEvent;
 import com.threerings.presents.dobj.DEvent;
 import com.threerings.presents.dobj.DObject;
@@ -39,6 +45,7 @@ import com.threerings.presents.dobj.ObjectRemovedEvent;
 import com.threerings.presents.dobj.OidList;
 import com.threerings.presents.dobj.RootDObjectManager;
 import com.threerings.presents.dobj.Subscriber;
+import com.threerings.presents.net.Transport;
 
 import static com.threerings.presents.Log.log;
 
@@ -64,6 +71,10 @@ public class PresentsDObjectMgr
 
         /** The number of events dispatched during the period. */
         public int eventCount;
+
+        /** The number of {@link Coalesced} attribute changes that were superseded by later
+         * changes before they were sent to subscribers during the period. */
+        public int changesCoalesced;
     }
 
     /** Post instances of these if you know you're going to tie up the distributed object thread
@@ -98,6 +109,13 @@ public class PresentsDObjectMgr
                 } else {
                     report.append(" (inf/s)\n");
                 }
+                report.append("- Changes coalesced: ").append(stats.changesCoalesced).append("\n");
+                Shard[] shards = _shards;
+                if (shards != null) {
+                    for (Shard shard : shards) {
+                        shard.appendReport(report, reset);
+                    }
+                }
             }
         });
         repmgr.registerReporter(ReportManager.PROFILE_TYPE, new ReportManager.Reporter() {
@@ -141,9 +159,12 @@ public class PresentsDObjectMgr
         _defaultController = controller;
 
         // switch all objects from the old default (null, usually) to the new default.
-        for (DObject obj : _objects.values()) {
-            if (oldDefault == obj.getAccessController()) {
-                obj.setAccessController(controller);
+        IntMap<DObject> objects = _objects;
+        synchronized (objects) {
+            for (DObject obj : objects.values()) {
+                if (oldDefault == obj.getAccessController()) {
+                    obj.setAccessController(controller);
+                }
             }
         }
     }
@@ -166,8 +187,9 @@ public class PresentsDObjectMgr
     public void registerProxyObject (DObject object, DObjectManager omgr)
     {
         int origObjectId = object.getOid();
-        // register the object locally which will reassign its oid and set us as its manager
-        registerObject(object);
+        // register the object locally which will reassign its oid and set us as its manager;
+        // proxies are always dispatched on the main thread, which forwards their events
+        registerObjectIn(object, null);
         // and note a proxy reference for the object which we'll use to forward events back to its
         // originating manager after converting them back to the original oid
         _proxies.put(object.getOid(), new ProxyReference(origObjectId, omgr));
@@ -215,9 +237,9 @@ public class PresentsDObjectMgr
                         new Exception());
         }
 
-        // assign the event's id and append it to the queue
+        // assign the event's id and append it to the queue of the target object's shard
         event.eventId = getNextEventId(true);
-        _evqueue.append(event);
+        getQueue(event).append(event);
     }
 
     // from interface DObjectManager
@@ -232,7 +254,35 @@ public class PresentsDObjectMgr
     // from interface RootDObjectManager
     public <T extends DObject> T registerObject (T object)
     {
-        if (_dobjThread != null && !isDispatchThread()) {
+        // objects registered by code running on a shard join that shard
+        return registerObjectIn(object, getCurrentShard());
+    }
+
+    /**
+     * Registers an object and assigns it to a shard based on the supplied affinity key. If the key
+     * is a registered distributed object, the new object joins that object's shard (or the main
+     * dispatch thread if it has none), so that an object can be kept alongside the object that
+     * owns it (a place object, say). Any other key is hashed to select a shard. A null key, or
+     * sharding being disabled, results in the object being dispatched on the main thread.
+     *
+     * <p> An object's events are processed, and its listeners and subscribers notified, on its
+     * shard's thread, and code that modifies the object or reads its fields must also run there:
+     * use {@link #getRunQueue} to get code onto that thread. Events posted to an object from
+     * another thread are applied in the order they were posted by that thread, but there is no
+     * ordering between events posted to objects on different shards.
+     */
+    @Override // from interface RootDObjectManager
+    public <T extends DObject> T registerObject (T object, Object affinity)
+    {
+        return registerObjectIn(object, getShard(affinity));
+    }
+
+    /**
+     * Registers an object, assigning it to the supplied shard, or the main thread if null.
+     */
+    protected <T extends DObject> T registerObjectIn (T object, Shard shard)
+    {
+        if (_dobjThread != null && !isAnyDispatchThread()) {
             log.warning("Registering DObject on non-dobject thread",
                         "class", object.getClass().getName(), new Exception());
         }
@@ -251,7 +301,10 @@ public class PresentsDObjectMgr
             object.setAccessController(_defaultController);
         }
 
-        // insert it into the table
+        // insert it into the table, noting its shard first so that no event can get by it
+        if (shard != null) {
+            _shardOf.put(oid, shard);
+        }
         _objects.put(oid, object);
 
 //         log.info("Registered object", "obj", object);
@@ -265,7 +318,11 @@ public class PresentsDObjectMgr
      */
     protected void noteDefaultedController (DObject object)
     {
-        if (_defaultedControllerClasses.add(object.getClass())) {
+        boolean added;
+        synchronized (_defaultedControllerClasses) {
+            added = _defaultedControllerClasses.add(object.getClass());
+        }
+        if (added) {
             log.info("Registered object with no explicit access controller; using default",
                      "class", object.getClass().getName());
         }
@@ -310,6 +367,18 @@ public class PresentsDObjectMgr
         return _objects.get(oid);
     }
 
+    /**
+     * Returns the run queue on which the events of the supplied object are dispatched: that of its
+     * shard, or this manager if it is dispatched on the main thread. Code that modifies a sharded
+     * object from elsewhere should be posted to this queue, and intervals that do so should be
+     * created with it.
+     */
+    public RunQueue getRunQueue (DObject object)
+    {
+        Shard shard = getShard(object);
+        return (shard == null) ? this : shard;
+    }
+
     /**
      * Returns a recent snapshot of runtime statistics tracked by the distributed object manager.
      *
@@ -365,6 +434,26 @@ public class PresentsDObjectMgr
         return Thread.currentThread() == _dobjThread;
     }
 
+    /**
+     * Returns true if the calling thread is the one on which the events of the supplied object are
+     * dispatched: its shard's thread if it has one, the main dispatch thread otherwise.
+     */
+    public boolean isDispatchThread (DObject object)
+    {
+        Shard shard = getShard(object);
+        return (shard == null) ? isDispatchThread() : (Thread.currentThread() == shard);
+    }
+
+    /**
+     * Returns true if the calling thread is the main dispatch thread or one of our shard threads.
+     * Code that is only concerned with not blocking event dispatch, rather than with accessing
+     * particular objects, will want to use this rather than {@link #isDispatchThread()}.
+     */
+    public boolean isAnyDispatchThread ()
+    {
+        return isDispatchThread() || getCurrentShard() != null;
+    }
+
     /**
      * Ensures that the calling thread is the distributed object event dispatch thread, throwing an
      * {@link IllegalStateException} if it is not. <em>Note:</em> before the manager is started up,
@@ -404,9 +493,37 @@ public class PresentsDObjectMgr
             _dobjThread = Thread.currentThread();
         }
 
+        // start up our shards, if we have any
+        Shard[] shards = getShards();
+        if (shards != null) {
+            for (Shard shard : shards) {
+                shard.start();
+            }
+        }
+
+        List<Object> batch = Lists.newArrayListWithCapacity(MAX_BATCH_SIZE);
         while (isRunning()) {
-            // pop the next unit off the queue and process it
-            processUnit(_evqueue.get());
+            // take the next batch of units off the queue and process them
+            drainUnits(_evqueue, batch, _current);
+            for (int ii = 0, ll = batch.size(); ii < ll && isRunning(); ii++) {
+                processUnit(batch.get(ii));
+            }
+            batch.clear();
+            sendHeldChanges(_held);
+        }
+
+        // let our shards process what's in their queues and exit
+        if (shards != null) {
+            for (Shard shard : shards) {
+                shard.shutdown();
+            }
+            for (Shard shard : shards) {
+                try {
+                    shard.join();
+                } catch (InterruptedException ie) {
+                    log.warning("Interrupted waiting for shard to exit", "shard", shard);
+                }
+            }
         }
 
         log.info("DOMGR exited.");
@@ -477,7 +594,9 @@ public class PresentsDObjectMgr
 
 //         log.info("Removing destroyed object from table", "oid", oid);
 
-        // remove the object from the table
+        // remove the object from the table; subsequent events will be routed to the main thread
+        // which will find that it no longer exists
+        _shardOf.remove(oid);
         _objects.remove(oid);
 
         // deactivate the object
@@ -490,7 +609,10 @@ public class PresentsDObjectMgr
         }
 
         // deal with any remaining oid lists that reference this object
-        Reference[] refs = _refs.remove(oid);
+        Reference[] refs;
+        synchronized (_refs) {
+            refs = _refs.remove(oid);
+        }
         if (refs != null) {
             for (Reference ref : refs) {
                 // skip empty spots
@@ -561,6 +683,18 @@ public class PresentsDObjectMgr
             return false;
         }
 
+        // the referencing and referenced objects may be on different shards
+        synchronized (_refs) {
+            return addReference(target, oae, oid);
+        }
+    }
+
+    /**
+     * Tracks a reference on behalf of {@link #objectAdded}. The caller must hold the lock on our
+     * references table.
+     */
+    protected boolean addReference (DObject target, ObjectAddedEvent oae, int oid)
+    {
         // get the reference vector for the referenced object. we use bare arrays rather than
         // something like an array list to conserve memory. there will be many objects and
         // references
@@ -612,6 +746,17 @@ public class PresentsDObjectMgr
 
 //        log.info("Processing object removed", "from", toid, "roid", toid);
 
+        synchronized (_refs) {
+            return removeReference(toid, field, oid);
+        }
+    }
+
+    /**
+     * Clears a reference on behalf of {@link #objectRemoved}. The caller must hold the lock on our
+     * references table.
+     */
+    protected boolean removeReference (int toid, String field, int oid)
+    {
         // get the reference vector for the referenced object
         Reference[] refs = _refs.get(oid);
         if (refs == null) {
@@ -645,6 +790,14 @@ public class PresentsDObjectMgr
      */
     public boolean queueIsEmpty ()
     {
+        Shard[] shards = _shards;
+        if (shards != null) {
+            for (Shard shard : shards) {
+                if (shard.queue.hasElements()) {
+                    return false;
+                }
+            }
+        }
         return !_evqueue.hasElements();
     }
 
@@ -652,11 +805,26 @@ public class PresentsDObjectMgr
      * Tests if the event processing thread is still running. This is required by the
      * ConnectionManager to ensure messages posted just before or during shutdown are sent.
      */
-    public synchronized boolean isRunning ()
+    public boolean isRunning ()
     {
         return _running;
     }
 
+    /**
+     * Waits for units to be appended to the supplied queue and removes up to {@link
+     * #MAX_BATCH_SIZE} of them into the supplied batch, noting the size the queue had reached in
+     * the supplied stats.
+     */
+    protected void drainUnits (UnitQueue<Object> queue, List<Object> batch, Stats stats)
+    {
+        int queueSize = queue.drainTo(batch, MAX_BATCH_SIZE) + queue.size();
+        synchronized (stats) {
+            if (queueSize > stats.maxQueueSize) {
+                stats.maxQueueSize = queueSize;
+            }
+        }
+    }
+
     /**
      * Processes a single unit from the queue.
      */
@@ -664,12 +832,6 @@ public class PresentsDObjectMgr
     {
         long start = System.nanoTime();
 
-        // keep track of the largest queue size we've seen
-        int queueSize = _evqueue.size();
-        if (queueSize > _current.maxQueueSize) {
-            _current.maxQueueSize = queueSize;
-        }
-
         try {
             if (unit instanceof Runnable rr) {
                 // if this is a runnable, it's just an executable unit that should be invoked
@@ -700,7 +862,8 @@ public class PresentsDObjectMgr
             handleFatalError(unit, e);
 
         } catch (Throwable t) {
-            log.warning("Execution unit failed", "unit", unit, t);
+            log.warning("Execution unit failed", "thread", Thread.currentThread().getName(),
+                        "unit", unit, t);
         }
 
         // compute the elapsed time in microseconds
@@ -708,12 +871,15 @@ public class PresentsDObjectMgr
 
         // report excessively long units
         if (elapsed > 500000 && !(unit instanceof LongRunnable)) {
-            log.warning("Long dobj unit " + StringUtil.shortClassName(unit), "unit", unit,
+            log.warning("Long dobj unit " + StringUtil.shortClassName(unit),
+                        "thread", Thread.currentThread().getName(), "unit", unit,
                         "time", (elapsed/1000) + "ms");
         }
 
-        // periodically sample and record the time spent processing a unit
-        if (UNIT_PROF_ENABLED && _eventCount % _unitProfInterval == 0) {
+        // periodically sample and record the time spent processing a unit (our profiles are
+        // only maintained by the main thread)
+        if (UNIT_PROF_ENABLED && _eventCount % _unitProfInterval == 0 &&
+            getCurrentShard() == null) {
             String cname;
             // do some jiggery pokery to get more fine grained profiling details on certain
             // "popular" unit types
@@ -764,7 +930,7 @@ public class PresentsDObjectMgr
         }
 
         // always notify proxies of compound events
-        target.notifyProxies(event);
+        forwardToProxies(target, event);
     }
 
     /**
@@ -787,10 +953,107 @@ public class PresentsDObjectMgr
 
         if (dispatchEvent(event, target)) {
             // unless requested not to, notify any proxies
-            target.notifyProxies(event);
+            forwardToProxies(target, event);
         }
     }
 
+    /**
+     * Passes a dispatched event on to the proxies of its target object, unless it changes a
+     * {@link Coalesced} attribute, in which case it is held until the end of the current batch of
+     * units. Any changes held for the object are passed on before any other event.
+     */
+    protected void forwardToProxies (DObject target, DEvent event)
+    {
+        Shard shard = getCurrentShard();
+        Map<DObject, Map<String, AttributeChangedEvent>> held =
+            (shard == null) ? _held : shard.held;
+        if (event instanceof AttributeChangedEvent ace && !ace.isPrivate() &&
+            ace.getTransport().isReliable() && isCoalesced(target, ace.getName())) {
+            Map<String, AttributeChangedEvent> changes = held.get(target);
+            if (changes == null) {
+                held.put(target, changes = Maps.newLinkedHashMap());
+            }
+            if (changes.put(ace.getName(), ace) != null) {
+                if (shard == null) {
+                    ++_current.changesCoalesced;
+                } else {
+                    synchronized (shard.stats) {
+                        ++shard.stats.changesCoalesced;
+                    }
+                }
+            }
+            return;
+        }
+
+        if (!held.isEmpty()) {
+            Map<String, AttributeChangedEvent> changes = held.remove(target);
+            if (changes != null) {
+                sendHeldChanges(target, changes);
+            }
+        }
+        target.notifyProxies(event);
+    }
+
+    /**
+     * Passes all of the supplied held changes on to the proxies of their objects.
+     */
+    protected void sendHeldChanges (Map<DObject, Map<String, AttributeChangedEvent>> held)
+    {
+        if (!held.isEmpty()) {
+            for (Map.Entry<DObject, Map<String, AttributeChangedEvent>> entry : held.entrySet()) {
+                sendHeldChanges(entry.getKey(), entry.getValue());
+            }
+            held.clear();
+        }
+    }
+
+    /**
+     * Passes the supplied changes to an object's attributes on to its proxies, in a compound
+     * event if there is more than one.
+     */
+    protected void sendHeldChanges (DObject target, Map<String, AttributeChangedEvent> changes)
+    {
+        if (changes.size() == 1) {
+            target.notifyProxies(changes.values().iterator().next());
+            return;
+        }
+
+        CompoundEvent compound = new CompoundEvent(target, this);
+        Transport transport = null;
+        for (AttributeChangedEvent change : changes.values()) {
+            compound.postEvent(change);
+            transport = (transport == null) ?
+                change.getTransport() : change.getTransport().combine(transport);
+            // subscribers ignore events that were applied before they subscribed, which is only
+            // the case for the compound event if it was for all of its changes
+            compound.eventId = Math.max(compound.eventId, change.eventId);
+        }
+        compound.setTransport(transport);
+        target.notifyProxies(compound);
+    }
+
+    /**
+     * Returns true if changes to the specified attribute of the supplied object are to be
+     * coalesced.
+     */
+    protected boolean isCoalesced (DObject target, String name)
+    {
+        Class<?> oclass = target.getClass();
+        Set<String> fields = _coalesced.get(oclass);
+        if (fields == null) {
+            boolean all = oclass.isAnnotationPresent(Coalesced.class);
+            fields = Sets.newHashSet();
+            for (Field field : oclass.getFields()) {
+                if (!Modifier.isStatic(field.getModifiers()) &&
+                    (all || field.isAnnotationPresent(Coalesced.class))) {
+                    fields.add(field.getName());
+                }
+            }
+            _coalesced.put(oclass, fields);
+        }
+        return fields.contains(name);
+    }
+
     /**
      * Dispatches an event after the target object has been resolved and the permissions have been
      * checked. This is used by {@link #processEvent} and {@link #processCompoundEvent}.
@@ -827,8 +1090,15 @@ public class PresentsDObjectMgr
         }
 
         // track the number of events dispatched
-        ++_eventCount;
-        ++_current.eventCount;
+        Shard shard = getCurrentShard();
+        if (shard == null) {
+            ++_eventCount;
+            ++_current.eventCount;
+        } else {
+            synchronized (shard.stats) {
+                ++shard.eventCount;
+            }
+        }
         return true;
     }
 
@@ -838,7 +1108,11 @@ public class PresentsDObjectMgr
      */
     protected void handleFatalError (Object causer, Error error)
     {
-        if (_fatalThrottle.throttleOp()) {
+        boolean throttled;
+        synchronized (_fatalThrottle) {
+            throttled = _fatalThrottle.throttleOp();
+        }
+        if (throttled) {
             throw error;
         }
         log.warning("Fatal error caused by '" + causer + "': " + error, error);
@@ -851,15 +1125,16 @@ public class PresentsDObjectMgr
     protected void clearReference (DObject reffer, String field, int reffedOid)
     {
         // look up the reference vector for the referenced object
-        Reference[] refs = _refs.get(reffedOid);
         Reference ref = null;
-
-        if (refs != null) {
-            for (int ii = 0; ii < refs.length; ii++) {
-                if (refs[ii].equals(reffer.getOid(), field)) {
-                    ref = refs[ii];
-                    refs[ii] = null;
-                    break;
+        synchronized (_refs) {
+            Reference[] refs = _refs.get(reffedOid);
+            if (refs != null) {
+                for (int ii = 0; ii < refs.length; ii++) {
+                    if (refs[ii].equals(reffer.getOid(), field)) {
+                        ref = refs[ii];
+                        refs[ii] = null;
+                        break;
+                    }
                 }
             }
         }
@@ -878,7 +1153,7 @@ public class PresentsDObjectMgr
         }
     }
 
-    protected int getNextOid ()
+    protected synchronized int getNextOid ()
     {
         // look for the next unused oid. in theory if we had two billion objects, this would loop
         // infinitely, but the world will come to an end long before we have two billion objects
@@ -888,6 +1163,80 @@ public class PresentsDObjectMgr
         return _nextOid;
     }
 
+    /**
+     * Returns the queue on which the supplied event is to be processed: that of the shard of the
+     * object it targets, or our main queue.
+     */
+    protected UnitQueue<Object> getQueue (DEvent event)
+    {
+        if (_shards == null) {
+            return _evqueue;
+        }
+        // subscription requests are processed on the shard of the object being subscribed to
+        int oid = (event instanceof AccessObjectEvent<?> aoe) ? aoe._oid : event.getTargetOid();
+        Shard shard = _shardOf.get(oid);
+        return (shard == null) ? _evqueue : shard.queue;
+    }
+
+    /**
+     * Returns the shard to which an object with the supplied affinity key is to be assigned, or
+     * null if it is to be dispatched on the main thread.
+     */
+    protected Shard getShard (Object affinity)
+    {
+        Shard[] shards = getShards();
+        if (shards == null || affinity == null) {
+            return null;
+        }
+        if (affinity instanceof DObject owner) {
+            return _shardOf.get(owner.getOid());
+        }
+        return shards[(affinity.hashCode() & Integer.MAX_VALUE) % shards.length];
+    }
+
+    /**
+     * Returns the shard of the supplied object, or null if it is dispatched on the main thread.
+     */
+    protected Shard getShard (DObject object)
+    {
+        return (_shards == null) ? null : _shardOf.get(object.getOid());
+    }
+
+    /**
+     * Returns the shard whose thread is calling this method, or null.
+     */
+    protected Shard getCurrentShard ()
+    {
+        return (_shards != null && Thread.currentThread() instanceof Shard shard &&
+                shard.getManager() == this) ? shard : null;
+    }
+
+    /**
+     * Returns our shards, creating them if sharding is enabled and they have not yet been created,
+     * or null if sharding is disabled.
+     */
+    protected Shard[] getShards ()
+    {
+        if (_shardCount <= 0) {
+            return null;
+        }
+        synchronized (this) {
+            if (_shards == null) {
+                // our object and proxy tables will be accessed by all of our threads from here on
+                // out; they are volatile so that every thread sees the synchronized tables once
+                // they're swapped
+                _objects = Collections.synchronizedIntMap(_objects);
+                _proxies = Collections.synchronizedIntMap(_proxies);
+                Shard[] shards = new Shard[_shardCount];
+                for (int ii = 0; ii < shards.length; ii++) {
+                    shards[ii] = new Shard(ii);
+                }
+                _shards = shards;
+            }
+            return _shards;
+        }
+    }
+
     /**
      * Registers our event helper methods.
      */
@@ -1076,6 +1425,119 @@ public class PresentsDObjectMgr
         }
     }
 
+    /**
+     * Dispatches the events of the objects assigned to it on its own thread. A shard's objects
+     * are otherwise managed just like the rest, by the manager that created it.
+     */
+    protected class Shard extends Thread
+        implements RunQueue
+    {
+        /** The queue via which events on this shard's objects are processed. */
+        public final UnitQueue<Object> queue = new UnitQueue<Object>();
+
+        /** The number of events dispatched on this shard, guarded by our stats. */
+        public long eventCount;
+
+        /** This shard's queue statistics since the last report. These are written by our thread
+         * and read by the reporter, so they are only accessed while synchronized on them. */
+        public final Stats stats = new Stats();
+
+        /** The coalesced attribute changes held during the current batch of units. */
+        public final Map<DObject, Map<String, AttributeChangedEvent>> held =
+            Maps.newLinkedHashMap();
+
+        public Shard (int index)
+        {
+            super("DObjectShard-" + index);
+            setDaemon(true);
+        }
+
+        /**
+         * Returns the manager that created this shard.
+         */
+        public PresentsDObjectMgr getManager ()
+        {
+            return PresentsDObjectMgr.this;
+        }
+
+        /**
+         * Requests that this shard exit once it has processed the units already in its queue.
+         */
+        public void shutdown ()
+        {
+            postRunnable(new Runnable() {
+                public void run () {
+                    _active = false;
+                }
+            });
+        }
+
+        /**
+         * Appends this shard's statistics to the supplied report.
+         */
+        public void appendReport (StringBuilder report, boolean reset)
+        {
+            synchronized (stats) {
+                long events = eventCount;
+                report.append("- ").append(getName()).append(": queue size ");
+                report.append(queue.size());
+                report.append(", max queue size ").append(stats.maxQueueSize);
+                report.append(", events ").append(events - _reportedCount);
+                report.append(", changes coalesced ").append(stats.changesCoalesced);
+                report.append("\n");
+                if (reset) {
+                    stats.maxQueueSize = queue.size();
+                    stats.changesCoalesced = 0;
+                    _reportedCount = events;
+                }
+            }
+        }
+
+        // from interface RunQueue
+        public void postRunnable (Runnable unit)
+        {
+            if (!_active) {
+                log.warning("Posting runnable to inactive shard", "shard", getName(), "unit", unit,
+                            new Exception());
+            }
+            queue.append(unit);
+        }
+
+        // from interface RunQueue
+        public boolean isDispatchThread ()
+        {
+            return Thread.currentThread() == this;
+        }
+
+        // from interface RunQueue
+        public boolean isRunning ()
+        {
+            return _active;
+        }
+
+        @Override
+        public void run ()
+        {
+            log.info("DOMGR shard running.", "shard", getName());
+            List<Object> batch = Lists.newArrayListWithCapacity(MAX_BATCH_SIZE);
+            while (_active) {
+                drainUnits(queue, batch, stats);
+                for (int ii = 0, ll = batch.size(); ii < ll && _active; ii++) {
+                    processUnit(batch.get(ii));
+                }
+                batch.clear();
+                sendHeldChanges(held);
+            }
+            log.info("DOMGR shard exited.", "shard", getName());
+        }
+
+        /** Cleared when this shard has been shut down. */
+        protected volatile boolean _active = true;
+
+        /** The event count as of our last report reset. */
+        protected long _reportedCount;
+    }
+
     /** Does some helpy bits for certain events. */
     protected static interface EventHelper
     {
@@ -1083,13 +1545,33 @@ public class PresentsDObjectMgr
     }
 
     /** A flag indicating that the event dispatcher is still running. */
-    protected boolean _running = true;
+    protected volatile boolean _running = true;
 
     /** The event queue via which all events are processed. */
-    protected Queue<Object> _evqueue = new Queue<Object>();
+    protected UnitQueue<Object> _evqueue = new UnitQueue<Object>();
 
-    /** The managed distributed objects table. */
-    protected IntMap<DObject> _objects = IntMaps.newHashIntMap();
+    /** The managed distributed objects table, which is made synchronized when our shards are
+     * created. Iterate over it only while synchronized on it. */
+    protected volatile IntMap<DObject> _objects = IntMaps.newHashIntMap();
+
+    /** The coalesced attribute changes held during the current batch of units on the main
+     * thread. */
+    protected Map<DObject, Map<String, AttributeChangedEvent>> _held = Maps.newLinkedHashMap();
+
+    /** The names of the {@link Coalesced} attributes of each distributed object class. */
+    protected Map<Class<?>, Set<String>> _coalesced =
+        new ConcurrentHashMap<Class<?>, Set<String>>();
+
+    /** The number of shards over which to distribute the dispatch of objects' events, or zero to
+     * dispatch all events on the main thread. */
+    @Inject(optional=true) @Named("presents.dobj.shards")
+    protected int _shardCount;
+
+    /** Our shards, created on demand if sharding is enabled. */
+    protected volatile Shard[] _shards;
+
+    /** The shard of each object not dispatched on the main thread. */
+    protected Map<Integer, Shard> _shardOf = new ConcurrentHashMap<Integer, Shard>();
 
     /** Used to assign a unique oid to each distributed object. */
     protected int _nextOid = 0;
@@ -1110,8 +1592,9 @@ public class PresentsDObjectMgr
     /** Classes already reported by {@link #noteDefaultedController}, so we log each just once. */
     protected final Set<Class<?>> _defaultedControllerClasses = Sets.newHashSet();
 
-    /** Maintains proxy information for any proxied distributed objects. */
-    protected IntMap<ProxyReference> _proxies = IntMaps.newHashIntMap();
+    /** Maintains proxy information for any proxied distributed objects. Looked up by every
+     * thread that processes units, so it is made synchronized when our shards are created. */
+    protected volatile IntMap<ProxyReference> _proxies = IntMaps.newHashIntMap();
 
     /** keeps Track of which thread is executing the event loop so that other services can enforce
      * restrictions on code that should or should not be called from the event dispatch thread. */
@@ -1138,6 +1621,9 @@ public class PresentsDObjectMgr
     /** Whether or not unit profiling is enabled. */
     protected static final boolean UNIT_PROF_ENABLED = true;
 
+    /** The maximum number of units we take off a queue at once. */
+    protected static final int MAX_BATCH_SIZE = 256;
+
     /** The default size of an oid list refs vector. */
     protected static final int DEFREFVEC_SIZE = 4;
 
@@ -8,12 +8,16 @@ package com.threerings.presents.server;
 import java.net.InetAddress;
 
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TimeZone;
 
 import java.io.IOException;
 
+import com.google.common.base.Predicate;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
@@ -23,6 +27,7 @@ import com.samskivert.util.IntMap;
 import com.samskivert.util.IntMaps;
 import com.samskivert.util.ResultListener;
 import com.samskivert.util.Throttle;
+import com.samskivert.util.Tuple;
 
 import com.threerings.util.Name;
 
@@ -30,10 +35,17 @@ import com.threerings.presents.annotation.AnyThread;
 import com.threerings.presents.annotation.EventThread;
 import com.threerings.presents.client.Client;
 import com.threerings.presents.data.ClientObject;
+import com.threerings.presents.dobj.AttributeChangedEvent;
+import com.threerings.presents.dobj.CompoundEvent;
 import com.threerings.presents.dobj.DEvent;
 import com.threerings.presents.dobj.DObject;
+import com.threerings.presents.dobj.ElementUpdatedEvent;
+import com.threerings.presents.dobj.EntryEvent;
+import com.threerings.presents.dobj.NamedEvent;
 import com.threerings.presents.dobj.ObjectAccessException;
+import com.threerings.presents.dobj.ObjectAddedEvent;
 import com.threerings.presents.dobj.ObjectDestroyedEvent;
+import com.threerings.presents.dobj.ObjectRemovedEvent;
 import com.threerings.presents.dobj.ProxySubscriber;
 import com.threerings.presents.net.AuthRequest;
 import com.threerings.presents.net.BootstrapData;
@@ -48,6 +60,8 @@ import com.threerings.presents.net.ForwardEventRequest;
 import com.threerings.presents.net.LogoffRequest;
 import com.threerings.presents.net.Message;
 import com.threerings.presents.net.ObjectResponse;
+import com.threerings.presents.net.PartialObjectResponse;
+import com.threerings.presents.net.PartialSubscribeRequest;
 import com.threerings.presents.net.PingRequest;
 import com.threerings.presents.net.PongResponse;
 import com.threerings.presents.net.SubscribeRequest;
@@ -73,10 +87,13 @@ import static com.threerings.presents.Log.log;
  * <p><em>A note on synchronization:</em> the client object is structured so that its
  * <code>Subscriber</code> implementation (which is called from the dobjmgr thread) can proceed
  * without synchronization. This does not overlap with its other client duties which are called
- * from the conmgr thread and therefore also need not be synchronized.
+ * from the conmgr thread and therefore also need not be synchronized. When the dobjmgr shards its
+ * event dispatch, events arrive from more than one thread, so the posting of messages to the
+ * client (and the holding back of events while its connection is backed up) is synchronized.
  */
 public class PresentsSession
-    implements PresentsConnection.MessageHandler, ClientResolutionListener
+    implements PresentsConnection.MessageHandler, PresentsConnection.CongestionHandler,
+               ClientResolutionListener
 {
     /** Used by {@link PresentsSession#setUsername} to report success or failure. */
     public static interface UserChangeListener
@@ -324,8 +341,9 @@ public class PresentsSession
      */
     public boolean isSubscribed (DObject dobj)
     {
-        // probably we should synchronize
-        return _subscrips.containsKey(dobj.getOid());
+        synchronized (_subscrips) {
+            return _subscrips.containsKey(dobj.getOid());
+        }
     }
 
     /**
@@ -444,6 +462,22 @@ public class PresentsSession
         dispatchMessage(message);
     }
 
+    // from interface PresentsConnection.CongestionHandler
+    public void outgoingCongested (PresentsConnection conn)
+    {
+        pauseMessages(conn);
+    }
+
+    // from interface PresentsConnection.CongestionHandler
+    public void outgoingDrained (final PresentsConnection conn)
+    {
+        _omgr.postRunnable(new Runnable() {
+            public void run () {
+                resumeMessages(conn);
+            }
+        });
+    }
+
     /**
      * Processes a message without throttling.
      */
@@ -643,19 +677,113 @@ public class PresentsSession
         }
     }
 
+    /**
+     * Starts holding back the messages that we send to our client because the supplied
+     * connection's outgoing queue has backed up. This may be called on any thread, including
+     * while the connection is locked, so it takes no locks itself. Only the messages sent over
+     * the supplied connection are affected.
+     */
+    protected void pauseMessages (PresentsConnection conn)
+    {
+        _pausedConn = conn;
+    }
+
+    /**
+     * Sends along, in order, the messages held back while the supplied connection's queue was
+     * backed up.
+     */
+    @EventThread
+    protected synchronized void resumeMessages (PresentsConnection conn)
+    {
+        if (conn != _pausedConn) {
+            return;
+        }
+        _pausedConn = null;
+
+        // stop if sending the held messages backs the connection up again
+        for (Iterator<DownstreamMessage> iter = _heldMessages.values().iterator();
+             iter.hasNext() && _pausedConn == null; ) {
+            DownstreamMessage msg = iter.next();
+            iter.remove();
+
+            // skip events for objects to which the client has since unsubscribed
+            if (msg instanceof EventNotification) {
+                DEvent event = ((EventNotification)msg).getEvent();
+                boolean subscribed;
+                synchronized (_subscrips) {
+                    subscribed = _subscrips.containsKey(event.getTargetOid());
+                }
+                if (!subscribed && !(event instanceof ObjectDestroyedEvent)) {
+                    continue;
+                }
+            }
+            conn.postMessage(msg);
+            _messagesOut++;
+        }
+    }
+
+    /**
+     * Returns true if the supplied message is never to be held back while our connection is
+     * backed up, because our client depends on its prompt arrival rather than on its order
+     * relative to our other messages.
+     */
+    protected boolean isUrgent (DownstreamMessage msg)
+    {
+        return false;
+    }
+
+    /**
+     * Holds back a message for our client while our connection is backed up. A held attribute
+     * change is dropped in favor of any later change to the same attribute, which keeps its own
+     * place in the order. If the client falls too far behind, it is disconnected.
+     */
+    protected void holdMessage (DownstreamMessage msg)
+    {
+        Object key = msg;
+        if (msg instanceof EventNotification) {
+            DEvent event = ((EventNotification)msg).getEvent();
+            if (event instanceof AttributeChangedEvent) {
+                key = Tuple.newTuple(
+                    event.getTargetOid(), ((AttributeChangedEvent)event).getName());
+            }
+        }
+        // remove any superseded change first so that its replacement is sent after the messages
+        // posted in between, rather than in the superseded change's place
+        _heldMessages.remove(key);
+        _heldMessages.put(key, msg);
+
+        if (_heldMessages.size() > MAX_HELD_MESSAGES) {
+            log.warning("Disconnecting client that is not keeping up", "client", this,
+                        "held", _heldMessages.size());
+            _conmgr.closeConnection(_pausedConn);
+            _pausedConn = null;
+            _heldMessages.clear();
+        }
+    }
+
     /**
      * Clears out the tracked client subscriptions. Called when the client goes away and shouldn't
      * be called otherwise.
      */
     protected void clearSubscrips (boolean verbose)
     {
-        for (ClientProxy rec : _subscrips.values()) {
+        synchronized (this) {
+            _pausedConn = null;
+            _heldMessages.clear();
+        }
+
+        // unsubscribe outside the lock, as doing so may call back into us
+        List<ClientProxy> recs;
+        synchronized (_subscrips) {
+            recs = Lists.newArrayList(_subscrips.values());
+            _subscrips.clear();
+        }
+        for (ClientProxy rec : recs) {
             if (verbose) {
                 log.info("Clearing subscription", "client", this, "obj", rec.object.getOid());
             }
             rec.unsubscribe();
         }
-        _subscrips.clear();
     }
 
     /**
@@ -905,7 +1033,7 @@ public class PresentsSession
     /**
      * Collects downstream messages in a compound message until finishCompoundMessage is called.
      */
-    protected void startCompoundMessage ()
+    protected synchronized void startCompoundMessage ()
     {
         if (_compound == null) {
             _compound = new CompoundDownstreamMessage();
@@ -916,7 +1044,7 @@ public class PresentsSession
     /**
      * Sends the compound message created in startCompoundMessage.
      */
-    protected void finishCompoundMessage ()
+    protected synchronized void finishCompoundMessage ()
     {
         if (--_compoundDepth == 0) {
             CompoundDownstreamMessage downstream = _compound;
@@ -928,7 +1056,7 @@ public class PresentsSession
     }
 
     /** Queues a message for delivery to the client. */
-    protected boolean postMessage (DownstreamMessage msg, PresentsConnection expect)
+    protected synchronized boolean postMessage (DownstreamMessage msg, PresentsConnection expect)
     {
         PresentsConnection conn = getConnection();
 
@@ -947,6 +1075,13 @@ public class PresentsSession
 
         // make sure we have a connection at all
         if (conn != null) {
+            // hold reliable messages back while the connection is backed up, so that they are
+            // delivered in order once it drains; the rest are sent as datagrams or dropped, and
+            // urgent messages go straight to the connection's queue
+            if (conn == _pausedConn && msg.getTransport().isReliable() && !isUrgent(msg)) {
+                holdMessage(msg);
+                return true;
+            }
             conn.postMessage(msg);
             _messagesOut++; // count 'em up!
             return true;
@@ -1039,6 +1174,10 @@ public class PresentsSession
     {
         public DObject object;
 
+        /** The names of the attributes in which our client is interested, or null if it is
+         * interested in all of them. */
+        public Set<String> interest;
+
         public void unsubscribe ()
         {
             object.removeSubscriber(this);
@@ -1048,7 +1187,9 @@ public class PresentsSession
         // from interface ProxySubscriber
         public void objectAvailable (DObject dobj)
         {
-            if (postMessage(new ObjectResponse<DObject>(dobj), _oconn)) {
+            ObjectResponse<DObject> rsp = (interest == null) ?
+                new ObjectResponse<DObject>(dobj) : PartialObjectResponse.create(dobj, interest);
+            if (postMessage(rsp, _oconn)) {
                 _firstEventId = _omgr.getNextEventId(false);
                 object = dobj;
                 ClientProxy orec;
@@ -1056,9 +1197,12 @@ public class PresentsSession
                     // make a note of this new subscription
                     orec = _subscrips.put(dobj.getOid(), this);
                 }
-                if (orec != null) {
+                // a client widens its interest in an object by subscribing to it again
+                if (orec != null && orec.interest == null) {
                     log.warning("Replacing existing subscription.", "oid", dobj.getOid(),
                         "client", PresentsSession.this);
+                }
+                if (orec != null) {
                     orec.unsubscribe();
                 }
                 subscribedToObject(dobj);
@@ -1092,6 +1236,24 @@ public class PresentsSession
                 return;
             }
 
+            // don't send events that only affect attributes in which our client is not interested
+            if (interest != null) {
+                if (event instanceof CompoundEvent) {
+                    List<DEvent> events = ((CompoundEvent)event).getEvents();
+                    if (!Iterables.all(events, _interesting)) {
+                        CompoundEvent filtered = ((CompoundEvent)event).filter(_interesting);
+                        events = filtered.getEvents();
+                        switch (events.size()) {
+                        case 0: return;
+                        case 1: event = events.get(0); break;
+                        default: event = filtered; break;
+                        }
+                    }
+                } else if (!_interesting.apply(event)) {
+                    return;
+                }
+            }
+
             postMessage(new EventNotification(event), _oconn);
 
             if (event instanceof ObjectDestroyedEvent) {
@@ -1123,6 +1285,15 @@ public class PresentsSession
         }
 
         protected long _firstEventId;
+        // accepts the events that affect attributes in our interest
+        protected Predicate<DEvent> _interesting = new Predicate<DEvent>() {
+            public boolean apply (DEvent event) {
+                boolean attrEvent = (event instanceof AttributeChangedEvent ||
+                    event instanceof ElementUpdatedEvent || event instanceof EntryEvent<?> ||
+                    event instanceof ObjectAddedEvent || event instanceof ObjectRemovedEvent);
+                return !attrEvent || interest.contains(((NamedEvent)event).getName());
+            }
+        };
         // the connection that was active at the time we were constructed
         protected PresentsConnection _oconn = getConnection();
     }
@@ -1150,8 +1321,18 @@ public class PresentsSession
             SubscribeRequest req = (SubscribeRequest)msg;
 //             log.info("Subscribing", "client", client, "oid", req.getOid());
 
+            // note the attributes of interest, if they were limited (a client that sends no
+            // attributes at all is treated as subscribing to the whole object)
+            ClientProxy proxy = client.createProxySubscriber();
+            if (req instanceof PartialSubscribeRequest) {
+                String[] attrs = ((PartialSubscribeRequest)req).getAttributes();
+                if (attrs != null) {
+                    proxy.interest = Sets.newHashSet(attrs);
+                }
+            }
+
             // forward the subscribe request to the omgr for processing
-            client._omgr.subscribeToObject(req.getOid(), client.createProxySubscriber());
+            client._omgr.subscribeToObject(req.getOid(), proxy);
         }
     }
 
@@ -1299,6 +1480,13 @@ public class PresentsSession
      */
     protected int _compoundDepth;
 
+    /** The connection whose backed up queue has caused us to hold back our messages, or null. */
+    protected volatile PresentsConnection _pausedConn;
+
+    /** The messages held back while {@link #_pausedConn} is backed up, in the order they were
+     * posted and keyed so that attribute changes can supersede one another. */
+    protected Map<Object, DownstreamMessage> _heldMessages = Maps.newLinkedHashMap();
+
     /** The Oids of objects that have been destroyed while we were subscribed. */
     protected HashSet<Integer> _destroyedSubs = Sets.newHashSet();
     protected ClassLoader _loader;
@@ -1330,12 +1518,17 @@ public class PresentsSession
     /** A mapping of message dispatchers. */
     protected static Map<Class<?>, MessageDispatcher> _disps = Maps.newHashMap();
 
+    /** The number of messages we'll hold back for a backed up client before we give up and
+     * disconnect it. */
+    protected static final int MAX_HELD_MESSAGES = 10000;
+
     /** Default period a user is allowed after disconn before their session is forcibly ended. */
     protected static final long DEFAULT_FLUSH_TIME = 7 * 60 * 1000L;
 
     // register our message dispatchers
     static {
         _disps.put(SubscribeRequest.class, new SubscribeDispatcher());
+        _disps.put(PartialSubscribeRequest.class, new SubscribeDispatcher());
         _disps.put(UnsubscribeRequest.class, new UnsubscribeDispatcher());
         _disps.put(ForwardEventRequest.class, new ForwardEventDispatcher());
         _disps.put(PingRequest.class, new PingDispatcher());
@@ -0,0 +1,53 @@
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2025 Three Rings Design, Inc., All Rights Reserved
+// https://github.com/threerings/narya/blob/master/LICENSE
+
+package com.threerings.presents.server;
+
+import javax.annotation.processing.Generated;
+
+import com.threerings.presents.client.TimeBaseService;
+import com.threerings.presents.data.ClientObject;
+import com.threerings.presents.data.TimeBaseMarshaller;
+
+/**
+ * Dispatches requests to the {@link TimeBaseProvider}.
+ */
+@Generated(value={"com.threerings.presents.tools.GenServiceTask"},
+           comments="Derived from TimeBaseService.java.")
+public class TimeBaseDispatcher extends InvocationDispatcher<TimeBaseMarshaller>
+{
+    /**
+     * Creates a dispatcher that may be registered to dispatch invocation
+     * service requests for the specified provider.
+     */
+    public TimeBaseDispatcher (TimeBaseProvider provider)
+    {
+        this.provider = provider;
+    }
+
+    @Override
+    public TimeBaseMarshaller createMarshaller ()
+    {
+        return new TimeBaseMarshaller();
+    }
+
+    @Override
+    public void dispatchRequest (
+        ClientObject source, int methodId, Object[] args)
+        throws InvocationException
+    {
+        switch (methodId) {
+        case TimeBaseMarshaller.GET_TIME_OID:
+            ((TimeBaseProvider)provider).getTimeOid(
+                source, (String)args[0], (TimeBaseService.GotTimeBaseListener)args[1]
+            );
+            return;
+
+        default:
+            super.dispatchRequest(source, methodId, args);
+            return;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2025 Three Rings Design, Inc., All Rights Reserved
+// https://github.com/threerings/narya/blob/master/LICENSE
+
+package com.threerings.presents.server;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A lock-free queue to which any number of threads may append units, but from which only a
+ * single thread (the one that dispatches them) may remove them. Appending is wait-free: it
+ * allocates a node, swaps it in as the tail and links its predecessor to it. The consumer drains
+ * units in batches; when the queue is empty it yields for a while before parking, and appenders
+ * only wake it if it has actually parked.
+ */
+public class UnitQueue<T>
+{
+    /**
+     * Appends a unit to the queue. This may be called by any thread.
+     */
+    public void append (T unit)
+    {
+        Node<T> node = new Node<T>(unit);
+        _tail.getAndSet(node).next = node;
+        _size.incrementAndGet();
+
+        // the consumer notes that it is parking before it checks our tail one last time, so
+        // either it will see our node or we will see that it needs waking
+        if (_parked) {
+            LockSupport.unpark(_consumer);
+        }
+    }
+
+    /**
+     * Removes up to <code>max</code> units from the queue, appending them to the supplied list,
+     * and blocking until at least one is available. This may only be called by the consumer.
+     *
+     * @return the number of units removed.
+     */
+    public int drainTo (List<? super T> batch, int max)
+    {
+        _consumer = Thread.currentThread();
+        int count;
+        for (int spins = 0; (count = poll(batch, max)) == 0; spins++) {
+            // if an append is in progress, its unit will shortly be linked in, and units often
+            // arrive in quick succession, so we yield for a while before parking
+            if (_head != _tail.get() || spins < MAX_SPINS) {
+                Thread.yield();
+                continue;
+            }
+            _parked = true;
+            if (_head == _tail.get()) {
+                LockSupport.park(this);
+            }
+            _parked = false;
+        }
+        return count;
+    }
+
+    /**
+     * Removes up to <code>max</code> units from the queue, appending them to the supplied list,
+     * without blocking. This may only be called by the consumer.
+     *
+     * @return the number of units removed.
+     */
+    public int poll (List<? super T> batch, int max)
+    {
+        int count = 0;
+        Node<T> head = _head;
+        for (Node<T> next; count < max && (next = head.next) != null; count++) {
+            batch.add(next.unit);
+            // the node becomes our new stub; clear its unit so we don't hang onto it
+            next.unit = null;
+            head = next;
+        }
+        if (count > 0) {
+            _head = head;
+            _size.addAndGet(-count);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of units in the queue. This may be called by any thread, but is only a
+     * snapshot.
+     */
+    public int size ()
+    {
+        return Math.max(_size.get(), 0);
+    }
+
+    /**
+     * Returns true if the queue contains units. This may be called by any thread, but is only a
+     * snapshot.
+     */
+    public boolean hasElements ()
+    {
+        return _size.get() > 0;
+    }
+
+    /** A link in our chain of units. */
+    protected static class Node<T>
+    {
+        public T unit;
+        public volatile Node<T> next;
+
+        public Node (T unit) {
+            this.unit = unit;
+        }
+    }
+
+    /** The node preceding the next unit to be removed. Only accessed by the consumer. */
+    protected Node<T> _head = new Node<T>(null);
+
+    /** The most recently appended node. */
+    protected final AtomicReference<Node<T>> _tail = new AtomicReference<Node<T>>(_head);
+
+    /** The number of units appended less the number removed. This may be briefly negative when
+     * the consumer removes a unit before its appender has counted it. */
+    protected final AtomicInteger _size = new AtomicInteger();
+
+    /** The thread that removes units. */
+    protected volatile Thread _consumer;
+
+    /** Set while the consumer is parked, or about to park, waiting for a unit. */
+    protected volatile boolean _parked;
+
+    /** The number of times the consumer yields waiting for a unit before it parks. */
+    protected static final int MAX_SPINS = 64;
+}
@@ -44,6 +44,21 @@ public class PresentsConnection extends Connection
         void handleMessage (Message message);
     }
 
+    /**
+     * Implemented by message handlers that can hold back the messages they send to a client whose
+     * outgoing queue has backed up. Used by the {@link
+     * PresentsConnectionManager.SlowConsumerPolicy#PAUSE_SUBSCRIPTIONS} policy. These methods may
+     * be called on any thread.
+     */
+    public static interface CongestionHandler {
+        /** Called when the supplied connection's outgoing queue exceeds the high watermark. */
+        void outgoingCongested (PresentsConnection conn);
+
+        /** Called when the supplied connection's outgoing queue drains below the low
+         * watermark. */
+        void outgoingDrained (PresentsConnection conn);
+    }
+
     /**
      * Initializes the connection with its channel. Must be called with a
      * {@link PresentsConnectionManager} as <code>cmgr</code>.
@@ -105,6 +120,23 @@ public class PresentsConnection extends Connection
         return _transmitDatagrams;
     }
 
+    /**
+     * Sets whether we may pack several datagrams into a single packet, which the client must have
+     * agreed to when authenticating.
+     */
+    public void setPackDatagrams (boolean pack)
+    {
+        _packDatagrams = pack;
+    }
+
+    /**
+     * Checks whether we may pack several datagrams into a single packet.
+     */
+    public boolean getPackDatagrams ()
+    {
+        return _packDatagrams;
+    }
+
     /**
      * Returns the address to which datagrams should be sent or null if no datagram address has
      * been established.
@@ -279,7 +311,8 @@ public class PresentsConnection extends Connection
 
     /**
      * Returns the object output stream associated with this connection (creating it if
-     * necessary). This should only be used by the connection manager.
+     * necessary), directed at the supplied framing stream. This should only be used by the
+     * connection manager.
      */
     protected ObjectOutputStream getObjectOutputStream (FramingOutputStream fout)
     {
@@ -287,6 +320,9 @@ public class PresentsConnection extends Connection
         // authing connection and we don't want to unnecessarily create it in that case
         if (_oout == null) {
             _oout = new ObjectOutputStream(fout);
+        } else {
+            // messages may be framed by different threads, each with its own framing stream
+            _oout.setTarget(fout);
         }
         return _oout;
     }
@@ -317,6 +353,7 @@ public class PresentsConnection extends Connection
     protected DatagramChannel _datagramChannel;
     protected byte[] _datagramSecret;
     protected boolean _transmitDatagrams;
+    protected boolean _packDatagrams;
 
     protected MessageDigest _digest;
     protected DatagramSequencer _sequencer;
@@ -6,10 +6,14 @@
 package com.threerings.presents.server.net;
 
 import java.util.List;
+import java.util.Map;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.DatagramChannel;
 import java.nio.channels.SelectionKey;
@@ -18,8 +22,10 @@ import java.nio.channels.SocketChannel;
 import java.security.PrivateKey;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import com.google.inject.name.Named;
 
 import com.samskivert.util.Invoker;
 import com.samskivert.util.Lifecycle;
@@ -28,6 +34,7 @@ import com.samskivert.util.ResultListener;
 import com.samskivert.util.Tuple;
 
 import com.threerings.io.ByteBufferInputStream;
+import com.threerings.io.EncodedObject;
 import com.threerings.io.FramingOutputStream;
 import com.threerings.io.ObjectOutputStream;
 import com.threerings.io.UnreliableObjectInputStream;
@@ -36,6 +43,9 @@ import com.threerings.io.UnreliableObjectOutputStream;
 import com.threerings.presents.annotation.AuthInvoker;
 import com.threerings.presents.client.Client;
 import com.threerings.presents.data.PresentsConMgrStats;
+import com.threerings.presents.dobj.AttributeChangedEvent;
+import com.threerings.presents.dobj.DEvent;
+import com.threerings.presents.net.EventNotification;
 import com.threerings.presents.net.Message;
 import com.threerings.presents.net.PingRequest;
 import com.threerings.presents.net.PongResponse;
@@ -49,6 +59,7 @@ import com.threerings.presents.server.ReportManager;
 import com.threerings.presents.util.DatagramSequencer;
 import com.threerings.presents.util.SecureUtil;
 
+import com.threerings.nio.conman.ConMgrStats;
 import com.threerings.nio.conman.Connection;
 import com.threerings.nio.conman.ConnectionManager;
 import com.threerings.nio.conman.NetEventHandler;
@@ -83,6 +94,30 @@ public class PresentsConnectionManager extends ConnectionManager
             };
     }
 
+    /**
+     * The measures taken when a client's outgoing queue passes the high watermark (see {@link
+     * ConnectionManager}). The policies are listed in order of severity, and each policy short of
+     * disconnection also takes the measures of the policies listed before it.
+     */
+    public enum SlowConsumerPolicy
+    {
+        /** Messages that request unreliable transport are dropped rather than queued while the
+         * client is congested. */
+        DROP_UNRELIABLE,
+
+        /** Attribute changes queued while the client is congested are dropped if they are
+         * superseded by a later change to the same attribute before they can be written. */
+        COLLAPSE_ATTRIBUTES,
+
+        /** The client's session holds back the reliable messages it sends, including the events
+         * for its subscriptions, until the client's queue drains, and then sends them along in
+         * order, see {@link PresentsConnection.CongestionHandler}. */
+        PAUSE_SUBSCRIPTIONS,
+
+        /** The client is disconnected. */
+        DISCONNECT;
+    }
+
     @Inject
     public PresentsConnectionManager (Lifecycle cycle, ReportManager repmgr)
         throws IOException
@@ -119,6 +154,21 @@ public class PresentsConnectionManager extends ConnectionManager
         long bytesOut = stats.bytesOut - _lastStats.bytesOut;
         long msgsIn = stats.msgsIn - _lastStats.msgsIn;
         long msgsOut = stats.msgsOut - _lastStats.msgsOut;
+        long writes = stats.writes - _lastStats.writes;
+        long eventsEncoded = stats.eventsEncoded - _lastStats.eventsEncoded;
+        long eventsSent = stats.eventsSent - _lastStats.eventsSent;
+        int highWaterHits = stats.highWaterHits - _lastStats.highWaterHits;
+        long unreliableDropped = stats.unreliableDropped - _lastStats.unreliableDropped;
+        long msgsSuperseded = stats.msgsSuperseded - _lastStats.msgsSuperseded;
+        int subscriptionPauses = stats.subscriptionPauses - _lastStats.subscriptionPauses;
+        int congestionDisconnects = stats.congestionDisconnects - _lastStats.congestionDisconnects;
+        long datagramWakeups = stats.datagramWakeups - _lastStats.datagramWakeups;
+        long datagramsReceived = stats.datagramsReceived - _lastStats.datagramsReceived;
+        long datagramAckScans = stats.datagramAckScans - _lastStats.datagramAckScans;
+        long datagramAckScanLength =
+            stats.datagramAckScanLength - _lastStats.datagramAckScanLength;
+        long datagramsSuperseded = stats.datagramsSuperseded - _lastStats.datagramsSuperseded;
+        long datagramPackets = stats.datagramPackets - _lastStats.datagramPackets;
         if (reset) {
             _lastStats = stats;
         }
@@ -149,7 +199,51 @@ public class PresentsConnectionManager extends ConnectionManager
         report.append(msgsOut*1000/sinceLast).append(" mps, ");
         long avgOut = (msgsOut == 0) ? 0 : (bytesOut/msgsOut);
         report.append(avgOut).append(" avg size, ");
-        report.append(bytesOut*1000/sinceLast).append(" bps\n");
+        report.append(bytesOut*1000/sinceLast).append(" bps, ");
+        report.append(writes).append(" writes, ");
+        report.append(String.format("%.1f", (writes == 0) ? 0d : (double)msgsOut/writes));
+        report.append(" msgs/write\n");
+        report.append("- Event fan-out: ");
+        report.append(eventsEncoded).append(" encoded, ");
+        report.append(eventsSent).append(" sent\n");
+        report.append("- Slow consumers (").append(_slowConsumerPolicy).append("): ");
+        report.append(highWaterHits).append(" high water hits, ");
+        report.append(unreliableDropped).append(" unreliable dropped, ");
+        report.append(msgsSuperseded).append(" superseded, ");
+        report.append(subscriptionPauses).append(" pauses, ");
+        report.append(congestionDisconnects).append(" disconnects\n");
+        if (datagramWakeups > 0 || datagramAckScans > 0) {
+            report.append("- Datagrams: ");
+            report.append(datagramsReceived).append(" received, ");
+            report.append(String.format("%.1f", (datagramWakeups == 0) ? 0d :
+                                        (double)datagramsReceived/datagramWakeups));
+            report.append(" per wakeup, ");
+            report.append(datagramAckScans).append(" sent, ");
+            report.append(datagramsSuperseded).append(" superseded, ");
+            report.append(datagramPackets).append(" packets, ");
+            report.append(String.format("%.1f", (datagramAckScans == 0) ? 0d :
+                                        (double)datagramAckScanLength/datagramAckScans));
+            report.append(" avg ack scan\n");
+        }
+
+        // report on each of our reactors if we have more than one
+        ConMgrStats[] rstats = getReactorStats();
+        if (rstats.length > 1) {
+            for (int ii = 0; ii < rstats.length; ii++) {
+                ConMgrStats last = (ii < _lastReactorStats.length) ?
+                    _lastReactorStats[ii] : new ConMgrStats();
+                report.append("- Reactor ").append(ii).append(": ");
+                report.append(rstats[ii].connectionCount).append(" connections, ");
+                report.append(rstats[ii].outQueueSize).append(" queued, ");
+                report.append(rstats[ii].overQueueSize).append(" overflowed, ");
+                report.append(rstats[ii].eventCount - last.eventCount).append(" events, ");
+                report.append(rstats[ii].msgsIn - last.msgsIn).append(" msgs in, ");
+                report.append(rstats[ii].msgsOut - last.msgsOut).append(" msgs out\n");
+            }
+            if (reset) {
+                _lastReactorStats = rstats;
+            }
+        }
     }
 
     /**
@@ -194,36 +288,64 @@ public class PresentsConnectionManager extends ConnectionManager
     }
 
     /**
-     * Called when a datagram message is ready to be read off its channel.
+     * Called when a datagram message is ready to be read off its channel. Reads and dispatches
+     * every datagram waiting on the channel (up to {@link #MAX_DATAGRAMS_PER_WAKEUP}) so that a
+     * burst of datagrams costs us one trip through select rather than one per datagram.
      */
     protected int handleDatagram (DatagramChannel listener, long when)
     {
-        InetSocketAddress source;
-        _databuf.clear();
-        try {
-            source = (InetSocketAddress)listener.receive(_databuf);
-        } catch (IOException ioe) {
-            log.warning("Failure receiving datagram.", ioe);
-            return 0;
+        int bytes = 0, count = 0;
+        for (; count < MAX_DATAGRAMS_PER_WAKEUP; count++) {
+            InetSocketAddress source;
+            _databuf.clear();
+            try {
+                source = (InetSocketAddress)listener.receive(_databuf);
+            } catch (IOException ioe) {
+                log.warning("Failure receiving datagram.", ioe);
+                break;
+            }
+
+            // stop once we've drained the channel (making sure we read at least one packet)
+            if (source == null) {
+                if (count == 0) {
+                    log.info("Psych! Got READ_READY, but no datagram.");
+                }
+                break;
+            }
+            bytes += dispatchDatagram(listener, source, when);
         }
 
-        // make sure we actually read a packet
-        if (source == null) {
-            log.info("Psych! Got READ_READY, but no datagram.");
-            return 0;
+        if (count > 0) {
+            synchronized (this) {
+                PresentsConMgrStats stats = (PresentsConMgrStats)_stats;
+                stats.datagramWakeups++;
+                stats.datagramsReceived += count;
+            }
         }
+        return bytes;
+    }
 
+    /**
+     * Dispatches the datagram just received into {@link #_databuf} to its connection.
+     *
+     * @return the size of the datagram.
+     */
+    protected int dispatchDatagram (DatagramChannel listener, InetSocketAddress source, long when)
+    {
         // flip the buffer and record the size (which must be at least 14 to contain the connection
         // id, authentication hash, and a class reference)
         int size = _databuf.flip().remaining();
         if (size < 14) {
             log.warning("Received undersized datagram", "source", source, "size", size);
-            return 0;
+            return size;
         }
 
         // the first four bytes are the connection id
         int connectionId = _databuf.getInt();
-        Connection conn = _connections.get(connectionId);
+        Connection conn;
+        synchronized (_connections) {
+            conn = _connections.get(connectionId);
+        }
         if (conn != null) {
             ((PresentsConnection)conn).handleDatagram(source, listener, _databuf, when);
         } else {
@@ -254,8 +376,9 @@ public class PresentsConnectionManager extends ConnectionManager
             return;
         }
 
-        // more sanity check; messages must only be posted from the dobjmgr thread
-        if (!_omgr.isDispatchThread()) {
+        // more sanity check; messages must only be posted from the dobjmgr thread (or one of
+        // its shards)
+        if (!_omgr.isAnyDispatchThread()) {
             log.warning("Message posted on non-distributed object thread", "conn", conn,
                         "msg", msg, "thread", Thread.currentThread(), new Exception());
             // let it through though as we don't want to break things unnecessarily
@@ -270,28 +393,151 @@ public class PresentsConnectionManager extends ConnectionManager
                 return;
             }
 
+            // if the client isn't keeping up, don't add messages it can do without to its queue
+            if (!msg.getTransport().isReliable() && conn.isCongested()) {
+                synchronized (this) {
+                    ((PresentsConMgrStats)_stats).unreliableDropped++;
+                }
+                return;
+            }
+
             // note the actual transport
             msg.noteActualTransport(Transport.RELIABLE_ORDERED);
 
-            _framer.resetFrame();
+            // messages may be posted to a connection by more than one thread when dispatch is
+            // sharded, so each thread has its own framer, and we frame and queue a message while
+            // holding the connection's lock so that its stream is written and queued in order
+            Framer framer = _framers.get();
+            synchronized (conn) {
+                framer.fout.resetFrame();
+
+                // flatten this message using the connection's output stream; event
+                // notifications are flattened once and shared by all connections subscribed to
+                // the event's object
+                ObjectOutputStream oout = conn.getObjectOutputStream(framer.fout);
+                int mappings = oout.getMappingCount();
+                if (msg instanceof EventNotification) {
+                    oout.writeEncodedObject(
+                        getEncodedNotification(framer, (EventNotification)msg));
+                } else {
+                    oout.writeObject(msg);
+                }
+                oout.flush();
+
+                // now detach the framed data (which was written directly into a pooled buffer)
+                // and slap it on the queue; the conmgr will return the buffer to the pool once
+                // written
+                ByteBuffer frame = framer.fout.detachFrame();
+                // log.info("Flattened " + msg + " into " + frame.limit() + " bytes.");
+
+                // a message that established class or intern mappings must not be dropped, as
+                // later messages will rely on those mappings
+                queueMessage(conn, frame, (oout.getMappingCount() == mappings) ?
+                             getSupersedeKey(conn, msg) : null);
+            }
+
+        } catch (Exception e) {
+            log.warning("Failure flattening message", "conn", conn, "msg", msg, e);
+        }
+    }
 
-            // flatten this message using the connection's output stream
-            ObjectOutputStream oout = conn.getObjectOutputStream(_framer);
-            oout.writeObject(msg);
-            oout.flush();
+    /**
+     * Helper function for {@link #postMessage}; returns the key that identifies the messages
+     * that supersede the supplied message, or null if it is not to be superseded.
+     */
+    protected Object getSupersedeKey (PresentsConnection conn, Message msg)
+    {
+        if (!(msg instanceof EventNotification) || !conn.isCongested() ||
+            _slowConsumerPolicy.compareTo(SlowConsumerPolicy.COLLAPSE_ATTRIBUTES) < 0) {
+            return null;
+        }
+        DEvent event = ((EventNotification)msg).getEvent();
+        if (!(event instanceof AttributeChangedEvent)) {
+            return null;
+        }
+        return Tuple.newTuple(event.getTargetOid(), ((AttributeChangedEvent)event).getName());
+    }
 
-            // now extract that data into a byte array
-            ByteBuffer buffer = _framer.frameAndReturnBuffer();
-            byte[] data = new byte[buffer.limit()];
-            buffer.get(data);
-            // log.info("Flattened " + msg + " into " + data.length + " bytes.");
+    @Override // from ConnectionManager
+    protected void connectionCongested (Connection conn, long queued)
+    {
+        PresentsConnection.CongestionHandler handler = getCongestionHandler(conn);
+        switch (_slowConsumerPolicy) {
+        case DISCONNECT:
+            log.info("Disconnecting client that is not keeping up", "conn", conn,
+                     "bytes", queued);
+            synchronized (this) {
+                ((PresentsConMgrStats)_stats).congestionDisconnects++;
+            }
+            closeConnection(conn);
+            break;
+
+        case PAUSE_SUBSCRIPTIONS:
+            super.connectionCongested(conn, queued);
+            if (handler != null) {
+                synchronized (this) {
+                    ((PresentsConMgrStats)_stats).subscriptionPauses++;
+                }
+                handler.outgoingCongested((PresentsConnection)conn);
+            }
+            break;
 
-            // and slap both on the queue
-            _outq.append(Tuple.<Connection, byte[]>newTuple(conn, data));
+        default:
+            super.connectionCongested(conn, queued);
+            break;
+        }
+    }
 
-        } catch (Exception e) {
-            log.warning("Failure flattening message", "conn", conn, "msg", msg, e);
+    @Override // from ConnectionManager
+    protected void connectionDrained (Connection conn)
+    {
+        super.connectionDrained(conn);
+        PresentsConnection.CongestionHandler handler = getCongestionHandler(conn);
+        if (handler != null && _slowConsumerPolicy == SlowConsumerPolicy.PAUSE_SUBSCRIPTIONS) {
+            handler.outgoingDrained((PresentsConnection)conn);
+        }
+    }
+
+    /**
+     * Returns the congestion handler of the supplied connection's message handler, or null.
+     */
+    protected PresentsConnection.CongestionHandler getCongestionHandler (Connection conn)
+    {
+        Object handler = (conn instanceof PresentsConnection) ?
+            ((PresentsConnection)conn)._handler : null;
+        return (handler instanceof PresentsConnection.CongestionHandler) ?
+            (PresentsConnection.CongestionHandler)handler : null;
+    }
+
+    /**
+     * Helper function for {@link #postMessage}; returns the shared encoding of the supplied
+     * notification. An event is dispatched to all of its object's subscribers in turn, so we
+     * retain the encoding of the most recently posted event and reuse it until a different event
+     * comes along.
+     */
+    protected EncodedObject getEncodedNotification (
+        Framer framer, EventNotification notification)
+        throws IOException
+    {
+        DEvent event = notification.getEvent();
+        // events are assigned a new id each time they are posted, so we check that as well to be
+        // sure that a reposted (and potentially modified) event is encoded anew
+        boolean encode = (event != framer.encodedEvent || event.eventId != framer.encodedEventId);
+        if (encode) {
+            // clear out the old encoding first in case encoding fails
+            framer.encodedEvent = null;
+            framer.encodedNotification = EncodedObject.encode(notification);
+            framer.encodedEvent = event;
+            framer.encodedEventId = event.eventId;
+        }
+        synchronized (this) {
+            PresentsConMgrStats stats = (PresentsConMgrStats)_stats;
+            if (encode) {
+                stats.eventsEncoded++;
+            }
+            stats.eventsSent++;
         }
+        return framer.encodedNotification;
     }
 
     /**
@@ -302,29 +548,58 @@ public class PresentsConnectionManager extends ConnectionManager
     protected boolean postDatagram (PresentsConnection conn, Message msg)
         throws Exception
     {
-        _flattener.reset();
+        // all of our sequencers share our flattener, which may be used by more than one thread
+        // when dispatch is sharded
+        int scanLength;
+        synchronized (_flattener) {
+            _flattener.reset();
+
+            // flatten the message using the connection's sequencer
+            DatagramSequencer sequencer = conn.getDatagramSequencer();
+            sequencer.writeDatagram(msg);
+
+            // if the message is too big (allowing for its length if it is to be packed), we must
+            // fall back to sending it through the stream channel
+            int limit = Client.MAX_DATAGRAM_SIZE -
+                (conn.getPackDatagrams() ? Client.PACKED_DATAGRAM_HEADER : 0);
+            if (_flattener.size() > limit) {
+                return false;
+            }
 
-        // flatten the message using the connection's sequencer
-        DatagramSequencer sequencer = conn.getDatagramSequencer();
-        sequencer.writeDatagram(msg);
+            // note the actual transport
+            msg.noteActualTransport(Transport.UNRELIABLE_UNORDERED);
 
-        // if the message is too big, we must fall back to sending it through the stream channel
-        if (_flattener.size() > Client.MAX_DATAGRAM_SIZE) {
-            return false;
+            // extract as a byte array and slap it on the queue
+            _dataq.append(new Datagram(
+                conn, getDatagramSupersedeKey(conn, msg), _flattener.toByteArray()));
+            scanLength = sequencer.getAckScanLength();
         }
 
-        // note the actual transport
-        msg.noteActualTransport(Transport.UNRELIABLE_UNORDERED);
-
-        // extract as a byte array
-        byte[] data = _flattener.toByteArray();
-
-        // slap it on the queue
-        _dataq.append(Tuple.newTuple(conn, data));
-
+        synchronized (this) {
+            PresentsConMgrStats stats = (PresentsConMgrStats)_stats;
+            stats.datagramAckScans++;
+            stats.datagramAckScanLength += scanLength;
+        }
         return true;
     }
 
+    /**
+     * Helper function for {@link #postDatagram}; returns the key that identifies the datagrams
+     * that supersede the supplied message, or null if it is not to be superseded. A datagram
+     * waiting to be sent is dropped if a later datagram for the same connection has the same key.
+     */
+    protected Object getDatagramSupersedeKey (PresentsConnection conn, Message msg)
+    {
+        if (!(msg instanceof EventNotification)) {
+            return null;
+        }
+        DEvent event = ((EventNotification)msg).getEvent();
+        if (!(event instanceof AttributeChangedEvent)) {
+            return null;
+        }
+        return Tuple.newTuple(event.getTargetOid(), ((AttributeChangedEvent)event).getName());
+    }
+
     /**
      * Creates a datagram sequencer for use by a {@link Connection}.
      */
@@ -352,56 +627,65 @@ public class PresentsConnectionManager extends ConnectionManager
      */
     public void openOutgoingConnection (Connection conn, String hostname, int port)
         throws IOException
+    {
+        openOutgoingConnection(conn, new InetSocketAddress(hostname, port));
+    }
+
+    /**
+     * Opens an outgoing connection to the supplied address, which may be a TCP address or the
+     * {@link UnixDomainSocketAddress} of a server running on this same host.
+     *
+     * @see #openOutgoingConnection(Connection, String, int)
+     */
+    public void openOutgoingConnection (final Connection conn, final SocketAddress addr)
+        throws IOException
     {
         // create a socket channel to use for this connection, initialize it and queue it up to
         // have the non-blocking connect process started
-        SocketChannel sockchan = SocketChannel.open();
+        SocketChannel sockchan = (addr instanceof UnixDomainSocketAddress) ?
+            SocketChannel.open(StandardProtocolFamily.UNIX) : SocketChannel.open();
         sockchan.configureBlocking(false);
         conn.init(this, sockchan, System.currentTimeMillis());
-        _connectq.append(Tuple.newTuple(conn, new InetSocketAddress(hostname, port)));
+
+        // the reactor that will handle this connection's traffic also performs the connection
+        // process, so that all of our outgoing connections (such as those to our peers) are
+        // multiplexed over our reactors rather than all piling onto the primary
+        assignReactor(conn);
+        invokeOnReactor(conn, new Runnable() {
+            public void run () {
+                startOutgoingConnection(conn, addr);
+            }
+        });
     }
 
     /**
-     * Starts the connection process for an outgoing connection. This is called as part of the
-     * conmgr tick for any pending outgoing connections.
+     * Starts the connection process for an outgoing connection. This is called on the thread of
+     * the reactor to which the connection was assigned.
      */
-    protected void startOutgoingConnection (final Connection conn, InetSocketAddress addr)
+    protected void startOutgoingConnection (final Connection conn, SocketAddress addr)
     {
         final SocketChannel sockchan = conn.getChannel();
         try {
-            // register our channel with the selector (if this fails, we abandon ship immediately)
-            conn.selkey = sockchan.register(_selector, SelectionKey.OP_CONNECT);
-
-            // start our connection process (now if we fail we need to clean things up)
-            NetEventHandler handler;
+            // start our connection process
             if (sockchan.connect(addr)) {
                 _outConnValidator.validateOutgoing(sockchan); // may throw
-                // it is possible even for a non-blocking socket to connect immediately, in which
-                // case we stick the connection in as its event handler immediately
-                handler = conn;
+                // it is possible even for a non-blocking socket to connect immediately (as Unix
+                // domain sockets usually do), in which case it will never become ready to
+                // connect, so we wire up the connection to read right away
+                conn.selkey = getReactor(conn).register(sockchan, SelectionKey.OP_READ, conn);
+                log.info("Outgoing connection ready", "conn", conn);
 
             } else {
                 // otherwise we wire up a special event handler that will wait for our socket to
                 // finish the connection process and then wire things up fully
-                handler = new OutgoingConnectionHandler(conn);
+                conn.selkey = getReactor(conn).register(
+                    sockchan, SelectionKey.OP_CONNECT, new OutgoingConnectionHandler(conn));
             }
-            _handlers.put(conn.selkey, handler);
 
         } catch (IOException ioe) {
             log.warning("Failed to initiate connection for " + sockchan + ".", ioe);
-            conn.connectFailure(ioe); // nothing else to clean up
-        }
-    }
-
-    @Override // from LoopingThread
-    protected void iterate ()
-    {
-        super.iterate();
-
-        // reap any outgoing connection handlers that failed to connect due to idleness
-        OutgoingConnectionHandler handler;
-        while ((handler = _outfailq.getNonBlocking()) != null) {
-            handler.handleError(new IOException("Pending connection became idle."));
+            removeConnection(conn);
+            conn.connectFailure(ioe);
         }
     }
 
@@ -417,12 +701,6 @@ public class PresentsConnectionManager extends ConnectionManager
     {
         super.handleIncoming(iterStamp);
 
-        // start up any outgoing connections that need to be connected
-        Tuple<Connection, InetSocketAddress> pconn;
-        while ((pconn = _connectq.getNonBlocking()) != null) {
-            startOutgoingConnection(pconn.left, pconn.right);
-        }
-
         // check for connections that have completed authentication
         processAuthedConnections(iterStamp);
     }
@@ -491,24 +769,20 @@ public class PresentsConnectionManager extends ConnectionManager
                 // from here on out
                 PresentsConnection rconn = new PresentsConnection();
                 rconn.init(this, conn.getChannel(), iterStamp);
-                rconn.selkey = conn.selkey;
 
                 // we need to keep using the same object input and output streams from the
                 // beginning of the session because they have context that needs to be preserved
                 rconn.inheritStreams(conn);
 
-                // replace the mapping in the handlers table from the old conn with the new one
-                _handlers.put(rconn.selkey, rconn);
-
                 // add a mapping for the connection id and set the datagram secret
-                _connections.put(rconn.getConnectionId(), rconn);
+                synchronized (_connections) {
+                    _connections.put(rconn.getConnectionId(), rconn);
+                }
                 rconn.setDatagramSecret(conn.getAuthRequest().getCredentials().getDatagramSecret());
+                rconn.setPackDatagrams(conn.getAuthResponse().getPackDatagrams());
 
-                // transfer any overflow queue for that connection
-                OverflowQueue oflowHandler = _oflowqs.remove(conn);
-                if (oflowHandler != null) {
-                    _oflowqs.put(rconn, oflowHandler);
-                }
+                // replace the old conn with the new one and assign it to a reactor
+                upgradeConnection(conn, rconn);
 
                 // and let the client manager know about our new connection
                 _clmgr.connectionEstablished(rconn, conn.getAuthName(), conn.getAuthRequest(),
@@ -526,18 +800,77 @@ public class PresentsConnectionManager extends ConnectionManager
         super.sendOutgoingMessages(iterStamp);
 
         // send any datagrams
-        Tuple<PresentsConnection, byte[]> tup;
-        while ((tup = _dataq.getNonBlocking()) != null) {
-            writeDatagram(tup.left, tup.right);
+        sendDatagrams();
+    }
+
+    /**
+     * Sends the datagrams posted since we last sent. Datagrams superseded by a later datagram for
+     * the same connection are dropped, which the client sees as loss in transit. The rest are
+     * sent one to a packet, unless the client agreed when authenticating to have them packed, in
+     * which case they are packed into as few packets as possible, each preceded by its length so
+     * that the client can skip those that it drops without decoding them.
+     */
+    protected void sendDatagrams ()
+    {
+        Datagram dgram;
+        int superseded = 0;
+        while ((dgram = _dataq.getNonBlocking()) != null) {
+            DatagramBatch batch = _dbatches.get(dgram.conn);
+            if (batch == null) {
+                _dbatches.put(dgram.conn, batch = new DatagramBatch());
+            }
+            if (batch.add(dgram)) {
+                superseded++;
+            }
+        }
+        if (_dbatches.isEmpty()) {
+            return;
+        }
+
+        int packets = 0;
+        for (Map.Entry<PresentsConnection, DatagramBatch> entry : _dbatches.entrySet()) {
+            PresentsConnection conn = entry.getKey();
+            boolean pack = conn.getPackDatagrams();
+            _databuf.clear();
+            for (Datagram queued : entry.getValue().dgrams) {
+                if (queued.superseded) {
+                    continue;
+                }
+                if (!pack) {
+                    _databuf.put(queued.data);
+                    writeDatagram(conn);
+                    packets++;
+                    _databuf.clear();
+                    continue;
+                }
+                int length = Client.PACKED_DATAGRAM_HEADER + queued.data.length;
+                if (_databuf.remaining() < length) {
+                    writeDatagram(conn);
+                    packets++;
+                    _databuf.clear();
+                }
+                _databuf.putShort((short)queued.data.length).put(queued.data);
+            }
+            if (_databuf.position() > 0) {
+                writeDatagram(conn);
+                packets++;
+            }
+        }
+        _dbatches.clear();
+
+        synchronized (this) {
+            PresentsConMgrStats stats = (PresentsConMgrStats)_stats;
+            stats.datagramsSuperseded += superseded;
+            stats.datagramPackets += packets;
         }
     }
 
     /**
-     * Sends a datagram to the specified connection.
+     * Sends the datagrams written into {@link #_databuf} to the specified connection.
      *
      * @return true if the datagram was sent, false if we failed to send for any reason.
      */
-    protected boolean writeDatagram (PresentsConnection conn, byte[] data)
+    protected boolean writeDatagram (PresentsConnection conn)
     {
         InetSocketAddress target = conn.getDatagramAddress();
         if (target == null) {
@@ -545,8 +878,7 @@ public class PresentsConnectionManager extends ConnectionManager
             return false;
         }
 
-        _databuf.clear();
-        _databuf.put(data).flip();
+        _databuf.flip();
         try {
             return conn.getDatagramChannel().send(_databuf, target) > 0;
         } catch (IOException ioe) {
@@ -555,6 +887,73 @@ public class PresentsConnectionManager extends ConnectionManager
         }
     }
 
+    /** A flattened datagram awaiting delivery. */
+    protected static class Datagram
+    {
+        /** The connection to which the datagram is to be sent. */
+        public final PresentsConnection conn;
+
+        /** The key shared by the datagrams that supersede this one, or null. */
+        public final Object key;
+
+        /** The contents of the datagram. */
+        public final byte[] data;
+
+        /** Set if a later datagram has superseded this one. */
+        public boolean superseded;
+
+        public Datagram (PresentsConnection conn, Object key, byte[] data)
+        {
+            this.conn = conn;
+            this.key = key;
+            this.data = data;
+        }
+    }
+
+    /** The datagrams bound for a single connection in one round of sending. */
+    protected static class DatagramBatch
+    {
+        /** The datagrams in the order in which they were posted. */
+        public final List<Datagram> dgrams = Lists.newArrayList();
+
+        /**
+         * Adds a datagram to this batch, marking any earlier datagram that it supersedes.
+         *
+         * @return true if an earlier datagram was superseded.
+         */
+        public boolean add (Datagram dgram)
+        {
+            dgrams.add(dgram);
+            if (dgram.key == null) {
+                return false;
+            }
+            if (_latest == null) {
+                _latest = Maps.newHashMap();
+            }
+            Datagram prev = _latest.put(dgram.key, dgram);
+            if (prev == null) {
+                return false;
+            }
+            prev.superseded = true;
+            return true;
+        }
+
+        /** The most recent datagram posted with each supersede key. */
+        protected Map<Object, Datagram> _latest;
+    }
+
+    /** The state used by a particular thread to frame outgoing messages. */
+    protected class Framer
+    {
+        /** The stream into which messages are framed. */
+        public final FramingOutputStream fout = new FramingOutputStream(_bufferPool);
+
+        /** The most recently encoded event, its id at the time and its encoded notification. */
+        public DEvent encodedEvent;
+        public long encodedEventId;
+        public EncodedObject encodedNotification;
+    }
+
     protected class OutgoingConnectionHandler implements NetEventHandler
     {
         public OutgoingConnectionHandler (Connection conn)
@@ -569,8 +968,8 @@ public class PresentsConnectionManager extends ConnectionManager
                 if (sockchan.finishConnect()) {
                     _outConnValidator.validateOutgoing(sockchan); // may throw
                     // great, we're ready to roll, wire up the connection
-                    _conn.selkey = sockchan.register(_selector, SelectionKey.OP_READ);
-                    _handlers.put(_conn.selkey, _conn);
+                    _conn.selkey = getReactor(_conn).register(
+                        sockchan, SelectionKey.OP_READ, _conn);
                     log.info("Outgoing connection ready", "conn", _conn);
                 }
             } catch (IOException ioe) {
@@ -586,14 +985,17 @@ public class PresentsConnectionManager extends ConnectionManager
 
         public void becameIdle ()
         {
-            // this failed connection will be cleaned up in the next iterate() tick
-            _outfailq.append(this);
+            // this failed connection will be cleaned up on our reactor's next tick
+            invokeOnReactor(_conn, new Runnable() {
+                public void run () {
+                    handleError(new IOException("Pending connection became idle."));
+                }
+            });
         }
 
         protected void handleError (IOException ioe)
         {
-            _handlers.remove(_conn.selkey);
-            _oflowqs.remove(_conn);
+            removeConnection(_conn);
             _conn.connectFailure(ioe);
         }
 
@@ -608,16 +1010,22 @@ public class PresentsConnectionManager extends ConnectionManager
     protected PrivateKey _privateKey;
 
     protected Queue<AuthingConnection> _authq = Queue.newQueue();
-    protected Queue<Tuple<Connection, InetSocketAddress>> _connectq = Queue.newQueue();
 
-    /** failed (idled out) outgoing connections that need to be cleaned up */
-    protected Queue<OutgoingConnectionHandler> _outfailq = Queue.newQueue();
+    /** The framer used by each thread that posts messages. */
+    protected ThreadLocal<Framer> _framers = new ThreadLocal<Framer>() {
+        @Override protected Framer initialValue () {
+            return new Framer();
+        }
+    };
 
-    protected FramingOutputStream _framer = new FramingOutputStream();
     protected ByteArrayOutputStream _flattener = new ByteArrayOutputStream();
 
     protected OutgoingConnectionValidator _outConnValidator = OutgoingConnectionValidator.DEFAULT;
 
+    /** What we do about clients whose outgoing queues pass the high watermark. */
+    @Inject(optional=true) @Named("presents.net.slowConsumerPolicy")
+    protected SlowConsumerPolicy _slowConsumerPolicy = SlowConsumerPolicy.DROP_UNRELIABLE;
+
     // some dependencies
     @Inject @AuthInvoker protected Invoker _authInvoker;
     @Inject protected ClientManager _clmgr;
@@ -626,6 +1034,18 @@ public class PresentsConnectionManager extends ConnectionManager
     /** A snapshot of our runtime stats as of our last report. */
     protected PresentsConMgrStats _lastStats = new PresentsConMgrStats();
 
-    protected Queue<Tuple<PresentsConnection, byte[]>> _dataq = Queue.newQueue();
+    /** Snapshots of our per-reactor stats as of our last report. */
+    protected ConMgrStats[] _lastReactorStats = new ConMgrStats[0];
+
+    /** Datagrams posted to our connections and waiting to be sent by the conmgr thread. */
+    protected Queue<Datagram> _dataq = Queue.newQueue();
+
+    /** Used by {@link #sendDatagrams} to group waiting datagrams by connection. */
+    protected Map<PresentsConnection, DatagramBatch> _dbatches = Maps.newLinkedHashMap();
+
     protected ByteBuffer _databuf = ByteBuffer.allocateDirect(Client.MAX_DATAGRAM_SIZE);
+
+    /** The maximum number of datagrams we'll read from a channel in one go, so that a flood on
+     * the datagram channel can't starve our other connections. */
+    protected static final int MAX_DATAGRAMS_PER_WAKEUP = 64;
 }
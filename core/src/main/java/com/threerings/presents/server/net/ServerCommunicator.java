@@ -7,6 +7,8 @@ package com.threerings.presents.server.net;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
 
 import com.threerings.io.ObjectInputStream;
 import com.threerings.presents.client.Client;
@@ -90,7 +92,7 @@ public class ServerCommunicator extends Communicator
                     }
                 }
             });
-            _conmgr.openOutgoingConnection(conn, _client.getHostname(), _client.getPorts()[0]);
+            _conmgr.openOutgoingConnection(conn, getServerAddress());
             _conn = conn;
             if (_loader != null) {
                 _conn.setClassLoader(_loader);
@@ -106,6 +108,16 @@ public class ServerCommunicator extends Communicator
         }
     }
 
+    /**
+     * Returns the address of the server to which we connect. By default this is the client's
+     * hostname and first port, but a server on the same host may instead be reached via the
+     * address of its Unix domain socket.
+     */
+    protected SocketAddress getServerAddress ()
+    {
+        return new InetSocketAddress(_client.getHostname(), _client.getPorts()[0]);
+    }
+
     @Override // from Communicator
     public void logoff ()
     {
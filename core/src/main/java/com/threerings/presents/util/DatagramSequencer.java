@@ -5,13 +5,12 @@
 
 package com.threerings.presents.util;
 
-import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.Set;
 
 import java.io.IOException;
 
-import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
 import com.threerings.io.UnreliableObjectInputStream;
 import com.threerings.io.UnreliableObjectOutputStream;
 
@@ -21,6 +20,13 @@ import com.threerings.presents.net.Transport;
 /**
  * Used on both the client and the server to handle the encoding and decoding of sequenced
  * datagrams.
+ *
+ * <p> A sequencer requires no locking so long as datagrams are read by only one thread at a time
+ * and written by only one thread at a time (the reading and writing threads may differ). To that
+ * end, the reading thread merely notes the acknowledgements that it receives, and the writing
+ * thread processes them before writing its next datagram. The records of the datagrams awaiting
+ * acknowledgement are kept in a fixed size ring and reused, so that no allocation is needed per
+ * datagram.
  */
 public class DatagramSequencer
 {
@@ -36,13 +42,27 @@ public class DatagramSequencer
     /**
      * Writes a datagram to the underlying stream.
      */
-    public synchronized void writeDatagram (Message datagram)
+    public void writeDatagram (Message datagram)
         throws IOException
     {
+        // note the mappings acknowledged by the other side since we last wrote
+        processAcknowledgements(_lastAcknowledged);
+
         // first write the sequence and acknowledge numbers
         _uout.writeInt(++_lastNumber);
         _uout.writeInt(_lastReceived);
 
+        // if our ring is full, forget about the oldest datagram; we'll just send its mappings
+        // again until a more recent datagram that includes them is acknowledged
+        if (_lastNumber - _oldestNumber >= _sendrecs.length) {
+            _sendrecs[_oldestNumber++ & RING_MASK].clear();
+        }
+        SendRecord sendrec = _sendrecs[_lastNumber & RING_MASK];
+        if (sendrec == null) {
+            _sendrecs[_lastNumber & RING_MASK] = sendrec = new SendRecord();
+        }
+        sendrec.number = _lastNumber;
+
         // make sure the mapped sets are clear
         Set<Class<?>> mappedClasses = _uout.getMappedClasses();
         mappedClasses.clear();
@@ -52,24 +72,16 @@ public class DatagramSequencer
         // write the object
         _uout.writeObject(datagram);
 
-        // if we wrote any class mappings, we will keep them in the send record
-        if (mappedClasses.isEmpty()) {
-            mappedClasses = null;
-        } else {
-            _uout.setMappedClasses(new HashSet<Class<?>>());
-
+        // if we wrote any class mappings, we will keep them in the send record, swapping in its
+        // empty set for use with the next datagram
+        if (!mappedClasses.isEmpty()) {
+            _uout.setMappedClasses(sendrec.swapMappedClasses(mappedClasses));
         }
 
         // likewise with the intern mappings
-        if (mappedInterns.isEmpty()) {
-            mappedInterns = null;
-        } else {
-            _uout.setMappedInterns(new HashSet<String>());
-
+        if (!mappedInterns.isEmpty()) {
+            _uout.setMappedInterns(sendrec.swapMappedInterns(mappedInterns));
         }
-
-        // record the transmission
-        _sendrecs.add(new SendRecord(_lastNumber, mappedClasses, mappedInterns));
     }
 
     /**
@@ -78,7 +90,7 @@ public class DatagramSequencer
      * @return the contents of the datagram, or <code>null</code> if the datagram was received
      * out-of-order.
      */
-    public synchronized Message readDatagram ()
+    public Message readDatagram ()
         throws IOException, ClassNotFoundException
     {
         // read in the sequence number and determine if it's out-of-order
@@ -86,30 +98,56 @@ public class DatagramSequencer
         if (number <= _lastReceived) {
             return null;
         }
+        return readContents(number);
+    }
+
+    /**
+     * Reads a datagram of the specified length, one of several packed into a single packet, from
+     * the underlying stream. An out-of-order datagram is skipped without being decoded, so that
+     * the stream is left at the start of the next datagram in the packet regardless.
+     *
+     * @return the contents of the datagram, or <code>null</code> if the datagram was received
+     * out-of-order.
+     */
+    public Message readDatagram (int length)
+        throws IOException, ClassNotFoundException
+    {
+        int number = _uin.readInt();
+        if (number <= _lastReceived) {
+            _uin.skipBytes(length - 4);
+            return null;
+        }
+        return readContents(number);
+    }
+
+    /**
+     * Returns the number of datagrams missed between the last and the one before it.
+     */
+    public int getMissedCount ()
+    {
+        return _missedCount;
+    }
+
+    /**
+     * Returns the number of send records that were scanned when processing acknowledgements
+     * prior to writing the last datagram.
+     */
+    public int getAckScanLength ()
+    {
+        return _ackScanLength;
+    }
+
+    /**
+     * Reads the remainder of an in-order datagram with the supplied sequence number.
+     */
+    protected Message readContents (int number)
+        throws IOException, ClassNotFoundException
+    {
         _missedCount = number - _lastReceived - 1;
         _lastReceived = number;
 
-        // read the acknowledge number and process all send records up to that one
-        int received = _uin.readInt();
-        int remove = 0;
-        for (int ii = 0, nn = _sendrecs.size(); ii < nn; ii++) {
-            SendRecord sendrec = _sendrecs.get(ii);
-            if (sendrec.number > received) {
-                break;
-            }
-            remove++;
-            if (sendrec.number == received) {
-                if (sendrec.mappedClasses != null) {
-                    _uout.noteClassMappingsReceived(sendrec.mappedClasses);
-                }
-                if (sendrec.mappedInterns != null) {
-                    _uout.noteInternMappingsReceived(sendrec.mappedInterns);
-                }
-            }
-        }
-        if (remove > 0) {
-            _sendrecs.subList(0, remove).clear();
-        }
+        // read the acknowledge number, which our writer will process
+        _lastAcknowledged = _uin.readInt();
 
         // read the contents of the datagram, note the transport, and return
         Message datagram = (Message)_uin.readObject();
@@ -118,11 +156,26 @@ public class DatagramSequencer
     }
 
     /**
-     * Returns the number of datagrams missed between the last and the one before it.
+     * Processes all send records up to the specified acknowledged datagram, noting the mappings
+     * included in that datagram as received.
      */
-    public int getMissedCount ()
+    protected void processAcknowledgements (int received)
     {
-        return _missedCount;
+        int scanned = 0;
+        for (; _oldestNumber <= received && _oldestNumber <= _lastNumber; _oldestNumber++) {
+            SendRecord sendrec = _sendrecs[_oldestNumber & RING_MASK];
+            scanned++;
+            if (sendrec.number == received) {
+                if (sendrec.mappedClasses != null && !sendrec.mappedClasses.isEmpty()) {
+                    _uout.noteClassMappingsReceived(sendrec.mappedClasses);
+                }
+                if (sendrec.mappedInterns != null && !sendrec.mappedInterns.isEmpty()) {
+                    _uout.noteInternMappingsReceived(sendrec.mappedInterns);
+                }
+            }
+            sendrec.clear();
+        }
+        _ackScanLength = scanned;
     }
 
     /**
@@ -134,18 +187,47 @@ public class DatagramSequencer
         public int number;
 
         /** The set of classes for which mappings were included in the datagram (or
-         * <code>null</code> for none). */
+         * <code>null</code> or empty for none). */
         public Set<Class<?>> mappedClasses;
 
         /** The set of interns for which mappings were included in the datagram (or
-         * <code>null</code> for none). */
+         * <code>null</code> or empty for none). */
         public Set<String> mappedInterns;
 
-        public SendRecord (int number, Set<Class<?>> mappedClasses, Set<String> mappedInterns)
+        /**
+         * Stores the supplied class mappings in this record, returning an empty set to replace
+         * them. Sets are traded back and forth in this way so that we need not allocate them
+         * anew for each datagram that includes mappings.
+         */
+        public Set<Class<?>> swapMappedClasses (Set<Class<?>> classes)
         {
-            this.number = number;
-            this.mappedClasses = mappedClasses;
-            this.mappedInterns = mappedInterns;
+            Set<Class<?>> empty = mappedClasses;
+            mappedClasses = classes;
+            return (empty == null) ? Sets.<Class<?>>newHashSet() : empty;
+        }
+
+        /**
+         * Stores the supplied intern mappings in this record, returning an empty set to replace
+         * them.
+         */
+        public Set<String> swapMappedInterns (Set<String> interns)
+        {
+            Set<String> empty = mappedInterns;
+            mappedInterns = interns;
+            return (empty == null) ? Sets.<String>newHashSet() : empty;
+        }
+
+        /**
+         * Clears this record's mappings so that it may be reused.
+         */
+        public void clear ()
+        {
+            if (mappedClasses != null && !mappedClasses.isEmpty()) {
+                mappedClasses.clear();
+            }
+            if (mappedInterns != null && !mappedInterns.isEmpty()) {
+                mappedInterns.clear();
+            }
         }
     }
 
@@ -158,12 +240,28 @@ public class DatagramSequencer
     /** The last sequence number written. */
     protected int _lastNumber;
 
-    /** The most recent sequence number received. */
-    protected int _lastReceived;
+    /** The sequence number of the oldest datagram awaiting acknowledgement. */
+    protected int _oldestNumber = 1;
+
+    /** The most recent sequence number received. This is written by our reading thread and read
+     * by our writing thread. */
+    protected volatile int _lastReceived;
+
+    /** The most recent sequence number acknowledged by the other side. This is written by our
+     * reading thread and read by our writing thread. */
+    protected volatile int _lastAcknowledged;
 
     /** The number of datagrams missed between the last and the one before it. */
     protected int _missedCount;
 
-    /** Records of datagrams sent. */
-    protected ArrayList<SendRecord> _sendrecs = Lists.newArrayList();
+    /** The number of send records scanned when we last processed acknowledgements. */
+    protected int _ackScanLength;
+
+    /** Records of datagrams sent, indexed by sequence number modulo the ring size. Records are
+     * created as their slots are first used. */
+    protected SendRecord[] _sendrecs = new SendRecord[RING_MASK + 1];
+
+    /** The mask used to map sequence numbers to slots in our ring of send records, which holds
+     * the records of as many datagrams as we expect to send between acknowledgements. */
+    protected static final int RING_MASK = 127;
 }
@@ -0,0 +1,102 @@
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2025 Three Rings Design, Inc., All Rights Reserved
+// https://github.com/threerings/narya/blob/master/LICENSE
+
+package com.threerings.io;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link BufferPool} class and pooled framing.
+ */
+public class BufferPoolTest
+{
+    @Test
+    public void testSizeClasses ()
+    {
+        BufferPool pool = new BufferPool(9, 12);
+        assertEquals(512, pool.acquire(1).capacity());
+        assertEquals(512, pool.acquire(512).capacity());
+        assertEquals(1024, pool.acquire(513).capacity());
+        assertEquals(4096, pool.acquire(4096).capacity());
+        assertTrue(pool.acquire(1).isDirect());
+
+        // oversized requests are satisfied with unpooled heap buffers
+        ByteBuffer big = pool.acquire(4097);
+        assertFalse(big.isDirect());
+        assertEquals(4097, big.capacity());
+        assertEquals(5, pool.getAllocatedCount());
+    }
+
+    @Test
+    public void testReuse ()
+        throws InterruptedException
+    {
+        final BufferPool pool = new BufferPool();
+        ByteBuffer buf = pool.acquire(100);
+        buf.put((byte)1);
+        pool.release(buf);
+        ByteBuffer rebuf = pool.acquire(200);
+        assertSame(buf, rebuf);
+        assertEquals(0, rebuf.position());
+        assertEquals(rebuf.capacity(), rebuf.limit());
+
+        // buffers released on another thread make their way back to us
+        final ByteBuffer obuf = pool.acquire(100);
+        Thread releaser = new Thread() {
+            @Override public void run () {
+                pool.release(obuf);
+            }
+        };
+        releaser.start();
+        releaser.join();
+        assertSame(obuf, pool.acquire(100));
+
+        // buffers that didn't come from a pool are ignored
+        pool.release(ByteBuffer.allocate(512));
+        pool.release(ByteBuffer.allocateDirect(300));
+        assertEquals(2, pool.getAllocatedCount());
+    }
+
+    @Test
+    public void testDetachFrame ()
+        throws IOException
+    {
+        BufferPool pool = new BufferPool();
+        FramingOutputStream fout = new FramingOutputStream(pool);
+        DataOutputStream dout = new DataOutputStream(fout);
+
+        dout.writeUTF("short");
+        ByteBuffer frame1 = fout.detachFrame();
+        StringBuilder buf = new StringBuilder();
+        for (int ii = 0; ii < 1000; ii++) {
+            buf.append("long string ");
+        }
+        dout.writeUTF(buf.toString());
+        ByteBuffer frame2 = fout.detachFrame();
+        assertTrue(frame1.isDirect());
+        assertNotSame(frame1, frame2);
+
+        DataInputStream din = new DataInputStream(new ByteBufferInputStream(frame1));
+        assertEquals(frame1.limit(), din.readInt());
+        assertEquals("short", din.readUTF());
+        din = new DataInputStream(new ByteBufferInputStream(frame2));
+        assertEquals(frame2.limit(), din.readInt());
+        assertEquals(buf.toString(), din.readUTF());
+
+        // once released, a frame buffer is reused as the stream's next buffer
+        pool.release(frame2);
+        dout.writeUTF(buf.toString());
+        assertNotSame(frame2, fout.detachFrame());
+        dout.writeUTF(buf.toString());
+        assertSame(frame2, fout.detachFrame());
+    }
+}
@@ -0,0 +1,57 @@
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2025 Three Rings Design, Inc., All Rights Reserved
+// https://github.com/threerings/narya/blob/master/LICENSE
+
+package com.threerings.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import static com.threerings.io.StreamableTest.*; // for Widget, Wocket
+
+/**
+ * Tests the {@link EncodedObject} class.
+ */
+public class EncodedObjectTest
+{
+    @Test
+    public void testMatchesWriteObject ()
+        throws IOException, ClassNotFoundException
+    {
+        Widget widget = new Widget();
+        EncodedObject encoded = EncodedObject.encode(widget);
+
+        // write to a fresh stream and to one that already has some (different) mappings, the
+        // encoded data must match what writeObject() produces in both cases
+        ByteArrayOutputStream fbytes = new ByteArrayOutputStream();
+        ByteArrayOutputStream ebytes = new ByteArrayOutputStream();
+        ObjectOutputStream fout = new ObjectOutputStream(fbytes);
+        ObjectOutputStream eout = new ObjectOutputStream(ebytes);
+        for (ObjectOutputStream out : new ObjectOutputStream[] { fout, eout }) {
+            out.writeObject(new Wocket());
+            out.writeIntern("monkey butter");
+        }
+        for (int ii = 0; ii < 2; ii++) {
+            fout.writeObject(widget);
+            eout.writeEncodedObject(encoded);
+        }
+        fout.writeEncodedObject(EncodedObject.encode(null));
+        eout.writeObject(null);
+        assertTrue(Arrays.equals(fbytes.toByteArray(), ebytes.toByteArray()));
+
+        // and it must read back properly
+        ObjectInputStream oin = new ObjectInputStream(
+            new ByteArrayInputStream(ebytes.toByteArray()));
+        oin.readObject();
+        oin.readIntern();
+        assertEquals(widget, oin.readObject());
+        assertEquals(widget, oin.readObject());
+        assertNull(oin.readObject());
+    }
+}
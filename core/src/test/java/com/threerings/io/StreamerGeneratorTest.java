@@ -0,0 +1,110 @@
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2025 Three Rings Design, Inc., All Rights Reserved
+// https://github.com/threerings/narya/blob/master/LICENSE
+
+package com.threerings.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import com.samskivert.util.StringUtil;
+
+import static com.threerings.io.StreamableTest.*; // for Widget
+
+/**
+ * Tests the {@link StreamerGenerator} class.
+ */
+public class StreamerGeneratorTest
+{
+    public static class Secretive extends SimpleStreamableObject
+    {
+        public Secretive () {
+        }
+
+        public Secretive (int value) {
+            _private = value;
+            _protected = "protected" + value;
+            _intern = "intern" + value;
+            _streamed = new int[] { value };
+        }
+
+        public int getPrivate () {
+            return _private;
+        }
+
+        private int _private;
+        protected String _protected;
+        @Intern protected String _intern;
+        protected int[] _streamed;
+        protected final long _final = System.nanoTime();
+    }
+
+    public static class Subretive extends Secretive
+    {
+        public Subretive () {
+        }
+
+        public Subretive (int value) {
+            super(value);
+            _sub = (byte)value;
+        }
+
+        private byte _sub;
+    }
+
+    @Test
+    public void testGeneratedMatchesReflection ()
+        throws Throwable
+    {
+        testMatches(new Widget());
+        testMatches(new Secretive(42));
+        Subretive sub = new Subretive(7);
+        Subretive read = (Subretive)testMatches(sub);
+        assertEquals(sub.getPrivate(), read.getPrivate());
+        assertEquals(sub._sub, read._sub);
+        assertEquals(sub._final, read._final);
+    }
+
+    protected Object testMatches (Object object)
+        throws Throwable
+    {
+        Streamer.ClassStreamer streamer = (Streamer.ClassStreamer)
+            Streamer.getStreamer(object.getClass());
+        StreamerGenerator.FieldStreamer fstreamer = StreamerGenerator.create(
+            streamer._target, streamer._fields, streamer._marshallers);
+
+        // write the object reflectively and via the generated code
+        ByteArrayOutputStream rbytes = new ByteArrayOutputStream();
+        ObjectOutputStream rout = new ObjectOutputStream(rbytes);
+        streamer.writeObject(object, rout, false);
+        ByteArrayOutputStream gbytes = new ByteArrayOutputStream();
+        ObjectOutputStream gout = new ObjectOutputStream(gbytes);
+        fstreamer.writeFields(object, gout, streamer._marshallers, streamer._fields);
+        assertTrue(Arrays.equals(rbytes.toByteArray(), gbytes.toByteArray()));
+
+        // read it back via the generated code
+        ObjectInputStream gin = new ObjectInputStream(
+            new ByteArrayInputStream(gbytes.toByteArray()));
+        Object read = streamer.createObject(gin);
+        assertEquals(streamer._fields.length,
+                     fstreamer.readFields(read, gin, streamer._marshallers, streamer._fields));
+
+        // and make sure it matches what is read reflectively
+        ObjectInputStream rin = new ObjectInputStream(
+            new ByteArrayInputStream(rbytes.toByteArray()));
+        Object rread = streamer.createObject(rin);
+        streamer.readObject(rread, rin, false);
+        assertEquals(StringUtil.fieldsToString(rread), StringUtil.fieldsToString(read));
+
+        // finally make sure a truncated stream reports the missing fields
+        ObjectInputStream tin = new ObjectInputStream(new ByteArrayInputStream(new byte[0]));
+        assertEquals(0, fstreamer.readFields(
+                         streamer.createObject(tin), tin, streamer._marshallers, streamer._fields));
+        return read;
+    }
+}
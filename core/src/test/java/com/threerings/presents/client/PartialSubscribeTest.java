@@ -0,0 +1,139 @@
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2025 Three Rings Design, Inc., All Rights Reserved
+// https://github.com/threerings/narya/blob/master/LICENSE
+
+
+package com.threerings.presents.client;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import com.samskivert.util.BasicRunQueue;
+
+import com.threerings.presents.dobj.DObject;
+import com.threerings.presents.dobj.ObjectAccessException;
+import com.threerings.presents.dobj.Subscriber;
+import com.threerings.presents.net.ObjectResponse;
+import com.threerings.presents.net.PartialSubscribeRequest;
+import com.threerings.presents.net.SubscribeRequest;
+import com.threerings.presents.net.UnsubscribeRequest;
+import com.threerings.presents.net.UpstreamMessage;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the resolution of partial subscriptions by the client object manager.
+ */
+public class PartialSubscribeTest
+{
+    @Test public void testWideningFails ()
+    {
+        ClientDObjectMgr omgr = createManager();
+        Recorder foo = new Recorder(), all = new Recorder();
+        subscribe(omgr, foo, "foo");
+        subscribe(omgr, all);
+        assertTrue(_sent.get(0) instanceof PartialSubscribeRequest);
+        assertFalse(_sent.get(1) instanceof PartialSubscribeRequest);
+
+        // the narrow request succeeds, but we wait to hear about the wide one
+        omgr.registerObjectAndNotify(new ObjectResponse<DObject>(createObject()));
+        assertEquals(0, foo.available + foo.failed);
+
+        // when it fails, those who wanted only what we have get it, and the rest don't
+        omgr.notifyFailure(OID, "nope");
+        assertEquals(1, foo.available);
+        assertEquals(1, all.failed);
+        assertTrue(omgr._penders.isEmpty());
+        assertNotNull(omgr._ocache.get(OID));
+
+        // a stray response for an object no one wants is unsubscribed
+        omgr.registerObjectAndNotify(new ObjectResponse<DObject>(createObject(OID + 1)));
+        assertNull(omgr._ocache.get(OID + 1));
+        UpstreamMessage last = _sent.get(_sent.size() - 1);
+        assertTrue(last instanceof UnsubscribeRequest);
+        assertEquals(OID + 1, ((UnsubscribeRequest)last).getOid());
+    }
+
+    @Test public void testNarrowFails ()
+    {
+        ClientDObjectMgr omgr = createManager();
+        Recorder foo = new Recorder(), all = new Recorder();
+        subscribe(omgr, foo, "foo");
+        subscribe(omgr, all);
+
+        // if the narrow request fails, we wait to hear about the wide one
+        omgr.notifyFailure(OID, "nope");
+        assertEquals(0, foo.failed + all.failed);
+        omgr.registerObjectAndNotify(new ObjectResponse<DObject>(createObject()));
+        assertEquals(1, foo.available);
+        assertEquals(1, all.available);
+        assertTrue(omgr._penders.isEmpty());
+        assertFalse(omgr._interests.containsKey(OID));
+    }
+
+    @Test public void testAllFail ()
+    {
+        ClientDObjectMgr omgr = createManager();
+        Recorder foo = new Recorder(), all = new Recorder();
+        subscribe(omgr, foo, "foo");
+        subscribe(omgr, all);
+        omgr.notifyFailure(OID, "nope");
+        omgr.notifyFailure(OID, "nope");
+        assertEquals(1, foo.failed);
+        assertEquals(1, all.failed);
+        assertTrue(omgr._penders.isEmpty());
+        assertTrue(omgr._ocache.isEmpty());
+    }
+
+    protected ClientDObjectMgr createManager ()
+    {
+        Client client = new Client(null, new BasicRunQueue());
+        Communicator comm = new BlockingCommunicator(client) {
+            @Override public void postMessage (UpstreamMessage msg) {
+                _sent.add(msg);
+            }
+        };
+        return new ClientDObjectMgr(comm, client);
+    }
+
+    protected static void subscribe (ClientDObjectMgr omgr, Recorder target, String... attrs)
+    {
+        Set<String> interest = (attrs.length == 0) ? null : Sets.newHashSet(attrs);
+        omgr.doSubscribe(new ClientDObjectMgr.ObjectAction<DObject>(OID, target, true, interest));
+    }
+
+    protected static DObject createObject ()
+    {
+        return createObject(OID);
+    }
+
+    protected static DObject createObject (int oid)
+    {
+        DObject obj = new DObject();
+        obj.setOid(oid);
+        return obj;
+    }
+
+    protected static class Recorder implements Subscriber<DObject>
+    {
+        public int available, failed;
+
+        public void objectAvailable (DObject object) {
+            available++;
+        }
+
+        public void requestFailed (int oid, ObjectAccessException cause) {
+            failed++;
+        }
+    }
+
+    protected List<UpstreamMessage> _sent = Lists.newArrayList();
+
+    protected static final int OID = 5;
+}
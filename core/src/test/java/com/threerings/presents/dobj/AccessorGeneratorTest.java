@@ -0,0 +1,96 @@
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2025 Three Rings Design, Inc., All Rights Reserved
+// https://github.com/threerings/narya/blob/master/LICENSE
+
+package com.threerings.presents.dobj;
+
+import org.junit.Test;
+
+import com.threerings.util.Name;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that generated accessors read and write attributes as reflection would.
+ */
+public class AccessorGeneratorTest
+{
+    public static class TestObject extends DObject
+    {
+        public boolean bool;
+        public byte b;
+        public char c;
+        public short s;
+        public int i;
+        public long l;
+        public float f;
+        public double d;
+        public String string;
+        public int[] ints;
+        public Name[] names;
+        public Object object;
+        public Number number;
+        public OidList oids = new OidList();
+        public DSet<DSet.Entry> set = DSet.newDSet();
+        public final int fixed = 3;
+        protected int hidden;
+    }
+
+    @Test public void testGenerated ()
+    {
+        TestObject obj = new TestObject();
+        for (Accessor acc : obj._accessors) {
+            assertEquals(acc.name, !acc.name.equals("fixed"), acc instanceof Accessor.Generated);
+        }
+    }
+
+    @Test public void testGetSet ()
+    {
+        TestObject obj = new TestObject();
+        Object[] values = {
+            "bool", true, "b", (byte)1, "c", 'c', "s", (short)2, "i", 3, "l", 4L, "f", 5f,
+            "d", 6d, "string", "seven", "ints", new int[] { 8 }, "names", new Name[0],
+            "object", 9, "number", 10L, "oids", new OidList(), "set", DSet.newDSet(),
+        };
+        for (int ii = 0; ii < values.length; ii += 2) {
+            String name = (String)values[ii];
+            obj.setAttribute(name, values[ii+1]);
+            assertSame(name, values[ii+1].getClass(), obj.getAttribute(name).getClass());
+            assertEquals(name, values[ii+1], obj.getAttribute(name));
+            int index = obj.getAttributeIndex(name);
+            assertEquals(name, values[ii+1], obj.getAttribute(index));
+        }
+        assertEquals(3, obj.i);
+        assertEquals("seven", obj.string);
+        assertEquals(3, obj.getAttribute("fixed"));
+    }
+
+    @Test public void testWidening ()
+    {
+        // reflection widens primitives, which our generated code does not, so must fall back
+        TestObject obj = new TestObject();
+        obj.setAttribute("l", 11);
+        assertEquals(11L, obj.l);
+        obj.setAttribute("d", 12f);
+        assertEquals(12d, obj.d, 0);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testWrongType ()
+    {
+        new TestObject().setAttribute("string", 13);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testNullPrimitive ()
+    {
+        new TestObject().setAttribute("i", null);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testNoSuchField ()
+    {
+        new TestObject().getAttribute("hidden");
+    }
+}
@@ -0,0 +1,221 @@
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2025 Three Rings Design, Inc., All Rights Reserved
+// https://github.com/threerings/narya/blob/master/LICENSE
+
+package com.threerings.presents.dobj;
+
+import java.util.List;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+import com.threerings.io.ObjectInputStream;
+import com.threerings.io.ObjectOutputStream;
+import com.threerings.io.SimpleStreamableObject;
+
+import com.threerings.presents.dobj.IndexedDSetTest.TestEntry;
+import com.threerings.presents.net.Transport;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link EntryPatchedEvent} class.
+ */
+public class EntryPatchedEventTest
+{
+    public static class PatchEntry extends SimpleStreamableObject
+        implements DSet.DeltaEntry
+    {
+        public int key;
+        public String name;
+        public byte status;
+        public int[] scores;
+
+        public PatchEntry ()
+        {
+        }
+
+        public PatchEntry (int key, String name, byte status, int[] scores)
+        {
+            this.key = key;
+            this.name = name;
+            this.status = status;
+            this.scores = scores;
+        }
+
+        public Comparable<?> getKey ()
+        {
+            return key;
+        }
+    }
+
+    public static class CustomEntry extends PatchEntry
+    {
+        public void writeObject (ObjectOutputStream out)
+            throws IOException
+        {
+            out.defaultWriteObject();
+        }
+    }
+
+    public static class TestObject extends DObject
+    {
+        public DSet<PatchEntry> entries = DSet.newDSet();
+    }
+
+    @Test public void testCanPatch ()
+    {
+        PatchEntry entry = new PatchEntry(1, "one", (byte)0, null);
+        assertTrue(EntryPatchedEvent.canPatch(entry, new PatchEntry(1, "one", (byte)1, null)));
+        assertFalse(EntryPatchedEvent.canPatch(entry, entry));
+        assertFalse(EntryPatchedEvent.canPatch(null, entry));
+        assertFalse(EntryPatchedEvent.canPatch(new TestEntry(1, "a"), new TestEntry(1, "b")));
+        assertFalse(EntryPatchedEvent.canPatch(new CustomEntry(), new CustomEntry()));
+        assertFalse(EntryPatchedEvent.canPatch(new CustomEntry(), entry));
+    }
+
+    @Test public void testPatch ()
+        throws Exception
+    {
+        int[] scores = { 1, 2, 3 };
+        PatchEntry oldEntry = new PatchEntry(5, "a rather long name", (byte)0, scores);
+        PatchEntry entry = new PatchEntry(5, "a rather long name", (byte)2, scores);
+
+        // only the changed field is streamed
+        EntryUpdatedEvent<PatchEntry> full =
+            new EntryUpdatedEvent<PatchEntry>(1, "entries", entry).setOldEntry(oldEntry);
+        EntryUpdatedEvent<PatchEntry> patch =
+            new EntryPatchedEvent<PatchEntry>(1, "entries", entry).setOldEntry(oldEntry);
+        int psize = repeatedSize(patch), fsize = repeatedSize(full);
+        assertTrue(psize + " >= " + fsize, psize < fsize);
+        byte[] data = write(patch);
+
+        // the receiver patches a copy of its own entry
+        TestObject obj = new TestObject();
+        PatchEntry base = new PatchEntry(5, "a rather long name", (byte)0, new int[] { 1, 2, 3 });
+        obj.entries.add(base);
+        obj.entries.add(new PatchEntry(6, "other", (byte)0, null));
+        @SuppressWarnings("unchecked") EntryPatchedEvent<PatchEntry> read =
+            (EntryPatchedEvent<PatchEntry>)read(data);
+        assertEquals(5, read.getKey());
+        assertTrue(read.applyToObject(obj));
+
+        PatchEntry patched = obj.entries.get(5);
+        assertSame(patched, read.getEntry());
+        assertSame(base, read.getOldEntry());
+        assertEquals(5, patched.key);
+        assertEquals("a rather long name", patched.name);
+        assertEquals(2, patched.status);
+        assertSame(base.scores, patched.scores);
+        assertEquals(0, base.status);
+
+        // a patch for an entry the receiver doesn't have fails
+        TestObject empty = new TestObject();
+        assertFalse(read(data).applyToObject(empty));
+    }
+
+    @Test public void testChangedFields ()
+        throws Exception
+    {
+        PatchEntry oldEntry = new PatchEntry(3, "old", (byte)1, new int[] { 1 });
+        PatchEntry entry = new PatchEntry(3, null, (byte)1, new int[] { 2 });
+        TestObject obj = new TestObject();
+        obj.entries.add(new PatchEntry(3, "old", (byte)1, new int[] { 1 }));
+        EntryUpdatedEvent<?> read = read(write(
+            new EntryPatchedEvent<PatchEntry>(1, "entries", entry).setOldEntry(oldEntry)));
+        assertTrue(read.applyToObject(obj));
+
+        PatchEntry patched = obj.entries.get(3);
+        assertNull(patched.name);
+        assertEquals(1, patched.status);
+        assertEquals(1, patched.scores.length);
+        assertEquals(2, patched.scores[0]);
+    }
+
+    @Test public void testWithoutOldEntry ()
+        throws Exception
+    {
+        // an event that doesn't know the entry it replaced sends its entry in full
+        PatchEntry entry = new PatchEntry(7, "seven", (byte)1, null);
+        TestObject obj = new TestObject();
+        obj.entries.add(new PatchEntry(7, "old", (byte)0, null));
+        EntryUpdatedEvent<?> read =
+            read(write(new EntryPatchedEvent<PatchEntry>(1, "entries", entry)));
+        assertTrue(read.applyToObject(obj));
+        assertEquals("seven", obj.entries.get(7).name);
+        assertEquals(1, obj.entries.get(7).status);
+    }
+
+    @Test public void testUnreliable ()
+        throws Exception
+    {
+        // patches that might be lost are sent in full
+        PatchEntry oldEntry = new PatchEntry(8, "eight", (byte)0, null);
+        PatchEntry entry = new PatchEntry(8, "eight", (byte)1, null);
+        TestObject obj = new TestObject();
+        obj.entries.add(new PatchEntry(8, "other", (byte)0, null));
+        EntryUpdatedEvent<?> read = read(write(
+            new EntryPatchedEvent<PatchEntry>(1, "entries", entry).setOldEntry(oldEntry)
+                .setTransport(Transport.UNRELIABLE_UNORDERED)));
+        assertTrue(read.applyToObject(obj));
+        assertEquals("eight", obj.entries.get(8).name);
+        assertEquals(1, obj.entries.get(8).status);
+
+        // and objects don't create them for unreliable updates
+        final List<DEvent> posted = Lists.newArrayList();
+        TestObject pobj = new TestObject() {
+            @Override public void postEvent (DEvent event) {
+                posted.add(event);
+            }
+            @Override protected boolean isAuthoritative () {
+                return true;
+            }
+        };
+        pobj.entries.add(oldEntry);
+        pobj.requestEntryUpdate("entries", pobj.entries, entry, Transport.UNRELIABLE_UNORDERED);
+        pobj.requestEntryUpdate("entries", pobj.entries, new PatchEntry(8, "eight", (byte)2, null),
+                                Transport.DEFAULT);
+        assertFalse(posted.get(0) instanceof EntryPatchedEvent<?>);
+        assertTrue(posted.get(1) instanceof EntryPatchedEvent<?>);
+    }
+
+    protected static byte[] write (DEvent event)
+        throws IOException
+    {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        ObjectOutputStream oout = new ObjectOutputStream(bout);
+        oout.writeObject(event);
+        oout.flush();
+        return bout.toByteArray();
+    }
+
+    /**
+     * Returns the size of the supplied event when written to a stream that has already written
+     * it once, and so has established all of the class and intern mappings that it needs.
+     */
+    protected static int repeatedSize (DEvent event)
+        throws IOException
+    {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        ObjectOutputStream oout = new ObjectOutputStream(bout);
+        oout.writeObject(event);
+        oout.flush();
+        int size = bout.size();
+        oout.writeObject(event);
+        oout.flush();
+        return bout.size() - size;
+    }
+
+    protected static EntryUpdatedEvent<?> read (byte[] data)
+        throws Exception
+    {
+        ObjectInputStream oin = new ObjectInputStream(new ByteArrayInputStream(data));
+        return (EntryUpdatedEvent<?>)oin.readObject();
+    }
+}
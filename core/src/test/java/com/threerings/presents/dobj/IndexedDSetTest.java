@@ -0,0 +1,109 @@
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2025 Three Rings Design, Inc., All Rights Reserved
+// https://github.com/threerings/narya/blob/master/LICENSE
+
+package com.threerings.presents.dobj;
+
+import java.util.List;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+import com.threerings.io.ObjectInputStream;
+import com.threerings.io.ObjectOutputStream;
+import com.threerings.io.SimpleStreamableObject;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link IndexedDSet} class.
+ */
+public class IndexedDSetTest
+{
+    public static class TestEntry extends SimpleStreamableObject
+        implements DSet.Entry
+    {
+        public int key;
+        public String value;
+
+        public TestEntry ()
+        {
+        }
+
+        public TestEntry (int key, String value)
+        {
+            this.key = key;
+            this.value = value;
+        }
+
+        public Comparable<?> getKey ()
+        {
+            return key;
+        }
+    }
+
+    @Test public void testIndex ()
+    {
+        IndexedDSet<TestEntry> set = new IndexedDSet<TestEntry>(Lists.newArrayList(
+            new TestEntry(15, "a"), new TestEntry(7, "b"), new TestEntry(3, "c")));
+        assertEquals("b", set.get(7).value);
+        assertTrue(set.containsKey(3));
+        assertFalse(set.containsKey(4));
+
+        assertFalse(set.add(new TestEntry(15, "d")));
+        assertTrue(set.add(new TestEntry(9, "e")));
+        assertEquals("e", set.get(9).value);
+        assertEquals("a", set.removeKey(15).value);
+        assertNull(set.get(15));
+        assertNull(set.removeKey(15));
+
+        assertEquals("b", set.update(new TestEntry(7, "f")).value);
+        assertEquals("f", set.get(7).value);
+        assertNull(set.update(new TestEntry(8, "g")));
+        assertNull(set.get(8));
+        assertEquals(Lists.newArrayList(3, 7, 9), keys(set));
+
+        // clones have their own index
+        IndexedDSet<TestEntry> copy = set.clone();
+        copy.removeKey(3);
+        assertNull(copy.get(3));
+        assertEquals("c", set.get(3).value);
+    }
+
+    @Test public void testStreaming ()
+        throws Exception
+    {
+        IndexedDSet<TestEntry> set = IndexedDSet.newIndexedDSet();
+        for (int ii = 20; ii > 0; ii--) {
+            set.add(new TestEntry(ii, "v" + ii));
+        }
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        ObjectOutputStream oout = new ObjectOutputStream(bout);
+        oout.writeObject(set);
+        oout.flush();
+        ObjectInputStream oin = new ObjectInputStream(
+            new ByteArrayInputStream(bout.toByteArray()));
+        @SuppressWarnings("unchecked") IndexedDSet<TestEntry> read =
+            (IndexedDSet<TestEntry>)oin.readObject();
+
+        assertEquals(keys(set), keys(read));
+        for (int ii = 1; ii <= 20; ii++) {
+            assertEquals("v" + ii, read.get(ii).value);
+        }
+    }
+
+    protected static List<Comparable<?>> keys (DSet<TestEntry> set)
+    {
+        List<Comparable<?>> keys = Lists.newArrayList();
+        for (TestEntry entry : set) {
+            keys.add(entry.getKey());
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,113 @@
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2025 Three Rings Design, Inc., All Rights Reserved
+// https://github.com/threerings/narya/blob/master/LICENSE
+
+package com.threerings.presents.dobj;
+
+import java.util.List;
+import java.util.Random;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+import com.threerings.io.ObjectInputStream;
+import com.threerings.io.ObjectOutputStream;
+
+import com.threerings.presents.dobj.IndexedDSetTest.TestEntry;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link PersistentDSet} class.
+ */
+public class PersistentDSetTest
+{
+    @Test public void testOperations ()
+    {
+        // make a bunch of random modifications to a persistent set and a regular set, and make
+        // sure that they agree, and that clones aren't affected by later modifications
+        Random rando = new Random(42);
+        PersistentDSet<TestEntry> pset = PersistentDSet.newPersistentDSet();
+        DSet<TestEntry> set = DSet.newDSet();
+        List<PersistentDSet<TestEntry>> clones = Lists.newArrayList();
+        List<List<String>> expected = Lists.newArrayList();
+        for (int ii = 0; ii < 20000; ii++) {
+            int key = rando.nextInt(1000);
+            switch (rando.nextInt(3)) {
+            case 0:
+                if (!set.containsKey(key)) {
+                    assertTrue(set.add(new TestEntry(key, "a" + ii)));
+                    assertTrue(pset.add(new TestEntry(key, "a" + ii)));
+                }
+                break;
+            case 1:
+                assertEquals(str(set.removeKey(key)), str(pset.removeKey(key)));
+                break;
+            default:
+                assertEquals(str(set.update(new TestEntry(key, "u" + ii))),
+                             str(pset.update(new TestEntry(key, "u" + ii))));
+                break;
+            }
+            assertEquals(set.size(), pset.size());
+            assertEquals(str(set.get(key)), str(pset.get(key)));
+            if (ii % 1000 == 0) {
+                assertEquals(contents(set), contents(pset));
+                clones.add(pset.clone());
+                expected.add(contents(pset));
+            }
+        }
+        assertEquals(contents(set), contents(pset));
+        for (int ii = 0; ii < clones.size(); ii++) {
+            assertEquals(expected.get(ii), contents(clones.get(ii)));
+        }
+
+        // emptying the set leaves nothing behind
+        for (TestEntry entry : set.toArrayList()) {
+            assertEquals(str(entry), str(pset.removeKey(entry.getKey())));
+        }
+        assertTrue(pset.isEmpty());
+        assertFalse(pset.iterator().hasNext());
+        assertNull(pset.get(1));
+    }
+
+    @Test public void testStreaming ()
+        throws Exception
+    {
+        PersistentDSet<TestEntry> set = PersistentDSet.newPersistentDSet();
+        for (int ii = 1000; ii > 0; ii--) {
+            set.add(new TestEntry(ii, "v" + ii));
+        }
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        ObjectOutputStream oout = new ObjectOutputStream(bout);
+        oout.writeObject(set);
+        oout.flush();
+        ObjectInputStream oin = new ObjectInputStream(
+            new ByteArrayInputStream(bout.toByteArray()));
+        @SuppressWarnings("unchecked") PersistentDSet<TestEntry> read =
+            (PersistentDSet<TestEntry>)oin.readObject();
+
+        assertEquals(contents(set), contents(read));
+        assertTrue(read.add(new TestEntry(1001, "v1001")));
+        assertEquals("v500", read.get(500).value);
+    }
+
+    protected static String str (TestEntry entry)
+    {
+        return (entry == null) ? null : (entry.key + "=" + entry.value);
+    }
+
+    protected static List<String> contents (DSet<TestEntry> set)
+    {
+        List<String> contents = Lists.newArrayList();
+        for (TestEntry entry : set) {
+            contents.add(str(entry));
+        }
+        return contents;
+    }
+}
@@ -0,0 +1,222 @@
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2025 Three Rings Design, Inc., All Rights Reserved
+// https://github.com/threerings/narya/blob/master/LICENSE
+
+package com.threerings.presents.peer.server;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+
+import com.samskivert.util.Lifecycle;
+
+import com.threerings.presents.dobj.MessageEvent;
+import com.threerings.presents.dobj.MessageListener;
+import com.threerings.presents.peer.data.NodeObject;
+import com.threerings.presents.peer.data.PeerMarshaller;
+import com.threerings.presents.server.PresentsDObjectMgr;
+import com.threerings.presents.server.PresentsTestBase;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that node actions are multicast to our peers in batches via our node object.
+ */
+public class ActionMulticastTest extends PresentsTestBase
+{
+    public static class TestAction extends PeerManager.NodeAction
+    {
+        public static List<String> executed = Lists.newArrayList();
+
+        public String value;
+
+        public TestAction () {
+        }
+
+        public TestAction (String value) {
+            this.value = value;
+        }
+
+        public boolean isApplicable (NodeObject nodeobj) {
+            return !nodeobj.nodeName.equals("three");
+        }
+
+        @Override protected void execute () {
+            executed.add(value);
+        }
+    }
+
+    public static class RemoteAction extends PeerManager.NodeAction
+    {
+        public String nodeName;
+
+        public RemoteAction () {
+        }
+
+        public RemoteAction (String nodeName) {
+            this.nodeName = nodeName;
+        }
+
+        public boolean isApplicable (NodeObject nodeobj) {
+            return (nodeName == null) ? !nodeobj.nodeName.equals("self") :
+                nodeobj.nodeName.equals(nodeName);
+        }
+
+        @Override protected void execute () {
+            // nada
+        }
+    }
+
+    @Test public void testMulticast ()
+    {
+        final PresentsDObjectMgr omgr = getInstance(PresentsDObjectMgr.class);
+        final TestPeerManager peermgr = new TestPeerManager(new Lifecycle());
+        peermgr._omgr = omgr;
+        peermgr._injector = _injector;
+        peermgr._nodeName = "self";
+        peermgr._nodeobj = omgr.registerObject(new NodeObject());
+        peermgr._nodeobj.nodeName = "self";
+        peermgr._multicastActions = true;
+        peermgr._actionBatchMillis = 50;
+        for (String nodeName : new String[] { "one", "two", "three" }) {
+            peermgr.addTestPeer(nodeName);
+            peermgr.peerSubscribedToNode(nodeName);
+        }
+
+        final List<MessageEvent> events = Lists.newArrayList();
+        peermgr._nodeobj.addListener(new MessageListener() {
+            public void messageReceived (MessageEvent event) {
+                events.add(event);
+            }
+        });
+
+        TestAction.executed.clear();
+        omgr.postRunnable(new Runnable() {
+            public void run () {
+                peermgr.invokeNodeAction(new TestAction("a"));
+                peermgr.invokeNodeAction(new TestAction("b"));
+            }
+        });
+        omgr.newInterval(new Runnable() {
+            public void run () {
+                omgr.harshShutdown();
+            }
+        }).schedule(250);
+        omgr.run();
+
+        // both actions were invoked locally and went out in one batch to the applicable peers
+        assertEquals(Lists.newArrayList("a", "b"), TestAction.executed);
+        assertEquals(2, events.size());
+        for (MessageEvent event : events) {
+            assertEquals(NodeObject.NODE_ACTION, event.getName());
+            assertEquals(ImmutableSet.of("one", "two"),
+                         ImmutableSet.copyOf((String[])event.getArgs()[0]));
+        }
+        PeerManager.Stats stats = peermgr.getStats();
+        assertEquals(2, stats.nodeActionsMulticast);
+        assertEquals(1, stats.nodeActionBatches);
+
+        // a peer receiving the multicast only invokes actions that name it
+        TestAction.executed.clear();
+        byte[] actionBytes = (byte[])events.get(0).getArgs()[1];
+        peermgr.peerMulticastAction("one", new String[] { "two" }, actionBytes);
+        assertTrue(TestAction.executed.isEmpty());
+        peermgr.peerMulticastAction("one", new String[] { "self" }, actionBytes);
+        assertEquals(Lists.newArrayList("a"), TestAction.executed);
+    }
+
+    @Test public void testDroppedBeforeFlush ()
+    {
+        final PresentsDObjectMgr omgr = getInstance(PresentsDObjectMgr.class);
+        final TestPeerManager peermgr = new TestPeerManager(new Lifecycle());
+        peermgr._omgr = omgr;
+        peermgr._nodeName = "self";
+        peermgr._nodeobj = omgr.registerObject(new NodeObject());
+        peermgr._nodeobj.nodeName = "self";
+        peermgr._multicastActions = true;
+        peermgr._actionBatchMillis = 50;
+        final List<String> invoked = Lists.newArrayList();
+        for (final String nodeName : new String[] { "one", "two" }) {
+            peermgr.addTestPeer(nodeName).nodeobj.peerService = new PeerMarshaller() {
+                @Override public void invokeAction (byte[] actionBytes) {
+                    invoked.add(nodeName);
+                }
+            };
+            peermgr.peerSubscribedToNode(nodeName);
+        }
+
+        final List<String> dropped = Lists.newArrayList();
+        omgr.postRunnable(new Runnable() {
+            public void run () {
+                // an action for a single peer is sent to it directly, rather than to everyone
+                peermgr.invokeNodeAction(new RemoteAction("one"), null);
+                assertEquals(Lists.newArrayList("one"), invoked);
+                assertTrue(peermgr._pendingActions.isEmpty());
+
+                // one for several is batched, and reported dropped if they all go away before
+                // the batch is sent
+                peermgr.invokeNodeAction(new RemoteAction(), new Runnable() {
+                    public void run () {
+                        dropped.add("remote");
+                    }
+                });
+                assertEquals(1, peermgr._pendingActions.size());
+                assertTrue(dropped.isEmpty());
+                for (String nodeName : new String[] { "one", "two" }) {
+                    peermgr.peerUnsubscribedFromNode(nodeName);
+                    peermgr._peers.get(nodeName).nodeobj = null;
+                }
+                peermgr.flushActions();
+                omgr.harshShutdown();
+            }
+        });
+        omgr.run();
+
+        assertEquals(Lists.newArrayList("remote"), dropped);
+        assertEquals(Lists.newArrayList("one"), invoked);
+        assertEquals(1, peermgr.getStats().nodeActionsMulticast);
+    }
+
+    @Test public void testUnsubscribedBeforeFlush ()
+    {
+        PresentsDObjectMgr omgr = getInstance(PresentsDObjectMgr.class);
+        TestPeerManager peermgr = new TestPeerManager(new Lifecycle());
+        peermgr._omgr = omgr;
+        peermgr._nodeName = "self";
+        peermgr._nodeobj = omgr.registerObject(new NodeObject());
+        peermgr._multicastActions = true;
+        peermgr._actionBatchMillis = 50;
+        final List<String> invoked = Lists.newArrayList();
+        for (final String nodeName : new String[] { "one", "two" }) {
+            peermgr.addTestPeer(nodeName).nodeobj.peerService = new PeerMarshaller() {
+                @Override public void invokeAction (byte[] actionBytes) {
+                    invoked.add(nodeName);
+                }
+            };
+            peermgr.peerSubscribedToNode(nodeName);
+        }
+
+        final List<String> dropped = Lists.newArrayList();
+        for (final String nodeName : new String[] { "one", "two" }) {
+            peermgr.multicastAction(new String[] { nodeName }, new byte[0], new Runnable() {
+                public void run () {
+                    dropped.add(nodeName);
+                }
+            });
+        }
+
+        // peers that unsubscribe before the batch goes out are sent their actions directly if
+        // they're still connected, and the actions are dropped if not
+        peermgr.peerUnsubscribedFromNode("one");
+        peermgr.peerUnsubscribedFromNode("two");
+        peermgr._peers.get("two").nodeobj = null;
+        peermgr.flushActions();
+        assertEquals(Lists.newArrayList("one"), invoked);
+        assertEquals(Lists.newArrayList("two"), dropped);
+        assertTrue(peermgr._pendingActions.isEmpty());
+    }
+}
@@ -0,0 +1,90 @@
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2025 Three Rings Design, Inc., All Rights Reserved
+// https://github.com/threerings/narya/blob/master/LICENSE
+
+package com.threerings.presents.peer.server;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+import com.samskivert.util.Lifecycle;
+
+import com.threerings.util.Name;
+
+import com.threerings.presents.dobj.DEvent;
+import com.threerings.presents.dobj.EntryAddedEvent;
+import com.threerings.presents.dobj.EventListener;
+import com.threerings.presents.peer.data.ClientInfo;
+import com.threerings.presents.peer.data.NodeObject;
+import com.threerings.presents.server.PresentsDObjectMgr;
+import com.threerings.presents.server.PresentsTestBase;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that the peer manager publishes only the net effect of a batch of client changes.
+ */
+public class ClientBatchTest extends PresentsTestBase
+{
+    @Test public void testBatch ()
+    {
+        final PresentsDObjectMgr omgr = getInstance(PresentsDObjectMgr.class);
+        final PeerManager peermgr = new TestPeerManager(new Lifecycle());
+        peermgr._omgr = omgr;
+        peermgr._nodeobj = omgr.registerObject(new NodeObject());
+        peermgr._clientBatchMillis = 50;
+
+        final List<DEvent> events = Lists.newArrayList();
+        peermgr._nodeobj.addListener(new EventListener() {
+            public void eventReceived (DEvent event) {
+                events.add(event);
+            }
+        });
+
+        final ClientInfo bob = newClient("bob"), jim = newClient("jim");
+        final List<Object> pending = Lists.newArrayList();
+        omgr.postRunnable(new Runnable() {
+            public void run () {
+                peermgr.publishClientInfo(bob);
+                peermgr.publishClientInfo(jim);
+                pending.add(peermgr.isClientPublished(bob.getKey()));
+                pending.add(peermgr.findClientInfo(jim.username));
+                peermgr.retractClientInfo(bob.getKey());
+                pending.add(peermgr.isClientPublished(bob.getKey()));
+                pending.add(peermgr._nodeobj.clients.size());
+            }
+        });
+        omgr.newInterval(new Runnable() {
+            public void run () {
+                omgr.harshShutdown();
+            }
+        }).schedule(250);
+        omgr.run();
+
+        // while the batch was pending, it was reflected in our lookups but not our node object
+        assertEquals(Lists.<Object>newArrayList(true, jim, false, 0), pending);
+
+        // bob came and went within the batch, so only jim is published
+        assertEquals(1, events.size());
+        assertTrue(events.get(0) instanceof EntryAddedEvent);
+        assertEquals(jim.getKey(), ((EntryAddedEvent<?>)events.get(0)).getEntry().getKey());
+        assertSame(jim, peermgr._nodeobj.clients.get(jim.getKey()));
+        assertFalse(peermgr._nodeobj.clients.containsKey(bob.getKey()));
+
+        PeerManager.Stats stats = peermgr.getStats();
+        assertEquals(3, stats.clientChangesQueued);
+        assertEquals(1, stats.clientChangesPublished);
+        assertEquals(1, stats.clientBatches);
+    }
+
+    protected ClientInfo newClient (String username)
+    {
+        ClientInfo clinfo = new ClientInfo();
+        clinfo.username = new Name(username);
+        return clinfo;
+    }
+}
@@ -0,0 +1,70 @@
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2025 Three Rings Design, Inc., All Rights Reserved
+// https://github.com/threerings/narya/blob/master/LICENSE
+
+package com.threerings.presents.peer.server;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import com.samskivert.util.Lifecycle;
+
+import com.threerings.util.Name;
+
+import com.threerings.presents.dobj.DSet;
+import com.threerings.presents.peer.data.ClientInfo;
+import com.threerings.presents.peer.data.NodeObject;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the peer manager's index of the clients published by all nodes.
+ */
+public class ClientIndexTest
+{
+    @Test public void testIndex ()
+    {
+        TestPeerManager peermgr = new TestPeerManager(new Lifecycle());
+        NodeObject one = peermgr.addTestPeer("one").nodeobj;
+        NodeObject two = peermgr.addTestPeer("two").nodeobj;
+
+        Name bob = new Name("bob");
+        ClientInfo bobOne = publish(one, bob);
+        peermgr.indexClient(bobOne);
+        assertSame(bobOne, peermgr.locateClient(bob));
+        assertNull(peermgr.locateClient(new Name("jim")));
+
+        // bob moves to node two, which publishes him before node one retracts him
+        ClientInfo bobTwo = publish(two, bob);
+        peermgr.indexClient(bobTwo);
+        assertSame(bobTwo, peermgr.locateClient(bob));
+        one.clients = DSet.newDSet();
+        peermgr.unindexClient(one, bobOne);
+        assertSame(bobTwo, peermgr.locateClient(bob));
+
+        // if node two retracts him while node one still publishes him, we fall back to node one
+        peermgr.indexClient(bobOne = publish(one, bob));
+        peermgr.indexClient(bobTwo);
+        two.clients = DSet.newDSet();
+        peermgr.unindexClient(two, bobTwo);
+        assertSame(bobOne, peermgr.locateClient(bob));
+
+        // retracting a record that is not the indexed one changes nothing
+        peermgr.unindexClient(two, bobTwo);
+        assertSame(bobOne, peermgr.locateClient(bob));
+
+        one.clients = DSet.newDSet();
+        peermgr.unindexClient(one, bobOne);
+        assertNull(peermgr.locateClient(bob));
+    }
+
+    protected ClientInfo publish (NodeObject nodeobj, Name username)
+    {
+        ClientInfo clinfo = new ClientInfo();
+        clinfo.username = username;
+        nodeobj.clients = DSet.newDSet(ImmutableList.of(clinfo));
+        return clinfo;
+    }
+}
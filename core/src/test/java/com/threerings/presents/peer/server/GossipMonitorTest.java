@@ -0,0 +1,158 @@
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2025 Three Rings Design, Inc., All Rights Reserved
+// https://github.com/threerings/narya/blob/master/LICENSE
+
+package com.threerings.presents.peer.server;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+
+import com.samskivert.util.Lifecycle;
+
+import com.threerings.presents.dobj.DObject;
+import com.threerings.presents.dobj.MessageEvent;
+import com.threerings.presents.net.EventNotification;
+import com.threerings.presents.net.Message;
+import com.threerings.presents.peer.data.NodeObject;
+import com.threerings.presents.server.PresentsDObjectMgr;
+import com.threerings.presents.server.PresentsTestBase;
+import com.threerings.presents.server.net.PresentsConnection;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the gossip monitor's suspicion and failure of silent peers, and that its heartbeats
+ * are not held back by congestion.
+ */
+public class GossipMonitorTest extends PresentsTestBase
+{
+    @Test public void testFailure ()
+    {
+        final List<String> failed = Lists.newArrayList();
+        TestPeerManager peermgr = new TestPeerManager(new Lifecycle()) {
+            @Override protected void peerFailed (PeerNode peer, long silent) {
+                failed.add(peer.getNodeName());
+            }
+        };
+        peermgr._nodeobj = getInstance(PresentsDObjectMgr.class).registerObject(new NodeObject());
+        for (String nodeName : new String[] { "one", "two", "three" }) {
+            peermgr.addTestPeer(nodeName);
+        }
+
+        GossipMonitor gossip = new GossipMonitor();
+        gossip._peermgr = peermgr;
+        gossip._period = PERIOD;
+        gossip._lastTick = System.currentTimeMillis();
+
+        // the first tick starts everyone's clock
+        gossip.tick();
+        assertTrue(gossip.getSuspects().isEmpty());
+
+        // one and two go silent, but only two is suspected by someone else
+        long now = System.currentTimeMillis();
+        gossip._lastHeard.put("one", now - 5*PERIOD/2);
+        gossip._lastHeard.put("two", now - 5*PERIOD/2);
+        gossip.heartbeatReceived("three", new String[] { "two" });
+        tick(gossip);
+        assertEquals(ImmutableSet.of("one"), gossip.getSuspects());
+        assertEquals(Lists.newArrayList("two"), failed);
+        assertEquals(1, peermgr.getStats().peersSuspected);
+
+        // two is not failed again while we wait for it to disconnect
+        tick(gossip);
+        assertEquals(Lists.newArrayList("two"), failed);
+
+        // one clears its name
+        gossip.heartbeatReceived("one", new String[0]);
+        tick(gossip);
+        assertTrue(gossip.getSuspects().isEmpty());
+
+        // but eventually goes silent for long enough to fail on our say so alone
+        gossip._lastHeard.put("one", System.currentTimeMillis() - 9*PERIOD/2);
+        tick(gossip);
+        assertEquals(Lists.newArrayList("two", "one"), failed);
+
+        // if we ourselves stall, no one is failed
+        gossip._lastHeard.put("three", System.currentTimeMillis() - 10*PERIOD);
+        gossip._lastTick = System.currentTimeMillis() - 10*PERIOD;
+        gossip.tick();
+        assertEquals(Lists.newArrayList("two", "one"), failed);
+        assertTrue(gossip.getSuspects().isEmpty());
+
+        // failed peers are forgotten once they disconnect
+        peermgr._peers.get("two").nodeobj = null;
+        tick(gossip);
+        assertFalse(gossip._failed.contains("two"));
+        assertFalse(gossip._lastHeard.containsKey("two"));
+    }
+
+    @Test public void testCongestion ()
+    {
+        PresentsDObjectMgr omgr = getInstance(PresentsDObjectMgr.class);
+        PeerManager peermgr = new TestPeerManager(new Lifecycle());
+        peermgr._nodeobj = omgr.registerObject(new NodeObject());
+
+        final List<Message> sent = Lists.newArrayList();
+        PresentsConnection conn = new PresentsConnection() {
+            @Override public void postMessage (Message msg) {
+                sent.add(msg);
+            }
+        };
+        TestSession session = new TestSession(peermgr, conn);
+        _injector.injectMembers(session);
+        session.subscribe(peermgr.getNodeObject());
+        sent.clear();
+
+        GossipMonitor gossip = new GossipMonitor();
+        gossip._peermgr = peermgr;
+        gossip._period = PERIOD;
+        gossip._lastTick = System.currentTimeMillis();
+
+        // while the connection to our peer is backed up, changes to our node object are held
+        // back, but our heartbeat is sent right away
+        session.outgoingCongested(conn);
+        peermgr.getNodeObject().setBootStamp(1L);
+        gossip.tick();
+        omgr.harshShutdown();
+        omgr.run();
+        assertEquals(1, sent.size());
+        MessageEvent event = (MessageEvent)((EventNotification)sent.get(0)).getEvent();
+        assertEquals(NodeObject.HEARTBEAT, event.getName());
+    }
+
+    protected void tick (GossipMonitor gossip)
+    {
+        // pretend that our tick happened on time
+        gossip._lastTick = System.currentTimeMillis() - PERIOD;
+        gossip.tick();
+    }
+
+    /** A peer session that is subscribed to objects directly, over the supplied connection. */
+    protected static class TestSession extends PeerSession
+    {
+        public TestSession (PeerManager peermgr, PresentsConnection conn)
+        {
+            super(peermgr);
+            _conn = conn;
+        }
+
+        public void subscribe (DObject object)
+        {
+            ClientProxy proxy = createProxySubscriber();
+            object.addSubscriber(proxy);
+            proxy.objectAvailable(object);
+        }
+
+        @Override protected void subscribedToObject (DObject object)
+        {
+            // we have no peer to tell the peer manager about
+        }
+    }
+
+    protected static final long PERIOD = 1000L;
+}
@@ -0,0 +1,283 @@
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2025 Three Rings Design, Inc., All Rights Reserved
+// https://github.com/threerings/narya/blob/master/LICENSE
+
+package com.threerings.presents.peer.server;
+
+import java.util.List;
+
+import java.io.ByteArrayInputStream;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+import com.samskivert.util.Lifecycle;
+import com.samskivert.util.ResultListener;
+
+import com.threerings.io.ObjectInputStream;
+
+import com.threerings.presents.peer.data.NodeObject;
+import com.threerings.presents.server.InvocationException;
+import com.threerings.presents.server.PresentsDObjectMgr;
+import com.threerings.presents.server.PresentsTestBase;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests lease based locking.
+ */
+public class LeaseLockTest extends PresentsTestBase
+{
+    @Test public void testLocalLease ()
+    {
+        PeerManager peermgr = createPeerManager();
+        NodeObject.Lock lock = new NodeObject.Lock("test", 1);
+
+        // we're the only node, so we arbitrate and acquire without waiting
+        assertEquals("self", acquire(peermgr, lock));
+        assertEquals("self", peermgr.queryLock(lock));
+        assertEquals(1, peermgr.getStats().locksAcquired);
+        assertEquals(1, peermgr.getStats().lockAcquireTimes.size());
+
+        // the lock is reentrant, and held until every acquisition is released
+        assertEquals("self", acquire(peermgr, lock));
+        assertEquals("self", release(peermgr, lock));
+        assertEquals("self", peermgr.queryLock(lock));
+        assertNull(release(peermgr, lock));
+        assertNull(peermgr.queryLock(lock));
+        assertEquals(1, peermgr.getStats().locksReleased);
+    }
+
+    @Test public void testArbitration ()
+        throws Exception
+    {
+        PeerManager peermgr = createPeerManager();
+        NodeObject.Lock lock = new NodeObject.Lock("test", 2);
+
+        assertEquals("one", peermgr.arbitrateLease(lock, "one", PeerManager.LEASE_ACQUIRE));
+        assertEquals("one", peermgr.arbitrateLease(lock, "two", PeerManager.LEASE_ACQUIRE));
+        assertEquals("one", peermgr.arbitrateLease(lock, "two", PeerManager.LEASE_QUERY));
+
+        // only the holder can release the lease
+        peermgr.arbitrateLease(lock, "two", PeerManager.LEASE_RELEASE);
+        assertEquals("one", peermgr.arbitrateLease(lock, "two", PeerManager.LEASE_QUERY));
+        peermgr.arbitrateLease(lock, "one", PeerManager.LEASE_RELEASE);
+        assertNull(peermgr.arbitrateLease(lock, "two", PeerManager.LEASE_QUERY));
+
+        // expired leases are held for a grace period, then up for grabs
+        long margin = peermgr.getLeaseMargin();
+        peermgr.arbitrateLease(lock, "one", PeerManager.LEASE_ACQUIRE);
+        peermgr._leases.put(lock, new PeerManager.Lease("one", System.currentTimeMillis() - 1));
+        assertEquals("one", peermgr.arbitrateLease(lock, "two", PeerManager.LEASE_ACQUIRE));
+        peermgr.purgeLeases();
+        assertFalse(peermgr._leases.isEmpty());
+        peermgr._leases.put(
+            lock, new PeerManager.Lease("one", System.currentTimeMillis() - margin - 1));
+        assertEquals("two", peermgr.arbitrateLease(lock, "two", PeerManager.LEASE_ACQUIRE));
+        peermgr._leases.put(
+            lock, new PeerManager.Lease("two", System.currentTimeMillis() - margin - 1));
+        peermgr.purgeLeases();
+        assertTrue(peermgr._leases.isEmpty());
+    }
+
+    @Test public void testArbiterChange ()
+        throws Exception
+    {
+        TestPeerManager peermgr = createPeerManager();
+        PeerNode peer = peermgr.addTestPeer("one");
+
+        // find a lock that moves to us when its arbiter goes away
+        NodeObject.Lock lock = null;
+        for (int ii = 0; lock == null; ii++) {
+            NodeObject.Lock candidate = new NodeObject.Lock("test", ii);
+            if (peermgr.getLockArbiter(candidate).equals("one")) {
+                lock = candidate;
+            }
+        }
+        peer.nodeobj = null;
+        peermgr.leaseArbitersChanged();
+        assertEquals("self", peermgr.getLockArbiter(lock));
+
+        // we don't know who holds the lock, so we refuse to grant it to anyone for a time
+        try {
+            peermgr.arbitrateLease(lock, "two", PeerManager.LEASE_ACQUIRE);
+            fail("Granted lease after arbiter changed");
+        } catch (InvocationException ie) {
+            assertEquals(PeerManager.LEASE_ARBITER_RECOVERING, ie.getMessage());
+        }
+        final Exception[] failure = { null };
+        peermgr.acquireLock(lock, new ResultListener<String>() {
+            public void requestCompleted (String result) {
+                fail("Acquired lock after arbiter changed");
+            }
+            public void requestFailed (Exception cause) {
+                failure[0] = cause;
+            }
+        });
+        assertNotNull(failure[0]);
+        assertFalse(peermgr._held.containsKey(lock));
+
+        // but its holder can renew its lease, which then excludes everyone else
+        assertEquals("three", peermgr.arbitrateLease(lock, "three", PeerManager.LEASE_RENEW));
+        assertEquals("three", peermgr.arbitrateLease(lock, "two", PeerManager.LEASE_ACQUIRE));
+        assertEquals("three", peermgr.arbitrateLease(lock, "two", PeerManager.LEASE_RENEW));
+
+        // once any lease that we don't know about would have lapsed, we grant locks as usual
+        NodeObject.Lock other = new NodeObject.Lock("test", "other");
+        peermgr._leaseRecoveryEnds = System.currentTimeMillis() - 1;
+        assertEquals("two", peermgr.arbitrateLease(other, "two", PeerManager.LEASE_ACQUIRE));
+    }
+
+    @Test public void testNotArbiter ()
+        throws Exception
+    {
+        TestPeerManager peermgr = createPeerManager();
+        PeerNode peer = peermgr.addTestPeer("one");
+        NodeObject.Lock lock = null;
+        for (int ii = 0; lock == null; ii++) {
+            NodeObject.Lock candidate = new NodeObject.Lock("test", ii);
+            if (peermgr.getLockArbiter(candidate).equals("one")) {
+                lock = candidate;
+            }
+        }
+
+        // we refuse to grant leases on locks that we don't arbitrate
+        try {
+            peermgr.arbitrateLease(lock, "two", PeerManager.LEASE_ACQUIRE);
+            fail("Granted lease on lock arbitrated by another node");
+        } catch (InvocationException ie) {
+            assertEquals(PeerManager.LEASE_NOT_ARBITER, ie.getMessage());
+        }
+        assertTrue(peermgr._leases.isEmpty());
+
+        // but do once they become ours
+        peer.nodeobj = null;
+        peermgr._leaseRecoveryEnds = System.currentTimeMillis() - 1;
+        assertEquals("two", peermgr.arbitrateLease(lock, "two", PeerManager.LEASE_ACQUIRE));
+    }
+
+    @Test public void testRenewalFailure ()
+    {
+        final boolean[] fail = { false };
+        PeerManager peermgr = createPeerManager(new TestPeerManager(new Lifecycle()) {
+            @Override protected void requestLease (
+                NodeObject.Lock lock, int op, ResultListener<String> listener) {
+                if (fail[0]) {
+                    listener.requestFailed(new Exception("unreachable"));
+                } else {
+                    super.requestLease(lock, op, listener);
+                }
+            }
+        });
+        NodeObject.Lock lock = new NodeObject.Lock("test", 4);
+        assertEquals("self", acquire(peermgr, lock));
+
+        // if we can't renew our lease, we can't be sure that we still hold the lock
+        fail[0] = true;
+        peermgr.renewLeases();
+        assertFalse(peermgr._held.containsKey(lock));
+        assertEquals(1, peermgr.getStats().locksHijacked);
+    }
+
+    @Test public void testRequest ()
+        throws Exception
+    {
+        PeerManager peermgr = createPeerManager();
+        NodeObject.Lock lock = new NodeObject.Lock("test", 3);
+        byte[] bytes = peermgr.flattenRequest(
+            new PeerManager.LeaseRequest(lock, "one", PeerManager.LEASE_ACQUIRE));
+        PeerManager.LeaseRequest request = (PeerManager.LeaseRequest)
+            new ObjectInputStream(new ByteArrayInputStream(bytes)).readObject();
+        assertEquals(lock, request._lock);
+        assertEquals("one", request._nodeName);
+        assertEquals(PeerManager.LEASE_ACQUIRE, request._op);
+    }
+
+    @Test public void testArbiter ()
+    {
+        TestPeerManager peermgr = createPeerManager();
+        for (String nodeName : new String[] { "one", "two", "three" }) {
+            peermgr.addTestPeer(nodeName);
+        }
+
+        // locks are spread over all of the nodes, and move only when their arbiter goes away
+        List<String> arbiters = Lists.newArrayList();
+        for (int ii = 0; ii < 100; ii++) {
+            arbiters.add(peermgr.getLockArbiter(new NodeObject.Lock("test", ii)));
+        }
+        for (String nodeName : new String[] { "self", "one", "two", "three" }) {
+            assertTrue(nodeName, arbiters.contains(nodeName));
+        }
+        peermgr._peers.get("two").nodeobj = null;
+        for (int ii = 0; ii < 100; ii++) {
+            String arbiter = peermgr.getLockArbiter(new NodeObject.Lock("test", ii));
+            if (arbiters.get(ii).equals("two")) {
+                assertFalse(arbiter.equals("two"));
+            } else {
+                assertEquals(arbiters.get(ii), arbiter);
+            }
+        }
+    }
+
+    @Test public void testEnumArbiter ()
+    {
+        // enum ids are hashed by name, so every node chooses the same arbiter
+        for (Color color : Color.values()) {
+            assertEquals(PeerManager.hashLock(new NodeObject.Lock("test", color.name()), "one"),
+                         PeerManager.hashLock(new NodeObject.Lock("test", color), "one"));
+        }
+        assertEquals(PeerManager.hashLock(new NodeObject.Lock("test", "5"), "one"),
+                     PeerManager.hashLock(new NodeObject.Lock("test", 5), "one"));
+    }
+
+    protected enum Color { RED, GREEN, BLUE }
+
+    protected TestPeerManager createPeerManager ()
+    {
+        return createPeerManager(new TestPeerManager(new Lifecycle()));
+    }
+
+    protected TestPeerManager createPeerManager (TestPeerManager peermgr)
+    {
+        peermgr._omgr = getInstance(PresentsDObjectMgr.class);
+        peermgr._nodeName = "self";
+        peermgr._lockLeaseMillis = 60*1000L;
+        return peermgr;
+    }
+
+    protected String acquire (PeerManager peermgr, NodeObject.Lock lock)
+    {
+        Result result = new Result();
+        peermgr.acquireLock(lock, result);
+        return result.get();
+    }
+
+    protected String release (PeerManager peermgr, NodeObject.Lock lock)
+    {
+        Result result = new Result();
+        peermgr.releaseLock(lock, result);
+        return result.get();
+    }
+
+    protected static class Result implements ResultListener<String>
+    {
+        public void requestCompleted (String result) {
+            _result = result;
+            _done = true;
+        }
+
+        public void requestFailed (Exception cause) {
+            fail(cause.toString());
+        }
+
+        public String get () {
+            assertTrue(_done);
+            return _result;
+        }
+
+        protected String _result;
+        protected boolean _done;
+    }
+}
@@ -0,0 +1,182 @@
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2025 Three Rings Design, Inc., All Rights Reserved
+// https://github.com/threerings/narya/blob/master/LICENSE
+
+package com.threerings.presents.peer.server;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.junit.Test;
+
+import com.samskivert.util.Lifecycle;
+
+import com.threerings.presents.peer.server.persist.NodeRecord;
+import com.threerings.presents.server.PresentsDObjectMgr;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the selection of Unix domain sockets for connections to co-located peers.
+ */
+public class PeerSocketTest
+{
+    @Test public void testPeerSocketPath ()
+        throws Exception
+    {
+        Path dir = Files.createTempDirectory("peers");
+        PeerManager peermgr = new TestPeerManager(new Lifecycle());
+        peermgr._nodeName = "self";
+        peermgr._self = new NodeRecord("self", "host1", "host1", null, 47624);
+        NodeRecord near = new NodeRecord("near", "host1", "host1", null, 47625);
+        NodeRecord far = new NodeRecord("far", "host2", "host2", null, 47624);
+
+        // without a socket directory, everyone is reached via TCP
+        assertNull(peermgr.getPeerSocketPath(near));
+
+        // co-located peers are reached via their socket, once they're listening on it
+        peermgr._socketDir = dir.toString();
+        assertNull(peermgr.getPeerSocketPath(near));
+        Path path = Files.createFile(dir.resolve("near.sock"));
+        assertEquals(path, peermgr.getPeerSocketPath(near));
+        Files.createFile(dir.resolve("far.sock"));
+        assertNull(peermgr.getPeerSocketPath(far));
+
+        Files.delete(path);
+        Files.delete(dir.resolve("far.sock"));
+        Files.delete(dir);
+    }
+
+    @Test public void testSocketFailure ()
+    {
+        PeerNode peer = new PeerNode();
+        peer._record = new NodeRecord("near", "host1", "host1", null, 47625);
+        peer._socketPath = Paths.get("near.sock");
+
+        // a peer that crashed leaves its socket behind, which refuses connections until the peer
+        // restarts, so we keep trying the socket
+        peer.clientFailedToLogon(null, new ConnectException("Connection refused"));
+        assertFalse(peer._socketFailed);
+
+        // but we fall back to TCP if the socket otherwise fails us
+        peer.clientFailedToLogon(null, new IOException("Broken pipe"));
+        assertTrue(peer._socketFailed);
+    }
+
+    @Test public void testSocketConnect ()
+        throws Exception
+    {
+        Path dir = Files.createTempDirectory("peers");
+        PeerTestGroup group = new PeerTestGroup(2, true, dir.toString());
+        try {
+            connect(group);
+
+            // co-located peers connect to one another via their sockets
+            assertEquals(dir.resolve("node1.sock"), getPeer(group, 0, "node1")._socketPath);
+            assertEquals(dir.resolve("node0.sock"), getPeer(group, 1, "node0")._socketPath);
+
+        } finally {
+            group.shutdown();
+            delete(dir);
+        }
+    }
+
+    @Test public void testTcpFallback ()
+        throws Exception
+    {
+        Path dir = Files.createTempDirectory("peers");
+        PeerTestGroup group = new PeerTestGroup(2, true, dir.toString());
+        try {
+            connect(group);
+            final PeerNode peer = getPeer(group, 0, "node1");
+            assertNotNull(peer._socketPath);
+
+            final CountDownLatch reconnected = new CountDownLatch(1);
+            final TestPeerManager peermgr =
+                group.injectors.get(0).getInstance(TestPeerManager.class);
+            peermgr.setOnConnected(new TestPeerManager.Callback<String>() {
+                public void apply (String nodeName) {
+                    reconnected.countDown();
+                }
+            });
+
+            // once the socket has failed us, we reconnect via TCP
+            PresentsDObjectMgr omgr = group.injectors.get(0).getInstance(PresentsDObjectMgr.class);
+            omgr.postRunnable(new Runnable() {
+                public void run () {
+                    peer._socketFailed = true;
+                    peer._client.logoff(false);
+                }
+            });
+            long deadline = System.currentTimeMillis() + 5000L;
+            while (peer._client.isActive() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertFalse(peer._client.isActive());
+            omgr.postRunnable(new Runnable() {
+                public void run () {
+                    peermgr.refreshPeers();
+                }
+            });
+            assertTrue(reconnected.await(5, TimeUnit.SECONDS));
+            assertNull(peer._socketPath);
+
+        } finally {
+            group.shutdown();
+            delete(dir);
+        }
+    }
+
+    /**
+     * Starts the servers in the supplied group and waits for them to connect to one another.
+     */
+    protected void connect (PeerTestGroup group)
+        throws Exception
+    {
+        final CountDownLatch connected = new CountDownLatch(2);
+        for (int ii = 0; ii < 2; ii++) {
+            TestPeerManager peermgr = group.injectors.get(ii).getInstance(TestPeerManager.class);
+            peermgr.setOnConnected(new TestPeerManager.Callback<String>() {
+                public void apply (String nodeName) {
+                    connected.countDown();
+                }
+            });
+        }
+        group.start();
+
+        // connect straight away rather than waiting for the peers' first refresh
+        for (int ii = 0; ii < 2; ii++) {
+            final TestPeerManager peermgr =
+                group.injectors.get(ii).getInstance(TestPeerManager.class);
+            group.injectors.get(ii).getInstance(PresentsDObjectMgr.class).postRunnable(
+                new Runnable() {
+                public void run () {
+                    peermgr.refreshPeers();
+                }
+            });
+        }
+        assertTrue(connected.await(5, TimeUnit.SECONDS));
+    }
+
+    protected PeerNode getPeer (PeerTestGroup group, int index, String nodeName)
+    {
+        return group.injectors.get(index).getInstance(TestPeerManager.class)._peers.get(nodeName);
+    }
+
+    protected void delete (Path dir)
+        throws IOException
+    {
+        // our peers remove their sockets when they shut down, but may not have finished doing so
+        for (String name : new String[] { "node0.sock", "node1.sock" }) {
+            Files.deleteIfExists(dir.resolve(name));
+        }
+        Files.delete(dir);
+    }
+}
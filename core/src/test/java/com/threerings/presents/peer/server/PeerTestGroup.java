@@ -15,6 +15,7 @@ import com.google.common.collect.Lists;
 import com.google.inject.Guice;
 import com.google.inject.Inject;
 import com.google.inject.Injector;
+import com.google.inject.name.Names;
 
 import com.samskivert.depot.PersistenceContext;
 import com.samskivert.depot.StaticConnectionProvider;
@@ -32,6 +33,16 @@ public class PeerTestGroup
 
     public PeerTestGroup (int count, boolean suppressInfoLogging)
         throws Exception
+    {
+        this(count, suppressInfoLogging, null);
+    }
+
+    /**
+     * Creates a group of peers that, if <code>socketDir</code> is non-null, connect to one another
+     * via Unix domain sockets in that directory.
+     */
+    public PeerTestGroup (int count, boolean suppressInfoLogging, final String socketDir)
+        throws Exception
     {
         if (suppressInfoLogging) {
             Logger.getLogger("").setLevel(Level.WARNING);
@@ -47,6 +58,10 @@ public class PeerTestGroup
                     bind(PresentsServer.class).toInstance(new PeerTestServer(port));
                     bind(PeerManager.class).to(TestPeerManager.class);
                     bind(PersistenceContext.class).toInstance(new PersistenceContext());
+                    if (socketDir != null) {
+                        bindConstant().annotatedWith(Names.named("presents.peer.socketDir")).
+                            to(socketDir);
+                    }
                 }
             });
             this.injectors.add(inj);
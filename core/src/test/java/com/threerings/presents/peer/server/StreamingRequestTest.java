@@ -0,0 +1,113 @@
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2025 Three Rings Design, Inc., All Rights Reserved
+// https://github.com/threerings/narya/blob/master/LICENSE
+
+package com.threerings.presents.peer.server;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import com.samskivert.util.Lifecycle;
+
+import com.threerings.presents.client.InvocationService;
+import com.threerings.presents.peer.data.NodeObject;
+import com.threerings.presents.server.PresentsDObjectMgr;
+import com.threerings.presents.server.PresentsTestBase;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that streamed node requests report results as they arrive and give up on stragglers.
+ */
+public class StreamingRequestTest extends PresentsTestBase
+{
+    public static class TestRequest extends PeerManager.NodeRequest
+    {
+        public boolean isApplicable (NodeObject nodeobj) {
+            return true;
+        }
+
+        @Override protected void execute (InvocationService.ResultListener listener) {
+            listener.requestProcessed(null);
+        }
+    }
+
+    @Test public void testDeadline ()
+    {
+        final PresentsDObjectMgr omgr = getInstance(PresentsDObjectMgr.class);
+        final Map<String, InvocationService.ResultListener> invoked = Maps.newHashMap();
+        final TestPeerManager peermgr = new TestPeerManager(new Lifecycle()) {
+            @Override protected void invokeNodeRequest (
+                String nodeName, byte[] requestBytes, InvocationService.ResultListener listener) {
+                invoked.put(nodeName, listener);
+            }
+        };
+        peermgr._omgr = omgr;
+        peermgr._nodeobj = new NodeObject();
+        peermgr._nodeobj.nodeName = "self";
+        for (String nodeName : new String[] { "one", "two", "three" }) {
+            peermgr.addTestPeer(nodeName);
+        }
+
+        final List<String> events = Lists.newArrayList();
+        final NodeResultsListener<String> listener = new NodeResultsListener<String>() {
+            public void nodeProcessed (String nodeName, String result) {
+                events.add(nodeName + "=" + result);
+            }
+            public void nodeFailed (String nodeName, String cause) {
+                events.add(nodeName + "!" + cause);
+            }
+            public void requestsProcessed (Set<String> missedNodes) {
+                events.add("done " + Sets.newTreeSet(missedNodes));
+            }
+        };
+
+        omgr.postRunnable(new Runnable() {
+            public void run () {
+                peermgr.streamNodeRequest(new TestRequest(), 100L, listener);
+                invoked.get("self").requestProcessed("a");
+                invoked.get("one").requestFailed("oops");
+            }
+        });
+        omgr.newInterval(new Runnable() {
+            public void run () {
+                // two responds after the deadline, and three never does
+                invoked.get("two").requestProcessed("b");
+            }
+        }).schedule(200);
+        omgr.newInterval(new Runnable() {
+            public void run () {
+                // if everyone responds, we're done without waiting for the deadline
+                peermgr.streamNodeRequest(new TestRequest(), 100L, listener);
+                for (String nodeName : new String[] { "self", "one", "two", "three" }) {
+                    invoked.get(nodeName).requestProcessed(nodeName);
+                }
+            }
+        }).schedule(250);
+        omgr.newInterval(new Runnable() {
+            public void run () {
+                omgr.harshShutdown();
+            }
+        }).schedule(400);
+        omgr.run();
+
+        assertEquals(Lists.newArrayList("self=a", "one!oops", "done [three, two]",
+                                        "self=self", "one=one", "two=two", "three=three",
+                                        "done []"), events);
+        PeerManager.Stats stats = peermgr.getStats();
+        assertEquals(2, stats.nodeRequestsMissed);
+        assertEquals(ImmutableSet.of("self", "one", "two", "three"),
+                     stats.nodeResponseTimes.keySet());
+        assertEquals(2, stats.nodeResponseTimes.get("two").size());
+        assertEquals(1, stats.nodeResponseTimes.get("three").size());
+    }
+}
@@ -10,6 +10,9 @@ import com.google.inject.Singleton;
 
 import com.samskivert.util.Lifecycle;
 
+import com.threerings.presents.peer.data.NodeObject;
+import com.threerings.presents.peer.server.persist.NodeRecord;
+
 /**
  * A peer manager with hooks for testing.
  */
@@ -29,6 +32,20 @@ public class TestPeerManager extends PeerManager
         _onConnected = onConnected;
     }
 
+    /**
+     * Adds a peer with the specified name, which is treated as connected, though no client is
+     * actually created for it.
+     */
+    public PeerNode addTestPeer (String nodeName) {
+        PeerNode peer = new PeerNode();
+        peer._record = new NodeRecord();
+        peer._record.nodeName = nodeName;
+        peer.nodeobj = new NodeObject();
+        peer.nodeobj.nodeName = nodeName;
+        _peers.put(nodeName, peer);
+        return peer;
+    }
+
     @Override
     protected void connectedToPeer (PeerNode peer) {
         super.connectedToPeer(peer);
@@ -0,0 +1,109 @@
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2025 Three Rings Design, Inc., All Rights Reserved
+// https://github.com/threerings/narya/blob/master/LICENSE
+
+package com.threerings.presents.server;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+import com.threerings.presents.annotation.Coalesced;
+import com.threerings.presents.data.ClientObject;
+import com.threerings.presents.dobj.AttributeChangeListener;
+import com.threerings.presents.dobj.AttributeChangedEvent;
+import com.threerings.presents.dobj.CompoundEvent;
+import com.threerings.presents.dobj.DEvent;
+import com.threerings.presents.dobj.DObject;
+import com.threerings.presents.dobj.ObjectAccessException;
+import com.threerings.presents.dobj.ProxySubscriber;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the coalescing of changes to {@link Coalesced} attributes.
+ */
+public class CoalescedDOMTest extends PresentsTestBase
+{
+    public static class CoalescedObject extends DObject
+    {
+        @Coalesced public int foo;
+        public int bar;
+        @Coalesced public String baz;
+    }
+
+    @Coalesced
+    public static class AllCoalescedObject extends DObject
+    {
+        public int foo;
+    }
+
+    @Test public void runTest ()
+    {
+        PresentsDObjectMgr omgr = getInstance(PresentsDObjectMgr.class);
+        CoalescedObject obj = omgr.registerObject(new CoalescedObject());
+        AllCoalescedObject all = omgr.registerObject(new AllCoalescedObject());
+
+        final List<String> changes = Lists.newArrayList();
+        obj.addListener(new AttributeChangeListener() {
+            public void attributeChanged (AttributeChangedEvent event) {
+                changes.add(event.getName() + "=" + event.getValue());
+            }
+        });
+        final List<DEvent> sent = Lists.newArrayList();
+        ProxySubscriber proxy = new ProxySubscriber() {
+            public void objectAvailable (DObject object) {
+            }
+            public void requestFailed (int oid, ObjectAccessException cause) {
+            }
+            public void eventReceived (DEvent event) {
+                sent.add(event);
+            }
+            public ClientObject getClientObject () {
+                return null;
+            }
+        };
+        obj.addSubscriber(proxy);
+        all.addSubscriber(proxy);
+
+        // the changes held when bar changes are sent before it
+        obj.changeAttribute("foo", 1);
+        obj.changeAttribute("foo", 2);
+        obj.changeAttribute("bar", 5);
+        obj.changeAttribute("foo", 3);
+        obj.changeAttribute("baz", "a");
+        obj.changeAttribute("foo", 4);
+        all.changeAttribute("foo", 6);
+        all.changeAttribute("foo", 7);
+        omgr.harshShutdown();
+        omgr.run();
+
+        // listeners on the server see every change
+        assertEquals(Lists.newArrayList("foo=1", "foo=2", "bar=5", "foo=3", "baz=a", "foo=4"),
+                     changes);
+
+        // subscribers see the last value of each held change, with each object's changes in a
+        // single compound event
+        assertEquals(4, sent.size());
+        assertEquals("foo=2", describe(sent.get(0)));
+        assertEquals("bar=5", describe(sent.get(1)));
+        assertEquals("foo=4", describe(((CompoundEvent)sent.get(2)).getEvents().get(0)));
+        assertEquals("baz=a", describe(((CompoundEvent)sent.get(2)).getEvents().get(1)));
+        assertEquals(2, ((CompoundEvent)sent.get(2)).getEvents().size());
+        assertEquals("foo=7", describe(sent.get(3)));
+
+        // the compound event is no older than its newest change
+        assertEquals(((CompoundEvent)sent.get(2)).getEvents().get(0).eventId,
+                     sent.get(2).eventId);
+        assertEquals(3, omgr.getStats(false).changesCoalesced);
+    }
+
+    protected static String describe (DEvent event)
+    {
+        AttributeChangedEvent ace = (AttributeChangedEvent)event;
+        return ace.getName() + "=" + ace.getValue();
+    }
+}
@@ -0,0 +1,105 @@
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2025 Three Rings Design, Inc., All Rights Reserved
+// https://github.com/threerings/narya/blob/master/LICENSE
+
+package com.threerings.presents.server;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import com.threerings.presents.client.InvocationReceiver;
+import com.threerings.presents.client.InvocationService;
+import com.threerings.presents.client.TestService;
+import com.threerings.presents.data.ClientObject;
+import com.threerings.presents.data.InvocationCodes;
+import com.threerings.presents.data.RegistrationMarshaller;
+import com.threerings.presents.data.TestClientObject;
+import com.threerings.presents.data.TestMarshaller;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that the invocation manager dispatches via generated dispatchers when they exist, and
+ * reflectively when they don't.
+ */
+public class InvocationDispatcherTest extends PresentsTestBase
+{
+    @Test public void testGenerated ()
+        throws InvocationException
+    {
+        InvocationManager invmgr = getInstance(InvocationManager.class);
+        TestMarshaller marsh = invmgr.registerProvider(_provider, TestMarshaller.class);
+        InvocationManager.Dispatcher disp = invmgr._dispatchers.get(marsh.getInvocationCode());
+        assertTrue(disp instanceof InvocationManager.GeneratedDispatcher);
+        assertSame(_provider, disp.getProvider());
+
+        TestClientObject caller = new TestClientObject();
+        List<Integer> three = ImmutableList.of(3);
+        disp.dispatchRequest(caller, TestMarshaller.TEST, new Object[] { "one", 2, three, null });
+        assertSame(caller, _provider.caller);
+        assertEquals(ImmutableList.<Object>of("one", 2, three), _provider.args);
+
+        try {
+            disp.dispatchRequest(caller, TestMarshaller.GIVE_ME_THE_POWER, new Object[] { null });
+            fail();
+        } catch (InvocationException ie) {
+            assertEquals(InvocationCodes.E_INTERNAL_ERROR, ie.getMessage());
+        }
+
+        try {
+            disp.dispatchRequest(caller, 99, new Object[0]);
+            fail();
+        } catch (InvocationException ie) {
+            assertEquals(InvocationCodes.E_INTERNAL_ERROR, ie.getMessage());
+        }
+    }
+
+    @Test public void testReflective ()
+        throws InvocationException
+    {
+        final InvocationReceiver.Registration[] registered = { null };
+        RegistrationProvider provider = new RegistrationProvider() {
+            public void registerReceiver (ClientObject caller,
+                                          InvocationReceiver.Registration reg) {
+                registered[0] = reg;
+            }
+        };
+
+        InvocationManager invmgr = getInstance(InvocationManager.class);
+        RegistrationMarshaller marsh =
+            invmgr.registerProvider(provider, RegistrationMarshaller.class);
+        InvocationManager.Dispatcher disp = invmgr._dispatchers.get(marsh.getInvocationCode());
+        assertTrue(disp instanceof InvocationManager.ReflectiveDispatcher);
+
+        InvocationReceiver.Registration reg = new InvocationReceiver.Registration("test", (short)1);
+        disp.dispatchRequest(new ClientObject(), RegistrationMarshaller.REGISTER_RECEIVER,
+                             new Object[] { reg });
+        assertSame(reg, registered[0]);
+    }
+
+    protected static class RecordingProvider implements TestProvider
+    {
+        public TestClientObject caller;
+        public List<Object> args;
+
+        public void getTestOid (TestClientObject caller, TestService.TestOidListener listener) {
+        }
+
+        public void giveMeThePower (TestClientObject caller,
+                                    InvocationService.ConfirmListener listener) {
+            throw new IllegalStateException("No power for you");
+        }
+
+        public void test (TestClientObject caller, String one, int two, List<Integer> three,
+                          TestService.TestFuncListener listener) {
+            this.caller = caller;
+            this.args = ImmutableList.<Object>of(one, two, three);
+        }
+    }
+
+    protected RecordingProvider _provider = new RecordingProvider();
+}
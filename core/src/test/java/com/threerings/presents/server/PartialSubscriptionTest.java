@@ -0,0 +1,185 @@
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2025 Three Rings Design, Inc., All Rights Reserved
+// https://github.com/threerings/narya/blob/master/LICENSE
+
+
+package com.threerings.presents.server;
+
+import java.util.List;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import com.threerings.io.ObjectInputStream;
+import com.threerings.io.ObjectOutputStream;
+
+import com.threerings.presents.dobj.AttributeChangedEvent;
+import com.threerings.presents.dobj.CompoundEvent;
+import com.threerings.presents.dobj.DEvent;
+import com.threerings.presents.dobj.DObject;
+import com.threerings.presents.dobj.MessageEvent;
+import com.threerings.presents.net.DownstreamMessage;
+import com.threerings.presents.net.EventNotification;
+import com.threerings.presents.net.ObjectResponse;
+import com.threerings.presents.net.PartialObjectResponse;
+import com.threerings.presents.net.PartialSubscribeRequest;
+import com.threerings.presents.server.net.PresentsConnection;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests subscriptions to only some of the attributes of an object.
+ */
+public class PartialSubscriptionTest extends PresentsTestBase
+{
+    public static class TestObject extends DObject
+    {
+        public int foo = 1;
+        public int bar = 2;
+        public String baz = "baz";
+    }
+
+    public static class CustomObject extends TestObject
+    {
+        public void writeObject (ObjectOutputStream out)
+            throws IOException
+        {
+            out.defaultWriteObject();
+        }
+    }
+
+    @Test public void testResponse ()
+        throws Exception
+    {
+        TestObject obj = new TestObject();
+        obj.setOid(42);
+        obj.foo = 3;
+        obj.bar = 4;
+        obj.baz = null;
+
+        // only the attributes of interest (and the oid) are sent
+        TestObject read = (TestObject)roundTrip(
+            PartialObjectResponse.create(obj, Sets.newHashSet("foo", "baz"))).getObject();
+        assertEquals(42, read.getOid());
+        assertEquals(3, read.foo);
+        assertEquals(2, read.bar);
+        assertNull(read.baz);
+
+        // objects that stream themselves are sent in full
+        CustomObject cobj = new CustomObject();
+        cobj.bar = 4;
+        ObjectResponse<?> rsp = PartialObjectResponse.create(cobj, Sets.newHashSet("foo"));
+        assertFalse(rsp instanceof PartialObjectResponse<?>);
+        assertEquals(4, ((TestObject)roundTrip(rsp).getObject()).bar);
+    }
+
+    @Test public void testEvents ()
+    {
+        PresentsDObjectMgr omgr = getInstance(PresentsDObjectMgr.class);
+        final List<DownstreamMessage> sent = Lists.newArrayList();
+        PresentsSession session = new PresentsSession() {
+            @Override protected boolean postMessage (
+                DownstreamMessage msg, PresentsConnection expect) {
+                sent.add(msg);
+                return true;
+            }
+        };
+        _injector.injectMembers(session);
+
+        TestObject obj = omgr.registerObject(new TestObject());
+        PresentsSession.ClientProxy proxy = session.createProxySubscriber();
+        proxy.interest = Sets.newHashSet("foo");
+        obj.addSubscriber(proxy);
+        proxy.objectAvailable(obj);
+
+        obj.changeAttribute("foo", 5);
+        obj.changeAttribute("bar", 6);
+        obj.startTransaction();
+        obj.changeAttribute("bar", 7);
+        obj.changeAttribute("foo", 8);
+        obj.commitTransaction();
+        obj.startTransaction();
+        obj.changeAttribute("bar", 9);
+        obj.changeAttribute("baz", "nine");
+        obj.commitTransaction();
+        obj.postMessage("hello");
+        omgr.harshShutdown();
+        omgr.run();
+
+        // events on other attributes are dropped, as are the parts of compound events that
+        // affect them, while messages are always sent
+        assertEquals(4, sent.size());
+        assertTrue(sent.get(0) instanceof PartialObjectResponse<?>);
+        assertEquals("foo=5", describe(sent.get(1)));
+        assertEquals("foo=8", describe(sent.get(2)));
+        assertTrue(((EventNotification)sent.get(3)).getEvent() instanceof MessageEvent);
+    }
+
+    @Test public void testNullAttributes ()
+    {
+        PresentsDObjectMgr omgr = getInstance(PresentsDObjectMgr.class);
+        final List<DownstreamMessage> sent = Lists.newArrayList();
+        PresentsSession session = new PresentsSession() {
+            @Override protected boolean postMessage (
+                DownstreamMessage msg, PresentsConnection expect) {
+                sent.add(msg);
+                return true;
+            }
+        };
+        _injector.injectMembers(session);
+
+        // a partial subscription that names no attributes is a subscription to the whole object
+        TestObject obj = omgr.registerObject(new TestObject());
+        session.dispatchMessage(new PartialSubscribeRequest(obj.getOid(), null));
+        omgr.harshShutdown();
+        omgr.run();
+
+        assertEquals(1, sent.size());
+        assertTrue(sent.get(0) instanceof ObjectResponse<?>);
+        assertFalse(sent.get(0) instanceof PartialObjectResponse<?>);
+    }
+
+    @Test public void testCompoundFilter ()
+    {
+        TestObject obj = new TestObject();
+        CompoundEvent compound = new CompoundEvent(obj, getInstance(PresentsDObjectMgr.class));
+        compound.postEvent(new AttributeChangedEvent(0, "foo", 1));
+        compound.postEvent(new AttributeChangedEvent(0, "bar", 2));
+        compound.postEvent(new AttributeChangedEvent(0, "baz", "3"));
+        compound.eventId = 17;
+
+        CompoundEvent filtered = compound.filter(
+            event -> !((AttributeChangedEvent)event).getName().equals("bar"));
+        assertEquals(17, filtered.eventId);
+        assertEquals(obj.getOid(), filtered.getTargetOid());
+        assertEquals(2, filtered.getEvents().size());
+        assertSame(compound.getEvents().get(2), filtered.getEvents().get(1));
+        assertEquals(3, compound.getEvents().size());
+    }
+
+    protected static ObjectResponse<?> roundTrip (ObjectResponse<?> rsp)
+        throws Exception
+    {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        ObjectOutputStream oout = new ObjectOutputStream(bout);
+        oout.writeObject(rsp);
+        oout.flush();
+        ObjectInputStream oin =
+            new ObjectInputStream(new ByteArrayInputStream(bout.toByteArray()));
+        return (ObjectResponse<?>)oin.readObject();
+    }
+
+    protected static String describe (DownstreamMessage msg)
+    {
+        AttributeChangedEvent ace =
+            (AttributeChangedEvent)((EventNotification)msg).getEvent();
+        return ace.getName() + "=" + ace.getValue();
+    }
+}
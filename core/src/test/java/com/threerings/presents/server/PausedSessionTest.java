@@ -0,0 +1,93 @@
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2025 Three Rings Design, Inc., All Rights Reserved
+// https://github.com/threerings/narya/blob/master/LICENSE
+
+package com.threerings.presents.server;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+import com.threerings.presents.dobj.AttributeChangedEvent;
+import com.threerings.presents.dobj.DObject;
+import com.threerings.presents.net.EventNotification;
+import com.threerings.presents.net.FailureResponse;
+import com.threerings.presents.net.Message;
+import com.threerings.presents.net.ObjectResponse;
+import com.threerings.presents.net.PongResponse;
+import com.threerings.presents.net.Transport;
+import com.threerings.presents.server.net.PresentsConnection;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that a session holds back the messages it sends while its connection is backed up, and
+ * sends them along in order once it drains.
+ */
+public class PausedSessionTest extends PresentsTestBase
+{
+    public static class TestObject extends DObject
+    {
+        public int foo;
+        public int bar;
+    }
+
+    @Test public void testHeldInOrder ()
+    {
+        PresentsDObjectMgr omgr = getInstance(PresentsDObjectMgr.class);
+        final List<Message> sent = Lists.newArrayList();
+        final PresentsConnection conn = new PresentsConnection() {
+            @Override public void postMessage (Message msg) {
+                sent.add(msg);
+            }
+        };
+        final PresentsSession session = new PresentsSession();
+        _injector.injectMembers(session);
+        session._conn = conn;
+
+        TestObject obj = omgr.registerObject(new TestObject());
+        PresentsSession.ClientProxy proxy = session.createProxySubscriber();
+        obj.addSubscriber(proxy);
+        proxy.objectAvailable(obj);
+        assertEquals(1, sent.size());
+        assertTrue(sent.get(0) instanceof ObjectResponse<?>);
+
+        // while paused, our events and other messages are held back, save unreliable ones
+        session.outgoingCongested(conn);
+        obj.changeAttribute("foo", 1);
+        omgr.postRunnable(new Runnable() {
+            public void run () {
+                session.postMessage(new FailureResponse(1, "reliable"), null);
+                session.postMessage(new PongResponse(0L, Transport.UNRELIABLE_UNORDERED), null);
+            }
+        });
+        obj.changeAttribute("bar", 2);
+        obj.changeAttribute("foo", 3);
+        omgr.harshShutdown();
+        omgr.run();
+        assertEquals(2, sent.size());
+        assertTrue(sent.get(1) instanceof PongResponse);
+
+        // once resumed they are sent in order, with the earlier change to foo dropped in favor of
+        // the later one that supersedes it
+        session.resumeMessages(conn);
+        assertEquals(5, sent.size());
+        assertEquals(1, ((FailureResponse)sent.get(2)).getOid());
+        assertEquals("bar=2", describe(sent.get(3)));
+        assertEquals("foo=3", describe(sent.get(4)));
+
+        // and no longer held
+        session.postMessage(new FailureResponse(3, "reliable"), null);
+        assertEquals(6, sent.size());
+    }
+
+    protected static String describe (Message msg)
+    {
+        AttributeChangedEvent ace =
+            (AttributeChangedEvent)((EventNotification)msg).getEvent();
+        return ace.getName() + "=" + ace.getValue();
+    }
+}
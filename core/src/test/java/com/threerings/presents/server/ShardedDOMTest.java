@@ -0,0 +1,72 @@
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2025 Three Rings Design, Inc., All Rights Reserved
+// https://github.com/threerings/narya/blob/master/LICENSE
+
+package com.threerings.presents.server;
+
+import org.junit.Test;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.name.Names;
+
+import com.threerings.presents.data.TestObject;
+import com.threerings.presents.dobj.AttributeChangeListener;
+import com.threerings.presents.dobj.AttributeChangedEvent;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the dispatch of events on dobjmgr shards.
+ */
+public class ShardedDOMTest extends PresentsTestBase
+{
+    @Test public void runTest ()
+    {
+        _injector = Guice.createInjector(new PresentsServer.PresentsModule(), new AbstractModule() {
+            @Override protected void configure () {
+                bindConstant().annotatedWith(Names.named("presents.dobj.shards")).to(4);
+            }
+        });
+        final PresentsDObjectMgr omgr = getInstance(PresentsDObjectMgr.class);
+
+        // objects without an affinity stay on the main thread, others join their owner's shard
+        TestObject plain = omgr.registerObject(new TestObject());
+        final TestObject owner = omgr.registerObject(new TestObject(), "owner");
+        final TestObject child = omgr.registerObject(new TestObject(), owner);
+        assertSame(omgr, omgr.getRunQueue(plain));
+        assertNotSame(omgr, omgr.getRunQueue(owner));
+        assertSame(omgr.getRunQueue(owner), omgr.getRunQueue(child));
+
+        plain.addListener(new AttributeChangeListener() {
+            public void attributeChanged (AttributeChangedEvent event) {
+                _plainOnMain = omgr.isDispatchThread();
+                // modify the sharded object on its own thread
+                omgr.getRunQueue(child).postRunnable(new Runnable() {
+                    public void run () {
+                        child.setFoo(2);
+                    }
+                });
+            }
+        });
+        child.addListener(new AttributeChangeListener() {
+            public void attributeChanged (AttributeChangedEvent event) {
+                _childOnShard = omgr.isDispatchThread(child) && omgr.isDispatchThread(owner) &&
+                    !omgr.isDispatchThread() && omgr.isAnyDispatchThread();
+                _childFoo = child.foo;
+                omgr.harshShutdown();
+            }
+        });
+
+        plain.setFoo(1);
+        omgr.run();
+
+        assertTrue(_plainOnMain);
+        assertTrue(_childOnShard);
+        assertEquals(2, _childFoo);
+    }
+
+    protected volatile boolean _plainOnMain, _childOnShard;
+    protected volatile int _childFoo;
+}
@@ -0,0 +1,69 @@
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2025 Three Rings Design, Inc., All Rights Reserved
+// https://github.com/threerings/narya/blob/master/LICENSE
+
+package com.threerings.presents.server;
+
+import java.util.List;
+
+import javax.annotation.processing.Generated;
+
+import com.threerings.presents.client.InvocationService;
+import com.threerings.presents.client.TestService;
+import com.threerings.presents.data.ClientObject;
+import com.threerings.presents.data.TestClientObject;
+import com.threerings.presents.data.TestMarshaller;
+
+/**
+ * Dispatches requests to the {@link TestProvider}.
+ */
+@Generated(value={"com.threerings.presents.tools.GenServiceTask"},
+           comments="Derived from TestService.java.")
+public class TestDispatcher extends InvocationDispatcher<TestMarshaller>
+{
+    /**
+     * Creates a dispatcher that may be registered to dispatch invocation
+     * service requests for the specified provider.
+     */
+    public TestDispatcher (TestProvider provider)
+    {
+        this.provider = provider;
+    }
+
+    @Override
+    public TestMarshaller createMarshaller ()
+    {
+        return new TestMarshaller();
+    }
+
+    @Override
+    public void dispatchRequest (
+        ClientObject source, int methodId, Object[] args)
+        throws InvocationException
+    {
+        switch (methodId) {
+        case TestMarshaller.GET_TEST_OID:
+            ((TestProvider)provider).getTestOid(
+                (TestClientObject)source, (TestService.TestOidListener)args[0]
+            );
+            return;
+
+        case TestMarshaller.GIVE_ME_THE_POWER:
+            ((TestProvider)provider).giveMeThePower(
+                (TestClientObject)source, (InvocationService.ConfirmListener)args[0]
+            );
+            return;
+
+        case TestMarshaller.TEST:
+            ((TestProvider)provider).test(
+                (TestClientObject)source, (String)args[0], ((Integer)args[1]).intValue(), this.<List<Integer>>cast(args[2]), (TestService.TestFuncListener)args[3]
+            );
+            return;
+
+        default:
+            super.dispatchRequest(source, methodId, args);
+            return;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2025 Three Rings Design, Inc., All Rights Reserved
+// https://github.com/threerings/narya/blob/master/LICENSE
+
+package com.threerings.presents.server;
+
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Tests the {@link UnitQueue} class.
+ */
+public class UnitQueueTest
+{
+    @Test
+    public void testBatches ()
+    {
+        UnitQueue<Integer> queue = new UnitQueue<Integer>();
+        List<Integer> batch = Lists.newArrayList();
+        assertEquals(0, queue.poll(batch, 10));
+        assertFalse(queue.hasElements());
+
+        for (int ii = 0; ii < 5; ii++) {
+            queue.append(ii);
+        }
+        assertEquals(5, queue.size());
+        assertEquals(3, queue.drainTo(batch, 3));
+        assertEquals(2, queue.size());
+        assertEquals(2, queue.poll(batch, 10));
+        assertEquals(Lists.newArrayList(0, 1, 2, 3, 4), batch);
+        assertFalse(queue.hasElements());
+    }
+
+    @Test
+    public void testProducers ()
+        throws InterruptedException
+    {
+        final UnitQueue<int[]> queue = new UnitQueue<int[]>();
+        final int producers = 4, units = 100000;
+        for (int ii = 0; ii < producers; ii++) {
+            final int producer = ii;
+            Thread thread = new Thread() {
+                @Override public void run () {
+                    for (int uu = 0; uu < units; uu++) {
+                        queue.append(new int[] { producer, uu });
+                        if (uu % 1000 == 0) {
+                            Thread.yield();
+                        }
+                    }
+                }
+            };
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        // make sure we get every unit, in order for each producer
+        int[] next = new int[producers];
+        List<int[]> batch = Lists.newArrayList();
+        for (int received = 0; received < producers * units; ) {
+            received += queue.drainTo(batch, 256);
+            for (int[] unit : batch) {
+                assertEquals(next[unit[0]]++, unit[1]);
+            }
+            batch.clear();
+        }
+        assertEquals(0, queue.poll(batch, 1));
+    }
+}
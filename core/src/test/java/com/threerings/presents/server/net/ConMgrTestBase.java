@@ -0,0 +1,282 @@
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2025 Three Rings Design, Inc., All Rights Reserved
+// https://github.com/threerings/narya/blob/master/LICENSE
+
+package com.threerings.presents.server.net;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Inject;
+import com.google.inject.Module;
+import com.google.inject.util.Modules;
+
+import com.samskivert.util.Lifecycle;
+
+import com.threerings.io.ObjectOutputStream;
+
+import com.threerings.nio.conman.Connection;
+import com.threerings.presents.net.Message;
+import com.threerings.presents.server.PresentsDObjectMgr;
+import com.threerings.presents.server.PresentsServer;
+import com.threerings.presents.server.PresentsTestBase;
+import com.threerings.presents.server.ReportManager;
+
+import static org.junit.Assert.*;
+
+/**
+ * Sets up a connection manager, and sockets with which to talk to it, for network tests.
+ */
+public abstract class ConMgrTestBase extends PresentsTestBase
+{
+    /**
+     * A connection manager that skips authentication and exposes its outgoing queues.
+     */
+    protected static class TestConnectionManager extends PresentsConnectionManager
+    {
+        /** The connections that we have established, in the order they were accepted. */
+        public BlockingQueue<PresentsConnection> established =
+            new LinkedBlockingQueue<PresentsConnection>();
+
+        /** The handler given the messages received by our established connections. */
+        public volatile PresentsConnection.MessageHandler handler =
+            new PresentsConnection.MessageHandler() {
+            public void handleMessage (Message message) {
+                // nada
+            }
+        };
+
+        /** The number of bytes to queue for each accepted connection before it is upgraded. */
+        public volatile int preload;
+
+        @Inject public TestConnectionManager (Lifecycle cycle, ReportManager repmgr)
+            throws IOException
+        {
+            super(cycle, repmgr);
+        }
+
+        /**
+         * Queues the supplied data for delivery to the supplied connection.
+         */
+        public void queue (Connection conn, ByteBuffer data, Object key)
+        {
+            queueMessage(conn, data, key);
+        }
+
+        @Override
+        protected void handleAcceptedSocket (SocketChannel channel)
+        {
+            PresentsConnection aconn = new PresentsConnection();
+            handleAcceptedSocket(channel, aconn);
+            if (aconn.selkey == null) {
+                return;
+            }
+
+            // rather than authenticating, we upgrade the connection straight away
+            try {
+                PresentsConnection rconn = new PresentsConnection();
+                rconn.init(this, channel, System.currentTimeMillis());
+                rconn.setMessageHandler(handler);
+                synchronized (_connections) {
+                    _connections.put(rconn.getConnectionId(), rconn);
+                }
+                if (preload > 0) {
+                    channel.setOption(StandardSocketOptions.SO_SNDBUF, BUFFER_SIZE);
+                    queueMessage(aconn, data(preload, 0));
+                }
+                upgradeConnection(aconn, rconn);
+                established.add(rconn);
+
+            } catch (IOException ioe) {
+                fail("Failed to upgrade connection: " + ioe);
+            }
+        }
+    }
+
+    /**
+     * Creates our connection manager, configured with the supplied module.
+     */
+    protected TestConnectionManager createConnectionManager (Module config)
+        throws IOException
+    {
+        _injector = Guice.createInjector(
+            Modules.override(new PresentsServer.PresentsModule()).with(config));
+        _conmgr = getInstance(TestConnectionManager.class);
+
+        _dir = Files.createTempDirectory("conmgr");
+        _addr = UnixDomainSocketAddress.of(_dir.resolve("server.sock"));
+        _ssocket = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        _ssocket.bind(_addr);
+        return _conmgr;
+    }
+
+    /**
+     * Creates our connection manager with its default configuration.
+     */
+    protected TestConnectionManager createConnectionManager ()
+        throws IOException
+    {
+        return createConnectionManager(new AbstractModule() {
+            @Override protected void configure () {
+                // nothing to configure
+            }
+        });
+    }
+
+    /**
+     * Opens a connection to our server socket and hands the accepted socket to the (running)
+     * connection manager, returning the non-blocking client end of the connection.
+     */
+    protected SocketChannel connect ()
+        throws IOException
+    {
+        SocketChannel client = SocketChannel.open(_addr);
+        _conmgr.transferAcceptedSocket(_ssocket.accept());
+        client.configureBlocking(false);
+        return client;
+    }
+
+    /**
+     * Opens a connection to our server socket and creates a connection for its server end that
+     * is handled by the (not running) connection manager's primary reactor. The socket's buffers
+     * are kept small so that large messages must be written piecemeal. Returns the non-blocking
+     * client end of the connection.
+     */
+    protected SocketChannel connect (PresentsConnection conn)
+        throws IOException
+    {
+        SocketChannel client = SocketChannel.open(_addr);
+        client.setOption(StandardSocketOptions.SO_RCVBUF, BUFFER_SIZE);
+        client.configureBlocking(false);
+        SocketChannel channel = _ssocket.accept();
+        channel.setOption(StandardSocketOptions.SO_SNDBUF, BUFFER_SIZE);
+        channel.configureBlocking(false);
+        conn.init(_conmgr, channel, System.currentTimeMillis());
+        return client;
+    }
+
+    /**
+     * Reads whatever data is available from the supplied client.
+     */
+    protected int read (SocketChannel client, ByteArrayOutputStream into)
+        throws IOException
+    {
+        _buf.clear();
+        int read = Math.max(client.read(_buf), 0);
+        into.write(_buf.array(), 0, read);
+        return read;
+    }
+
+    /**
+     * Reads the specified number of bytes from the supplied client, waiting no more than a few
+     * seconds for them to arrive.
+     */
+    protected byte[] read (SocketChannel client, int bytes)
+        throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (out.size() < bytes && System.currentTimeMillis() < deadline) {
+            if (read(client, out) == 0) {
+                Thread.sleep(10);
+            }
+        }
+        assertEquals(bytes, out.size());
+        return out.toByteArray();
+    }
+
+    /**
+     * Sends the messages queued for the supplied connection by our (not running) connection
+     * manager, reading them from the supplied client, until the connection's queue is empty.
+     */
+    protected byte[] drain (PresentsConnection conn, SocketChannel client)
+        throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int ii = 0; ii < 10000; ii++) {
+            _conmgr.sendOutgoingMessages(System.currentTimeMillis());
+            read(client, out);
+            if (conn.getQueuedBytes() == 0) {
+                break;
+            }
+        }
+        while (read(client, out) > 0) {
+            // read anything left in the socket
+        }
+        assertEquals(0, conn.getQueuedBytes());
+        return out.toByteArray();
+    }
+
+    /**
+     * Shuts down our connection manager (if it was started) and cleans up our server socket.
+     */
+    protected void shutdown ()
+        throws IOException
+    {
+        if (_conmgr.isAlive()) {
+            // our conmgr runs until the dobjmgr is done, so that must shut down as well
+            _conmgr.shutdown();
+            PresentsDObjectMgr omgr = getInstance(PresentsDObjectMgr.class);
+            omgr.harshShutdown();
+            omgr.run();
+        }
+        _ssocket.close();
+        Files.delete(_dir.resolve("server.sock"));
+        Files.delete(_dir);
+    }
+
+    /**
+     * Creates a buffer with the specified number of bytes of data, which is distinguished by the
+     * supplied seed.
+     */
+    protected static ByteBuffer data (int size, int seed)
+    {
+        ByteBuffer buf = ByteBuffer.allocate(size);
+        for (int ii = 0; ii < size; ii++) {
+            buf.put((byte)(ii * 31 + seed));
+        }
+        buf.flip();
+        return buf;
+    }
+
+    /**
+     * Frames the supplied message as a client would.
+     */
+    protected static ByteBuffer frame (Message message)
+        throws IOException
+    {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        ObjectOutputStream oout = new ObjectOutputStream(bout);
+        oout.writeObject(message);
+        oout.flush();
+        ByteBuffer buf = ByteBuffer.allocate(bout.size() + 4);
+        buf.putInt(bout.size() + 4).put(bout.toByteArray());
+        buf.flip();
+        return buf;
+    }
+
+    protected TestConnectionManager _conmgr;
+    protected Path _dir;
+    protected UnixDomainSocketAddress _addr;
+    protected ServerSocketChannel _ssocket;
+
+    protected ByteBuffer _buf = ByteBuffer.allocate(64 * 1024);
+
+    /** The size of the socket buffers of connections that are to be written piecemeal, which is
+     * small enough that our test messages won't fit. */
+    protected static final int BUFFER_SIZE = 4096;
+}
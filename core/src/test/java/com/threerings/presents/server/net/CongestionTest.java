@@ -0,0 +1,304 @@
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2025 Three Rings Design, Inc., All Rights Reserved
+// https://github.com/threerings/narya/blob/master/LICENSE
+
+package com.threerings.presents.server.net;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.inject.AbstractModule;
+import com.google.inject.name.Names;
+
+import com.threerings.io.BufferPool;
+import com.threerings.io.ObjectInputStream;
+
+import com.threerings.presents.data.PresentsConMgrStats;
+import com.threerings.presents.dobj.AttributeChangedEvent;
+import com.threerings.presents.net.EventNotification;
+import com.threerings.presents.net.Message;
+import com.threerings.presents.net.Transport;
+import com.threerings.presents.server.PresentsDObjectMgr;
+import com.threerings.presents.server.net.PresentsConnectionManager.SlowConsumerPolicy;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that connections are reported as congested and drained as their outgoing queues cross
+ * the watermarks, and that the slow consumer policies take effect while they are congested.
+ */
+public class CongestionTest extends ConMgrTestBase
+{
+    @Test public void testPauseSubscriptions ()
+        throws Exception
+    {
+        createConnectionManager(SlowConsumerPolicy.PAUSE_SUBSCRIPTIONS);
+        PresentsConnection conn = new PresentsConnection();
+        Recorder recorder = new Recorder();
+        conn.setMessageHandler(recorder);
+        SocketChannel client = connect(conn);
+        try {
+            _conmgr.queue(conn, data(HIGH_WATER/2, 0), null);
+            assertFalse(conn.isCongested());
+
+            // passing the high watermark pauses the session's subscriptions, just the once
+            _conmgr.queue(conn, data(HIGH_WATER/2, 1), null);
+            assertTrue(conn.isCongested());
+            _conmgr.queue(conn, data(HIGH_WATER/2, 2), null);
+            assertEquals(1, recorder.congested);
+            assertEquals(0, recorder.drained);
+            PresentsConMgrStats stats = _conmgr.getStats();
+            assertEquals(1, stats.highWaterHits);
+            assertEquals(1, stats.subscriptionPauses);
+
+            // and draining the queue resumes them
+            drain(conn, client);
+            assertFalse(conn.isCongested());
+            assertEquals(1, recorder.congested);
+            assertEquals(1, recorder.drained);
+
+        } finally {
+            close(conn, client);
+        }
+    }
+
+    @Test public void testPooledCapacity ()
+        throws Exception
+    {
+        createConnectionManager(SlowConsumerPolicy.DROP_UNRELIABLE);
+        PresentsConnection conn = new PresentsConnection();
+        conn.setMessageHandler(new Recorder());
+        SocketChannel client = connect(conn);
+        try {
+            // a short message in a pooled buffer holds on to the whole buffer, and is charged
+            // for all of it
+            BufferPool pool = new BufferPool();
+            ByteBuffer buf = pool.acquire(16);
+            buf.put(data(16, 0)).flip();
+            _conmgr.queue(conn, buf, null);
+            assertEquals(buf.capacity(), conn.getQueuedBytes());
+
+            // so enough of them congest the connection, though their contents alone would not
+            for (int ii = 1; ii < HIGH_WATER / buf.capacity(); ii++) {
+                buf = pool.acquire(16);
+                buf.put(data(16, ii)).flip();
+                _conmgr.queue(conn, buf, null);
+            }
+            assertTrue(conn.isCongested());
+
+            drain(conn, client);
+            assertFalse(conn.isCongested());
+
+        } finally {
+            close(conn, client);
+        }
+    }
+
+    @Test public void testDropUnreliable ()
+        throws Exception
+    {
+        createConnectionManager(SlowConsumerPolicy.DROP_UNRELIABLE);
+        PresentsConnection conn = new PresentsConnection();
+        Recorder recorder = new Recorder();
+        conn.setMessageHandler(recorder);
+        SocketChannel client = connect(conn);
+        try {
+            startDObjectMgr();
+
+            // unreliable messages are queued while the connection is keeping up
+            long queued = conn.getQueuedBytes();
+            post(conn, change("x", 0, Transport.UNRELIABLE_UNORDERED));
+            assertTrue(conn.getQueuedBytes() > queued);
+
+            // but are dropped once it is congested (and its session's subscriptions are not
+            // paused under this policy)
+            _conmgr.queue(conn, data(HIGH_WATER, 0), null);
+            assertTrue(conn.isCongested());
+            queued = conn.getQueuedBytes();
+            post(conn, change("x", 1, Transport.UNRELIABLE_UNORDERED));
+            assertEquals(queued, conn.getQueuedBytes());
+            assertEquals(1, _conmgr.getStats().unreliableDropped);
+            post(conn, change("x", 2));
+            assertTrue(conn.getQueuedBytes() > queued);
+            assertEquals(0, recorder.congested);
+
+            drain(conn, client);
+            assertFalse(conn.isCongested());
+            assertEquals(0, recorder.drained);
+
+        } finally {
+            close(conn, client);
+        }
+    }
+
+    @Test public void testCollapseAttributes ()
+        throws Exception
+    {
+        // attribute changes superseded while the connection is congested are dropped
+        assertEquals(Lists.newArrayList("x=0", "y=0", "x=3"),
+                     sendChanges(SlowConsumerPolicy.COLLAPSE_ATTRIBUTES));
+        assertEquals(2, _conmgr.getStats().msgsSuperseded);
+
+        // but only under the policies that call for it
+        assertEquals(Lists.newArrayList("x=0", "x=1", "x=2", "y=0", "x=3"),
+                     sendChanges(SlowConsumerPolicy.DROP_UNRELIABLE));
+        assertEquals(0, _conmgr.getStats().msgsSuperseded);
+    }
+
+    /**
+     * Posts a series of attribute changes to a congested connection, returning the changes that
+     * are received.
+     */
+    protected List<String> sendChanges (SlowConsumerPolicy policy)
+        throws Exception
+    {
+        createConnectionManager(policy);
+        PresentsConnection conn = new PresentsConnection();
+        conn.setMessageHandler(new Recorder());
+        SocketChannel client = connect(conn);
+        try {
+            startDObjectMgr();
+
+            // congest the connection, with a message that will have to wait in its overflow
+            // queue, behind which our changes will also wait
+            int size = 4*HIGH_WATER;
+            _conmgr.queue(conn, data(size, 0), null);
+            _conmgr.sendOutgoingMessages(System.currentTimeMillis());
+            assertTrue(conn.isCongested());
+
+            post(conn, change("x", 0), change("x", 1), change("x", 2), change("y", 0),
+                 change("x", 3));
+            byte[] received = drain(conn, client);
+
+            // read the frames that follow our congesting message from a single stream
+            ByteBuffer frames = ByteBuffer.wrap(received, size, received.length - size);
+            ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            int count = 0;
+            for (; frames.hasRemaining(); count++) {
+                int length = frames.getInt() - 4;
+                payload.write(received, frames.position(), length);
+                frames.position(frames.position() + length);
+            }
+            ObjectInputStream oin = new ObjectInputStream(
+                new ByteArrayInputStream(payload.toByteArray()));
+            List<String> changes = Lists.newArrayList();
+            for (int ii = 0; ii < count; ii++) {
+                AttributeChangedEvent event = (AttributeChangedEvent)
+                    ((EventNotification)oin.readObject()).getEvent();
+                changes.add(event.getName() + "=" + event.getValue());
+            }
+            return changes;
+
+        } finally {
+            close(conn, client);
+        }
+    }
+
+    protected void createConnectionManager (final SlowConsumerPolicy policy)
+        throws Exception
+    {
+        createConnectionManager(new AbstractModule() {
+            @Override protected void configure () {
+                bindConstant().annotatedWith(Names.named("presents.net.queueHighWater")).
+                    to(HIGH_WATER);
+                bindConstant().annotatedWith(Names.named("presents.net.queueLowWater")).
+                    to(LOW_WATER);
+                bindConstant().annotatedWith(Names.named("presents.net.slowConsumerPolicy")).
+                    to(policy);
+            }
+        });
+    }
+
+    /**
+     * Runs the distributed object manager, on whose thread messages must be posted.
+     */
+    protected void startDObjectMgr ()
+    {
+        _omgr = getInstance(PresentsDObjectMgr.class);
+        _omgrThread = new Thread("DObjectMgr") {
+            @Override public void run () {
+                _omgr.run();
+            }
+        };
+        _omgrThread.start();
+    }
+
+    /**
+     * Posts the supplied messages to the supplied connection on the distributed object thread.
+     */
+    protected void post (final PresentsConnection conn, final Message... msgs)
+        throws Exception
+    {
+        final CountDownLatch posted = new CountDownLatch(1);
+        _omgr.postRunnable(new Runnable() {
+            public void run () {
+                for (Message msg : msgs) {
+                    _conmgr.postMessage(conn, msg);
+                }
+                posted.countDown();
+            }
+        });
+        assertTrue(posted.await(5, TimeUnit.SECONDS));
+    }
+
+    protected void close (PresentsConnection conn, SocketChannel client)
+        throws Exception
+    {
+        client.close();
+        conn.getChannel().close();
+        if (_omgrThread != null) {
+            _omgr.harshShutdown();
+            _omgrThread.join();
+            _omgrThread = null;
+        }
+        shutdown();
+    }
+
+    protected static EventNotification change (String name, Object value)
+    {
+        return change(name, value, Transport.DEFAULT);
+    }
+
+    protected static EventNotification change (String name, Object value, Transport transport)
+    {
+        EventNotification notification =
+            new EventNotification(new AttributeChangedEvent(1, name, value));
+        notification.setTransport(transport);
+        return notification;
+    }
+
+    /** Records the congestion notifications for a connection. */
+    protected static class Recorder
+        implements PresentsConnection.MessageHandler, PresentsConnection.CongestionHandler
+    {
+        public volatile int congested, drained;
+
+        public void handleMessage (Message message) {
+            // nada
+        }
+
+        public void outgoingCongested (PresentsConnection conn) {
+            congested++;
+        }
+
+        public void outgoingDrained (PresentsConnection conn) {
+            drained++;
+        }
+    }
+
+    protected PresentsDObjectMgr _omgr;
+    protected Thread _omgrThread;
+
+    protected static final int HIGH_WATER = 16 * 1024;
+    protected static final int LOW_WATER = 4 * 1024;
+}
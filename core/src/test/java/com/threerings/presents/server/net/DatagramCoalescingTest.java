@@ -0,0 +1,164 @@
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2025 Three Rings Design, Inc., All Rights Reserved
+// https://github.com/threerings/narya/blob/master/LICENSE
+
+package com.threerings.presents.server.net;
+
+import java.util.List;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+import org.junit.Test;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+
+import com.threerings.io.ByteBufferInputStream;
+import com.threerings.io.ByteBufferOutputStream;
+import com.threerings.io.UnreliableObjectInputStream;
+import com.threerings.io.UnreliableObjectOutputStream;
+
+import com.threerings.presents.client.Client;
+import com.threerings.presents.data.PresentsConMgrStats;
+import com.threerings.presents.dobj.AttributeChangedEvent;
+import com.threerings.presents.net.EventNotification;
+import com.threerings.presents.net.Message;
+import com.threerings.presents.server.PresentsTestBase;
+import com.threerings.presents.util.DatagramSequencer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that superseded datagrams are dropped and the rest are packed together for clients that
+ * agree to it.
+ */
+public class DatagramCoalescingTest extends PresentsTestBase
+{
+    @Test public void testCoalescing ()
+        throws Exception
+    {
+        PresentsConnectionManager conmgr = getInstance(PresentsConnectionManager.class);
+        DatagramChannel client = createClient(conmgr);
+        _conn.setPackDatagrams(true);
+        try {
+            // only the last of a run of changes to an attribute is sent
+            for (int ii = 0; ii < 10; ii++) {
+                conmgr.postDatagram(_conn, notify("x", ii));
+                if (ii == 4) {
+                    conmgr.postDatagram(_conn, notify("y", ii));
+                }
+            }
+            conmgr.sendDatagrams();
+
+            List<String> received = Lists.newArrayList();
+            receive(client, received);
+            assertEquals(Lists.newArrayList("y=4", "x=9"), received);
+
+            PresentsConMgrStats stats = conmgr.getStats();
+            assertEquals(9, stats.datagramsSuperseded);
+            assertEquals(1, stats.datagramPackets);
+
+            // datagrams that won't fit in one packet spill over into another (two of these fit
+            // in a packet, along with the class metadata sent until the client acknowledges it)
+            String value = Strings.repeat("v", Client.MAX_DATAGRAM_SIZE/4);
+            for (int ii = 0; ii < 4; ii++) {
+                conmgr.postDatagram(_conn, notify("a" + ii, value));
+            }
+            conmgr.sendDatagrams();
+
+            received.clear();
+            int packets = 0;
+            for (; received.size() < 4; packets++) {
+                receive(client, received);
+            }
+            assertEquals(2, packets);
+            for (int ii = 0; ii < 4; ii++) {
+                assertEquals("a" + ii + "=" + value, received.get(ii));
+            }
+
+        } finally {
+            client.close();
+            _conn.getDatagramChannel().close();
+        }
+    }
+
+    @Test public void testUnpacked ()
+        throws Exception
+    {
+        PresentsConnectionManager conmgr = getInstance(PresentsConnectionManager.class);
+        DatagramChannel client = createClient(conmgr);
+        try {
+            // unless the client agreed to have them packed, each datagram gets its own packet,
+            // though superseded datagrams are still dropped
+            for (int ii = 0; ii < 3; ii++) {
+                conmgr.postDatagram(_conn, notify("x", ii));
+                conmgr.postDatagram(_conn, notify("y" + ii, ii));
+            }
+            conmgr.sendDatagrams();
+
+            List<String> received = Lists.newArrayList();
+            for (int ii = 0; ii < 4; ii++) {
+                receive(client, received);
+                assertEquals(ii + 1, received.size());
+            }
+            assertEquals(Lists.newArrayList("y0=0", "y1=1", "x=2", "y2=2"), received);
+
+            PresentsConMgrStats stats = conmgr.getStats();
+            assertEquals(2, stats.datagramsSuperseded);
+            assertEquals(4, stats.datagramPackets);
+
+        } finally {
+            client.close();
+            _conn.getDatagramChannel().close();
+        }
+    }
+
+    protected DatagramChannel createClient (PresentsConnectionManager conmgr)
+        throws Exception
+    {
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        DatagramChannel client = DatagramChannel.open();
+        client.bind(new InetSocketAddress(loopback, 0));
+        _conn = new PresentsConnection();
+        _conn._sequencer = conmgr.createDatagramSequencer();
+        _conn._datagramChannel = DatagramChannel.open();
+        _conn._datagramChannel.bind(new InetSocketAddress(loopback, 0));
+        _conn._datagramAddress = (InetSocketAddress)client.getLocalAddress();
+        _sequencer = new DatagramSequencer(
+            new UnreliableObjectInputStream(new ByteBufferInputStream(_buf)),
+            new UnreliableObjectOutputStream(new ByteBufferOutputStream()));
+        return client;
+    }
+
+    /**
+     * Receives a packet and decodes the datagrams that it contains, which are preceded by their
+     * lengths if they are packed.
+     */
+    protected void receive (DatagramChannel client, List<String> received)
+        throws Exception
+    {
+        _buf.clear();
+        client.receive(_buf);
+        _buf.flip();
+        while (_buf.hasRemaining()) {
+            Message msg = _conn.getPackDatagrams() ?
+                _sequencer.readDatagram(_buf.getShort()) : _sequencer.readDatagram();
+            AttributeChangedEvent event = (AttributeChangedEvent)
+                ((EventNotification)msg).getEvent();
+            received.add(event.getName() + "=" + event.getValue());
+        }
+    }
+
+    protected static EventNotification notify (String name, Object value)
+    {
+        return new EventNotification(new AttributeChangedEvent(1, name, value));
+    }
+
+    protected PresentsConnection _conn;
+    protected DatagramSequencer _sequencer;
+    protected ByteBuffer _buf = ByteBuffer.allocate(Client.MAX_DATAGRAM_SIZE);
+}
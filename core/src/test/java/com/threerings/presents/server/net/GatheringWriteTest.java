@@ -0,0 +1,130 @@
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2025 Three Rings Design, Inc., All Rights Reserved
+// https://github.com/threerings/narya/blob/master/LICENSE
+
+package com.threerings.presents.server.net;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+import org.junit.Test;
+
+import com.threerings.nio.conman.ConMgrStats;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that a connection's queued messages are written with gathering writes, and that those
+ * that don't fit are delivered intact and in order via its overflow queue.
+ */
+public class GatheringWriteTest extends ConMgrTestBase
+{
+    @Test public void testGathering ()
+        throws Exception
+    {
+        createConnectionManager();
+        PresentsConnection conn = new PresentsConnection();
+        SocketChannel client = connect(conn);
+        try {
+            // the messages queued between sends go out in a single write
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            for (int ii = 0; ii < 20; ii++) {
+                queue(conn, 100, ii, null, expected);
+            }
+            assertArrayEquals(expected.toByteArray(), drain(conn, client));
+
+            ConMgrStats stats = _conmgr.getStats();
+            assertEquals(1, stats.writes);
+            assertEquals(20, stats.msgsOut);
+            assertEquals(2000, stats.bytesOut);
+
+        } finally {
+            close(conn, client);
+        }
+    }
+
+    @Test public void testPartialWrites ()
+        throws Exception
+    {
+        createConnectionManager();
+        PresentsConnection conn = new PresentsConnection();
+        SocketChannel client = connect(conn);
+        try {
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            for (int ii = 0; ii < 25; ii++) {
+                queue(conn, (ii * 997) % 20000 + 1, ii, null, expected);
+            }
+
+            // our messages won't all fit in the socket, so the rest wait in an overflow queue,
+            // behind which any further messages must also wait
+            _conmgr.sendOutgoingMessages(System.currentTimeMillis());
+            assertTrue(_conmgr.getStats().overQueueSize > 0);
+            for (int ii = 25; ii < 50; ii++) {
+                queue(conn, (ii * 997) % 20000 + 1, ii, null, expected);
+            }
+            assertArrayEquals(expected.toByteArray(), drain(conn, client));
+
+            ConMgrStats stats = _conmgr.getStats();
+            assertTrue(stats.writes > 1);
+            assertEquals(50, stats.msgsOut);
+            assertEquals(expected.size(), stats.bytesOut);
+
+        } finally {
+            close(conn, client);
+        }
+    }
+
+    @Test public void testSuperseded ()
+        throws Exception
+    {
+        createConnectionManager();
+        PresentsConnection conn = new PresentsConnection();
+        SocketChannel client = connect(conn);
+        try {
+            // keyed messages that can be written right away are all written
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            queue(conn, 100, 1, "x", expected);
+            queue(conn, 100, 2, "x", expected);
+            assertArrayEquals(expected.toByteArray(), drain(conn, client));
+
+            // but one waiting in the overflow queue is dropped if a later message supersedes it
+            expected.reset();
+            queue(conn, 64 * 1024, 3, null, expected);
+            _conmgr.sendOutgoingMessages(System.currentTimeMillis());
+            _conmgr.queue(conn, data(100, 4), "x");
+            queue(conn, 100, 5, "y", expected);
+            queue(conn, 100, 6, null, expected);
+            queue(conn, 100, 7, "x", expected);
+            assertArrayEquals(expected.toByteArray(), drain(conn, client));
+            ConMgrStats stats = _conmgr.getStats();
+            assertEquals(1, stats.msgsSuperseded);
+            // the superseded message is not counted as sent
+            assertEquals(6, stats.msgsOut);
+            assertEquals(expected.size() + 200, stats.bytesOut);
+
+        } finally {
+            close(conn, client);
+        }
+    }
+
+    /**
+     * Queues a message for the supplied connection, noting the data that should be received.
+     */
+    protected void queue (PresentsConnection conn, int size, int seed, Object key,
+                          ByteArrayOutputStream expected)
+    {
+        ByteBuffer data = data(size, seed);
+        expected.write(data.array(), 0, size);
+        _conmgr.queue(conn, data, key);
+    }
+
+    protected void close (PresentsConnection conn, SocketChannel client)
+        throws Exception
+    {
+        client.close();
+        conn.getChannel().close();
+        shutdown();
+    }
+}
@@ -0,0 +1,106 @@
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2025 Three Rings Design, Inc., All Rights Reserved
+// https://github.com/threerings/narya/blob/master/LICENSE
+
+package com.threerings.presents.server.net;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.name.Names;
+import com.google.inject.util.Modules;
+
+import com.threerings.nio.conman.ConMgrStats;
+import com.threerings.presents.net.FailureResponse;
+import com.threerings.presents.net.Message;
+import com.threerings.presents.server.PresentsDObjectMgr;
+import com.threerings.presents.server.PresentsServer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that outgoing connections are multiplexed over the connection manager's reactors.
+ */
+public class OutgoingConnectionTest extends ConMgrTestBase
+{
+    @Test public void testOutgoing ()
+        throws Exception
+    {
+        _injector = Guice.createInjector(Modules.override(new PresentsServer.PresentsModule())
+                                         .with(new AbstractModule() {
+            @Override protected void configure () {
+                bindConstant().annotatedWith(Names.named("presents.net.reactors")).to(REACTORS);
+            }
+        }));
+        PresentsConnectionManager conmgr = getInstance(PresentsConnectionManager.class);
+        conmgr.start();
+
+        Path dir = Files.createTempDirectory("conns");
+        UnixDomainSocketAddress addr = UnixDomainSocketAddress.of(dir.resolve("server.sock"));
+        ServerSocketChannel ssocket = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        ssocket.bind(addr);
+
+        try {
+            // wait for our reactors to start, then make sure we don't start any more threads
+            while (conmgr.getReactorStats().length < REACTORS) {
+                Thread.sleep(10);
+            }
+            int threads = Thread.activeCount();
+
+            final AtomicInteger received = new AtomicInteger();
+            List<SocketChannel> accepted = Lists.newArrayList();
+            for (int ii = 0; ii < 2*REACTORS; ii++) {
+                PresentsConnection conn = new PresentsConnection();
+                conn.setMessageHandler(new PresentsConnection.MessageHandler() {
+                    public void handleMessage (Message message) {
+                        received.incrementAndGet();
+                    }
+                });
+                conmgr.openOutgoingConnection(conn, addr);
+                SocketChannel channel = ssocket.accept();
+                channel.write(frame(new FailureResponse(0, "test")));
+                accepted.add(channel);
+            }
+            assertEquals(threads, Thread.activeCount());
+
+            // every connection gets its message, and the connections are spread evenly
+            long deadline = System.currentTimeMillis() + 5000L;
+            while (received.get() < 2*REACTORS && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(2*REACTORS, received.get());
+            for (ConMgrStats stats : conmgr.getReactorStats()) {
+                assertEquals(2, stats.connectionCount);
+            }
+
+            for (SocketChannel channel : accepted) {
+                channel.close();
+            }
+
+        } finally {
+            // our conmgr runs until the dobjmgr is done, so that must shut down as well
+            conmgr.shutdown();
+            PresentsDObjectMgr omgr = getInstance(PresentsDObjectMgr.class);
+            omgr.harshShutdown();
+            omgr.run();
+            ssocket.close();
+            Files.delete(dir.resolve("server.sock"));
+            Files.delete(dir);
+        }
+    }
+
+    protected static final int REACTORS = 3;
+}
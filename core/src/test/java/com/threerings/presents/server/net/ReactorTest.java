@@ -0,0 +1,248 @@
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2025 Three Rings Design, Inc., All Rights Reserved
+// https://github.com/threerings/narya/blob/master/LICENSE
+
+package com.threerings.presents.server.net;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.inject.AbstractModule;
+import com.google.inject.name.Names;
+
+import com.threerings.nio.conman.ConMgrStats;
+import com.threerings.presents.net.FailureResponse;
+import com.threerings.presents.net.Message;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that established connections are shared among the connection manager's reactors.
+ */
+public class ReactorTest extends ConMgrTestBase
+{
+    @Test public void testRoundRobin ()
+        throws Exception
+    {
+        createConnectionManager(false);
+        try {
+            final Set<String> threads = Sets.newConcurrentHashSet();
+            _conmgr.handler = new PresentsConnection.MessageHandler() {
+                public void handleMessage (Message message) {
+                    threads.add(Thread.currentThread().getName());
+                }
+            };
+            start();
+
+            // each connection is assigned to the next reactor in turn
+            List<SocketChannel> clients = Lists.newArrayList();
+            List<PresentsConnection> conns = Lists.newArrayList();
+            for (int ii = 0; ii < 2*REACTORS; ii++) {
+                clients.add(connect());
+                conns.add(established());
+            }
+            for (ConMgrStats stats : _conmgr.getReactorStats()) {
+                assertEquals(2, stats.connectionCount);
+            }
+            assertEquals(2*REACTORS, _conmgr.getStats().connectionCount);
+
+            // the messages from each connection are read by its reactor
+            for (SocketChannel client : clients) {
+                client.write(frame(new FailureResponse(0, "test")));
+            }
+            long deadline = System.currentTimeMillis() + 5000L;
+            while (threads.size() < REACTORS && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(REACTORS, threads.size());
+
+            // and the messages to each connection are written by its reactor
+            for (int ii = 0; ii < conns.size(); ii++) {
+                _conmgr.queue(conns.get(ii), data(1000, ii), null);
+            }
+            for (int ii = 0; ii < clients.size(); ii++) {
+                assertArrayEquals(data(1000, ii).array(), read(clients.get(ii), 1000));
+            }
+
+            for (SocketChannel client : clients) {
+                client.close();
+            }
+
+        } finally {
+            shutdown();
+        }
+    }
+
+    @Test public void testLeastLoaded ()
+        throws Exception
+    {
+        createConnectionManager(true);
+        try {
+            start();
+
+            List<SocketChannel> clients = Lists.newArrayList();
+            for (int ii = 0; ii < REACTORS; ii++) {
+                clients.add(connect());
+                established();
+            }
+            for (ConMgrStats stats : _conmgr.getReactorStats()) {
+                assertEquals(1, stats.connectionCount);
+            }
+
+            // when a connection goes away, its reactor gets the next one
+            clients.remove(1).close();
+            long deadline = System.currentTimeMillis() + 5000L;
+            while (_conmgr.getReactorStats()[1].connectionCount > 0 &&
+                   System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(0, _conmgr.getReactorStats()[1].connectionCount);
+
+            clients.add(connect());
+            established();
+            for (ConMgrStats stats : _conmgr.getReactorStats()) {
+                assertEquals(1, stats.connectionCount);
+            }
+
+            for (SocketChannel client : clients) {
+                client.close();
+            }
+
+        } finally {
+            shutdown();
+        }
+    }
+
+    @Test public void testPartialWriteStays ()
+        throws Exception
+    {
+        createConnectionManager(false);
+        try {
+            // a connection upgraded while a message to it is still being written stays with the
+            // primary reactor, and its queued messages are delivered in order
+            _conmgr.preload = 64 * 1024;
+            start();
+
+            SocketChannel client = connect();
+            PresentsConnection conn = established();
+            int[] counts = new int[REACTORS];
+            ConMgrStats[] stats = _conmgr.getReactorStats();
+            for (int ii = 0; ii < stats.length; ii++) {
+                counts[ii] = stats[ii].connectionCount;
+            }
+            int[] expect = new int[REACTORS];
+            expect[0] = 1;
+            assertArrayEquals(expect, counts);
+
+            _conmgr.queue(conn, data(1000, 1), null);
+            ByteBuffer expected = ByteBuffer.allocate(_conmgr.preload + 1000);
+            expected.put(data(_conmgr.preload, 0)).put(data(1000, 1));
+            assertArrayEquals(expected.array(), read(client, _conmgr.preload + 1000));
+            client.close();
+
+        } finally {
+            shutdown();
+        }
+    }
+
+    @Test public void testCloseConnection ()
+        throws Exception
+    {
+        // our reactors would sit in select for longer than we are willing to wait, unless they
+        // are woken up when connections are queued up to close
+        createConnectionManager(false, 10 * 1000);
+        try {
+            start();
+
+            List<SocketChannel> clients = Lists.newArrayList();
+            List<PresentsConnection> conns = Lists.newArrayList();
+            for (int ii = 0; ii < REACTORS; ii++) {
+                clients.add(connect());
+                conns.add(established());
+            }
+            for (PresentsConnection conn : conns) {
+                _conmgr.closeConnection(conn);
+            }
+            for (int ii = 0; ii < REACTORS; ii++) {
+                assertEquals(-1, read(clients.get(ii), ByteBuffer.allocate(1)));
+                assertTrue(conns.get(ii).isClosed());
+            }
+
+            for (SocketChannel client : clients) {
+                client.close();
+            }
+
+        } finally {
+            shutdown();
+        }
+    }
+
+    protected void createConnectionManager (boolean leastLoaded)
+        throws Exception
+    {
+        createConnectionManager(leastLoaded, 100);
+    }
+
+    protected void createConnectionManager (final boolean leastLoaded, final int selectLoopTime)
+        throws Exception
+    {
+        createConnectionManager(new AbstractModule() {
+            @Override protected void configure () {
+                bindConstant().annotatedWith(Names.named("presents.net.reactors")).to(REACTORS);
+                bindConstant().annotatedWith(Names.named("presents.net.assignLeastLoaded")).
+                    to(leastLoaded);
+                bindConstant().annotatedWith(Names.named("presents.net.selectLoopTime")).
+                    to(selectLoopTime);
+            }
+        });
+    }
+
+    /**
+     * Reads from the supplied client until something arrives or the end of the stream is
+     * reached, waiting no more than a few seconds.
+     */
+    protected int read (SocketChannel client, ByteBuffer buf)
+        throws Exception
+    {
+        long deadline = System.currentTimeMillis() + 5000L;
+        int read;
+        while ((read = client.read(buf)) == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        return read;
+    }
+
+    /**
+     * Starts our connection manager and waits for its reactors to start.
+     */
+    protected void start ()
+        throws Exception
+    {
+        _conmgr.start();
+        while (_conmgr.getReactorStats().length < REACTORS) {
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Waits for our connection manager to establish the next connection.
+     */
+    protected PresentsConnection established ()
+        throws Exception
+    {
+        PresentsConnection conn = _conmgr.established.poll(5, TimeUnit.SECONDS);
+        assertNotNull(conn);
+        return conn;
+    }
+
+    protected static final int REACTORS = 3;
+}
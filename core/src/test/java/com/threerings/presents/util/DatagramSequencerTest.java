@@ -0,0 +1,124 @@
+//
+// Narya library - tools for developing networked games
+// Copyright (C) 2002-2025 Three Rings Design, Inc., All Rights Reserved
+// https://github.com/threerings/narya/blob/master/LICENSE
+
+package com.threerings.presents.util;
+
+import java.util.Arrays;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import com.threerings.io.ByteBufferInputStream;
+import com.threerings.io.UnreliableObjectInputStream;
+import com.threerings.io.UnreliableObjectOutputStream;
+
+import com.threerings.presents.net.Message;
+import com.threerings.presents.net.PingRequest;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the acknowledgement of datagram class mappings.
+ */
+public class DatagramSequencerTest
+{
+    @Test public void testAcknowledgement ()
+        throws Exception
+    {
+        End one = new End(), two = new End();
+
+        // class mappings are sent with every datagram until one including them is acknowledged
+        byte[] first = one.write();
+        assertEquals(first.length, one.write().length);
+        assertTrue(two.read(first) instanceof PingRequest);
+        one.read(two.write());
+        assertTrue(one.write().length < first.length);
+        assertEquals(1, one.sequencer.getAckScanLength());
+
+        // out of order datagrams are dropped
+        assertNull(two.read(first));
+    }
+
+    @Test public void testOverflow ()
+        throws Exception
+    {
+        End one = new End(), two = new End();
+
+        // if more datagrams go unacknowledged than fit in our ring, we forget about the oldest
+        byte[] first = one.write(), last = first;
+        for (int ii = 0; ii < 300; ii++) {
+            last = one.write();
+        }
+        assertEquals(first.length, last.length);
+
+        // but still note the mappings of the most recent when it is acknowledged
+        two.read(last);
+        one.read(two.write());
+        assertTrue(one.write().length < first.length);
+        assertEquals(128, one.sequencer.getAckScanLength());
+    }
+
+    @Test public void testPackedOutOfOrder ()
+        throws Exception
+    {
+        End one = new End(), two = new End();
+        byte[] first = one.write(), second = one.write(), third = one.write();
+
+        // a duplicated or reordered datagram is skipped without being decoded, so even one that
+        // can't be decoded doesn't disturb those packed after it
+        assertTrue(two.read(second) instanceof PingRequest);
+        Arrays.fill(first, 8, first.length, (byte)-1);
+        two.fill(first, second, third);
+        assertNull(two.sequencer.readDatagram(two._inbuf.getShort()));
+        assertNull(two.sequencer.readDatagram(two._inbuf.getShort()));
+        assertTrue(two.sequencer.readDatagram(two._inbuf.getShort()) instanceof PingRequest);
+        assertFalse(two._inbuf.hasRemaining());
+    }
+
+    protected static class End
+    {
+        public DatagramSequencer sequencer;
+
+        public End ()
+        {
+            sequencer = new DatagramSequencer(
+                new UnreliableObjectInputStream(new ByteBufferInputStream(_inbuf)),
+                new UnreliableObjectOutputStream(_out));
+        }
+
+        public byte[] write ()
+            throws Exception
+        {
+            _out.reset();
+            sequencer.writeDatagram(new PingRequest());
+            return _out.toByteArray();
+        }
+
+        public Message read (byte[] data)
+            throws Exception
+        {
+            _inbuf.clear();
+            _inbuf.put(data).flip();
+            return sequencer.readDatagram();
+        }
+
+        /**
+         * Packs the supplied datagrams into our input buffer, each preceded by its length.
+         */
+        public void fill (byte[]... datagrams)
+        {
+            _inbuf.clear();
+            for (byte[] data : datagrams) {
+                _inbuf.putShort((short)data.length).put(data);
+            }
+            _inbuf.flip();
+        }
+
+        protected ByteBuffer _inbuf = ByteBuffer.allocate(1024);
+        protected ByteArrayOutputStream _out = new ByteArrayOutputStream();
+    }
+}
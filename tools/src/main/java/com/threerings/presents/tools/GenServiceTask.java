@@ -28,6 +28,7 @@ import com.threerings.util.ActionScript;
 import com.threerings.presents.client.InvocationService;
 import com.threerings.presents.data.ClientObject;
 import com.threerings.presents.data.InvocationMarshaller;
+import com.threerings.presents.server.InvocationDispatcher;
 import com.threerings.presents.server.InvocationException;
 import com.threerings.presents.server.InvocationProvider;
 
@@ -204,7 +205,7 @@ public class GenServiceTask extends InvocationTask
 
         ServiceDescription desc = new ServiceDescription(service);
         generateMarshaller(source, desc);
-        // generateDispatcher(source, desc); // dispatchers are no longer needed
+        generateDispatcher(source, desc);
         if (!_providerless.contains(service.getSimpleName())) {
             generateProvider(source, desc);
         }
@@ -456,7 +457,10 @@ public class GenServiceTask extends InvocationTask
         imports.add(sdesc.callerType);
 
         // add some classes required for all dispatchers
+        imports.add(ClientObject.class);
+        imports.add(InvocationDispatcher.class);
         imports.add(InvocationException.class);
+        imports.add("javax.annotation.processing.Generated");
 
         // import classes contained in arrays
         imports.translateClassArrays();
@@ -482,12 +486,16 @@ public class GenServiceTask extends InvocationTask
         String mpath = source.getPath();
         mpath = mpath.replace("Service", "Dispatcher");
         mpath = replacePath(mpath, "/client/", "/server/");
+        // the provider must be passed the caller as the type it expects
+        String caller = (sdesc.callerType == ClientObject.class) ? "source" :
+            "(" + sdesc.callerType.getSimpleName() + ")source";
         writeTemplate(DISPATCHER_TMPL, mpath,
             "name", name,
             "generated", getGeneratedAnnotation(name),
             "package", dpackage,
             "methods", sdesc.methods,
-            "imports", imports.toList());
+            "caller", caller,
+            "importGroups", imports.toGroups());
     }
 
     protected void generateProvider (File source, ServiceDescription sdesc)